@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.jrh3k5.chef.client.jersey.JerseyCookbookClient.JsonCookbook;
+import com.github.jrh3k5.chef.client.jersey.JerseyCookbookClient.JsonCookbook.JsonVersion;
+
+/**
+ * Benchmarks of decoding cookbook and version documents. The streaming cookbook decoder is measured against binding the same document with Jackson's data binding and then
+ * {@link JsonCookbook#init(JerseyCookbookClient) initializing} it, as the client originally did.
+ *
+ * @author Joshua Hyde
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+    private static final ObjectReader COOKBOOK_READER = new ObjectMapper().reader(JsonCookbook.class);
+    /**
+     * The number of versions of the decoded cookbook.
+     */
+    @Param({ "1", "10", "100", "500" })
+    public int versionCount;
+    private byte[] cookbook;
+    private byte[] version;
+
+    /**
+     * Build the documents to be decoded.
+     */
+    @Setup
+    public void setUp() {
+        cookbook = Payloads.cookbook("apache2", versionCount);
+        version = Payloads.version("apache2", versionCount - 1);
+    }
+
+    /**
+     * Decode a cookbook with the streaming decoder and map its versions.
+     *
+     * @return The decoded {@link JsonCookbook}.
+     * @throws IOException
+     *             If the cookbook cannot be decoded.
+     */
+    @Benchmark
+    public JsonCookbook decodeCookbook() throws IOException {
+        final JsonCookbook decoded = JsonDecoder.decodeCookbook(new ByteArrayInputStream(cookbook));
+        decoded.attach(null);
+        return decoded;
+    }
+
+    /**
+     * Bind a cookbook with Jackson's data binding and map its versions.
+     *
+     * @return The bound {@link JsonCookbook}.
+     * @throws IOException
+     *             If the cookbook cannot be bound.
+     */
+    @Benchmark
+    public JsonCookbook bindCookbook() throws IOException {
+        final JsonCookbook bound = COOKBOOK_READER.readValue(new ByteArrayInputStream(cookbook));
+        bound.init(null);
+        return bound;
+    }
+
+    /**
+     * Read only the URL of a cookbook's latest version, as {@link JerseyCookbookClient#getLatestVersion(String)} does.
+     *
+     * @return The URL of the latest version.
+     * @throws IOException
+     *             If the cookbook cannot be decoded.
+     */
+    @Benchmark
+    public String decodeLatestVersionUrl() throws IOException {
+        return JsonDecoder.decodeLatestVersionUrl(new ByteArrayInputStream(cookbook));
+    }
+
+    /**
+     * Decode a version.
+     *
+     * @return The decoded {@link JsonVersion}.
+     * @throws IOException
+     *             If the version cannot be decoded.
+     */
+    @Benchmark
+    public JsonVersion decodeVersion() throws IOException {
+        return JsonDecoder.decodeVersion(new ByteArrayInputStream(version));
+    }
+}
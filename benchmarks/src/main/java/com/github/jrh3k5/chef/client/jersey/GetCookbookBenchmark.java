@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.jrh3k5.chef.client.Cookbook;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Benchmarks of {@link JerseyCookbookClient#getCookbook(String)} against an HTTP server running in the same JVM, so that the client's own overhead - building the request, the connection pool,
+ * reading and decoding the response - is what is measured. With conditional requests enabled, every retrieval after the first is answered with {@code 304 Not Modified}.
+ * <p />
+ * The server is forked with {@code TCP_NODELAY} set: otherwise, its separate writes of a response's headers and body meet the client's delayed acknowledgement and each retrieval stalls for
+ * tens of milliseconds.
+ *
+ * @author Joshua Hyde
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class GetCookbookBenchmark {
+    private static final String ENTITY_TAG = "\"apache2-1\"";
+    /**
+     * The number of versions of the retrieved cookbook.
+     */
+    @Param({ "10", "100", "500" })
+    public int versionCount;
+    /**
+     * Whether the client revalidates the cookbook with conditional requests.
+     */
+    @Param({ "false", "true" })
+    public boolean conditional;
+    private ExecutorService serverExecutor;
+    private HttpServer server;
+    private JerseyCookbookClient client;
+
+    /**
+     * Start the server and create the client.
+     *
+     * @throws IOException
+     *             If the server cannot be started.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        final byte[] cookbook = Payloads.cookbook("apache2", versionCount);
+        serverExecutor = Executors.newFixedThreadPool(4);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(serverExecutor);
+        server.createContext("/api/v1/cookbooks/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getRequestBody().close();
+                exchange.getResponseHeaders().set("ETag", ENTITY_TAG);
+                if (ENTITY_TAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, cookbook.length);
+                final OutputStream responseBody = exchange.getResponseBody();
+                try {
+                    responseBody.write(cookbook);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+
+        final JerseyCookbookClientConfiguration configuration = new JerseyCookbookClientConfiguration();
+        configuration.setValidatorCacheSize(conditional ? JerseyCookbookClientConfiguration.DEFAULT_VALIDATOR_CACHE_SIZE : 0);
+        client = new JerseyCookbookClient("http://localhost:" + server.getAddress().getPort() + "/api/v1/", configuration);
+    }
+
+    /**
+     * Stop the server and close the client.
+     *
+     * @throws IOException
+     *             If the client cannot be closed.
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        try {
+            client.close();
+        } finally {
+            server.stop(0);
+            serverExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Retrieve a cookbook.
+     *
+     * @return The retrieved {@link Cookbook}.
+     */
+    @Benchmark
+    public Cookbook getCookbook() {
+        return client.getCookbook("apache2");
+    }
+}
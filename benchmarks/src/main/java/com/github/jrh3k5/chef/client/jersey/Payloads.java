@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Builders of cookbook and version documents shaped like those returned by the community cookbook site, including the fields the client skips.
+ *
+ * @author Joshua Hyde
+ */
+
+final class Payloads {
+    /**
+     * The service URL used in the built documents.
+     */
+    static final String SERVICE_URL = "https://cookbooks.opscode.com/api/v1/";
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private Payloads() {
+    }
+
+    /**
+     * Build a cookbook document.
+     *
+     * @param name
+     *            The name of the cookbook.
+     * @param versionCount
+     *            The number of versions of the cookbook.
+     * @return The document, encoded as UTF-8.
+     */
+    static byte[] cookbook(String name, int versionCount) {
+        final StringBuilder builder = new StringBuilder(256 + versionCount * 80);
+        builder.append("{\"name\":\"").append(name).append("\",\"maintainer\":\"opscode\",\"category\":\"Web Servers\",");
+        builder.append("\"description\":\"Installs and configures all aspects of apache2 using Debian style symlinks with helper definitions\",");
+        builder.append("\"external_url\":\"https://github.com/opscode-cookbooks/").append(name).append("\",\"average_rating\":4.5,");
+        builder.append("\"created_at\":\"2009-10-25T23:47:50.000Z\",\"updated_at\":\"2014-01-13T22:03:20.000Z\",\"deprecated\":false,");
+        builder.append("\"latest_version\":\"").append(versionUrl(name, versionCount - 1)).append("\",\"versions\":[");
+        for (int i = versionCount - 1; i >= 0; i--) {
+            builder.append('"').append(versionUrl(name, i)).append('"');
+            if (i > 0) {
+                builder.append(',');
+            }
+        }
+        return encode(builder.append("]}").toString());
+    }
+
+    /**
+     * Build a version document.
+     *
+     * @param name
+     *            The name of the cookbook.
+     * @param index
+     *            The index of the version.
+     * @return The document, encoded as UTF-8.
+     */
+    static byte[] version(String name, int index) {
+        final StringBuilder builder = new StringBuilder(512);
+        builder.append("{\"license\":\"Apache 2.0\",\"tarball_file_size\":71483,\"version\":\"").append(versionNumber(index)).append("\",");
+        builder.append("\"average_rating\":null,\"cookbook\":\"").append(SERVICE_URL).append("cookbooks/").append(name).append("\",");
+        builder.append("\"file\":\"").append(versionUrl(name, index)).append("/download\",");
+        builder.append("\"dependencies\":{\"iptables\":\">= 0.0.0\",\"logrotate\":\">= 0.0.0\",\"pacman\":\">= 0.0.0\"},");
+        builder.append("\"platforms\":{\"redhat\":\">= 0.0.0\",\"centos\":\">= 0.0.0\",\"debian\":\">= 0.0.0\",\"ubuntu\":\">= 0.0.0\",\"fedora\":\">= 0.0.0\"},");
+        builder.append("\"created_at\":\"2014-01-13T22:03:20.000Z\",\"updated_at\":\"2014-01-13T22:03:20.000Z\"}");
+        return encode(builder.toString());
+    }
+
+    /**
+     * Build the URL of a version.
+     *
+     * @param name
+     *            The name of the cookbook.
+     * @param index
+     *            The index of the version.
+     * @return The URL of the version.
+     */
+    static String versionUrl(String name, int index) {
+        return SERVICE_URL + "cookbooks/" + name + "/versions/" + versionNumber(index).replace('.', '_');
+    }
+
+    /**
+     * Build the number of a version.
+     *
+     * @param index
+     *            The index of the version; versions with higher indices are newer.
+     * @return The version number.
+     */
+    static String versionNumber(int index) {
+        return (index / 100) + "." + (index / 10 % 10) + "." + (index % 10);
+    }
+
+    /**
+     * Encode a document.
+     *
+     * @param document
+     *            The document to be encoded.
+     * @return The document, encoded as UTF-8.
+     */
+    private static byte[] encode(String document) {
+        try {
+            return document.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported.", e);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.jrh3k5.chef.client.Cookbook.Version;
+import com.github.jrh3k5.chef.client.jersey.JerseyCookbookClient.JsonCookbook;
+import com.github.jrh3k5.chef.client.jersey.MetadataStore.StoredCookbook;
+import com.github.jrh3k5.chef.client.jersey.MetadataStore.StoredVersion;
+
+/**
+ * Benchmarks of mapping a cookbook's version URLs to version numbers, and of looking up versions that have already been resolved or that do not exist. No requests are made: every version of the
+ * cookbook is resolved up front.
+ *
+ * @author Joshua Hyde
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VersionLookupBenchmark {
+    /**
+     * The number of versions of the cookbook.
+     */
+    @Param({ "1", "10", "100", "500" })
+    public int versionCount;
+    private List<String> versionUrls;
+    private URL latestVersionUrl;
+    private JsonCookbook resolved;
+    private String hit;
+    private String miss;
+
+    /**
+     * Build the cookbook whose versions are to be looked up.
+     *
+     * @throws MalformedURLException
+     *             If a version URL is invalid.
+     */
+    @Setup
+    public void setUp() throws MalformedURLException {
+        versionUrls = new ArrayList<String>(versionCount);
+        final List<StoredVersion> storedVersions = new ArrayList<StoredVersion>(versionCount);
+        for (int i = 0; i < versionCount; i++) {
+            final String versionNumber = Payloads.versionNumber(i);
+            versionUrls.add(Payloads.versionUrl("apache2", i));
+            storedVersions.add(new StoredVersion(versionNumber, Payloads.versionUrl("apache2", i) + "/download", -1, versionNumber, Collections.<String, String> emptyMap()));
+        }
+        latestVersionUrl = new URL(versionUrls.get(versionCount - 1));
+        resolved = JsonCookbook.restore(new StoredCookbook("apache2", latestVersionUrl.toExternalForm(), versionUrls, storedVersions, null, null, System.currentTimeMillis()), null);
+        hit = Payloads.versionNumber(versionCount / 2);
+        miss = "99.99.99";
+    }
+
+    /**
+     * Map the version URLs of a cookbook to version numbers, as is done when a cookbook is initialized.
+     *
+     * @return The initialized {@link JsonCookbook}.
+     */
+    @Benchmark
+    public JsonCookbook mapVersions() {
+        final JsonCookbook cookbook = new JsonCookbook();
+        cookbook.setName("apache2");
+        cookbook.setLatestVersionUrl(latestVersionUrl);
+        for (String versionUrl : versionUrls) {
+            cookbook.addVersionUrl(versionUrl);
+        }
+        cookbook.attach(null);
+        return cookbook;
+    }
+
+    /**
+     * Look up a version that has already been resolved.
+     *
+     * @return The resolved {@link Version}.
+     */
+    @Benchmark
+    public Version getVersionHit() {
+        return resolved.getVersion(hit);
+    }
+
+    /**
+     * Look up a version that the cookbook does not have.
+     *
+     * @return {@code null}.
+     */
+    @Benchmark
+    public Version getVersionMiss() {
+        return resolved.getVersion(miss);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Runs the setup of every benchmark, and each benchmark once, with the smallest and largest of its parameters so that a change that breaks a benchmark is found without running JMH.
+ *
+ * @author Joshua Hyde
+ */
+
+public class BenchmarkSetupTest {
+    private static final int[] VERSION_COUNTS = { 1, 500 };
+
+    /**
+     * The decoding benchmarks should decode their documents.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testDecodeBenchmark() throws Exception {
+        for (int versionCount : VERSION_COUNTS) {
+            final DecodeBenchmark benchmark = new DecodeBenchmark();
+            benchmark.versionCount = versionCount;
+            benchmark.setUp();
+
+            assertThat(benchmark.decodeCookbook().getVersions()).hasSize(versionCount);
+            assertThat(benchmark.bindCookbook().getVersions()).hasSize(versionCount);
+            assertThat(benchmark.decodeLatestVersionUrl()).isEqualTo(Payloads.versionUrl("apache2", versionCount - 1));
+            assertThat(benchmark.decodeVersion().getVersion()).isEqualTo(Payloads.versionNumber(versionCount - 1));
+        }
+    }
+
+    /**
+     * The version lookup benchmarks should find the versions they look up without making any requests.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testVersionLookupBenchmark() throws Exception {
+        for (int versionCount : VERSION_COUNTS) {
+            final VersionLookupBenchmark benchmark = new VersionLookupBenchmark();
+            benchmark.versionCount = versionCount;
+            benchmark.setUp();
+
+            assertThat(benchmark.mapVersions().getVersions()).hasSize(versionCount);
+            assertThat(benchmark.getVersionHit().getVersion()).isEqualTo(Payloads.versionNumber(versionCount / 2));
+            assertThat(benchmark.getVersionMiss()).isNull();
+        }
+    }
+
+    /**
+     * The retrieval benchmark should retrieve its cookbook from its server, with and without conditional requests.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetCookbookBenchmark() throws Exception {
+        for (boolean conditional : new boolean[] { false, true }) {
+            final GetCookbookBenchmark benchmark = new GetCookbookBenchmark();
+            benchmark.versionCount = 10;
+            benchmark.conditional = conditional;
+            benchmark.setUp();
+            try {
+                // The second retrieval is revalidated when conditional requests are enabled
+                assertThat(benchmark.getCookbook().getVersions()).hasSize(10);
+                assertThat(benchmark.getCookbook().getVersions()).hasSize(10);
+            } finally {
+                benchmark.tearDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.MediaType;
+
+import org.glassfish.jersey.client.ClientConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import com.github.jrh3k5.chef.client.Cookbook.Version;
+
+/**
+ * Integration tests, against the public cookbook API, that every {@link CookbookClient} implementation must pass.
+ * 
+ * @author Joshua Hyde
+ * @param <C>
+ *            The type of client under test.
+ */
+
+public abstract class AbstractCookbookClientITest<C extends CookbookClient> {
+    /**
+     * The v1 API URL for cookbooks.
+     */
+    protected static final String V1_API_URL = "https://cookbooks.opscode.com/api/v1/";
+    private static JsonCookbookObject apacheCookbook;
+    private static List<JsonCookbookVersionObject> apacheVersions;
+    private C cookbookClient;
+
+    @BeforeClass
+    public static void getApacheInfo() throws Exception {
+        final ClientConfig clientConfig = new ClientConfig();
+        clientConfig.register(JacksonJsonProvider.class);
+        final Client client = ClientBuilder.newClient(clientConfig);
+        try {
+            apacheCookbook = client.target(V1_API_URL).path("cookbooks").path("apache").request(MediaType.APPLICATION_JSON_TYPE).accept(MediaType.APPLICATION_JSON_TYPE)
+                    .get(JsonCookbookObject.class);
+            final String latestVersionUrlString = apacheCookbook.getLatestVersion().toExternalForm();
+            apacheVersions = new ArrayList<JsonCookbookVersionObject>(apacheCookbook.versions.length);
+            for (URL version : apacheCookbook.versions) {
+                final JsonCookbookVersionObject versionObject = client.target(version.toURI()).request(MediaType.APPLICATION_JSON_TYPE).accept(MediaType.APPLICATION_JSON_TYPE)
+                        .get(JsonCookbookVersionObject.class);
+                versionObject.location = version;
+                apacheVersions.add(versionObject);
+                if (version.toExternalForm().equals(latestVersionUrlString)) {
+                    apacheCookbook.setLatestVersionObject(versionObject);
+                }
+            }
+        } finally {
+            client.close();
+        }
+    }
+
+    @Before
+    public void createClient() throws Exception {
+        cookbookClient = newClient();
+    }
+
+    @After
+    public void closeClient() throws Exception {
+        cookbookClient.close();
+    }
+
+    /**
+     * Test the retrieval of cookbook data.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetCookbook() throws Exception {
+        final Cookbook cookbook = cookbookClient.getCookbook(apacheCookbook.getName());
+        assertThat(cookbook).isNotNull();
+        assertThat(cookbook.getName()).isEqualTo(apacheCookbook.getName());
+
+        final Version version = cookbook.getLatestVersion();
+        assertThat(version.getVersion()).isEqualTo(apacheCookbook.getLatestVersionName());
+        assertThat(version.getFileLocation().toExternalForm()).isEqualTo(apacheCookbook.getLatestVersionObject().getFile().toExternalForm());
+
+        // Test each of the known versions
+        for (JsonCookbookVersionObject versionObject : apacheVersions) {
+            final String versionName = JsonCookbookObject.getVersionName(versionObject.location);
+            final Version matchedVersion = cookbook.getVersion(versionName);
+            assertThat(matchedVersion).isNotNull();
+            assertThat(matchedVersion.getFileLocation().toExternalForm()).isEqualTo(versionObject.file.toExternalForm());
+            assertThat(matchedVersion.getVersion()).isEqualTo(versionObject.version);
+        }
+    }
+
+    /**
+     * Resolving many versions of a cookbook should reuse the pooled connections of the client rather than open a connection per request.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testConnectionReuse() throws Exception {
+        final Cookbook cookbook = cookbookClient.getCookbook(apacheCookbook.getName());
+        for (String versionName : cookbook.getVersions()) {
+            assertThat(cookbook.getVersion(versionName)).isNotNull();
+        }
+
+        assertThat(getRequestsSent(cookbookClient)).isEqualTo(apacheVersions.size() + 1);
+        assertThat(getConnectionsCreated(cookbookClient)).isLessThan(getRequestsSent(cookbookClient));
+        assertThat(getLeased(cookbookClient)).isZero();
+    }
+
+    /**
+     * Prefetching the versions of a cookbook should resolve all of them so that no further requests are needed to look them up.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testPrefetchVersions() throws Exception {
+        final Cookbook cookbook = cookbookClient.getCookbook(apacheCookbook.getName());
+        cookbook.prefetchVersions();
+
+        final long requestsAfterPrefetch = getRequestsSent(cookbookClient);
+        for (JsonCookbookVersionObject versionObject : apacheVersions) {
+            final Version matchedVersion = cookbook.getVersion(JsonCookbookObject.getVersionName(versionObject.location));
+            assertThat(matchedVersion.getFileLocation().toExternalForm()).isEqualTo(versionObject.file.toExternalForm());
+        }
+        assertThat(getRequestsSent(cookbookClient)).isEqualTo(requestsAfterPrefetch);
+    }
+
+    /**
+     * Concurrent requests for the same unresolved version should be answered by a single request to the server.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testConcurrentVersionResolution() throws Exception {
+        final Cookbook cookbook = cookbookClient.getCookbook(apacheCookbook.getName());
+        final String versionName = apacheCookbook.getLatestVersionName();
+        final long requestsBefore = getRequestsSent(cookbookClient);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Future<Version>> futures = new ArrayList<Future<Version>>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(new Callable<Version>() {
+                    @Override
+                    public Version call() throws Exception {
+                        start.await();
+                        return cookbook.getVersion(versionName);
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Version> future : futures) {
+                assertThat(future.get().getVersion()).isEqualTo(apacheCookbook.getLatestVersionObject().getVersion());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(getRequestsSent(cookbookClient)).isEqualTo(requestsBefore + 1);
+    }
+
+    /**
+     * If the cookbook is not found, then {@code null} should be returned by the client.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetCookbookNotFound() throws Exception {
+        final Cookbook cookbook = cookbookClient.getCookbook("this_should_never_be_founds");
+        assertThat(cookbook).isNull();
+    }
+
+    /**
+     * Looking up only the latest version of a cookbook should resolve the same version as retrieving the whole cookbook.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetLatestVersion() throws Exception {
+        final Version version = cookbookClient.getLatestVersion(apacheCookbook.getName());
+        assertThat(version.getVersion()).isEqualTo(apacheCookbook.getLatestVersionName());
+        assertThat(version.getFileLocation().toExternalForm()).isEqualTo(apacheCookbook.getLatestVersionObject().getFile().toExternalForm());
+
+        assertThat(cookbookClient.getLatestVersion("this_should_never_be_founds")).isNull();
+    }
+
+    /**
+     * Create the client under test, pointing at the {@code v1} Chef cookbook API.
+     * 
+     * @return The client under test.
+     */
+    protected abstract C newClient();
+
+    /**
+     * Get the number of connections the client has opened.
+     * 
+     * @param client
+     *            The client under test.
+     * @return The number of connections the client has opened.
+     */
+    protected abstract long getConnectionsCreated(C client);
+
+    /**
+     * Get the number of connections the client is using.
+     * 
+     * @param client
+     *            The client under test.
+     * @return The number of connections currently serving a request.
+     */
+    protected abstract int getLeased(C client);
+
+    /**
+     * Get the number of requests the client has sent.
+     * 
+     * @param client
+     *            The client under test.
+     * @return The number of requests the client has sent.
+     */
+    protected abstract long getRequestsSent(C client);
+
+    /**
+     * A JSON representation of the Chef response for retrieving cookbooks.
+     * 
+     * @author Joshua Hyde
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class JsonCookbookObject {
+        private String name;
+        private URL[] versions;
+        @JsonProperty("latest_version")
+        private URL latestVersion;
+        private JsonCookbookVersionObject latestVersionObject;
+
+        public void setLatestVersion(URL latestVersion) {
+            this.latestVersion = latestVersion;
+        }
+
+        public URL getLatestVersion() {
+            return latestVersion;
+        }
+
+        public void setVersions(URL[] versions) {
+            this.versions = versions;
+        }
+
+        public URL[] getVersions() {
+            return versions;
+        }
+
+        public void setLatestVersionObject(JsonCookbookVersionObject latestVersionObject) {
+            this.latestVersionObject = latestVersionObject;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public JsonCookbookVersionObject getLatestVersionObject() {
+            return latestVersionObject;
+        }
+
+        public String getLatestVersionName() {
+            return getVersionName(latestVersion);
+        }
+
+        /**
+         * Parse the identifier of a version from the given URL.
+         * 
+         * @param url
+         *            A {@link URL} object representing the location of information about a specific version of a Chef cookbook.
+         * @return The version identifier.
+         */
+        public static String getVersionName(URL url) {
+            final String externalForm = url.toExternalForm();
+            final String underscored = externalForm.substring(externalForm.lastIndexOf('/') + 1);
+            return underscored.replaceAll("\\_", ".");
+        }
+    }
+
+    /**
+     * A JSON object representing the response of the Chef server for a specific cookbook version.
+     * 
+     * @author Joshua Hyde
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class JsonCookbookVersionObject {
+        URL location;
+        URL file;
+        String version;
+
+        public void setFile(URL file) {
+            this.file = file;
+        }
+
+        public URL getFile() {
+            return file;
+        }
+
+        public void setVersion(String version) {
+            this.version = version;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.nio;
+
+import com.github.jrh3k5.chef.client.AbstractCookbookClientITest;
+
+/**
+ * Integration tests for {@link NioCookbookClient}.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class NioCookbookClientITest extends AbstractCookbookClientITest<NioCookbookClient> {
+    @Override
+    protected NioCookbookClient newClient() {
+        return new NioCookbookClient();
+    }
+
+    @Override
+    protected long getConnectionsCreated(NioCookbookClient client) {
+        return client.getEngineStatistics().getConnectionsCreated();
+    }
+
+    @Override
+    protected int getLeased(NioCookbookClient client) {
+        return client.getEngineStatistics().getLeased();
+    }
+
+    @Override
+    protected long getRequestsSent(NioCookbookClient client) {
+        return client.getEngineStatistics().getRequestsSent();
+    }
+}
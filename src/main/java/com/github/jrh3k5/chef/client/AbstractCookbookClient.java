@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+import com.github.jrh3k5.chef.client.concurrent.BoundedFanOut;
+
+/**
+ * A skeletal implementation of {@link CookbookClient} that implements batch retrieval on top of {@link #getCookbookAsync(String, RetrievalCallback)}.
+ *
+ * @author Joshua Hyde
+ */
+
+public abstract class AbstractCookbookClient implements CookbookClient {
+    /**
+     * The default number of cookbooks retrieved concurrently by {@link #getCookbooks(Collection)}.
+     */
+    public static final int DEFAULT_BATCH_PARALLELISM = 8;
+
+    /**
+     * {@inheritDoc} This implementation waits for {@link #getCookbookAsync(String)} for as long as the deadline allows, cancelling the retrieval if it does not complete in time.
+     */
+    @Override
+    public Cookbook getCookbook(String name, Deadline deadline) {
+        final String description = "cookbook " + name;
+        deadline.check(description);
+        final Cookbook cookbook = deadline.await(getCookbookAsync(name), description);
+        return cookbook == null ? null : cookbook.withDeadline(deadline);
+    }
+
+    @Override
+    public Future<Cookbook> getCookbookAsync(String name) {
+        return getCookbookAsync(name, null);
+    }
+
+    @Override
+    public CookbookBatchResult getCookbooks(Collection<String> names) {
+        final Set<String> distinctNames = new LinkedHashSet<String>(names);
+        final Map<String, Cookbook> found = new ConcurrentHashMap<String, Cookbook>();
+        final Map<String, CookbookRetrievalException> failed = new ConcurrentHashMap<String, CookbookRetrievalException>();
+        final BoundedFanOut fanOut = new BoundedFanOut(getBatchParallelism());
+        try {
+            for (final String name : distinctNames) {
+                final RetrievalCallback<Cookbook> callback = fanOut.begin(new RetrievalCallback<Cookbook>() {
+                    @Override
+                    public void completed(Cookbook result) {
+                        if (result != null) {
+                            found.put(name, result);
+                        }
+                    }
+
+                    @Override
+                    public void failed(Throwable throwable) {
+                        failed.put(name, asRetrievalException(name, throwable));
+                    }
+                });
+                try {
+                    getCookbookAsync(name, callback);
+                } catch (RuntimeException e) {
+                    callback.failed(e);
+                }
+            }
+            fanOut.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CookbookRetrievalException("Interrupted while retrieving cookbooks.", e);
+        }
+
+        final Map<String, Cookbook> orderedFound = new LinkedHashMap<String, Cookbook>();
+        final Map<String, CookbookRetrievalException> orderedFailed = new LinkedHashMap<String, CookbookRetrievalException>();
+        for (String name : distinctNames) {
+            if (found.containsKey(name)) {
+                orderedFound.put(name, found.get(name));
+            } else if (failed.containsKey(name)) {
+                orderedFailed.put(name, failed.get(name));
+            }
+        }
+        return new CookbookBatchResult(orderedFound, orderedFailed);
+    }
+
+    /**
+     * {@inheritDoc} This implementation retrieves the whole cookbook through {@link #getCookbook(String)}.
+     */
+    @Override
+    public Cookbook.Version getLatestVersion(String name) {
+        final Cookbook cookbook = getCookbook(name);
+        return cookbook == null ? null : cookbook.getLatestVersion();
+    }
+
+    /**
+     * Get the maximum number of cookbooks to be retrieved concurrently by {@link #getCookbooks(Collection)}. By default, this is {@link #DEFAULT_BATCH_PARALLELISM}.
+     *
+     * @return The maximum number of cookbooks to be retrieved concurrently.
+     */
+    protected int getBatchParallelism() {
+        return DEFAULT_BATCH_PARALLELISM;
+    }
+
+    /**
+     * Express a failure as a {@link CookbookRetrievalException}.
+     *
+     * @param name
+     *            The name of the cookbook whose retrieval failed.
+     * @param throwable
+     *            The {@link Throwable} that caused the failure.
+     * @return A {@link CookbookRetrievalException} describing the failure.
+     */
+    private static CookbookRetrievalException asRetrievalException(String name, Throwable throwable) {
+        if (throwable instanceof CookbookRetrievalException) {
+            return (CookbookRetrievalException) throwable;
+        }
+        return new CookbookRetrievalException("Failed to retrieve cookbook: " + name, throwable);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client;
+
+import java.io.File;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * The outcome of downloading the archive of a version of a cookbook to a file.
+ *
+ * @author Joshua Hyde
+ */
+
+public class ArchiveDownload {
+    private final File file;
+    private final long size;
+    private final long resumedFrom;
+    private final String sha256;
+
+    /**
+     * Create a result.
+     *
+     * @param file
+     *            The {@link File} to which the archive was downloaded.
+     * @param size
+     *            The size, in bytes, of the downloaded archive.
+     * @param resumedFrom
+     *            The number of bytes that were already present in the file when the download started and were kept; {@code 0} if the whole archive was transferred.
+     * @param sha256
+     *            The hexadecimal SHA-256 digest of the whole archive.
+     */
+    public ArchiveDownload(File file, long size, long resumedFrom, String sha256) {
+        this.file = file;
+        this.size = size;
+        this.resumedFrom = resumedFrom;
+        this.sha256 = sha256;
+    }
+
+    /**
+     * Get the file to which the archive was downloaded.
+     *
+     * @return The {@link File} containing the archive.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Get the number of bytes that were already present in the file and kept.
+     *
+     * @return {@code 0} if the whole archive was transferred; otherwise, the offset from which the download was resumed.
+     */
+    public long getResumedFrom() {
+        return resumedFrom;
+    }
+
+    /**
+     * Get the SHA-256 digest of the archive.
+     *
+     * @return The lowercase hexadecimal SHA-256 digest of the whole archive, including any bytes that were already present.
+     */
+    public String getSha256() {
+        return sha256;
+    }
+
+    /**
+     * Get the size of the archive.
+     *
+     * @return The size, in bytes, of the archive.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Get the number of bytes transferred from the server.
+     *
+     * @return The number of bytes transferred by this download.
+     */
+    public long getTransferredBytes() {
+        return size - resumedFrom;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * An entry in the catalog of cookbooks offered by a cookbook server.
+ *
+ * @author Joshua Hyde
+ */
+
+public class CatalogEntry {
+    private final String name;
+    private final String description;
+    private final String maintainer;
+    private final String cookbookUrl;
+    private final String updatedAt;
+
+    /**
+     * Create an entry.
+     *
+     * @param name
+     *            The name of the cookbook.
+     * @param description
+     *            The description of the cookbook; may be {@code null}.
+     * @param maintainer
+     *            The maintainer of the cookbook; may be {@code null}.
+     * @param cookbookUrl
+     *            The URL of the cookbook's document.
+     * @param updatedAt
+     *            The time at which the cookbook was last updated, as given by the server; {@code null} if it is not known.
+     */
+    public CatalogEntry(String name, String description, String maintainer, String cookbookUrl, String updatedAt) {
+        this.name = name;
+        this.description = description;
+        this.maintainer = maintainer;
+        this.cookbookUrl = cookbookUrl;
+        this.updatedAt = updatedAt;
+    }
+
+    /**
+     * Get the URL of the cookbook.
+     *
+     * @return The URL of the cookbook's document.
+     */
+    public String getCookbookUrl() {
+        return cookbookUrl;
+    }
+
+    /**
+     * Get the description of the cookbook.
+     *
+     * @return The description of the cookbook; may be {@code null}.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Get the maintainer of the cookbook.
+     *
+     * @return The maintainer of the cookbook; may be {@code null}.
+     */
+    public String getMaintainer() {
+        return maintainer;
+    }
+
+    /**
+     * Get the name of the cookbook.
+     *
+     * @return The name of the cookbook.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the time at which the cookbook was last updated.
+     *
+     * @return The time at which the cookbook was last updated, as an ISO 8601 timestamp given by the server; {@code null} if it is not known, as is the case for entries delivered by a full
+     *         synchronization.
+     */
+    public String getUpdatedAt() {
+        return updatedAt;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+import com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException;
+
+/**
+ * The outcome of synchronizing with the catalog of a cookbook server.
+ *
+ * @author Joshua Hyde
+ */
+
+public class CatalogSyncResult {
+    private final int delivered;
+    private final String watermark;
+    private final List<CookbookRetrievalException> failures;
+
+    /**
+     * Create a result.
+     *
+     * @param delivered
+     *            The number of entries given to the callback.
+     * @param watermark
+     *            The watermark from which the next incremental synchronization is to start; may be {@code null}.
+     * @param failures
+     *            A {@link List} of the errors that prevented parts of the catalog from being retrieved.
+     */
+    public CatalogSyncResult(int delivered, String watermark, List<CookbookRetrievalException> failures) {
+        this.delivered = delivered;
+        this.watermark = watermark;
+        this.failures = Collections.unmodifiableList(failures);
+    }
+
+    /**
+     * Get the number of entries delivered.
+     *
+     * @return The number of entries given to the callback.
+     */
+    public int getDelivered() {
+        return delivered;
+    }
+
+    /**
+     * Get the errors that prevented parts of the catalog from being retrieved.
+     *
+     * @return A {@link List} of {@link CookbookRetrievalException} objects; empty if the whole catalog was retrieved.
+     */
+    public List<CookbookRetrievalException> getFailures() {
+        return failures;
+    }
+
+    /**
+     * Get the watermark from which the next incremental synchronization is to start. If any part of the catalog could not be retrieved, this is the watermark from which this synchronization
+     * started, so that the next synchronization covers what this one missed.
+     *
+     * @return The watermark; {@code null} if no incremental synchronization can follow from this one.
+     */
+    public String getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Determine whether any part of the catalog could not be retrieved.
+     *
+     * @return {@code true} if any part of the catalog could not be retrieved; {@code false} if not.
+     */
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
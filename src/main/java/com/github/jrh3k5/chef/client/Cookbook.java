@@ -17,8 +17,15 @@
  */
 package com.github.jrh3k5.chef.client;
 
+import java.io.File;
+import java.io.InputStream;
 import java.net.URL;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
+
+import com.github.jrh3k5.chef.client.version.VersionConstraint;
 
 /**
  * Definition of an object that represents a cookbook.
@@ -34,6 +41,15 @@ public interface Cookbook {
      */
     Version getLatestVersion();
 
+    /**
+     * Get the highest version of the cookbook that satisfies a constraint. Only the selected version is retrieved.
+     * 
+     * @param constraint
+     *            The {@link VersionConstraint} to be satisfied.
+     * @return {@code null} if no known version satisfies the given constraint; otherwise, a {@link Version} object representing the highest version that does.
+     */
+    Version getBestVersion(VersionConstraint constraint);
+
     /**
      * Get the name of the cookbook.
      * 
@@ -50,6 +66,27 @@ public interface Cookbook {
      */
     Version getVersion(String version);
 
+    /**
+     * Get a specific version of the cookbook without blocking the calling thread.
+     * 
+     * @param version
+     *            The desired version of the cookbook to retrieve.
+     * @return A {@link Future} that yields {@code null} if the given version cannot be found; otherwise, a {@link Version} object representing the desired version.
+     */
+    Future<Version> getVersionAsync(String version);
+
+    /**
+     * Get a specific version of the cookbook without blocking the calling thread.
+     * 
+     * @param version
+     *            The desired version of the cookbook to retrieve.
+     * @param callback
+     *            A {@link RetrievalCallback} to be notified when the retrieval completes; it is given {@code null} if the given version cannot be found.
+     * @return A {@link Future} representing the result of the retrieval.
+     * @see #getVersionAsync(String)
+     */
+    Future<Version> getVersionAsync(String version, RetrievalCallback<? super Version> callback);
+
     /**
      * Get the known versions of this cookbook.
      * 
@@ -57,12 +94,67 @@ public interface Cookbook {
      */
     Set<String> getVersions();
 
+    /**
+     * Get the known versions of this cookbook that satisfy a constraint. No versions are retrieved.
+     * 
+     * @param constraint
+     *            The {@link VersionConstraint} to be satisfied.
+     * @return A {@link List} of the versions that satisfy the given constraint, ordered from lowest to highest.
+     */
+    List<String> getVersions(VersionConstraint constraint);
+
+    /**
+     * Resolve every known version of this cookbook ahead of time, so that subsequent calls to {@link #getVersion(String)} are answered without contacting the server. The versions are resolved
+     * concurrently, subject to a limit on the number of requests in flight defined by the implementation.
+     * 
+     * @throws com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException
+     *             If any version could not be resolved; the versions that could be resolved are retained.
+     */
+    void prefetchVersions();
+
+    /**
+     * Get a view of this cookbook whose version retrievals are bounded by a {@link Deadline}: they fail with a
+     * {@link com.github.jrh3k5.chef.client.Deadline.DeadlineExceededException} once it expires, and those in flight are aborted if it is cancelled.
+     * 
+     * @param deadline
+     *            The {@link Deadline} within which versions are to be retrieved.
+     * @return A {@link Cookbook} representing this cookbook.
+     */
+    Cookbook withDeadline(Deadline deadline);
+
     /**
      * Definition of a information about a version of a cookbook.
      * 
      * @author Joshua Hyde
      */
     public static interface Version {
+        /**
+         * Download the archive of this version of the cookbook to a file. The archive is streamed directly into the file and its SHA-256 digest is computed as it is written. If the file already
+         * holds the beginning of the archive - as left behind by an interrupted download - only the remainder is requested.
+         * 
+         * @param destination
+         *            The {@link File} to which the archive is to be written.
+         * @return An {@link ArchiveDownload} describing the downloaded archive.
+         * @throws com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException
+         *             If the archive could not be downloaded; any bytes that were written are kept so that the download can be resumed.
+         * @see #downloadTo(File, String)
+         */
+        ArchiveDownload downloadTo(File destination);
+
+        /**
+         * Download the archive of this version of the cookbook to a file, verifying its SHA-256 digest.
+         * 
+         * @param destination
+         *            The {@link File} to which the archive is to be written.
+         * @param expectedSha256
+         *            The expected hexadecimal SHA-256 digest of the archive; if {@code null}, the digest is not verified.
+         * @return An {@link ArchiveDownload} describing the downloaded archive.
+         * @throws com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException
+         *             If the archive could not be downloaded, or if its digest does not match the given digest, in which case the file is deleted.
+         * @see #downloadTo(File)
+         */
+        ArchiveDownload downloadTo(File destination, String expectedSha256);
+
         /**
          * Get the location of the archive of this version of a cookbook.
          * 
@@ -70,11 +162,29 @@ public interface Cookbook {
          */
         URL getFileLocation();
 
+        /**
+         * Get the cookbooks on which this version of the cookbook depends.
+         * 
+         * @return An unmodifiable {@link Map} of the names of the cookbooks on which this version depends to the constraints on their versions (e.g., {@code ">= 1.0.0"}); empty if this version has no
+         *         dependencies.
+         */
+        Map<String, String> getDependencies();
+
         /**
          * Get the version of the cookbook.
          * 
          * @return The version of the cookbook represented by this object.
          */
         String getVersion();
+
+        /**
+         * Open the archive of this version of the cookbook for reading. The archive is streamed from the server as it is read; the caller is responsible for closing the stream, which releases its
+         * connection.
+         * 
+         * @return An {@link InputStream} over the archive.
+         * @throws com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException
+         *             If the archive could not be requested.
+         */
+        InputStream openArchive();
     }
 }
\ No newline at end of file
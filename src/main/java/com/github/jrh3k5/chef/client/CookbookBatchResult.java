@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+import com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException;
+
+/**
+ * The outcome of retrieving several cookbooks at once.
+ *
+ * @author Joshua Hyde
+ */
+
+public class CookbookBatchResult {
+    private final Map<String, Cookbook> cookbooks;
+    private final Map<String, CookbookRetrievalException> failures;
+
+    /**
+     * Create a result.
+     *
+     * @param cookbooks
+     *            A {@link Map} of the names of the cookbooks that were found to the cookbooks themselves.
+     * @param failures
+     *            A {@link Map} of the names of the cookbooks that could not be retrieved to the errors that prevented their retrieval.
+     */
+    public CookbookBatchResult(Map<String, Cookbook> cookbooks, Map<String, CookbookRetrievalException> failures) {
+        this.cookbooks = Collections.unmodifiableMap(cookbooks);
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * Get the cookbooks that were found.
+     *
+     * @return A {@link Map} of cookbook names to {@link Cookbook} objects. Cookbooks that do not exist and cookbooks that could not be retrieved are not included.
+     */
+    public Map<String, Cookbook> getCookbooks() {
+        return cookbooks;
+    }
+
+    /**
+     * Get the cookbooks that could not be retrieved.
+     *
+     * @return A {@link Map} of cookbook names to the {@link CookbookRetrievalException} that prevented their retrieval.
+     */
+    public Map<String, CookbookRetrievalException> getFailures() {
+        return failures;
+    }
+
+    /**
+     * Determine whether any cookbooks could not be retrieved.
+     *
+     * @return {@code true} if the retrieval of any cookbook failed; {@code false} if not.
+     */
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client;
+
+import com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException;
+
+/**
+ * Definition of access to the catalog of all cookbooks offered by a cookbook server.
+ *
+ * @author Joshua Hyde
+ */
+
+public interface CookbookCatalog {
+    /**
+     * Retrieve the whole catalog. The pages of the catalog are retrieved concurrently and their entries given to the callback as each page arrives.
+     *
+     * @param callback
+     *            The {@link CatalogCallback} to be given each entry.
+     * @return A {@link CatalogSyncResult} describing the synchronization, including the watermark from which an {@link #syncCatalog(String, CatalogCallback) incremental synchronization} can
+     *         follow.
+     * @throws CookbookRetrievalException
+     *             If the size of the catalog cannot be determined or the calling thread is interrupted; the failure to retrieve other pages is reported by the result.
+     */
+    CatalogSyncResult syncCatalog(CatalogCallback callback);
+
+    /**
+     * Retrieve the entries of the catalog for cookbooks updated since a previous synchronization.
+     *
+     * @param watermark
+     *            The watermark returned by the previous synchronization; if {@code null}, the whole catalog is retrieved.
+     * @param callback
+     *            The {@link CatalogCallback} to be given each entry of a cookbook updated since the watermark, from the most to the least recently updated.
+     * @return A {@link CatalogSyncResult} describing the synchronization.
+     * @throws CookbookRetrievalException
+     *             If the calling thread is interrupted.
+     */
+    CatalogSyncResult syncCatalog(String watermark, CatalogCallback callback);
+}
@@ -18,6 +18,8 @@
 package com.github.jrh3k5.chef.client;
 
 import java.io.Closeable;
+import java.util.Collection;
+import java.util.concurrent.Future;
 
 /**
  * Definition of a client used to retrieve information about cookbooks.
@@ -37,6 +39,69 @@ public interface CookbookClient extends Closeable {
      */
     Cookbook getCookbook(String name);
 
+    /**
+     * Retrieve a cookbook within a {@link Deadline}. The returned cookbook remains bound by the deadline: the versions retrieved through it must be retrieved before the deadline expires, and
+     * cancelling the deadline aborts any of their retrievals still in flight.
+     * 
+     * @param name
+     *            The name of the cookbook to be retrieved.
+     * @param deadline
+     *            The {@link Deadline} within which the cookbook, and the versions retrieved through it, are to be retrieved.
+     * @return {@code null} if the no cookbook is found; otherwise, a {@link Cookbook} object representing the retrieved cookbook.
+     * @throws com.github.jrh3k5.chef.client.Deadline.DeadlineExceededException
+     *             If the deadline expires before the cookbook is retrieved.
+     * @throws CookbookRetrievalException
+     *             If the deadline is cancelled or any errors occur while trying to retrieve the cookbook.
+     */
+    Cookbook getCookbook(String name, Deadline deadline);
+
+    /**
+     * Retrieve a cookbook without blocking the calling thread.
+     * 
+     * @param name
+     *            The name of the cookbook to be retrieved.
+     * @return A {@link Future} that yields {@code null} if no cookbook is found; otherwise, a {@link Cookbook} object representing the retrieved cookbook. If any errors occur while trying to
+     *         retrieve the cookbook, the future fails with a {@link CookbookRetrievalException}.
+     */
+    Future<Cookbook> getCookbookAsync(String name);
+
+    /**
+     * Retrieve a cookbook without blocking the calling thread.
+     * 
+     * @param name
+     *            The name of the cookbook to be retrieved.
+     * @param callback
+     *            A {@link RetrievalCallback} to be notified when the retrieval completes; it is given {@code null} if no cookbook is found.
+     * @return A {@link Future} representing the result of the retrieval.
+     * @see #getCookbookAsync(String)
+     */
+    Future<Cookbook> getCookbookAsync(String name, RetrievalCallback<? super Cookbook> callback);
+
+    /**
+     * Retrieve several cookbooks at once. The cookbooks are retrieved concurrently, subject to a limit on the number of retrievals in flight defined by the implementation. The failure to retrieve
+     * one cookbook does not prevent the retrieval of the others.
+     * 
+     * @param names
+     *            The names of the cookbooks to be retrieved.
+     * @return A {@link CookbookBatchResult} containing the cookbooks that were found, keyed by name, and the errors that prevented the retrieval of any cookbooks. Cookbooks that do not exist are
+     *         present in neither.
+     * @throws CookbookRetrievalException
+     *             If the calling thread is interrupted while waiting for the retrievals to complete.
+     */
+    CookbookBatchResult getCookbooks(Collection<String> names);
+
+    /**
+     * Retrieve the latest version of a cookbook. This is equivalent to {@code getCookbook(name).getLatestVersion()}, but implementations may avoid reading the rest of the cookbook to get it,
+     * which saves most of the work of the retrieval for cookbooks with many versions.
+     * 
+     * @param name
+     *            The name of the cookbook whose latest version is to be retrieved.
+     * @return {@code null} if no cookbook is found; otherwise, a {@link Cookbook.Version} object representing the latest version of the cookbook.
+     * @throws CookbookRetrievalException
+     *             If any errors occur while trying to retrieve the cookbook or its latest version.
+     */
+    Cookbook.Version getLatestVersion(String name);
+
     /**
      * An exception that indicates that an error occurred while trying to retrieve data about a cookbook.
      * 
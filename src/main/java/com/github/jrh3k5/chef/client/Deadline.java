@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException;
+
+/**
+ * A budget of time shared by a retrieval and everything it leads to - such as the versions resolved through a {@link Cookbook} retrieved with {@link CookbookClient#getCookbook(String, Deadline)}
+ * - that can also be cancelled from another thread. Implementations shorten the timeouts of each request to what remains of the budget and abort the requests in flight when it runs out or is
+ * cancelled, so that a caller with a service level to meet has a hard upper bound on how long it waits.
+ * <p />
+ * Deadlines are safe to share across threads.
+ *
+ * @author Joshua Hyde
+ */
+
+public class Deadline {
+    private static final long MAXIMUM_TIMEOUT_NANOS = Long.MAX_VALUE / 2;
+    private final long expiresAtNanos;
+    private final List<Runnable> cancellationListeners = new ArrayList<Runnable>();
+    private boolean cancelled;
+
+    /**
+     * Create a deadline.
+     *
+     * @param timeout
+     *            The time from now at which the deadline expires; a deadline with a timeout that is not positive has already expired.
+     * @param unit
+     *            The {@link TimeUnit} of the timeout.
+     */
+    public Deadline(long timeout, TimeUnit unit) {
+        this.expiresAtNanos = System.nanoTime() + Math.min(unit.toNanos(timeout), MAXIMUM_TIMEOUT_NANOS);
+    }
+
+    /**
+     * Wait for a retrieval to complete within this deadline. If the deadline expires or is cancelled first, the retrieval is cancelled.
+     *
+     * @param future
+     *            The {@link Future} representing the retrieval.
+     * @param description
+     *            A description of what is being retrieved, for error messages.
+     * @return The result of the retrieval.
+     * @throws DeadlineExceededException
+     *             If the deadline expires before the retrieval completes.
+     * @throws CookbookRetrievalException
+     *             If the deadline is cancelled, the retrieval fails, or the calling thread is interrupted while waiting.
+     */
+    public <T> T await(final Future<T> future, String description) {
+        final Registration registration = onCancel(new Runnable() {
+            @Override
+            public void run() {
+                future.cancel(true);
+            }
+        });
+        try {
+            return future.get(getRemainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new DeadlineExceededException("Deadline expired while retrieving " + description);
+        } catch (CancellationException e) {
+            check(description);
+            throw new CookbookRetrievalException("Retrieval of " + description + " was cancelled.", e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CookbookRetrievalException("Interrupted while retrieving " + description, e);
+        } catch (ExecutionException e) {
+            // A retrieval that failed because its requests were aborted is reported as the deadline that aborted it
+            check(description);
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new CookbookRetrievalException("Failed to retrieve " + description, e.getCause());
+        } finally {
+            registration.remove();
+        }
+    }
+
+    /**
+     * Cancel this deadline, aborting the retrievals bound by it. Cancelling a deadline more than once has no further effect.
+     */
+    public void cancel() {
+        final List<Runnable> listeners;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            listeners = new ArrayList<Runnable>(cancellationListeners);
+            cancellationListeners.clear();
+        }
+
+        RuntimeException failure = null;
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Verify that there is time left to retrieve something.
+     *
+     * @param description
+     *            A description of what is to be retrieved, for error messages.
+     * @throws DeadlineExceededException
+     *             If this deadline has expired.
+     * @throws CookbookRetrievalException
+     *             If this deadline has been cancelled.
+     */
+    public void check(String description) {
+        if (isCancelled()) {
+            throw new CookbookRetrievalException("Retrieval of " + description + " was cancelled.", new CancellationException());
+        }
+        if (isExpired()) {
+            throw new DeadlineExceededException("Deadline expired before retrieving " + description);
+        }
+    }
+
+    /**
+     * Get the time left before this deadline expires.
+     *
+     * @return The number of milliseconds, rounded up, left before this deadline expires; 0 if it has expired.
+     */
+    public long getRemainingMillis() {
+        final long remainingNanos = expiresAtNanos - System.nanoTime();
+        return remainingNanos <= 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(remainingNanos + TimeUnit.MILLISECONDS.toNanos(1) - 1);
+    }
+
+    /**
+     * Determine whether this deadline has been cancelled.
+     *
+     * @return {@code true} if this deadline has been cancelled.
+     */
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Determine whether this deadline has expired.
+     *
+     * @return {@code true} if no time is left before this deadline.
+     */
+    public boolean isExpired() {
+        return expiresAtNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Register a listener to be run, on the cancelling thread, when this deadline is cancelled. If it has already been cancelled, the listener is run immediately on the calling thread.
+     *
+     * @param listener
+     *            The {@link Runnable} to be run.
+     * @return A {@link Registration} through which the listener can be removed once it is no longer needed.
+     */
+    public Registration onCancel(final Runnable listener) {
+        synchronized (this) {
+            if (!cancelled) {
+                cancellationListeners.add(listener);
+                return new Registration() {
+                    @Override
+                    public void remove() {
+                        synchronized (Deadline.this) {
+                            cancellationListeners.remove(listener);
+                        }
+                    }
+                };
+            }
+        }
+        listener.run();
+        return new Registration() {
+            @Override
+            public void remove() {
+                // The listener has already been run
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline[remainingMillis=" + getRemainingMillis() + ", cancelled=" + isCancelled() + "]";
+    }
+
+    /**
+     * The registration of a listener with a {@link Deadline}.
+     *
+     * @author Joshua Hyde
+     */
+    public static interface Registration {
+        /**
+         * Remove the listener, if it has not yet been run.
+         */
+        void remove();
+    }
+
+    /**
+     * An exception that indicates that a retrieval could not be completed before its {@link Deadline} expired.
+     *
+     * @author Joshua Hyde
+     */
+    public static class DeadlineExceededException extends CookbookRetrievalException {
+        private static final long serialVersionUID = -3279004519462113367L;
+
+        /**
+         * Create an exception.
+         *
+         * @param message
+         *            The message associated with the exception.
+         */
+        public DeadlineExceededException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client;
+
+/**
+ * Definition of a callback that is notified when an asynchronous retrieval completes.
+ * <p />
+ * Callbacks are invoked on the thread that completes the retrieval; implementations should not block.
+ *
+ * @author Joshua Hyde
+ * @param <T>
+ *            The type of object being retrieved.
+ */
+
+public interface RetrievalCallback<T> {
+    /**
+     * Invoked when the retrieval completes successfully.
+     *
+     * @param result
+     *            The retrieved object; this may be {@code null} if the requested object was not found.
+     */
+    void completed(T result);
+
+    /**
+     * Invoked when the retrieval fails.
+     *
+     * @param throwable
+     *            The {@link Throwable} that caused the retrieval to fail.
+     */
+    void failed(Throwable throwable);
+}
@@ -0,0 +1,476 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.cache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import com.github.jrh3k5.chef.client.ArchiveDownload;
+import com.github.jrh3k5.chef.client.Cookbook.Version;
+import com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException;
+import com.github.jrh3k5.chef.client.concurrent.ResultFuture;
+
+/**
+ * A local cache of cookbook archives, shared by every cache - in this or any other process - that is configured with the same directory.
+ * <p />
+ * Archives are stored by their SHA-256 digest, so identical archives of different versions or cookbooks are stored once; a small reference file maps each cookbook version to the digest of its
+ * archive. An archive that is already cached is returned without any request to the server. When the archives held exceed the configured number of bytes, the least recently used archives are
+ * deleted.
+ * <p />
+ * Concurrent requests for the same uncached archive share a single download: threads of the same cache wait on one another, and processes wait on a lock file. An interrupted download is resumed
+ * by the next request for it.
+ *
+ * @author Joshua Hyde
+ */
+
+public class ArtifactCache {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String ARCHIVE_SUFFIX = ".tgz";
+    private final ConcurrentMap<String, File> archives = new ConcurrentHashMap<String, File>();
+    private final ConcurrentMap<String, ResultFuture<File>> downloads = new ConcurrentHashMap<String, ResultFuture<File>>();
+    private final Object evictionMonitor = new Object();
+    private final File archiveDirectory;
+    private final File referenceDirectory;
+    private final File workDirectory;
+    private final long maximumBytes;
+
+    /**
+     * Create a cache.
+     *
+     * @param configuration
+     *            An {@link ArtifactCacheConfiguration} describing the cache to be created.
+     * @throws IllegalArgumentException
+     *             If the configuration has no directory.
+     */
+    public ArtifactCache(ArtifactCacheConfiguration configuration) {
+        if (configuration.getDirectory() == null) {
+            throw new IllegalArgumentException("A directory is required.");
+        }
+        this.archiveDirectory = new File(configuration.getDirectory(), "archives");
+        this.referenceDirectory = new File(configuration.getDirectory(), "versions");
+        this.workDirectory = new File(configuration.getDirectory(), "work");
+        this.maximumBytes = configuration.getMaximumBytes();
+    }
+
+    /**
+     * Get the archive of a version of a cookbook, downloading it if it is not cached.
+     *
+     * @param cookbookName
+     *            The name of the cookbook.
+     * @param version
+     *            The {@link Version} whose archive is to be retrieved.
+     * @return A {@link File} containing the archive.
+     * @throws CookbookRetrievalException
+     *             If the archive could not be downloaded or cached, or if the calling thread is interrupted while waiting for another thread to download it.
+     */
+    public File get(String cookbookName, Version version) {
+        final String key = toKey(cookbookName, version.getVersion());
+        final File cached = getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        final ResultFuture<File> download = new ResultFuture<File>();
+        final ResultFuture<File> concurrentDownload = downloads.putIfAbsent(key, download);
+        if (concurrentDownload != null) {
+            return await(concurrentDownload, key);
+        }
+        try {
+            final File archive = download(key, version);
+            download.set(archive);
+            return archive;
+        } catch (RuntimeException e) {
+            download.setException(e);
+            throw e;
+        } finally {
+            downloads.remove(key, download);
+        }
+    }
+
+    /**
+     * Get an archive by its digest.
+     *
+     * @param sha256
+     *            The hexadecimal SHA-256 digest of the archive.
+     * @return {@code null} if no archive with the given digest is cached; otherwise, the {@link File} containing the archive.
+     */
+    public File getBySha256(String sha256) {
+        final File archive = getArchiveFile(sha256.toLowerCase());
+        return touch(archive) ? archive : null;
+    }
+
+    /**
+     * Get the archive of a version of a cookbook, if it is cached.
+     *
+     * @param cookbookName
+     *            The name of the cookbook.
+     * @param versionNumber
+     *            The version number.
+     * @return {@code null} if the archive is not cached; otherwise, the {@link File} containing the archive.
+     */
+    public File getIfPresent(String cookbookName, String versionNumber) {
+        return getIfPresent(toKey(cookbookName, versionNumber));
+    }
+
+    /**
+     * Get a cached archive.
+     *
+     * @param key
+     *            The key of the version whose archive is to be retrieved.
+     * @return {@code null} if the archive is not cached; otherwise, the {@link File} containing the archive.
+     */
+    private File getIfPresent(String key) {
+        File archive = archives.get(key);
+        if (archive == null) {
+            final String sha256 = readReference(key);
+            if (sha256 == null) {
+                return null;
+            }
+            archive = getArchiveFile(sha256);
+        }
+
+        if (!touch(archive)) {
+            // Evicted, possibly by another process
+            archives.remove(key);
+            return null;
+        }
+        archives.put(key, archive);
+        return archive;
+    }
+
+    /**
+     * Download an archive while holding the lock on its version, unless another process downloaded it first.
+     *
+     * @param key
+     *            The key of the version.
+     * @param version
+     *            The {@link Version} whose archive is to be downloaded.
+     * @return The {@link File} containing the archive.
+     * @throws CookbookRetrievalException
+     *             If the archive could not be downloaded or cached.
+     */
+    private File download(String key, Version version) {
+        try {
+            mkdirs(workDirectory);
+            final String keyDigest = digest(key);
+            final RandomAccessFile lockFile = new RandomAccessFile(new File(workDirectory, keyDigest + ".lock"), "rw");
+            try {
+                final FileLock lock = lockFile.getChannel().lock();
+                try {
+                    final File cached = getIfPresent(key);
+                    if (cached != null) {
+                        return cached;
+                    }
+
+                    final File partial = new File(workDirectory, keyDigest + ".part");
+                    final ArchiveDownload download = version.downloadTo(partial);
+                    final File archive = getArchiveFile(download.getSha256());
+                    mkdirs(archive.getParentFile());
+                    if (archive.isFile()) {
+                        // An identical archive is already cached
+                        if (!partial.delete()) {
+                            partial.deleteOnExit();
+                        }
+                    } else {
+                        move(partial, archive);
+                    }
+                    writeReference(key, download.getSha256());
+                    archives.put(key, archive);
+                    evict(archive);
+                    return archive;
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                lockFile.close();
+            }
+        } catch (IOException e) {
+            throw new CookbookRetrievalException("Failed to cache archive of " + key, e);
+        }
+    }
+
+    /**
+     * Delete the least recently used archives until the cache holds no more than its maximum number of bytes. If another process is already evicting archives, nothing is done.
+     *
+     * @param retained
+     *            The {@link File} of an archive that is not to be evicted.
+     * @throws IOException
+     *             If the eviction lock cannot be acquired.
+     */
+    private void evict(File retained) throws IOException {
+        synchronized (evictionMonitor) {
+            final RandomAccessFile lockFile = new RandomAccessFile(new File(workDirectory, "evict.lock"), "rw");
+            try {
+                final FileLock lock = lockFile.getChannel().tryLock();
+                if (lock == null) {
+                    return;
+                }
+                try {
+                    final List<CachedArchive> cached = new ArrayList<CachedArchive>();
+                    long totalBytes = 0;
+                    final File[] prefixes = archiveDirectory.listFiles();
+                    for (File prefix : prefixes == null ? new File[0] : prefixes) {
+                        final File[] files = prefix.listFiles();
+                        for (File file : files == null ? new File[0] : files) {
+                            if (file.getName().endsWith(ARCHIVE_SUFFIX)) {
+                                final CachedArchive archive = new CachedArchive(file);
+                                cached.add(archive);
+                                totalBytes += archive.length;
+                            }
+                        }
+                    }
+                    if (totalBytes <= maximumBytes) {
+                        return;
+                    }
+
+                    Collections.sort(cached);
+                    for (CachedArchive archive : cached) {
+                        if (totalBytes <= maximumBytes) {
+                            break;
+                        }
+                        if (!archive.file.equals(retained) && archive.file.delete()) {
+                            totalBytes -= archive.length;
+                        }
+                    }
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                lockFile.close();
+            }
+        }
+    }
+
+    /**
+     * Get the file in which an archive is stored.
+     *
+     * @param sha256
+     *            The lowercase hexadecimal SHA-256 digest of the archive.
+     * @return The {@link File} in which the archive is stored.
+     */
+    private File getArchiveFile(String sha256) {
+        return new File(new File(archiveDirectory, sha256.substring(0, 2)), sha256 + ARCHIVE_SUFFIX);
+    }
+
+    /**
+     * Read the digest of the archive of a version.
+     *
+     * @param key
+     *            The key of the version.
+     * @return {@code null} if no valid reference to an archive has been written for the version; otherwise, the digest of its archive.
+     */
+    private String readReference(String key) {
+        final File reference = new File(referenceDirectory, digest(key));
+        if (!reference.isFile()) {
+            return null;
+        }
+        try {
+            final RandomAccessFile file = new RandomAccessFile(reference, "r");
+            try {
+                final byte[] contents = new byte[64];
+                if (file.length() != contents.length) {
+                    return null;
+                }
+                file.readFully(contents);
+                final String sha256 = new String(contents, UTF_8);
+                for (int i = 0; i < sha256.length(); i++) {
+                    if (Character.digit(sha256.charAt(i), 16) < 0) {
+                        return null;
+                    }
+                }
+                return sha256;
+            } finally {
+                file.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write the digest of the archive of a version.
+     *
+     * @param key
+     *            The key of the version.
+     * @param sha256
+     *            The lowercase hexadecimal SHA-256 digest of the archive.
+     * @throws IOException
+     *             If the reference cannot be written.
+     */
+    private void writeReference(String key, String sha256) throws IOException {
+        mkdirs(referenceDirectory);
+        final File reference = new File(referenceDirectory, digest(key));
+        final File temporary = File.createTempFile(reference.getName(), ".tmp", referenceDirectory);
+        try {
+            final FileOutputStream outputStream = new FileOutputStream(temporary);
+            try {
+                outputStream.write(sha256.getBytes(UTF_8));
+                outputStream.getFD().sync();
+            } finally {
+                outputStream.close();
+            }
+            move(temporary, reference);
+        } finally {
+            if (temporary.exists() && !temporary.delete()) {
+                temporary.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Wait for another thread to download an archive.
+     *
+     * @param download
+     *            The {@link ResultFuture} representing the download.
+     * @param key
+     *            The key of the version being downloaded.
+     * @return The {@link File} containing the archive.
+     * @throws CookbookRetrievalException
+     *             If the download failed or the calling thread was interrupted.
+     */
+    private static File await(ResultFuture<File> download, String key) {
+        try {
+            return download.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CookbookRetrievalException("Interrupted while waiting for archive of " + key, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CookbookRetrievalException) {
+                throw (CookbookRetrievalException) e.getCause();
+            }
+            throw new CookbookRetrievalException("Failed to cache archive of " + key, e.getCause());
+        }
+    }
+
+    /**
+     * Produce a digest of a string that is safe to use as a file name.
+     *
+     * @param value
+     *            The value to be digested.
+     * @return A hexadecimal SHA-1 digest of the given value.
+     */
+    private static String digest(String value) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes(UTF_8));
+            final StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not supported.", e);
+        }
+    }
+
+    /**
+     * Create a directory if it does not exist.
+     *
+     * @param directory
+     *            The directory to be created.
+     * @throws IOException
+     *             If the directory cannot be created.
+     */
+    private static void mkdirs(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Unable to create directory: " + directory);
+        }
+    }
+
+    /**
+     * Move a file, replacing any file at its destination.
+     *
+     * @param source
+     *            The file to be moved.
+     * @param destination
+     *            The location to which the file is to be moved.
+     * @throws IOException
+     *             If the file cannot be moved.
+     */
+    private static void move(File source, File destination) throws IOException {
+        if (!source.renameTo(destination)) {
+            // Some platforms will not rename over an existing file
+            if (!destination.delete() || !source.renameTo(destination)) {
+                throw new IOException("Unable to move " + source + " to " + destination);
+            }
+        }
+    }
+
+    /**
+     * Build the key of a version.
+     *
+     * @param cookbookName
+     *            The name of the cookbook.
+     * @param versionNumber
+     *            The version number.
+     * @return The key of the version.
+     */
+    private static String toKey(String cookbookName, String versionNumber) {
+        return cookbookName + '@' + versionNumber;
+    }
+
+    /**
+     * Mark an archive as used.
+     *
+     * @param archive
+     *            The {@link File} containing the archive.
+     * @return {@code true} if the archive exists; {@code false} if it does not.
+     */
+    private static boolean touch(File archive) {
+        return archive.setLastModified(System.currentTimeMillis()) || archive.isFile();
+    }
+
+    /**
+     * An archive found in the cache, as it was when the cache was scanned for eviction. Archives are ordered from least to most recently used.
+     *
+     * @author Joshua Hyde
+     */
+    private static class CachedArchive implements Comparable<CachedArchive> {
+        private final File file;
+        private final long length;
+        private final long lastUsed;
+
+        /**
+         * Create an archive.
+         *
+         * @param file
+         *            The {@link File} containing the archive.
+         */
+        public CachedArchive(File file) {
+            this.file = file;
+            this.length = file.length();
+            this.lastUsed = file.lastModified();
+        }
+
+        @Override
+        public int compareTo(CachedArchive other) {
+            return lastUsed < other.lastUsed ? -1 : (lastUsed == other.lastUsed ? 0 : 1);
+        }
+    }
+}
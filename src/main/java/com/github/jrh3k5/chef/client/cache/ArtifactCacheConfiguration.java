@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.cache;
+
+import java.io.File;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Configuration of an {@link ArtifactCache}. The values of this object are read when the cache is created; changing them afterwards has no effect on caches that have already been created.
+ *
+ * @author Joshua Hyde
+ */
+
+public class ArtifactCacheConfiguration {
+    /**
+     * The default number of bytes of archives that the cache may hold before the least recently used archives are evicted.
+     */
+    public static final long DEFAULT_MAXIMUM_BYTES = 1024L * 1024L * 1024L;
+    private File directory;
+    private long maximumBytes = DEFAULT_MAXIMUM_BYTES;
+
+    /**
+     * Get the directory in which archives are cached.
+     *
+     * @return The {@link File} representing the directory in which archives are cached.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Get the number of bytes of archives that the cache may hold.
+     *
+     * @return The number of bytes of archives that the cache may hold before the least recently used archives are evicted.
+     */
+    public long getMaximumBytes() {
+        return maximumBytes;
+    }
+
+    /**
+     * Set the directory in which archives are cached. The directory may be shared by several caches, including caches in other processes.
+     *
+     * @param directory
+     *            A {@link File} representing the directory in which archives are to be cached.
+     */
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Set the number of bytes of archives that the cache may hold. Once it is exceeded, the least recently used archives are evicted until it is met again; the archive most recently added is never
+     * evicted.
+     *
+     * @param maximumBytes
+     *            The number of bytes of archives that the cache may hold.
+     */
+    public void setMaximumBytes(long maximumBytes) {
+        this.maximumBytes = maximumBytes;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.cache;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * A point-in-time snapshot of the effectiveness of a {@link CachingCookbookClient}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class CacheStatistics {
+    private final long hits;
+    private final long staleHits;
+    private final long misses;
+    private final long evictions;
+    private final int size;
+
+    /**
+     * Create a snapshot of cache statistics.
+     *
+     * @param hits
+     *            The number of lookups answered from the cache, including stale answers.
+     * @param staleHits
+     *            The number of lookups answered with an expired cookbook while it was refreshed.
+     * @param misses
+     *            The number of lookups that had to be forwarded to the underlying client.
+     * @param evictions
+     *            The number of cookbooks evicted to keep the cache within its maximum size.
+     * @param size
+     *            The number of cookbooks currently held by the cache.
+     */
+    public CacheStatistics(long hits, long staleHits, long misses, long evictions, int size) {
+        this.hits = hits;
+        this.staleHits = staleHits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+    }
+
+    /**
+     * Get the number of evictions.
+     *
+     * @return The number of cookbooks evicted to keep the cache within its maximum size.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Get the fraction of lookups answered from the cache.
+     *
+     * @return A value between {@code 0.0} and {@code 1.0}; {@code 0.0} if no lookups have been made.
+     */
+    public double getHitRate() {
+        final long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / (double) lookups;
+    }
+
+    /**
+     * Get the number of hits.
+     *
+     * @return The number of lookups answered from the cache, including stale answers.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of misses.
+     *
+     * @return The number of lookups that had to be forwarded to the underlying client.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the size of the cache.
+     *
+     * @return The number of cookbooks currently held by the cache.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Get the number of stale hits.
+     *
+     * @return The number of lookups answered with an expired cookbook while it was refreshed.
+     */
+    public long getStaleHits() {
+        return staleHits;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
@@ -0,0 +1,461 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.cache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.jrh3k5.chef.client.AbstractCookbookClient;
+import com.github.jrh3k5.chef.client.Cookbook;
+import com.github.jrh3k5.chef.client.CookbookBatchResult;
+import com.github.jrh3k5.chef.client.CookbookClient;
+import com.github.jrh3k5.chef.client.RetrievalCallback;
+import com.github.jrh3k5.chef.client.concurrent.ResultFuture;
+
+/**
+ * A {@link CookbookClient} that remembers the cookbooks retrieved through another client.
+ * <p />
+ * Cookbooks are held for a configurable time-to-live and the least recently used cookbook is evicted when the cache is full. The absence of a cookbook is also remembered, for a separate
+ * time-to-live. In stale-while-revalidate mode, an expired cookbook is served immediately while a fresh copy is retrieved in the background. Concurrent lookups of the same uncached cookbook share a
+ * single retrieval from the underlying client.
+ * <p />
+ * Closing this client closes the underlying client.
+ *
+ * @author Joshua Hyde
+ */
+
+public class CachingCookbookClient extends AbstractCookbookClient {
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final ConcurrentMap<String, ResultFuture<Cookbook>> loads = new ConcurrentHashMap<String, ResultFuture<Cookbook>>();
+    private final Map<String, CacheEntry> entries;
+    private final CookbookClient delegate;
+    private final long timeToLiveNanos;
+    private final long negativeTimeToLiveNanos;
+    private final boolean staleWhileRevalidate;
+
+    /**
+     * Create a caching client with the default configuration.
+     *
+     * @param delegate
+     *            The {@link CookbookClient} through which cookbooks are to be retrieved.
+     */
+    public CachingCookbookClient(CookbookClient delegate) {
+        this(delegate, new CachingCookbookClientConfiguration());
+    }
+
+    /**
+     * Create a caching client.
+     *
+     * @param delegate
+     *            The {@link CookbookClient} through which cookbooks are to be retrieved.
+     * @param configuration
+     *            A {@link CachingCookbookClientConfiguration} describing how cookbooks are to be cached.
+     */
+    public CachingCookbookClient(CookbookClient delegate, CachingCookbookClientConfiguration configuration) {
+        this.delegate = delegate;
+        this.timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(configuration.getTimeToLiveMs());
+        this.negativeTimeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(configuration.getNegativeTimeToLiveMs());
+        this.staleWhileRevalidate = configuration.isStaleWhileRevalidate();
+        this.entries = new LruMap(configuration.getMaximumSize(), evictions);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    @Override
+    public Cookbook getCookbook(String name) {
+        final CacheEntry entry = lookup(name);
+        if (entry != null) {
+            return entry.getCookbook();
+        }
+
+        final ResultFuture<Cookbook> load = new ResultFuture<Cookbook>();
+        final ResultFuture<Cookbook> concurrentLoad = loads.putIfAbsent(name, load);
+        if (concurrentLoad != null) {
+            return await(name, concurrentLoad);
+        }
+
+        try {
+            final Cookbook cookbook = delegate.getCookbook(name);
+            store(name, cookbook);
+            load.set(cookbook);
+            return cookbook;
+        } catch (RuntimeException e) {
+            load.setException(e);
+            throw e;
+        } finally {
+            loads.remove(name, load);
+        }
+    }
+
+    @Override
+    public Future<Cookbook> getCookbookAsync(String name, RetrievalCallback<? super Cookbook> callback) {
+        final CacheEntry entry = lookup(name);
+        if (entry != null) {
+            return ResultFuture.completed(entry.getCookbook(), callback);
+        }
+
+        // Cancelling the returned future must not cancel a load shared with other callers
+        final ResultFuture<Cookbook> result = new ResultFuture<Cookbook>(callback);
+        load(name).addCallback(new RetrievalCallback<Cookbook>() {
+            @Override
+            public void completed(Cookbook cookbook) {
+                result.set(cookbook);
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                result.setException(throwable);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p />
+     * Cookbooks held by the cache are answered immediately; the remainder are retrieved through the underlying client's batch retrieval.
+     */
+    @Override
+    public CookbookBatchResult getCookbooks(Collection<String> names) {
+        final Set<String> distinctNames = new LinkedHashSet<String>(names);
+        final Map<String, Cookbook> cached = new LinkedHashMap<String, Cookbook>();
+        final List<String> uncached = new ArrayList<String>();
+        for (String name : distinctNames) {
+            final CacheEntry entry = lookup(name);
+            if (entry == null) {
+                uncached.add(name);
+            } else if (entry.getCookbook() != null) {
+                cached.put(name, entry.getCookbook());
+            }
+        }
+
+        if (uncached.isEmpty()) {
+            return new CookbookBatchResult(cached, new LinkedHashMap<String, CookbookRetrievalException>());
+        }
+
+        final CookbookBatchResult retrieved = delegate.getCookbooks(uncached);
+        final Map<String, Cookbook> found = new LinkedHashMap<String, Cookbook>();
+        for (String name : distinctNames) {
+            if (cached.containsKey(name)) {
+                found.put(name, cached.get(name));
+            } else if (retrieved.getCookbooks().containsKey(name)) {
+                final Cookbook cookbook = retrieved.getCookbooks().get(name);
+                store(name, cookbook);
+                found.put(name, cookbook);
+            } else if (uncached.contains(name) && !retrieved.getFailures().containsKey(name)) {
+                store(name, null);
+            }
+        }
+        return new CookbookBatchResult(found, retrieved.getFailures());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p />
+     * A cookbook held by the cache is asked for its latest version; otherwise, the latest version is retrieved through the underlying client, and nothing is cached, since the cookbook itself was
+     * not retrieved.
+     */
+    @Override
+    public Cookbook.Version getLatestVersion(String name) {
+        final CacheEntry entry = lookup(name);
+        if (entry != null) {
+            return entry.getCookbook() == null ? null : entry.getCookbook().getLatestVersion();
+        }
+        return delegate.getLatestVersion(name);
+    }
+
+    /**
+     * Get the current statistics of this cache.
+     *
+     * @return A {@link CacheStatistics} object representing the effectiveness of this cache.
+     */
+    public CacheStatistics getStatistics() {
+        final int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new CacheStatistics(hits.get(), staleHits.get(), misses.get(), evictions.get(), size);
+    }
+
+    /**
+     * Discard a cookbook from the cache, so that the next lookup of it is forwarded to the underlying client.
+     *
+     * @param name
+     *            The name of the cookbook to be discarded.
+     */
+    public void invalidate(String name) {
+        synchronized (entries) {
+            entries.remove(name);
+        }
+    }
+
+    /**
+     * Discard all cookbooks from the cache.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Wait for a load of a cookbook.
+     *
+     * @param name
+     *            The name of the cookbook being loaded.
+     * @param load
+     *            The {@link ResultFuture} representing the load.
+     * @return The loaded cookbook; {@code null} if it does not exist.
+     * @throws CookbookRetrievalException
+     *             If the calling thread is interrupted while waiting or the load failed with a checked exception.
+     */
+    private Cookbook await(String name, ResultFuture<Cookbook> load) {
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CookbookRetrievalException("Interrupted while retrieving cookbook: " + name, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new CookbookRetrievalException("Failed to retrieve cookbook: " + name, e.getCause());
+        }
+    }
+
+    /**
+     * Load a cookbook through the underlying client without blocking the calling thread, storing it in the cache once loaded.
+     *
+     * @param name
+     *            The name of the cookbook to be loaded.
+     * @return A {@link ResultFuture} representing the load, which may be shared with other callers.
+     */
+    private ResultFuture<Cookbook> load(final String name) {
+        final ResultFuture<Cookbook> load = new ResultFuture<Cookbook>();
+        final ResultFuture<Cookbook> concurrentLoad = loads.putIfAbsent(name, load);
+        if (concurrentLoad != null) {
+            return concurrentLoad;
+        }
+
+        final RetrievalCallback<Cookbook> callback = new RetrievalCallback<Cookbook>() {
+            @Override
+            public void completed(Cookbook cookbook) {
+                store(name, cookbook);
+                loads.remove(name, load);
+                load.set(cookbook);
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                loads.remove(name, load);
+                load.setException(throwable);
+            }
+        };
+        try {
+            delegate.getCookbookAsync(name, callback);
+        } catch (RuntimeException e) {
+            callback.failed(e);
+        }
+        return load;
+    }
+
+    /**
+     * Look up a cookbook in the cache, recording the outcome.
+     *
+     * @param name
+     *            The name of the cookbook to be looked up.
+     * @return {@code null} if the cookbook must be retrieved through the underlying client; otherwise, the {@link CacheEntry} with which the lookup is to be answered.
+     */
+    private CacheEntry lookup(final String name) {
+        final CacheEntry entry;
+        synchronized (entries) {
+            entry = entries.get(name);
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        if (!entry.isExpired(System.nanoTime())) {
+            hits.incrementAndGet();
+            return entry;
+        }
+
+        if (staleWhileRevalidate) {
+            hits.incrementAndGet();
+            staleHits.incrementAndGet();
+            if (entry.beginRefresh()) {
+                load(name).addCallback(new RetrievalCallback<Cookbook>() {
+                    @Override
+                    public void completed(Cookbook cookbook) {
+                        // The refreshed cookbook has replaced the stale entry
+                    }
+
+                    @Override
+                    public void failed(Throwable throwable) {
+                        // Keep serving the stale cookbook; the next lookup tries again
+                        entry.endRefresh();
+                    }
+                });
+            }
+            return entry;
+        }
+
+        synchronized (entries) {
+            if (entries.get(name) == entry) {
+                entries.remove(name);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Store a cookbook in the cache.
+     *
+     * @param name
+     *            The name of the cookbook.
+     * @param cookbook
+     *            The {@link Cookbook} to be stored; {@code null} if the cookbook does not exist.
+     */
+    private void store(String name, Cookbook cookbook) {
+        final long timeToLive = cookbook == null ? negativeTimeToLiveNanos : timeToLiveNanos;
+        synchronized (entries) {
+            if (timeToLive > 0) {
+                entries.put(name, new CacheEntry(cookbook, System.nanoTime() + timeToLive));
+            } else {
+                entries.remove(name);
+            }
+        }
+    }
+
+    /**
+     * A cookbook held by the cache.
+     *
+     * @author Joshua Hyde
+     */
+    private static class CacheEntry {
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private final Cookbook cookbook;
+        private final long expiresAtNanos;
+
+        /**
+         * Create an entry.
+         *
+         * @param cookbook
+         *            The cached {@link Cookbook}; {@code null} if the cookbook does not exist.
+         * @param expiresAtNanos
+         *            The {@link System#nanoTime() time} at which the entry expires.
+         */
+        public CacheEntry(Cookbook cookbook, long expiresAtNanos) {
+            this.cookbook = cookbook;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        /**
+         * Claim the refresh of this entry.
+         *
+         * @return {@code true} if the caller is to refresh this entry; {@code false} if it is already being refreshed.
+         */
+        public boolean beginRefresh() {
+            return refreshing.compareAndSet(false, true);
+        }
+
+        /**
+         * Release the claim on the refresh of this entry.
+         */
+        public void endRefresh() {
+            refreshing.set(false);
+        }
+
+        /**
+         * Get the cached cookbook.
+         *
+         * @return The cached {@link Cookbook}; {@code null} if the cookbook does not exist.
+         */
+        public Cookbook getCookbook() {
+            return cookbook;
+        }
+
+        /**
+         * Determine whether this entry has expired.
+         *
+         * @param nowNanos
+         *            The current {@link System#nanoTime() time}.
+         * @return {@code true} if this entry has expired; {@code false} if not.
+         */
+        public boolean isExpired(long nowNanos) {
+            return nowNanos - expiresAtNanos >= 0;
+        }
+    }
+
+    /**
+     * An access-ordered map that evicts its least recently used entry when it grows beyond its maximum size.
+     *
+     * @author Joshua Hyde
+     */
+    private static class LruMap extends LinkedHashMap<String, CacheEntry> {
+        private static final long serialVersionUID = -3327093539573526357L;
+        private final int maximumSize;
+        private final AtomicLong evictions;
+
+        /**
+         * Create a map.
+         *
+         * @param maximumSize
+         *            The maximum number of entries held by the map.
+         * @param evictions
+         *            An {@link AtomicLong} to be incremented for every eviction.
+         */
+        public LruMap(int maximumSize, AtomicLong evictions) {
+            super(16, 0.75f, true);
+            this.maximumSize = maximumSize;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Entry<String, CacheEntry> eldest) {
+            if (size() > maximumSize) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.cache;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Configuration of a {@link CachingCookbookClient}. The values of this object are read when the client is created; changing them afterwards has no effect on clients that have already been created.
+ *
+ * @author Joshua Hyde
+ */
+
+public class CachingCookbookClientConfiguration {
+    /**
+     * The default amount of time, in milliseconds, for which a retrieved cookbook is considered fresh.
+     */
+    public static final long DEFAULT_TIME_TO_LIVE_MS = 5 * 60 * 1000L;
+    /**
+     * The default amount of time, in milliseconds, for which the absence of a cookbook is remembered.
+     */
+    public static final long DEFAULT_NEGATIVE_TIME_TO_LIVE_MS = 60 * 1000L;
+    /**
+     * The default maximum number of cookbooks held by the cache.
+     */
+    public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+    private long timeToLiveMs = DEFAULT_TIME_TO_LIVE_MS;
+    private long negativeTimeToLiveMs = DEFAULT_NEGATIVE_TIME_TO_LIVE_MS;
+    private int maximumSize = DEFAULT_MAXIMUM_SIZE;
+    private boolean staleWhileRevalidate;
+
+    /**
+     * Get the maximum number of cookbooks held by the cache.
+     *
+     * @return The maximum number of cookbooks held by the cache.
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Get the amount of time for which the absence of a cookbook is remembered.
+     *
+     * @return The amount of time, in milliseconds, for which the absence of a cookbook is remembered.
+     */
+    public long getNegativeTimeToLiveMs() {
+        return negativeTimeToLiveMs;
+    }
+
+    /**
+     * Get the amount of time for which a retrieved cookbook is considered fresh.
+     *
+     * @return The amount of time, in milliseconds, for which a retrieved cookbook is considered fresh.
+     */
+    public long getTimeToLiveMs() {
+        return timeToLiveMs;
+    }
+
+    /**
+     * Determine whether expired cookbooks are served while they are refreshed in the background.
+     *
+     * @return {@code true} if expired cookbooks are served while they are refreshed; {@code false} if an expired cookbook is retrieved again before it is served.
+     */
+    public boolean isStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+
+    /**
+     * Set the maximum number of cookbooks held by the cache. When the cache is full, the least recently used cookbook is evicted.
+     *
+     * @param maximumSize
+     *            The maximum number of cookbooks held by the cache.
+     */
+    public void setMaximumSize(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Set the amount of time for which the absence of a cookbook is remembered.
+     *
+     * @param negativeTimeToLiveMs
+     *            The amount of time, in milliseconds, for which the absence of a cookbook is remembered; {@code 0} disables the caching of absent cookbooks.
+     */
+    public void setNegativeTimeToLiveMs(long negativeTimeToLiveMs) {
+        this.negativeTimeToLiveMs = negativeTimeToLiveMs;
+    }
+
+    /**
+     * Set whether expired cookbooks are served while they are refreshed in the background.
+     *
+     * @param staleWhileRevalidate
+     *            {@code true} if expired cookbooks are to be served while they are refreshed; {@code false} if an expired cookbook is to be retrieved again before it is served.
+     */
+    public void setStaleWhileRevalidate(boolean staleWhileRevalidate) {
+        this.staleWhileRevalidate = staleWhileRevalidate;
+    }
+
+    /**
+     * Set the amount of time for which a retrieved cookbook is considered fresh.
+     *
+     * @param timeToLiveMs
+     *            The amount of time, in milliseconds, for which a retrieved cookbook is considered fresh.
+     */
+    public void setTimeToLiveMs(long timeToLiveMs) {
+        this.timeToLiveMs = timeToLiveMs;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.concurrent;
+
+import java.util.concurrent.Semaphore;
+
+import com.github.jrh3k5.chef.client.RetrievalCallback;
+
+/**
+ * Bounds the number of asynchronous retrievals in flight at once. Each retrieval is started by {@link #begin(RetrievalCallback) beginning} it, which blocks until fewer than the configured number
+ * of retrievals are outstanding, and is finished when the callback returned by {@link #begin(RetrievalCallback)} is notified.
+ * <p />
+ * Instances of this class are intended to be used for a single fan-out: the thread issuing the retrievals begins each of them and then {@link #await() awaits} their completion.
+ *
+ * @author Joshua Hyde
+ */
+
+public class BoundedFanOut {
+    private final int parallelism;
+    private final Semaphore permits;
+
+    /**
+     * Create a fan-out.
+     *
+     * @param parallelism
+     *            The maximum number of retrievals to be in flight at once; values less than {@code 1} are treated as {@code 1}.
+     */
+    public BoundedFanOut(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        this.permits = new Semaphore(this.parallelism);
+    }
+
+    /**
+     * Wait for all begun retrievals to finish.
+     *
+     * @throws InterruptedException
+     *             If the calling thread is interrupted while waiting.
+     */
+    public void await() throws InterruptedException {
+        permits.acquire(parallelism);
+        permits.release(parallelism);
+    }
+
+    /**
+     * Begin a retrieval, waiting until there is room for it.
+     *
+     * @param delegate
+     *            The {@link RetrievalCallback} to be notified when the retrieval finishes.
+     * @return A {@link RetrievalCallback} that must be given to the retrieval; it notifies the given callback and then frees room for another retrieval. It must be notified exactly once, including
+     *         when the retrieval fails to start.
+     * @throws InterruptedException
+     *             If the calling thread is interrupted while waiting for room.
+     */
+    public <T> RetrievalCallback<T> begin(final RetrievalCallback<T> delegate) throws InterruptedException {
+        permits.acquire();
+        return new RetrievalCallback<T>() {
+            @Override
+            public void completed(T result) {
+                try {
+                    delegate.completed(result);
+                } finally {
+                    permits.release();
+                }
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                try {
+                    delegate.failed(throwable);
+                } finally {
+                    permits.release();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.github.jrh3k5.chef.client.RetrievalCallback;
+
+/**
+ * A {@link Future} whose result is supplied by whatever completes the underlying work. Callbacks can be attached at any time; callbacks attached after completion are invoked immediately on the
+ * attaching thread.
+ *
+ * @author Joshua Hyde
+ * @param <T>
+ *            The type of result held by this future.
+ */
+
+public class ResultFuture<T> implements Future<T> {
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final List<RetrievalCallback<? super T>> callbacks = new ArrayList<RetrievalCallback<? super T>>();
+    private volatile Future<?> delegate;
+    private boolean done;
+    private boolean cancelled;
+    private T result;
+    private Throwable failure;
+
+    /**
+     * Create a future.
+     */
+    public ResultFuture() {
+    }
+
+    /**
+     * Create a future.
+     *
+     * @param callback
+     *            A {@link RetrievalCallback} to be notified when this future completes; may be {@code null}.
+     */
+    public ResultFuture(RetrievalCallback<? super T> callback) {
+        if (callback != null) {
+            callbacks.add(callback);
+        }
+    }
+
+    /**
+     * Create a future that has already completed successfully.
+     *
+     * @param result
+     *            The result of the future.
+     * @param callback
+     *            A {@link RetrievalCallback} to be notified of the result; may be {@code null}.
+     * @return A completed {@link ResultFuture}.
+     */
+    public static <T> ResultFuture<T> completed(T result, RetrievalCallback<? super T> callback) {
+        final ResultFuture<T> future = new ResultFuture<T>(callback);
+        future.set(result);
+        return future;
+    }
+
+    /**
+     * Attach a callback to this future.
+     *
+     * @param callback
+     *            The {@link RetrievalCallback} to be notified when this future completes.
+     */
+    public void addCallback(RetrievalCallback<? super T> callback) {
+        synchronized (this) {
+            if (!done) {
+                callbacks.add(callback);
+                return;
+            }
+        }
+        notifyCallback(callback);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            cancelled = true;
+        }
+        final Future<?> currentDelegate = delegate;
+        if (currentDelegate != null) {
+            currentDelegate.cancel(mayInterruptIfRunning);
+        }
+        complete(null, new CancellationException());
+        return true;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        latch.await();
+        return getResult();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!latch.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return getResult();
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Complete this future successfully.
+     *
+     * @param result
+     *            The result of the work.
+     * @return {@code true} if this call completed the future; {@code false} if it had already been completed.
+     */
+    public boolean set(T result) {
+        return complete(result, null);
+    }
+
+    /**
+     * Set the future representing the underlying work, to which cancellation of this future is to be propagated.
+     *
+     * @param delegate
+     *            The {@link Future} representing the underlying work.
+     */
+    public void setDelegate(Future<?> delegate) {
+        this.delegate = delegate;
+        if (isCancelled()) {
+            delegate.cancel(true);
+        }
+    }
+
+    /**
+     * Complete this future exceptionally.
+     *
+     * @param failure
+     *            The {@link Throwable} that caused the work to fail.
+     * @return {@code true} if this call completed the future; {@code false} if it had already been completed.
+     */
+    public boolean setException(Throwable failure) {
+        return complete(null, failure);
+    }
+
+    /**
+     * Complete this future.
+     *
+     * @param completedResult
+     *            The result of the work, if successful.
+     * @param completedFailure
+     *            The failure of the work, if unsuccessful.
+     * @return {@code true} if this call completed the future; {@code false} if it had already been completed.
+     */
+    private boolean complete(T completedResult, Throwable completedFailure) {
+        final List<RetrievalCallback<? super T>> toNotify;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.result = completedResult;
+            this.failure = completedFailure;
+            this.done = true;
+            toNotify = new ArrayList<RetrievalCallback<? super T>>(callbacks);
+            callbacks.clear();
+        }
+        latch.countDown();
+        for (RetrievalCallback<? super T> callback : toNotify) {
+            notifyCallback(callback);
+        }
+        return true;
+    }
+
+    /**
+     * Get the result of this future, which must be complete.
+     *
+     * @return The result of the future.
+     * @throws ExecutionException
+     *             If the work failed.
+     */
+    private synchronized T getResult() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return result;
+    }
+
+    /**
+     * Notify a callback of the outcome of this future, which must be complete.
+     *
+     * @param callback
+     *            The {@link RetrievalCallback} to be notified.
+     */
+    private void notifyCallback(RetrievalCallback<? super T> callback) {
+        final T notifiedResult;
+        final Throwable notifiedFailure;
+        synchronized (this) {
+            notifiedResult = result;
+            notifiedFailure = failure;
+        }
+        if (notifiedFailure == null) {
+            callback.completed(notifiedResult);
+        } else {
+            callback.failed(notifiedFailure);
+        }
+    }
+}
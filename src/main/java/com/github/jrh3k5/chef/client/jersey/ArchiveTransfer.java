@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.Response;
+
+import com.github.jrh3k5.chef.client.ArchiveDownload;
+import com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException;
+import com.github.jrh3k5.chef.client.jersey.ResilientInvoker.RequestSource;
+
+/**
+ * Utilities for transferring cookbook archives through a client's pooled transport.
+ * <p />
+ * Archive requests are sent through the client's {@link ResilientInvoker}, so they are retried, hedged, routed and limited like document requests. Only the response headers are covered: a
+ * failure while the body is being read is not retried, but a later download resumes from what was written.
+ * <p />
+ * Downloads are written with {@link FileChannel#transferFrom(ReadableByteChannel, long, long)} from the response entity, with the SHA-256 digest computed as the bytes pass through. The entity is
+ * an {@link InputStream}, so this is not a zero-copy transfer: the bytes are copied through a few small fixed-size buffers on their way to the file. The memory used is therefore bounded
+ * whatever the size of the archive, but it is not free of heap copies. A partial file is resumed with a {@code Range} request; a server that ignores the range restarts the download from the
+ * beginning. Full downloads accept whatever content encoding the client negotiates and are written as they are decoded, but a resumed download is always requested unencoded.
+ *
+ * @author Joshua Hyde
+ */
+
+final class ArchiveTransfer {
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String RANGE = "Range";
+    private static final long TRANSFER_CHUNK_BYTES = 1024 * 1024;
+    private static final int DIGEST_BUFFER_BYTES = 64 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private ArchiveTransfer() {
+    }
+
+    /**
+     * Download an archive to a file.
+     *
+     * @param invoker
+     *            The {@link ResilientInvoker} through which the archive is to be requested.
+     * @param client
+     *            The {@link Client} through which the archive is to be requested.
+     * @param location
+     *            The {@link URL} of the archive.
+     * @param destination
+     *            The {@link File} to which the archive is to be written.
+     * @param expectedSize
+     *            The size of the archive, if known in advance; otherwise, {@code -1}.
+     * @param expectedSha256
+     *            The expected hexadecimal SHA-256 digest of the archive; {@code null} if it is not to be verified.
+     * @return An {@link ArchiveDownload} describing the downloaded archive.
+     * @throws CookbookRetrievalException
+     *             If the archive could not be downloaded or does not match the expected digest.
+     */
+    static ArchiveDownload download(ResilientInvoker invoker, Client client, URL location, File destination, long expectedSize, String expectedSha256) {
+        if (location == null) {
+            throw new CookbookRetrievalException("Version has no archive location");
+        }
+
+        final ArchiveDownload download;
+        try {
+            final RandomAccessFile file = new RandomAccessFile(destination, "rw");
+            try {
+                download = transfer(invoker, client, location, destination, file.getChannel(), expectedSize);
+            } finally {
+                file.close();
+            }
+        } catch (IOException e) {
+            throw new CookbookRetrievalException("Failed to download archive: " + location, e);
+        }
+
+        if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(download.getSha256())) {
+            if (!destination.delete()) {
+                destination.deleteOnExit();
+            }
+            throw new CookbookRetrievalException(String.format("SHA-256 digest of archive %s was %s; expected %s", location, download.getSha256(), expectedSha256));
+        }
+        return download;
+    }
+
+    /**
+     * Open an archive for reading.
+     *
+     * @param invoker
+     *            The {@link ResilientInvoker} through which the archive is to be requested.
+     * @param client
+     *            The {@link Client} through which the archive is to be requested.
+     * @param location
+     *            The {@link URL} of the archive.
+     * @return An {@link InputStream} over the archive; closing it releases its connection.
+     * @throws CookbookRetrievalException
+     *             If the archive could not be requested.
+     */
+    static InputStream open(ResilientInvoker invoker, Client client, URL location) {
+        if (location == null) {
+            throw new CookbookRetrievalException("Version has no archive location");
+        }
+
+        final Response response = invoker.get(request(client, location, 0));
+        if (response.getStatus() != Response.Status.OK.getStatusCode()) {
+            response.close();
+            throw new CookbookRetrievalException(String.format("Unexpected response from server for archive %s: %d", location, response.getStatus()));
+        }
+        return response.readEntity(InputStream.class);
+    }
+
+    /**
+     * Build requests for an archive.
+     *
+     * @param client
+     *            The {@link Client} through which the archive is to be requested.
+     * @param location
+     *            The {@link URL} of the archive.
+     * @param offset
+     *            The offset from which the archive is to be requested; {@code 0} if it is to be requested in full.
+     * @return A {@link RequestSource} building a request for each attempt.
+     */
+    private static RequestSource request(final Client client, final URL location, final long offset) {
+        return new RequestSource() {
+            @Override
+            public Invocation.Builder newRequest() {
+                final Invocation.Builder request = client.target(location.toExternalForm()).request();
+                if (offset > 0) {
+                    // A range applies to the encoded form of the archive, so the resumed part must not be encoded for the offset to line up with the file
+                    request.header(RANGE, "bytes=" + offset + "-");
+                    request.header(ACCEPT_ENCODING, "identity");
+                }
+                return request;
+            }
+        };
+    }
+
+    /**
+     * Transfer an archive into a file, resuming from its current contents if possible.
+     *
+     * @param invoker
+     *            The {@link ResilientInvoker} through which the archive is to be requested.
+     * @param client
+     *            The {@link Client} through which the archive is to be requested.
+     * @param location
+     *            The {@link URL} of the archive.
+     * @param destination
+     *            The {@link File} to which the archive is to be written.
+     * @param channel
+     *            The {@link FileChannel} of the destination file.
+     * @param expectedSize
+     *            The size of the archive, if known in advance; otherwise, {@code -1}.
+     * @return An {@link ArchiveDownload} describing the downloaded archive.
+     * @throws IOException
+     *             If the archive cannot be written.
+     * @throws CookbookRetrievalException
+     *             If the server does not return the archive or returns an archive of the wrong size.
+     */
+    private static ArchiveDownload transfer(ResilientInvoker invoker, Client client, URL location, File destination, FileChannel channel, long expectedSize) throws IOException {
+        final MessageDigest digest = newDigest();
+        long existing = channel.size();
+        if (expectedSize >= 0 && existing > expectedSize) {
+            channel.truncate(0);
+            existing = 0;
+        }
+        if (existing > 0 && existing == expectedSize) {
+            digest(channel, existing, digest);
+            return new ArchiveDownload(destination, existing, existing, toHex(digest.digest()));
+        }
+
+        final Response response = invoker.get(request(client, location, existing));
+        try {
+            final long offset;
+            if (existing > 0 && response.getStatus() == Response.Status.PARTIAL_CONTENT.getStatusCode()) {
+                offset = existing;
+                digest(channel, offset, digest);
+            } else if (response.getStatus() == Response.Status.OK.getStatusCode()) {
+                offset = 0;
+                channel.truncate(0);
+            } else if (existing > 0 && response.getStatus() == Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE.getStatusCode()) {
+                // The file is no shorter than the archive, so it is either complete or not the archive at all
+                final long completeLength = getCompleteLength(response);
+                response.close();
+                if (existing == completeLength) {
+                    digest(channel, existing, digest);
+                    return new ArchiveDownload(destination, existing, existing, toHex(digest.digest()));
+                }
+                channel.truncate(0);
+                return transfer(invoker, client, location, destination, channel, expectedSize);
+            } else {
+                throw new CookbookRetrievalException(String.format("Unexpected response from server for archive %s: %d", location, response.getStatus()));
+            }
+
+            final ReadableByteChannel source = Channels.newChannel(new DigestInputStream(response.readEntity(InputStream.class), digest));
+            long position = offset;
+            long transferred;
+            while ((transferred = channel.transferFrom(source, position, TRANSFER_CHUNK_BYTES)) > 0) {
+                position += transferred;
+            }
+            channel.truncate(position);
+            channel.force(false);
+
+            if (expectedSize >= 0 && position != expectedSize) {
+                if (position > expectedSize) {
+                    channel.truncate(0);
+                }
+                throw new CookbookRetrievalException(String.format("Archive %s was %d bytes; expected %d", location, position, expectedSize));
+            }
+            return new ArchiveDownload(destination, position, offset, toHex(digest.digest()));
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Feed the beginning of a file into a digest.
+     *
+     * @param channel
+     *            The {@link FileChannel} of the file.
+     * @param length
+     *            The number of bytes to be digested.
+     * @param digest
+     *            The {@link MessageDigest} to be updated.
+     * @throws IOException
+     *             If the file cannot be read.
+     */
+    private static void digest(FileChannel channel, long length, MessageDigest digest) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(DIGEST_BUFFER_BYTES, Math.max(length, 1)));
+        long position = 0;
+        while (position < length) {
+            buffer.clear();
+            if (length - position < buffer.capacity()) {
+                buffer.limit((int) (length - position));
+            }
+            final int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("File ended before its expected length of " + length);
+            }
+            buffer.flip();
+            digest.update(buffer);
+            position += read;
+        }
+    }
+
+    /**
+     * Get the complete length of an archive from a {@code 416} response.
+     *
+     * @param response
+     *            The {@link Response} rejecting a range request.
+     * @return The complete length given by the response's {@code Content-Range} header; {@code -1} if it gives none.
+     */
+    private static long getCompleteLength(Response response) {
+        final String contentRange = response.getHeaderString("Content-Range");
+        if (contentRange == null || contentRange.indexOf('/') < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(contentRange.indexOf('/') + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Create a SHA-256 digest.
+     *
+     * @return A {@link MessageDigest} computing SHA-256.
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+        }
+    }
+
+    /**
+     * Encode bytes as hexadecimal.
+     *
+     * @param bytes
+     *            The bytes to be encoded.
+     * @return The lowercase hexadecimal encoding of the given bytes.
+     */
+    static String toHex(byte[] bytes) {
+        final char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,571 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.github.jrh3k5.chef.client.CatalogCallback;
+import com.github.jrh3k5.chef.client.CatalogEntry;
+import com.github.jrh3k5.chef.client.CatalogSyncResult;
+import com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException;
+import com.github.jrh3k5.chef.client.RetrievalCallback;
+import com.github.jrh3k5.chef.client.concurrent.BoundedFanOut;
+import com.github.jrh3k5.chef.client.concurrent.ResultFuture;
+import com.github.jrh3k5.chef.client.jersey.ResilientInvoker.RequestSource;
+import com.github.jrh3k5.chef.client.metrics.RequestMetrics.Operation;
+
+/**
+ * Synchronization with the paginated catalog of a cookbook server.
+ * <p />
+ * The catalog's listing does not say when its cookbooks were last updated, so watermarks are taken from the {@code updated_at} field of the cookbook documents: a full synchronization reads it
+ * from the most recently updated cookbook before listing the catalog, and an incremental synchronization walks the catalog from the most recently updated cookbook, reading the documents of each
+ * page, until it reaches a cookbook that is no newer than the watermark. Timestamps are compared as strings, which orders the ISO 8601 timestamps written by the server.
+ *
+ * @author Joshua Hyde
+ */
+
+final class CatalogSync {
+    private final ResilientInvoker invoker;
+    private final Client client;
+    private final String serviceUrl;
+    private final int pageSize;
+    private final int parallelism;
+    private final boolean instrumented;
+
+    /**
+     * Create a synchronizer.
+     *
+     * @param invoker
+     *            The {@link ResilientInvoker} through which requests are to be sent.
+     * @param client
+     *            The {@link Client} from which requests are to be built.
+     * @param serviceUrl
+     *            The URL of the cookbook server.
+     * @param pageSize
+     *            The number of cookbooks to be requested per page; values less than {@code 1} are treated as {@code 1}.
+     * @param parallelism
+     *            The maximum number of pages, or cookbook documents, to be retrieved at once.
+     * @param instrumented
+     *            {@code true} if requests are to be labelled for {@link Instrumentation}; {@code false} if they are not measured.
+     */
+    CatalogSync(ResilientInvoker invoker, Client client, String serviceUrl, int pageSize, int parallelism, boolean instrumented) {
+        this.invoker = invoker;
+        this.client = client;
+        this.serviceUrl = serviceUrl;
+        this.pageSize = Math.max(1, pageSize);
+        this.parallelism = parallelism;
+        this.instrumented = instrumented;
+    }
+
+    /**
+     * Retrieve the whole catalog. The first page is retrieved to learn the size of the catalog; the remaining pages are then retrieved concurrently and delivered as each arrives.
+     *
+     * @param callback
+     *            The {@link CatalogCallback} to be given each entry.
+     * @return A {@link CatalogSyncResult} describing the synchronization.
+     * @throws CookbookRetrievalException
+     *             If the first page cannot be retrieved or the calling thread is interrupted.
+     */
+    CatalogSyncResult syncAll(CatalogCallback callback) {
+        final Delivery delivery = new Delivery(callback);
+        final List<CookbookRetrievalException> failures = Collections.synchronizedList(new ArrayList<CookbookRetrievalException>());
+
+        // Read the watermark before the listing, so that no update made during the listing is missed by the next incremental synchronization
+        String watermark = null;
+        try {
+            final List<JsonCatalogItem> newest = await(fetchPage(0, 1, true, null), "most recently updated cookbook").getItems();
+            if (!newest.isEmpty()) {
+                watermark = await(fetchUpdatedAt(newest.get(0).getCookbookUrl()), "cookbook " + newest.get(0).getCookbookUrl());
+            }
+        } catch (CookbookRetrievalException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw e;
+            }
+            failures.add(e);
+        }
+
+        final JsonCatalogPage first = await(fetchPage(0, pageSize, false, null), "catalog page at 0");
+        delivery.deliver(first.getItems());
+
+        final BoundedFanOut fanOut = new BoundedFanOut(parallelism);
+        try {
+            for (int start = first.getItems().size(); start < first.getTotal(); start += pageSize) {
+                final RetrievalCallback<JsonCatalogPage> pageCallback = fanOut.begin(new RetrievalCallback<JsonCatalogPage>() {
+                    @Override
+                    public void completed(JsonCatalogPage page) {
+                        delivery.deliver(page.getItems());
+                    }
+
+                    @Override
+                    public void failed(Throwable throwable) {
+                        failures.add(asRetrievalException(throwable, "Failed to retrieve catalog page."));
+                    }
+                });
+                try {
+                    fetchPage(start, pageSize, false, pageCallback);
+                } catch (RuntimeException e) {
+                    pageCallback.failed(e);
+                }
+            }
+            fanOut.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CookbookRetrievalException("Interrupted while retrieving catalog.", e);
+        }
+        return new CatalogSyncResult(delivery.getDelivered(), failures.isEmpty() ? watermark : null, new ArrayList<CookbookRetrievalException>(failures));
+    }
+
+    /**
+     * Retrieve the entries of the catalog for cookbooks updated since a watermark. Pages are walked one at a time, from the most recently updated cookbook, with the cookbook documents of each page
+     * retrieved concurrently.
+     *
+     * @param watermark
+     *            The watermark returned by a previous synchronization.
+     * @param callback
+     *            The {@link CatalogCallback} to be given each entry of a cookbook updated since the watermark.
+     * @return A {@link CatalogSyncResult} describing the synchronization.
+     * @throws CookbookRetrievalException
+     *             If the calling thread is interrupted.
+     */
+    CatalogSyncResult syncSince(String watermark, CatalogCallback callback) {
+        final Delivery delivery = new Delivery(callback);
+        final List<CookbookRetrievalException> failures = new ArrayList<CookbookRetrievalException>();
+        String newest = watermark;
+        int start = 0;
+        boolean reachedWatermark = false;
+        while (!reachedWatermark) {
+            final JsonCatalogPage page;
+            try {
+                page = await(fetchPage(start, pageSize, true, null), "catalog page at " + start);
+            } catch (CookbookRetrievalException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                failures.add(e);
+                break;
+            }
+
+            final List<Future<String>> updates = new ArrayList<Future<String>>(page.getItems().size());
+            for (JsonCatalogItem item : page.getItems()) {
+                updates.add(fetchUpdatedAt(item.getCookbookUrl()));
+            }
+
+            for (int i = 0; i < updates.size(); i++) {
+                final JsonCatalogItem item = page.getItems().get(i);
+                final String updatedAt;
+                try {
+                    updatedAt = await(updates.get(i), "cookbook " + item.getName());
+                } catch (CookbookRetrievalException e) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw e;
+                    }
+                    failures.add(e);
+                    continue;
+                }
+
+                if (updatedAt == null) {
+                    // Removed since it was listed, or never updated
+                    continue;
+                } else if (updatedAt.compareTo(watermark) <= 0) {
+                    reachedWatermark = true;
+                } else {
+                    delivery.deliver(item.toEntry(updatedAt));
+                    if (updatedAt.compareTo(newest) > 0) {
+                        newest = updatedAt;
+                    }
+                }
+            }
+
+            if (page.getItems().size() < pageSize) {
+                break;
+            }
+            start += page.getItems().size();
+        }
+        return new CatalogSyncResult(delivery.getDelivered(), failures.isEmpty() ? newest : watermark, failures);
+    }
+
+    /**
+     * Retrieve a page of the catalog.
+     *
+     * @param start
+     *            The position in the catalog of the first cookbook on the page.
+     * @param items
+     *            The number of cookbooks on the page.
+     * @param recentlyUpdated
+     *            {@code true} if the catalog is to be ordered from the most to the least recently updated cookbook; {@code false} if it is to be ordered by name.
+     * @param callback
+     *            A {@link RetrievalCallback} to be notified of the outcome; may be {@code null}.
+     * @return A {@link ResultFuture} representing the retrieval of the page.
+     */
+    private ResultFuture<JsonCatalogPage> fetchPage(final int start, int items, boolean recentlyUpdated, RetrievalCallback<? super JsonCatalogPage> callback) {
+        final ResultFuture<JsonCatalogPage> result = new ResultFuture<JsonCatalogPage>(callback);
+        WebTarget target = client.target(serviceUrl).path("cookbooks").queryParam("start", start).queryParam("items", items);
+        if (recentlyUpdated) {
+            target = target.queryParam("order", "recently_updated");
+        }
+        result.setDelegate(invoker.getAsync(request(target), new InvocationCallback<Response>() {
+            @Override
+            public void completed(Response response) {
+                final JsonCatalogPage page;
+                try {
+                    page = toPage(start, response);
+                } catch (RuntimeException e) {
+                    result.setException(e);
+                    return;
+                }
+                result.set(page);
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                result.setException(asRetrievalException(throwable, "Failed to retrieve catalog page at " + start));
+            }
+        }));
+        return result;
+    }
+
+    /**
+     * Retrieve the time at which a cookbook was last updated.
+     *
+     * @param cookbookUrl
+     *            The URL of the cookbook's document.
+     * @return A {@link ResultFuture} yielding the cookbook's {@code updated_at} field; it yields {@code null} if the cookbook no longer exists or has no such field.
+     */
+    private ResultFuture<String> fetchUpdatedAt(final String cookbookUrl) {
+        final ResultFuture<String> result = new ResultFuture<String>();
+        result.setDelegate(invoker.getAsync(request(client.target(cookbookUrl)), new InvocationCallback<Response>() {
+            @Override
+            public void completed(Response response) {
+                final String updatedAt;
+                try {
+                    updatedAt = toUpdatedAt(cookbookUrl, response);
+                } catch (RuntimeException e) {
+                    result.setException(e);
+                    return;
+                }
+                result.set(updatedAt);
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                result.setException(asRetrievalException(throwable, "Failed to retrieve cookbook: " + cookbookUrl));
+            }
+        }));
+        return result;
+    }
+
+    /**
+     * Convert the response to a page request into a page.
+     *
+     * @param start
+     *            The position of the requested page.
+     * @param response
+     *            The {@link Response} to the page request.
+     * @return A {@link JsonCatalogPage} representing the retrieved page.
+     * @throws CookbookRetrievalException
+     *             If the response does not describe a page of the catalog.
+     */
+    private JsonCatalogPage toPage(int start, Response response) {
+        try {
+            if (response.getStatus() != Response.Status.OK.getStatusCode()) {
+                throw new CookbookRetrievalException(String.format("Unexpected response from cookbook server for catalog page at %d: %d", start, response.getStatus()));
+            }
+            return JsonDecoder.decodeCatalogPage(response.readEntity(InputStream.class));
+        } catch (IOException e) {
+            throw new CookbookRetrievalException("Failed to parse JSON of catalog page at " + start, e);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Convert the response to a cookbook request into the time at which the cookbook was last updated.
+     *
+     * @param cookbookUrl
+     *            The URL of the requested cookbook.
+     * @param response
+     *            The {@link Response} to the cookbook request.
+     * @return {@code null} if the cookbook was not found or has no {@code updated_at} field; otherwise, the value of the field.
+     * @throws CookbookRetrievalException
+     *             If the response does not describe a cookbook.
+     */
+    private String toUpdatedAt(String cookbookUrl, Response response) {
+        try {
+            if (response.getStatus() == Response.Status.NOT_FOUND.getStatusCode()) {
+                return null;
+            } else if (response.getStatus() != Response.Status.OK.getStatusCode()) {
+                throw new CookbookRetrievalException(String.format("Unexpected response from cookbook server for cookbook %s: %d", cookbookUrl, response.getStatus()));
+            }
+            return JsonDecoder.decodeUpdatedAt(response.readEntity(InputStream.class));
+        } catch (IOException e) {
+            throw new CookbookRetrievalException("Failed to parse JSON of cookbook: " + cookbookUrl, e);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Build a source of requests for a JSON document.
+     *
+     * @param target
+     *            The {@link WebTarget} identifying the document.
+     * @return A {@link RequestSource} building the requests.
+     */
+    private RequestSource request(final WebTarget target) {
+        return new RequestSource() {
+            @Override
+            public Invocation.Builder newRequest() {
+                final Invocation.Builder request = target.request(MediaType.APPLICATION_JSON_TYPE).accept(MediaType.APPLICATION_JSON_TYPE);
+                return instrumented ? Instrumentation.label(request, Operation.CATALOG) : request;
+            }
+        };
+    }
+
+    /**
+     * Wait for a retrieval.
+     *
+     * @param retrieval
+     *            The {@link Future} representing the retrieval.
+     * @param description
+     *            A description of what is being retrieved, for error messages.
+     * @return The retrieved value.
+     * @throws CookbookRetrievalException
+     *             If the retrieval failed or the calling thread was interrupted.
+     */
+    private static <T> T await(Future<T> retrieval, String description) {
+        try {
+            return retrieval.get();
+        } catch (InterruptedException e) {
+            retrieval.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CookbookRetrievalException("Interrupted while retrieving " + description, e);
+        } catch (ExecutionException e) {
+            throw asRetrievalException(e.getCause(), "Failed to retrieve " + description);
+        }
+    }
+
+    /**
+     * Express a failure as a {@link CookbookRetrievalException}.
+     *
+     * @param throwable
+     *            The {@link Throwable} that caused the failure.
+     * @param message
+     *            The message to be used if the failure is not already a {@link CookbookRetrievalException}.
+     * @return A {@link CookbookRetrievalException} describing the failure.
+     */
+    private static CookbookRetrievalException asRetrievalException(Throwable throwable, String message) {
+        if (throwable instanceof CookbookRetrievalException) {
+            return (CookbookRetrievalException) throwable;
+        }
+        return new CookbookRetrievalException(message, throwable);
+    }
+
+    /**
+     * Delivers entries to a {@link CatalogCallback} one at a time, counting them as they are delivered.
+     *
+     * @author Joshua Hyde
+     */
+    private static class Delivery {
+        private final CatalogCallback callback;
+        private int delivered;
+
+        /**
+         * Create a delivery.
+         *
+         * @param callback
+         *            The {@link CatalogCallback} to which entries are to be delivered.
+         */
+        public Delivery(CatalogCallback callback) {
+            this.callback = callback;
+        }
+
+        /**
+         * Deliver an entry.
+         *
+         * @param entry
+         *            The {@link CatalogEntry} to be delivered.
+         */
+        public synchronized void deliver(CatalogEntry entry) {
+            callback.entry(entry);
+            delivered++;
+        }
+
+        /**
+         * Deliver the entries of a page whose cookbooks' update times are not known.
+         *
+         * @param items
+         *            A {@link List} of the {@link JsonCatalogItem} objects to be delivered.
+         */
+        public synchronized void deliver(List<JsonCatalogItem> items) {
+            for (JsonCatalogItem item : items) {
+                deliver(item.toEntry(null));
+            }
+        }
+
+        /**
+         * Get the number of entries delivered.
+         *
+         * @return The number of entries delivered.
+         */
+        public synchronized int getDelivered() {
+            return delivered;
+        }
+    }
+
+    /**
+     * A JSON object that represents a page of the catalog.
+     *
+     * @author Joshua Hyde
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class JsonCatalogPage {
+        private int start;
+        private int total;
+        private List<JsonCatalogItem> items = Collections.emptyList();
+
+        /**
+         * Get the cookbooks on this page.
+         *
+         * @return A {@link List} of {@link JsonCatalogItem} objects representing the cookbooks on this page.
+         */
+        public List<JsonCatalogItem> getItems() {
+            return items;
+        }
+
+        /**
+         * Get the position of this page in the catalog.
+         *
+         * @return The position in the catalog of the first cookbook on this page.
+         */
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * Get the size of the catalog.
+         *
+         * @return The number of cookbooks in the catalog.
+         */
+        public int getTotal() {
+            return total;
+        }
+
+        /**
+         * Set the cookbooks on this page.
+         *
+         * @param items
+         *            A {@link List} of {@link JsonCatalogItem} objects representing the cookbooks on this page.
+         */
+        public void setItems(List<JsonCatalogItem> items) {
+            this.items = items == null ? Collections.<JsonCatalogItem> emptyList() : items;
+        }
+
+        /**
+         * Set the position of this page in the catalog.
+         *
+         * @param start
+         *            The position in the catalog of the first cookbook on this page.
+         */
+        public void setStart(int start) {
+            this.start = start;
+        }
+
+        /**
+         * Set the size of the catalog.
+         *
+         * @param total
+         *            The number of cookbooks in the catalog.
+         */
+        public void setTotal(int total) {
+            this.total = total;
+        }
+
+        @Override
+        public String toString() {
+            return ToStringBuilder.reflectionToString(this);
+        }
+    }
+
+    /**
+     * A JSON object that represents a cookbook listed in the catalog.
+     *
+     * @author Joshua Hyde
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class JsonCatalogItem {
+        @JsonProperty("cookbook_name")
+        private String name;
+        @JsonProperty("cookbook_description")
+        private String description;
+        @JsonProperty("cookbook_maintainer")
+        private String maintainer;
+        @JsonProperty("cookbook")
+        private String cookbookUrl;
+
+        /**
+         * Get the URL of the cookbook.
+         *
+         * @return The URL of the cookbook's document.
+         */
+        public String getCookbookUrl() {
+            return cookbookUrl;
+        }
+
+        /**
+         * Get the name of the cookbook.
+         *
+         * @return The name of the cookbook.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Convert this item into a catalog entry.
+         *
+         * @param updatedAt
+         *            The time at which the cookbook was last updated; may be {@code null}.
+         * @return A {@link CatalogEntry} representing this item.
+         */
+        CatalogEntry toEntry(String updatedAt) {
+            return new CatalogEntry(name, description, maintainer, cookbookUrl, updatedAt);
+        }
+
+        @Override
+        public String toString() {
+            return ToStringBuilder.reflectionToString(this);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import java.util.concurrent.TimeUnit;
+
+import com.github.jrh3k5.chef.client.jersey.ResilienceStatistics.CircuitState;
+
+/**
+ * A circuit breaker that opens after a number of consecutive failures and, once it has been open for a while, lets a single trial request through to decide whether to close again.
+ *
+ * @author Joshua Hyde
+ */
+
+class CircuitBreaker {
+    private final int failureThreshold;
+    private final long openNanos;
+    private CircuitState state = CircuitState.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private long trialStartedAtNanos;
+    private long openings;
+
+    /**
+     * Create a circuit breaker.
+     *
+     * @param failureThreshold
+     *            The number of consecutive failures that open the circuit breaker; {@code 0} or less disables it.
+     * @param openMs
+     *            The amount of time, in milliseconds, for which the circuit breaker stays open before letting a trial request through.
+     */
+    CircuitBreaker(int failureThreshold, long openMs) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+    }
+
+    /**
+     * Determine whether a request may be sent. If the circuit breaker is ready to let a trial request through, the caller's request becomes that trial.
+     *
+     * @return {@code true} if the request may be sent; {@code false} if it is to fail immediately.
+     */
+    synchronized boolean allowRequest() {
+        if (failureThreshold <= 0 || state == CircuitState.CLOSED) {
+            return true;
+        }
+
+        final long now = System.nanoTime();
+        // A trial whose outcome is never recorded (e.g., because it was cancelled) must not hold the breaker half-open forever
+        final long since = state == CircuitState.OPEN ? openedAtNanos : trialStartedAtNanos;
+        if (now - since < openNanos) {
+            return false;
+        }
+        state = CircuitState.HALF_OPEN;
+        trialStartedAtNanos = now;
+        return true;
+    }
+
+    /**
+     * Get the number of times this circuit breaker has opened.
+     *
+     * @return The number of times this circuit breaker has opened.
+     */
+    synchronized long getOpenings() {
+        return openings;
+    }
+
+    /**
+     * Get the state of this circuit breaker.
+     *
+     * @return The current {@link CircuitState}.
+     */
+    synchronized CircuitState getState() {
+        return state;
+    }
+
+    /**
+     * Record a failed request.
+     */
+    synchronized void recordFailure() {
+        if (failureThreshold <= 0) {
+            return;
+        }
+        if (state == CircuitState.HALF_OPEN || (state == CircuitState.CLOSED && ++consecutiveFailures >= failureThreshold)) {
+            state = CircuitState.OPEN;
+            openedAtNanos = System.nanoTime();
+            consecutiveFailures = 0;
+            openings++;
+        }
+    }
+
+    /**
+     * Record a successful request.
+     */
+    synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        state = CircuitState.CLOSED;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * A point-in-time snapshot of the compressed responses received by a {@link JerseyCookbookClient} with {@link JerseyCookbookClientConfiguration#setCompressionEnabled(boolean) compression
+ * enabled}. Bytes are counted as they are read, so a response whose body is abandoned part way through counts only the part that was read.
+ *
+ * @author Joshua Hyde
+ */
+
+public class CompressionStatistics {
+    private final long encodedResponses;
+    private final long compressedBytes;
+    private final long uncompressedBytes;
+
+    /**
+     * Create a snapshot of compression statistics.
+     *
+     * @param encodedResponses
+     *            The number of responses received with a compressed body.
+     * @param compressedBytes
+     *            The number of bytes of compressed bodies read off the wire.
+     * @param uncompressedBytes
+     *            The number of bytes those compressed bodies decoded to.
+     */
+    public CompressionStatistics(long encodedResponses, long compressedBytes, long uncompressedBytes) {
+        this.encodedResponses = encodedResponses;
+        this.compressedBytes = compressedBytes;
+        this.uncompressedBytes = uncompressedBytes;
+    }
+
+    /**
+     * Get the number of compressed bytes received.
+     *
+     * @return The number of bytes of compressed bodies read off the wire.
+     */
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    /**
+     * Get the ratio of compressed to uncompressed bytes.
+     *
+     * @return The number of compressed bytes received per uncompressed byte, where smaller is better; {@code 1.0} if nothing has been decoded.
+     */
+    public double getCompressionRatio() {
+        if (uncompressedBytes == 0) {
+            return 1.0;
+        }
+        return (double) compressedBytes / (double) uncompressedBytes;
+    }
+
+    /**
+     * Get the number of compressed responses.
+     *
+     * @return The number of responses received with a compressed body.
+     */
+    public long getEncodedResponses() {
+        return encodedResponses;
+    }
+
+    /**
+     * Get the number of bytes saved by compression.
+     *
+     * @return The number of bytes that the compressed bodies would have taken up on the wire, less the number they did; negative if compression made them larger.
+     */
+    public long getSavedBytes() {
+        return uncompressedBytes - compressedBytes;
+    }
+
+    /**
+     * Get the number of uncompressed bytes decoded.
+     *
+     * @return The number of bytes the compressed bodies decoded to.
+     */
+    public long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
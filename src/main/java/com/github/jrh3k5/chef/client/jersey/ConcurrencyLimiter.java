@@ -0,0 +1,365 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException;
+import com.github.jrh3k5.chef.client.RetrievalCallback;
+import com.github.jrh3k5.chef.client.concurrent.ResultFuture;
+
+/**
+ * An adaptive limit on the number of requests a {@link ResilientInvoker} has in flight, found by additive increase and multiplicative decrease (AIMD).
+ * <p />
+ * Each attempt holds a {@link Permit} while it is in flight. An attempt answered in good time raises the limit by one per limit's worth of answers, provided the limit is in use; an attempt that
+ * fails - because it could not be completed or was answered with a {@code 5xx} or {@code 429} status - halves the limit, and one answered much more slowly than the recent fastest answers shrinks it
+ * slightly. Only the first failure among the attempts sent under the same limit shrinks it, so that a burst of failures caused by one overload is counted once. A server's {@code Retry-After} is
+ * honoured by {@link #pause(long) pausing} the grant of permits.
+ * <p />
+ * Attempts beyond the limit wait for a permit in a bounded queue, in the order in which they asked for one.
+ *
+ * @author Joshua Hyde
+ */
+
+class ConcurrencyLimiter {
+    private static final double BACKOFF_RATIO = 0.5;
+    private static final double LATENCY_BACKOFF_RATIO = 0.9;
+    /**
+     * The multiple of the baseline latency beyond which an answer is taken as a sign of queueing at the server.
+     */
+    private static final double LATENCY_TOLERANCE = 2.0;
+    /**
+     * The amount, in milliseconds, by which an answer must exceed the baseline latency to be taken as a sign of queueing, so that jitter in very fast answers is not.
+     */
+    private static final long LATENCY_SLACK_MS = 10;
+    private static final int BASELINE_SAMPLES = 256;
+    private final LinkedList<ResultFuture<Permit>> waiters = new LinkedList<ResultFuture<Permit>>();
+    private final int maxLimit;
+    private final int queueSize;
+    private final ScheduledExecutorService scheduler;
+    private double limit;
+    private int inFlight;
+    private long generation;
+    private long pausedUntilNanos;
+    private boolean paused;
+    private boolean closed;
+    private long baselineLatencyMs = -1;
+    private long windowMinimumMs = Long.MAX_VALUE;
+    private int windowSamples;
+    private long queueRejections;
+
+    /**
+     * Create a limiter.
+     *
+     * @param initialLimit
+     *            The number of attempts allowed in flight before any have been answered.
+     * @param maxLimit
+     *            The upper bound of the limit.
+     * @param queueSize
+     *            The number of attempts that may wait for a permit; further attempts are rejected.
+     * @param scheduler
+     *            The {@link ScheduledExecutorService} on which waiting attempts are resumed once a pause is over.
+     */
+    ConcurrencyLimiter(int initialLimit, int maxLimit, int queueSize, ScheduledExecutorService scheduler) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.limit = Math.max(1, Math.min(initialLimit, this.maxLimit));
+        this.queueSize = queueSize;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Ask for a permit, waiting for one if the limit has been reached.
+     *
+     * @return A {@link ResultFuture} that yields the {@link Permit} once it is granted, or fails with a {@link CookbookRetrievalException} if the queue of waiting attempts is full or the limiter
+     *         has been closed. Cancelling it gives up the place in the queue.
+     */
+    ResultFuture<Permit> acquire() {
+        final ResultFuture<Permit> waiter = new ResultFuture<Permit>();
+        Permit permit = null;
+        String rejection = null;
+        synchronized (this) {
+            if (closed) {
+                rejection = "Client has been closed.";
+            } else if (waiters.isEmpty() && canGrant()) {
+                permit = grant();
+            } else if (waiters.size() < queueSize) {
+                waiters.add(waiter);
+                waiter.addCallback(new RetrievalCallback<Permit>() {
+                    @Override
+                    public void completed(Permit ignored) {
+                    }
+
+                    @Override
+                    public void failed(Throwable throwable) {
+                        synchronized (ConcurrencyLimiter.this) {
+                            waiters.remove(waiter);
+                        }
+                    }
+                });
+                return waiter;
+            } else {
+                queueRejections++;
+                rejection = "Too many requests are waiting to be sent to the cookbook server.";
+            }
+        }
+
+        if (permit != null) {
+            waiter.set(permit);
+        } else {
+            waiter.setException(new CookbookRetrievalException(rejection));
+        }
+        return waiter;
+    }
+
+    /**
+     * Fail every attempt waiting for a permit, and every attempt that asks for one from now on.
+     */
+    void close() {
+        final List<ResultFuture<Permit>> abandoned;
+        synchronized (this) {
+            closed = true;
+            abandoned = new ArrayList<ResultFuture<Permit>>(waiters);
+            waiters.clear();
+        }
+        for (ResultFuture<Permit> waiter : abandoned) {
+            waiter.setException(new CookbookRetrievalException("Client has been closed."));
+        }
+    }
+
+    /**
+     * Get the current limit.
+     *
+     * @return The number of attempts currently allowed in flight.
+     */
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Get the number of attempts waiting for a permit.
+     *
+     * @return The number of attempts currently waiting for a permit.
+     */
+    synchronized int getQueued() {
+        return waiters.size();
+    }
+
+    /**
+     * Get the number of attempts rejected because the queue was full.
+     *
+     * @return The number of attempts that were rejected because too many attempts were already waiting for a permit.
+     */
+    synchronized long getQueueRejections() {
+        return queueRejections;
+    }
+
+    /**
+     * Release the permit of an attempt that failed in a way that suggests the server is overloaded: it could not be completed, or was answered with a {@code 5xx} or {@code 429} status.
+     *
+     * @param permit
+     *            The {@link Permit} of the attempt.
+     */
+    void onDropped(Permit permit) {
+        release(permit, true, -1);
+    }
+
+    /**
+     * Release the permit of an attempt whose outcome says nothing about the server, such as an attempt that was cancelled or never sent.
+     *
+     * @param permit
+     *            The {@link Permit} of the attempt.
+     */
+    void onIgnored(Permit permit) {
+        release(permit, false, -1);
+    }
+
+    /**
+     * Release the permit of an attempt that was answered.
+     *
+     * @param permit
+     *            The {@link Permit} of the attempt.
+     * @param latencyMs
+     *            The latency of the answer, in milliseconds.
+     */
+    void onSuccess(Permit permit, long latencyMs) {
+        release(permit, false, latencyMs);
+    }
+
+    /**
+     * Stop granting permits for a while, as asked by the server in a {@code Retry-After} header. Attempts already in flight are not affected; attempts asking for a permit wait in the queue.
+     *
+     * @param pauseMs
+     *            The amount of time, in milliseconds, for which no permits are to be granted.
+     */
+    void pause(long pauseMs) {
+        synchronized (this) {
+            final long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pauseMs);
+            if (paused && pausedUntilNanos - until >= 0) {
+                return;
+            }
+            paused = true;
+            pausedUntilNanos = until;
+        }
+        try {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    grantWaiting();
+                }
+            }, pauseMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The invoker has been closed, and so has this limiter
+        }
+    }
+
+    /**
+     * Grant a permit immediately if the limit allows it, without waiting.
+     *
+     * @return {@code null} if the limit has been reached or permits are paused; otherwise, the granted {@link Permit}.
+     */
+    synchronized Permit tryAcquire() {
+        return !closed && waiters.isEmpty() && canGrant() ? grant() : null;
+    }
+
+    /**
+     * Determine whether a permit can be granted. Must be called while holding this limiter's lock.
+     *
+     * @return {@code true} if fewer attempts than the limit are in flight and permits are not paused; {@code false} otherwise.
+     */
+    private boolean canGrant() {
+        if (paused) {
+            if (System.nanoTime() - pausedUntilNanos < 0) {
+                return false;
+            }
+            paused = false;
+        }
+        return inFlight < (int) limit;
+    }
+
+    /**
+     * Grant a permit. Must be called while holding this limiter's lock.
+     *
+     * @return The granted {@link Permit}.
+     */
+    private Permit grant() {
+        inFlight++;
+        return new Permit(generation);
+    }
+
+    /**
+     * Grant permits to the waiting attempts for as long as the limit allows.
+     */
+    private void grantWaiting() {
+        while (true) {
+            final ResultFuture<Permit> waiter;
+            final Permit permit;
+            synchronized (this) {
+                if (waiters.isEmpty() || !canGrant()) {
+                    return;
+                }
+                waiter = waiters.removeFirst();
+                permit = grant();
+            }
+            // A waiter that gave up its place in the meantime hands the permit back
+            if (!waiter.set(permit)) {
+                onIgnored(permit);
+            }
+        }
+    }
+
+    /**
+     * Release a permit, adjusting the limit by the outcome of its attempt, and grant permits to waiting attempts.
+     *
+     * @param permit
+     *            The {@link Permit} to be released.
+     * @param dropped
+     *            {@code true} if the attempt failed in a way that suggests the server is overloaded.
+     * @param latencyMs
+     *            The latency of the answer, in milliseconds; {@code -1} if the attempt was not answered, or its answer is not to be measured.
+     */
+    private void release(Permit permit, boolean dropped, long latencyMs) {
+        synchronized (this) {
+            if (permit.released) {
+                return;
+            }
+            permit.released = true;
+            final int used = inFlight;
+            inFlight--;
+
+            final boolean queueing = latencyMs >= 0 && isQueueing(latencyMs);
+            if (dropped || queueing) {
+                // Attempts sent before the limit last shrank were sent under the old limit, and their failures are already accounted for
+                if (permit.generation == generation) {
+                    limit = Math.max(1, limit * (dropped ? BACKOFF_RATIO : LATENCY_BACKOFF_RATIO));
+                    generation++;
+                }
+            } else if (latencyMs >= 0 && used * 2 >= (int) limit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        }
+        grantWaiting();
+    }
+
+    /**
+     * Record the latency of an answer against the baseline - the fastest recent answer - and determine whether it is a sign of queueing at the server. Must be called while holding this
+     * limiter's lock.
+     *
+     * @param latencyMs
+     *            The latency of the answer, in milliseconds.
+     * @return {@code true} if the answer was much slower than the baseline; {@code false} otherwise.
+     */
+    private boolean isQueueing(long latencyMs) {
+        final boolean queueing = baselineLatencyMs >= 0 && latencyMs > baselineLatencyMs * LATENCY_TOLERANCE && latencyMs - baselineLatencyMs > LATENCY_SLACK_MS;
+        // The baseline is the fastest answer of the previous window, or of this one if faster, so that it follows a server whose unloaded latency changes
+        windowMinimumMs = Math.min(windowMinimumMs, latencyMs);
+        if (baselineLatencyMs < 0 || latencyMs < baselineLatencyMs) {
+            baselineLatencyMs = latencyMs;
+        }
+        if (++windowSamples >= BASELINE_SAMPLES) {
+            baselineLatencyMs = windowMinimumMs;
+            windowMinimumMs = Long.MAX_VALUE;
+            windowSamples = 0;
+        }
+        return queueing;
+    }
+
+    /**
+     * Permission for an attempt to be in flight. Each permit is released exactly once; releasing it again has no effect.
+     *
+     * @author Joshua Hyde
+     */
+    static class Permit {
+        private final long generation;
+        private boolean released;
+
+        /**
+         * Create a permit.
+         *
+         * @param generation
+         *            The number of times the limit had shrunk when the permit was granted.
+         */
+        Permit(long generation) {
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+/**
+ * A bounded cache of parsed documents keyed by the URL from which they were retrieved, along with the validators ({@code ETag} and {@code Last-Modified}) the server sent with them. The validators
+ * are sent back on subsequent requests for the same URL so that the server can answer {@code 304 Not Modified} and the previously-parsed document can be reused.
+ *
+ * @author Joshua Hyde
+ * @param <T>
+ *            The type of document held by the cache.
+ */
+
+class ConditionalCache<T> {
+    private final Map<String, Validated<T>> entries;
+    private final int maximumSize;
+
+    /**
+     * Create a cache.
+     *
+     * @param maximumSize
+     *            The maximum number of documents to be held; if {@code 0} or less, nothing is cached and no requests are made conditional.
+     */
+    ConditionalCache(final int maximumSize) {
+        this.maximumSize = maximumSize;
+        this.entries = new LinkedHashMap<String, Validated<T>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 2916486066357221358L;
+
+            @Override
+            protected boolean removeEldestEntry(Entry<String, Validated<T>> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Make a request conditional on the document having changed since it was cached.
+     *
+     * @param request
+     *            The {@link Invocation.Builder} of the request.
+     * @param validated
+     *            The cached {@link Validated} document; may be {@code null}, in which case the request is left unconditional.
+     * @return The given request.
+     */
+    Invocation.Builder condition(Invocation.Builder request, Validated<T> validated) {
+        if (validated == null) {
+            return request;
+        }
+        if (validated.getEntityTag() != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, validated.getEntityTag());
+        }
+        if (validated.getLastModified() != null) {
+            request.header(HttpHeaders.IF_MODIFIED_SINCE, validated.getLastModified());
+        }
+        return request;
+    }
+
+    /**
+     * Get the cached document retrieved from the given URL.
+     *
+     * @param url
+     *            The URL of the document.
+     * @return {@code null} if no document is cached for the given URL; otherwise, the {@link Validated} document.
+     */
+    Validated<T> get(String url) {
+        if (maximumSize <= 0) {
+            return null;
+        }
+        synchronized (entries) {
+            return entries.get(url);
+        }
+    }
+
+    /**
+     * Cache a document retrieved elsewhere, unless a document is already cached for its URL.
+     *
+     * @param url
+     *            The URL from which the document was retrieved.
+     * @param validated
+     *            The {@link Validated} document.
+     */
+    void seed(String url, Validated<T> validated) {
+        if (maximumSize <= 0) {
+            return;
+        }
+        synchronized (entries) {
+            if (!entries.containsKey(url)) {
+                entries.put(url, validated);
+            }
+        }
+    }
+
+    /**
+     * Determine whether a response indicates that a cached document is still current.
+     *
+     * @param response
+     *            The {@link Response} to a conditional request.
+     * @param validated
+     *            The {@link Validated} document on which the request was conditioned; may be {@code null}.
+     * @return {@code true} if the cached document can be reused; {@code false} if not.
+     */
+    boolean isNotModified(Response response, Validated<T> validated) {
+        return validated != null && response.getStatus() == Response.Status.NOT_MODIFIED.getStatusCode();
+    }
+
+    /**
+     * Cache a document, if the server supplied validators for it.
+     *
+     * @param url
+     *            The URL from which the document was retrieved.
+     * @param response
+     *            The {@link Response} that carried the document.
+     * @param document
+     *            The parsed document.
+     */
+    void store(String url, Response response, T document) {
+        if (maximumSize <= 0) {
+            return;
+        }
+        final String entityTag = response.getHeaderString(HttpHeaders.ETAG);
+        final String lastModified = response.getHeaderString(HttpHeaders.LAST_MODIFIED);
+        if (entityTag == null && lastModified == null) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(url, new Validated<T>(entityTag, lastModified, document));
+        }
+    }
+
+    /**
+     * A cached document and its validators.
+     *
+     * @author Joshua Hyde
+     * @param <T>
+     *            The type of the document.
+     */
+    static class Validated<T> {
+        private final String entityTag;
+        private final String lastModified;
+        private final T document;
+
+        /**
+         * Create a cached document.
+         *
+         * @param entityTag
+         *            The {@code ETag} sent with the document; may be {@code null}.
+         * @param lastModified
+         *            The {@code Last-Modified} date sent with the document; may be {@code null}.
+         * @param document
+         *            The parsed document.
+         */
+        Validated(String entityTag, String lastModified, T document) {
+            this.entityTag = entityTag;
+            this.lastModified = lastModified;
+            this.document = document;
+        }
+
+        /**
+         * Get the parsed document.
+         *
+         * @return The parsed document.
+         */
+        T getDocument() {
+            return document;
+        }
+
+        /**
+         * Get the entity tag of the document.
+         *
+         * @return The {@code ETag} sent with the document; {@code null} if none was sent.
+         */
+        String getEntityTag() {
+            return entityTag;
+        }
+
+        /**
+         * Get the last-modified date of the document.
+         *
+         * @return The {@code Last-Modified} date sent with the document; {@code null} if none was sent.
+         */
+        String getLastModified() {
+            return lastModified;
+        }
+    }
+}
@@ -0,0 +1,383 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseFactory;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.StatusLine;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
+import org.apache.http.impl.conn.DefaultHttpResponseParserFactory;
+import org.apache.http.io.HttpMessageParserFactory;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * The negotiation and decoding of compressed responses for a {@link PooledTransport}. A transport without compression enabled has none of this installed, and leaves content encoding to the
+ * underlying HTTP client.
+ * <p />
+ * A {@link #getFilter() filter} asks for gzip or deflate content encoding on every request that does not state its own preference. Responses are decoded as they are parsed off the connection,
+ * before the HTTP client sees them: the {@link #getParserFactory() parser factory} produces responses whose bodies, if encoded, are replaced with a stream that inflates the body as it is read
+ * and counts the bytes on both sides of the decoder. The headers describing the encoded body are left in place until the filter sees the response, because the HTTP client needs the
+ * {@code Content-Length} to keep the connection alive; the filter then removes them, so the rest of the client only ever sees the decoded form.
+ *
+ * @author Joshua Hyde
+ */
+
+final class ContentDecoding {
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String ACCEPTED_ENCODINGS = "gzip, deflate";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private final AtomicLong encodedResponses = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    private final Filter filter = new Filter();
+
+    /**
+     * Get the filter that asks for compressed responses and hides the encoding of those that have been decoded.
+     *
+     * @return An object that must be registered with the client as both a {@link ClientRequestFilter} and a {@link ClientResponseFilter}.
+     */
+    Object getFilter() {
+        return filter;
+    }
+
+    /**
+     * Get a factory of parsers that decode the responses they parse.
+     *
+     * @return A {@link HttpMessageParserFactory} to be used by every connection of the transport.
+     */
+    HttpMessageParserFactory<HttpResponse> getParserFactory() {
+        return new DefaultHttpResponseParserFactory(new DecodingResponseFactory());
+    }
+
+    /**
+     * Get the current statistics of the responses decoded.
+     *
+     * @return A {@link CompressionStatistics} object representing the bytes received and decoded so far.
+     */
+    CompressionStatistics getStatistics() {
+        return new CompressionStatistics(encodedResponses.get(), compressedBytes.get(), uncompressedBytes.get());
+    }
+
+    /**
+     * Get the decoder for a content encoding.
+     *
+     * @param contentEncoding
+     *            The value of the {@code Content-Encoding} header of a response; may be {@code null}.
+     * @return {@code null} if the response is not encoded or is encoded in a way that is not decoded here; otherwise, the {@link Codec} that decodes it.
+     */
+    private static Codec getCodec(String contentEncoding) {
+        if (contentEncoding == null) {
+            return null;
+        }
+        final String value = contentEncoding.trim().toLowerCase(Locale.ENGLISH);
+        if ("gzip".equals(value) || "x-gzip".equals(value)) {
+            return Codec.GZIP;
+        } else if ("deflate".equals(value)) {
+            return Codec.DEFLATE;
+        }
+        return null;
+    }
+
+    /**
+     * The content encodings that are decoded.
+     *
+     * @author Joshua Hyde
+     */
+    private static enum Codec {
+        /**
+         * The gzip file format.
+         */
+        GZIP {
+            @Override
+            InputStream decode(InputStream in) throws IOException {
+                return new GZIPInputStream(in);
+            }
+        },
+        /**
+         * The zlib format; because some servers send raw deflate data under the same name, the zlib header is looked for before the data is inflated.
+         */
+        DEFLATE {
+            @Override
+            InputStream decode(InputStream in) throws IOException {
+                final PushbackInputStream pushback = new PushbackInputStream(in, 2);
+                final byte[] header = new byte[2];
+                int read = 0;
+                while (read < header.length) {
+                    final int count = pushback.read(header, read, header.length - read);
+                    if (count < 0) {
+                        break;
+                    }
+                    read += count;
+                }
+                pushback.unread(header, 0, read);
+                final boolean zlib = read == header.length && (header[0] & 0x0f) == 8 && (((header[0] & 0xff) << 8) | (header[1] & 0xff)) % 31 == 0;
+                return new ReleasingInflaterInputStream(pushback, new Inflater(!zlib));
+            }
+        };
+
+        /**
+         * Wrap an encoded stream in a decoder.
+         *
+         * @param in
+         *            The {@link InputStream} of encoded bytes.
+         * @return An {@link InputStream} of decoded bytes.
+         * @throws IOException
+         *             If the beginning of the encoded stream cannot be read.
+         */
+        abstract InputStream decode(InputStream in) throws IOException;
+    }
+
+    /**
+     * A filter that asks for compressed responses to requests that do not already state which encodings they accept, and removes the headers describing the encoded body from responses that
+     * have been decoded.
+     *
+     * @author Joshua Hyde
+     */
+    private static class Filter implements ClientRequestFilter, ClientResponseFilter {
+        @Override
+        public void filter(ClientRequestContext requestContext) throws IOException {
+            if (!requestContext.getHeaders().containsKey(ACCEPT_ENCODING)) {
+                requestContext.getHeaders().putSingle(ACCEPT_ENCODING, ACCEPTED_ENCODINGS);
+            }
+        }
+
+        @Override
+        public void filter(ClientRequestContext requestContext, ClientResponseContext responseContext) throws IOException {
+            if (getCodec(responseContext.getHeaderString(CONTENT_ENCODING)) != null) {
+                responseContext.getHeaders().remove(CONTENT_ENCODING);
+                responseContext.getHeaders().remove("Content-Length");
+                responseContext.getHeaders().remove("Content-MD5");
+            }
+        }
+    }
+
+    /**
+     * A response factory that produces {@link DecodingResponse decoding responses}.
+     *
+     * @author Joshua Hyde
+     */
+    private class DecodingResponseFactory implements HttpResponseFactory {
+        @Override
+        public HttpResponse newHttpResponse(ProtocolVersion version, int status, HttpContext context) {
+            return newHttpResponse(new BasicStatusLine(version, status, EnglishReasonPhraseCatalog.INSTANCE.getReason(status, null)), context);
+        }
+
+        @Override
+        public HttpResponse newHttpResponse(StatusLine statusLine, HttpContext context) {
+            return new DecodingResponse(statusLine);
+        }
+    }
+
+    /**
+     * A response that, when given an encoded body by its connection, replaces it with a decoded one. Its headers are not changed, so the body it is later given back by the HTTP client, which
+     * wraps the decoded body, must not be decoded again.
+     *
+     * @author Joshua Hyde
+     */
+    private class DecodingResponse extends BasicHttpResponse {
+        private boolean decoded;
+
+        /**
+         * Create a response.
+         *
+         * @param statusLine
+         *            The {@link StatusLine} of the response.
+         */
+        public DecodingResponse(StatusLine statusLine) {
+            super(statusLine);
+        }
+
+        @Override
+        public void setEntity(HttpEntity entity) {
+            final Header contentEncoding = getFirstHeader(CONTENT_ENCODING);
+            final Codec codec = decoded || entity == null || entity.getContentLength() == 0 || contentEncoding == null ? null : getCodec(contentEncoding.getValue());
+            if (codec == null) {
+                super.setEntity(entity);
+                return;
+            }
+            decoded = true;
+            encodedResponses.incrementAndGet();
+            super.setEntity(new DecodedEntity(entity, codec));
+        }
+    }
+
+    /**
+     * An entity whose content is the decoded content of an encoded entity. The decoded stream is created once: the HTTP client asks for the content again when it releases the connection, and
+     * must be given the same stream to drain.
+     *
+     * @author Joshua Hyde
+     */
+    private class DecodedEntity extends HttpEntityWrapper {
+        private final Codec codec;
+        private InputStream content;
+
+        /**
+         * Create an entity.
+         *
+         * @param wrappedEntity
+         *            The encoded {@link HttpEntity}.
+         * @param codec
+         *            The {@link Codec} by which the entity is to be decoded.
+         */
+        public DecodedEntity(HttpEntity wrappedEntity, Codec codec) {
+            super(wrappedEntity);
+            this.codec = codec;
+        }
+
+        @Override
+        public synchronized InputStream getContent() throws IOException {
+            if (content != null) {
+                return content;
+            }
+            final InputStream encoded = new CountingInputStream(super.getContent(), compressedBytes);
+            try {
+                content = new CountingInputStream(codec.decode(encoded), uncompressedBytes);
+            } catch (IOException e) {
+                encoded.close();
+                throw e;
+            }
+            return content;
+        }
+
+        @Override
+        public Header getContentEncoding() {
+            return null;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public void writeTo(OutputStream outstream) throws IOException {
+            final InputStream content = getContent();
+            try {
+                final byte[] buffer = new byte[4096];
+                int read;
+                while ((read = content.read(buffer)) >= 0) {
+                    outstream.write(buffer, 0, read);
+                }
+            } finally {
+                content.close();
+            }
+        }
+    }
+
+    /**
+     * A stream that adds the bytes read through it to a counter.
+     *
+     * @author Joshua Hyde
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final AtomicLong counter;
+
+        /**
+         * Create a stream.
+         *
+         * @param in
+         *            The {@link InputStream} to be counted.
+         * @param counter
+         *            The {@link AtomicLong} to which the bytes read are to be added.
+         */
+        public CountingInputStream(InputStream in, AtomicLong counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int read = super.read();
+            if (read >= 0) {
+                counter.incrementAndGet();
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read > 0) {
+                counter.addAndGet(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(n);
+            counter.addAndGet(skipped);
+            return skipped;
+        }
+    }
+
+    /**
+     * An inflating stream that releases its {@link Inflater}, which it does not share, when closed.
+     *
+     * @author Joshua Hyde
+     */
+    private static class ReleasingInflaterInputStream extends InflaterInputStream {
+        /**
+         * Create a stream.
+         *
+         * @param in
+         *            The {@link InputStream} of deflated bytes.
+         * @param inflater
+         *            The {@link Inflater} to be used, and released, by the stream.
+         */
+        public ReleasingInflaterInputStream(InputStream in, Inflater inflater) {
+            super(in, inflater);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                inf.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.client.Invocation;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.config.Registry;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+
+import com.github.jrh3k5.chef.client.Deadline;
+
+/**
+ * The enforcement of the {@link Deadline deadlines} of the requests sent by a {@link JerseyCookbookClient}.
+ * <p />
+ * The connector ignores timeouts set on individual requests, so deadlines are enforced by the transport's connection manager instead. Each attempt made by the {@link ResilientInvoker} carries its
+ * deadline as a request property; a {@link #getFilter() filter} hands it to the {@link EnforcingConnectionManager}, which runs on the thread sending the request. The manager shortens the wait for a
+ * pooled connection and the connection timeout to what remains of the deadline, and shuts down the leased connection - aborting the exchange, whatever it is blocked on - when the deadline expires
+ * or is cancelled before the connection is released.
+ *
+ * @author Joshua Hyde
+ */
+
+final class Deadlines {
+    private static final String DEADLINE_PROPERTY = Deadlines.class.getName() + ".deadline";
+    private static final ThreadLocal<Deadline> SENDING = new ThreadLocal<Deadline>();
+    private static final Filter FILTER = new Filter();
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private Deadlines() {
+    }
+
+    /**
+     * Bind a request to a deadline.
+     *
+     * @param request
+     *            The {@link Invocation.Builder} of the request.
+     * @param deadline
+     *            The {@link Deadline} within which the request is to be answered; {@code null} if the request is not bounded.
+     * @return The given request.
+     */
+    static Invocation.Builder bind(Invocation.Builder request, Deadline deadline) {
+        return deadline == null ? request : request.property(DEADLINE_PROPERTY, deadline);
+    }
+
+    /**
+     * Get the filter that hands the deadlines of requests to the connection manager as they are sent.
+     *
+     * @return An object that must be registered with the client as both a {@link ClientRequestFilter} and a {@link ClientResponseFilter}.
+     */
+    static Object getFilter() {
+        return FILTER;
+    }
+
+    /**
+     * Shut down a connection, aborting any exchange in progress on it.
+     *
+     * @param connection
+     *            The {@link HttpClientConnection} to be shut down.
+     */
+    private static void abort(HttpClientConnection connection) {
+        try {
+            connection.shutdown();
+        } catch (IOException e) {
+            // The exchange fails regardless
+        } catch (RuntimeException e) {
+            // The connection has already been released
+        }
+    }
+
+    /**
+     * A connection manager that bounds the connections it leases by the deadlines of the requests for which they are leased.
+     *
+     * @author Joshua Hyde
+     */
+    static class EnforcingConnectionManager extends PoolingHttpClientConnectionManager {
+        private final ConcurrentMap<HttpClientConnection, Abort> armed = new ConcurrentHashMap<HttpClientConnection, Abort>();
+        private final ScheduledExecutorService scheduler;
+
+        /**
+         * Create a connection manager.
+         *
+         * @param socketFactoryRegistry
+         *            The {@link Registry} of the {@link ConnectionSocketFactory} objects by which connections are established.
+         * @param connectionFactory
+         *            The {@link HttpConnectionFactory} by which connections are created.
+         * @param scheduler
+         *            The {@link ScheduledExecutorService} by which connections are aborted when their deadlines expire.
+         */
+        EnforcingConnectionManager(Registry<ConnectionSocketFactory> socketFactoryRegistry, HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> connectionFactory,
+                ScheduledExecutorService scheduler) {
+            super(socketFactoryRegistry, connectionFactory);
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public void connect(HttpClientConnection managedConn, HttpRoute route, int connectTimeout, HttpContext context) throws IOException {
+            final Deadline deadline = SENDING.get();
+            if (deadline == null) {
+                super.connect(managedConn, route, connectTimeout, context);
+                return;
+            }
+
+            final long remainingMs = deadline.getRemainingMillis();
+            if (remainingMs == 0) {
+                throw new ConnectTimeoutException("Deadline expired before connecting to " + route.getTargetHost());
+            }
+            final int boundedTimeout = (int) Math.min(remainingMs, Integer.MAX_VALUE);
+            super.connect(managedConn, route, connectTimeout > 0 ? Math.min(connectTimeout, boundedTimeout) : boundedTimeout, context);
+        }
+
+        @Override
+        public void releaseConnection(HttpClientConnection managedConn, Object state, long keepalive, TimeUnit tunit) {
+            final Abort abort = armed.remove(managedConn);
+            if (abort != null) {
+                abort.disarm();
+            }
+            super.releaseConnection(managedConn, state, keepalive, tunit);
+        }
+
+        @Override
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            final ConnectionRequest request = super.requestConnection(route, state);
+            final Deadline deadline = SENDING.get();
+            return deadline == null ? request : new BoundedConnectionRequest(request, deadline);
+        }
+
+        /**
+         * Arm the abort of a leased connection at the expiry or cancellation of its deadline.
+         *
+         * @param connection
+         *            The leased {@link HttpClientConnection}.
+         * @param deadline
+         *            The {@link Deadline} by which the connection is bounded.
+         */
+        private void arm(final HttpClientConnection connection, Deadline deadline) {
+            final Abort abort = new Abort(connection);
+            armed.put(connection, abort);
+            abort.registration = deadline.onCancel(abort);
+            try {
+                abort.expiry = scheduler.schedule(abort, deadline.getRemainingMillis(), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // The transport is being closed; the connection is aborted with it
+            }
+        }
+
+        /**
+         * The abort of a leased connection.
+         *
+         * @author Joshua Hyde
+         */
+        private static class Abort implements Runnable {
+            private final HttpClientConnection connection;
+            private volatile Deadline.Registration registration;
+            private volatile ScheduledFuture<?> expiry;
+
+            /**
+             * Create an abort.
+             *
+             * @param connection
+             *            The {@link HttpClientConnection} to be aborted.
+             */
+            public Abort(HttpClientConnection connection) {
+                this.connection = connection;
+            }
+
+            @Override
+            public void run() {
+                abort(connection);
+            }
+
+            /**
+             * Stop this abort from being run, as the connection has been released.
+             */
+            public void disarm() {
+                final Deadline.Registration currentRegistration = registration;
+                if (currentRegistration != null) {
+                    currentRegistration.remove();
+                }
+                final ScheduledFuture<?> currentExpiry = expiry;
+                if (currentExpiry != null) {
+                    currentExpiry.cancel(false);
+                }
+            }
+        }
+
+        /**
+         * A request for a pooled connection that waits no longer than its deadline allows and is abandoned if the deadline is cancelled.
+         *
+         * @author Joshua Hyde
+         */
+        private class BoundedConnectionRequest implements ConnectionRequest {
+            private final ConnectionRequest delegate;
+            private final Deadline deadline;
+
+            /**
+             * Create a request.
+             *
+             * @param delegate
+             *            The {@link ConnectionRequest} made of the pool.
+             * @param deadline
+             *            The {@link Deadline} by which the request is bounded.
+             */
+            public BoundedConnectionRequest(ConnectionRequest delegate, Deadline deadline) {
+                this.delegate = delegate;
+                this.deadline = deadline;
+            }
+
+            @Override
+            public boolean cancel() {
+                return delegate.cancel();
+            }
+
+            @Override
+            public HttpClientConnection get(long timeout, TimeUnit tunit) throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                final long remainingMs = deadline.getRemainingMillis();
+                if (remainingMs == 0 || deadline.isCancelled()) {
+                    delegate.cancel();
+                    throw new ConnectionPoolTimeoutException("Deadline passed before a connection was leased.");
+                }
+
+                final Deadline.Registration registration = deadline.onCancel(new Runnable() {
+                    @Override
+                    public void run() {
+                        delegate.cancel();
+                    }
+                });
+                final HttpClientConnection connection;
+                try {
+                    connection = delegate.get(timeout > 0 ? Math.min(tunit.toMillis(timeout), remainingMs) : remainingMs, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    // A lease cancelled by the deadline is reported as such, lest the client take it for an interruption of the calling thread
+                    if (deadline.isCancelled() && !Thread.currentThread().isInterrupted()) {
+                        throw new ConnectionPoolTimeoutException("Deadline was cancelled before a connection was leased.");
+                    }
+                    throw e;
+                } finally {
+                    registration.remove();
+                }
+                arm(connection, deadline);
+                return connection;
+            }
+        }
+    }
+
+    /**
+     * A filter that exposes the deadline of the request being sent to the connection manager.
+     *
+     * @author Joshua Hyde
+     */
+    private static class Filter implements ClientRequestFilter, ClientResponseFilter {
+        @Override
+        public void filter(ClientRequestContext requestContext) throws IOException {
+            final Deadline deadline = (Deadline) requestContext.getProperty(DEADLINE_PROPERTY);
+            if (deadline == null) {
+                SENDING.remove();
+                return;
+            }
+            SENDING.set(deadline);
+        }
+
+        @Override
+        public void filter(ClientRequestContext requestContext, ClientResponseContext responseContext) throws IOException {
+            SENDING.remove();
+        }
+    }
+}
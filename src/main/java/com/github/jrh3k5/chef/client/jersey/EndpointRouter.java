@@ -0,0 +1,364 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.Invocation;
+
+/**
+ * Routes the requests of a {@link JerseyCookbookClient} across several servers of the same cookbook API, such as internal mirrors and the public site.
+ * <p />
+ * Requests are built against the URL of the first server, the <i>canonical</i> URL. Each attempt made by the {@link ResilientInvoker} carries a {@link Route} as a request property, and a
+ * {@link #getFilter() filter} rewrites the attempt's URL to the server with the lowest exponentially weighted moving average (EWMA) latency as the attempt is sent. A failure counts towards
+ * the average as an answer that took the whole cooldown, and the server is passed over until it has cooled down, so that a server that keeps failing is not preferred again as soon as it is
+ * available.
+ * <p />
+ * A server that has not answered within a cooldown - because it is new, has failed, or has been slower than the others - is measured with a single probe: one attempt is sent to it ahead of the
+ * fastest server, and no more until that attempt is answered. Until any server has answered, the attempts that are not probes are spread evenly among the servers. A retry or hedge of an attempt
+ * is routed away from the server of that attempt when another server is available, so that a failing or slow server is failed over.
+ *
+ * @author Joshua Hyde
+ */
+
+class EndpointRouter {
+    private static final String ROUTE_PROPERTY = EndpointRouter.class.getName() + ".route";
+    /**
+     * The weight of the latest latency in the moving average.
+     */
+    private static final double EWMA_WEIGHT = 0.2;
+    /**
+     * The number of probes that may await an answer from a server at once.
+     */
+    private static final int MAX_PROBES = 1;
+    private final List<Endpoint> endpoints = new ArrayList<Endpoint>();
+    private final String canonicalUrl;
+    private final long cooldownNanos;
+    private final Filter filter = new Filter();
+
+    /**
+     * Create a router.
+     *
+     * @param serviceUrls
+     *            The URLs identifying the servers among which requests are to be routed, in order of preference; the first is the canonical URL.
+     * @param cooldownMs
+     *            The amount of time, in milliseconds, for which a server whose request failed is passed over; also the latency counted for a failure, and how long a server may go without
+     *            answering before it is probed.
+     */
+    EndpointRouter(List<String> serviceUrls, long cooldownMs) {
+        for (String serviceUrl : serviceUrls) {
+            endpoints.add(new Endpoint(serviceUrl));
+        }
+        this.canonicalUrl = endpoints.get(0).baseUrl;
+        this.cooldownNanos = TimeUnit.MILLISECONDS.toNanos(cooldownMs);
+    }
+
+    /**
+     * Rewrite a URL served by any of the servers to the canonical URL, so that requests for it are routed.
+     *
+     * @param url
+     *            The URL to be rewritten.
+     * @return The URL as served by the canonical server; the given URL if it is not served by any of the servers.
+     */
+    String canonicalize(String url) {
+        for (Endpoint endpoint : endpoints) {
+            if (url.startsWith(endpoint.baseUrl)) {
+                return canonicalUrl + url.substring(endpoint.baseUrl.length());
+            }
+        }
+        return url;
+    }
+
+    /**
+     * Get the filter that routes requests as they are sent.
+     *
+     * @return An object that must be registered with the client as a {@link ClientRequestFilter} ahead of any filter that reads the URL of a request.
+     */
+    Object getFilter() {
+        return filter;
+    }
+
+    /**
+     * Get a snapshot of how each server has answered.
+     *
+     * @return A {@link List} of {@link EndpointStatistics}, in the order in which the servers were given.
+     */
+    synchronized List<EndpointStatistics> getStatistics() {
+        final long now = System.nanoTime();
+        final List<EndpointStatistics> statistics = new ArrayList<EndpointStatistics>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            statistics.add(new EndpointStatistics(endpoint.serviceUrl, endpoint.requests, endpoint.failures, endpoint.averageLatencyMs, endpoint.isAvailable(now)));
+        }
+        return statistics;
+    }
+
+    /**
+     * Determine whether a server other than the given one is available, so that a failed attempt can be retried elsewhere without backing off.
+     *
+     * @param endpoint
+     *            The {@link Endpoint} of the failed attempt; may be {@code null}.
+     * @return {@code true} if another server is available; {@code false} if not.
+     */
+    synchronized boolean hasAlternative(Endpoint endpoint) {
+        if (endpoint == null) {
+            return false;
+        }
+        final long now = System.nanoTime();
+        for (Endpoint candidate : endpoints) {
+            if (candidate != endpoint && candidate.isAvailable(now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Record the failure of a routed attempt; the server is passed over until it has cooled down, and the failure counts towards its average latency as an answer that took the whole cooldown.
+     *
+     * @param route
+     *            The {@link Route} of the attempt.
+     */
+    synchronized void recordFailure(Route route) {
+        final Endpoint endpoint = route.getEndpoint();
+        if (endpoint != null) {
+            final long now = System.nanoTime();
+            endpoint.answered(route, TimeUnit.NANOSECONDS.toMillis(cooldownNanos), now);
+            endpoint.failures++;
+            endpoint.coolingDown = true;
+            endpoint.availableAtNanos = now + cooldownNanos;
+        }
+    }
+
+    /**
+     * Record the answer to a routed attempt.
+     *
+     * @param route
+     *            The {@link Route} of the attempt.
+     * @param latencyMs
+     *            The latency of the answer, in milliseconds.
+     */
+    synchronized void recordSuccess(Route route, long latencyMs) {
+        final Endpoint endpoint = route.getEndpoint();
+        if (endpoint != null) {
+            endpoint.answered(route, latencyMs, System.nanoTime());
+            endpoint.coolingDown = false;
+        }
+    }
+
+    /**
+     * Attach a new route to a request.
+     *
+     * @param request
+     *            The {@link Invocation.Builder} of the attempt to be routed.
+     * @param previous
+     *            The {@link Route} of the attempt that this attempt retries or hedges; {@code null} if it is the first attempt.
+     * @return The {@link Route} that records the server to which the attempt is sent.
+     */
+    Route route(Invocation.Builder request, Route previous) {
+        final Route route = new Route(previous == null ? null : previous.getEndpoint());
+        request.property(ROUTE_PROPERTY, route);
+        return route;
+    }
+
+    /**
+     * Choose the server to which an attempt is sent.
+     *
+     * @param route
+     *            The {@link Route} of the attempt, which is marked as a probe if the chosen server is being measured.
+     * @return The chosen {@link Endpoint}.
+     */
+    private synchronized Endpoint select(Route route) {
+        final long now = System.nanoTime();
+        final Endpoint avoid = route.avoid;
+        Endpoint selected = null;
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint != avoid && endpoint.isAvailable(now) && endpoint.isProbeDue(now, cooldownNanos)) {
+                endpoint.probes++;
+                endpoint.probedAtNanos = now;
+                route.probe = true;
+                selected = endpoint;
+                break;
+            }
+        }
+        if (selected == null) {
+            for (Endpoint endpoint : endpoints) {
+                if (endpoint != avoid && endpoint.isAvailable(now) && endpoint.averageLatencyMs >= 0 && (selected == null || endpoint.averageLatencyMs < selected.averageLatencyMs)) {
+                    selected = endpoint;
+                }
+            }
+        }
+        if (selected == null) {
+            // No available server has answered yet, and each is already being probed
+            for (Endpoint endpoint : endpoints) {
+                if (endpoint != avoid && endpoint.isAvailable(now) && (selected == null || endpoint.requests < selected.requests)) {
+                    selected = endpoint;
+                }
+            }
+        }
+        if (selected == null) {
+            // Every other server is cooling down: stay where the previous attempt went if it is available, or else use whichever server recovers first
+            if (avoid != null && avoid.isAvailable(now)) {
+                selected = avoid;
+            } else {
+                for (Endpoint endpoint : endpoints) {
+                    if (selected == null || endpoint.availableAtNanos - selected.availableAtNanos < 0) {
+                        selected = endpoint;
+                    }
+                }
+            }
+        }
+        selected.requests++;
+        return selected;
+    }
+
+    /**
+     * A server among which requests are routed.
+     *
+     * @author Joshua Hyde
+     */
+    static class Endpoint {
+        private final String serviceUrl;
+        private final String baseUrl;
+        private double averageLatencyMs = -1;
+        private long answeredAtNanos;
+        private boolean coolingDown;
+        private long availableAtNanos;
+        private int probes;
+        private long probedAtNanos;
+        private long requests;
+        private long failures;
+
+        /**
+         * Create an endpoint.
+         *
+         * @param serviceUrl
+         *            The URL identifying the server.
+         */
+        Endpoint(String serviceUrl) {
+            this.serviceUrl = serviceUrl;
+            this.baseUrl = serviceUrl.endsWith("/") ? serviceUrl : serviceUrl + "/";
+        }
+
+        /**
+         * Determine whether requests may be routed to this server.
+         *
+         * @param now
+         *            The current value of {@link System#nanoTime()}.
+         * @return {@code true} if this server is not cooling down after a failure; {@code false} if it is.
+         */
+        private boolean isAvailable(long now) {
+            return !coolingDown || now - availableAtNanos >= 0;
+        }
+
+        /**
+         * Determine whether this server is to be probed: it has not answered within the given interval, and is not already awaiting as many probes as it may. A probe that has gone unanswered
+         * for the interval is assumed to have been abandoned.
+         *
+         * @param now
+         *            The current value of {@link System#nanoTime()}.
+         * @param intervalNanos
+         *            The amount of time, in nanoseconds, for which an answer is current.
+         * @return {@code true} if the next attempt is to be sent to this server to measure it; {@code false} if not.
+         */
+        private boolean isProbeDue(long now, long intervalNanos) {
+            if (averageLatencyMs >= 0 && now - answeredAtNanos < intervalNanos) {
+                return false;
+            }
+            if (probes >= MAX_PROBES && now - probedAtNanos >= intervalNanos) {
+                probes = 0;
+            }
+            return probes < MAX_PROBES;
+        }
+
+        /**
+         * Fold an answer into the moving average of this server's latency.
+         *
+         * @param route
+         *            The {@link Route} of the attempt that was answered.
+         * @param latencyMs
+         *            The latency to be counted for the answer, in milliseconds.
+         * @param now
+         *            The current value of {@link System#nanoTime()}.
+         */
+        private void answered(Route route, long latencyMs, long now) {
+            if (route.probe && probes > 0) {
+                probes--;
+            }
+            averageLatencyMs = averageLatencyMs < 0 ? latencyMs : EWMA_WEIGHT * latencyMs + (1 - EWMA_WEIGHT) * averageLatencyMs;
+            answeredAtNanos = now;
+        }
+    }
+
+    /**
+     * The routing of a single attempt. The server is chosen by the {@link Filter} as the attempt is sent, which may be on another thread than the one that built it.
+     *
+     * @author Joshua Hyde
+     */
+    static class Route {
+        private final Endpoint avoid;
+        private volatile Endpoint endpoint;
+        private boolean probe;
+
+        /**
+         * Create a route.
+         *
+         * @param avoid
+         *            The {@link Endpoint} to which the attempt is not to be sent if another server is available; may be {@code null}.
+         */
+        Route(Endpoint avoid) {
+            this.avoid = avoid;
+        }
+
+        /**
+         * Get the server to which the attempt was sent.
+         *
+         * @return {@code null} if the attempt has not been sent or was not for a URL served by the routed servers; otherwise, the {@link Endpoint} to which it was sent.
+         */
+        Endpoint getEndpoint() {
+            return endpoint;
+        }
+    }
+
+    /**
+     * A filter that sends each routed request to the server chosen for it.
+     *
+     * @author Joshua Hyde
+     */
+    private class Filter implements ClientRequestFilter {
+        @Override
+        public void filter(ClientRequestContext requestContext) throws IOException {
+            final Route route = (Route) requestContext.getProperty(ROUTE_PROPERTY);
+            if (route == null) {
+                return;
+            }
+            final String url = requestContext.getUri().toString();
+            if (!url.startsWith(canonicalUrl)) {
+                return;
+            }
+            final Endpoint endpoint = select(route);
+            route.endpoint = endpoint;
+            requestContext.setUri(URI.create(endpoint.baseUrl + url.substring(canonicalUrl.length())));
+        }
+    }
+}
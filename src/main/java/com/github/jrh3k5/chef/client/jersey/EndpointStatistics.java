@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * A point-in-time snapshot of how one of the servers of a {@link JerseyCookbookClient} has answered the requests routed to it.
+ *
+ * @author Joshua Hyde
+ */
+
+public class EndpointStatistics {
+    private final String serviceUrl;
+    private final long requests;
+    private final long failures;
+    private final double averageLatencyMs;
+    private final boolean available;
+
+    /**
+     * Create a snapshot of endpoint statistics.
+     *
+     * @param serviceUrl
+     *            The URL identifying the server.
+     * @param requests
+     *            The number of requests that have been routed to the server.
+     * @param failures
+     *            The number of those requests that failed.
+     * @param averageLatencyMs
+     *            The exponentially weighted moving average of the latency of the server's answers, in milliseconds, with each failure counted as an answer that took the whole cooldown; {@code -1} if the server has not yet answered.
+     * @param available
+     *            {@code true} if requests are currently routed to the server; {@code false} if it is cooling down after a failure.
+     */
+    public EndpointStatistics(String serviceUrl, long requests, long failures, double averageLatencyMs, boolean available) {
+        this.serviceUrl = serviceUrl;
+        this.requests = requests;
+        this.failures = failures;
+        this.averageLatencyMs = averageLatencyMs;
+        this.available = available;
+    }
+
+    /**
+     * Get the average latency of the server.
+     *
+     * @return The exponentially weighted moving average of the latency of the server's answers, in milliseconds, with each failure counted as an answer that took the whole cooldown; {@code -1} if the server has not yet answered.
+     */
+    public double getAverageLatencyMs() {
+        return averageLatencyMs;
+    }
+
+    /**
+     * Get the number of failed requests.
+     *
+     * @return The number of requests routed to the server that could not be sent or were answered with a {@code 5xx} or {@code 429} status.
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Get the number of requests routed to the server.
+     *
+     * @return The number of requests that have been routed to the server.
+     */
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * Get the URL of the server.
+     *
+     * @return The URL identifying the server.
+     */
+    public String getServiceUrl() {
+        return serviceUrl;
+    }
+
+    /**
+     * Determine whether requests are currently routed to the server.
+     *
+     * @return {@code true} if requests are currently routed to the server; {@code false} if it is cooling down after a failure.
+     */
+    public boolean isAvailable() {
+        return available;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.client.Invocation;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.jrh3k5.chef.client.metrics.MetricsListener;
+import com.github.jrh3k5.chef.client.metrics.RequestMetrics;
+import com.github.jrh3k5.chef.client.metrics.RequestMetrics.Operation;
+
+/**
+ * The measurement of the requests sent by a {@link JerseyCookbookClient} on behalf of a {@link MetricsListener}. A client without a listener has no instrumentation at all: none of the filters,
+ * wrappers and timings here are installed.
+ * <p />
+ * Each attempt made by the {@link ResilientInvoker} carries an {@link Exchange} as a request property. A {@link #getFilter() filter} starts the exchange as the request is sent and times the
+ * arrival of the response's headers; the response's body is then counted as it is read, and the exchange is finished when the body is closed. New connections are timed by
+ * {@link #timed(ConnectionSocketFactory) wrapping} the transport's socket factories, which run on the thread sending the request.
+ *
+ * @author Joshua Hyde
+ */
+
+final class Instrumentation {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Instrumentation.class);
+    private static final String EXCHANGE_PROPERTY = Instrumentation.class.getName() + ".exchange";
+    private static final String OPERATION_PROPERTY = Instrumentation.class.getName() + ".operation";
+    private static final ThreadLocal<Exchange> SENDING = new ThreadLocal<Exchange>();
+    private final MetricsListener listener;
+    private final Filter filter = new Filter();
+
+    /**
+     * Create instrumentation.
+     *
+     * @param listener
+     *            The {@link MetricsListener} to be told about requests.
+     */
+    Instrumentation(MetricsListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Attach a new exchange to a request.
+     *
+     * @param request
+     *            The {@link Invocation.Builder} of the request to be measured.
+     * @return The {@link Exchange} that measures the request.
+     */
+    Exchange begin(Invocation.Builder request) {
+        final Exchange exchange = new Exchange();
+        request.property(EXCHANGE_PROPERTY, exchange);
+        return exchange;
+    }
+
+    /**
+     * Tell the listener about an access to a cache.
+     *
+     * @param cache
+     *            The name of the cache.
+     * @param hit
+     *            {@code true} if the cache could answer; {@code false} if it could not.
+     */
+    void cacheAccessed(String cache, boolean hit) {
+        try {
+            listener.cacheAccessed(cache, hit);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Metrics listener failed to record cache access.", e);
+        }
+    }
+
+    /**
+     * Get the filter that measures requests as they are sent and answered.
+     *
+     * @return An object that must be registered with the client as both a {@link ClientRequestFilter} and a {@link ClientResponseFilter}.
+     */
+    Object getFilter() {
+        return filter;
+    }
+
+    /**
+     * Label a request with the operation it is sent for.
+     *
+     * @param request
+     *            The {@link Invocation.Builder} of the request.
+     * @param operation
+     *            The {@link Operation} the request is sent for.
+     * @return The given request.
+     */
+    static Invocation.Builder label(Invocation.Builder request, Operation operation) {
+        return request.property(OPERATION_PROPERTY, operation);
+    }
+
+    /**
+     * Wrap a socket factory so that the connections it establishes are timed.
+     *
+     * @param delegate
+     *            The {@link ConnectionSocketFactory} to be wrapped.
+     * @return A {@link ConnectionSocketFactory} that times the connections established by the given factory.
+     */
+    static ConnectionSocketFactory timed(ConnectionSocketFactory delegate) {
+        return new TimedSocketFactory(delegate);
+    }
+
+    /**
+     * The measurement of a single request. An exchange that has been started is finished exactly once: when the body of its response is closed, or when it fails.
+     *
+     * @author Joshua Hyde
+     */
+    final class Exchange {
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile Operation operation;
+        private volatile String host;
+        private volatile long startedAt;
+        private volatile long respondedAt;
+        private volatile long connectNanos;
+        private volatile int status = -1;
+
+        /**
+         * Finish this exchange as failed, if it has been started and has not yet finished.
+         *
+         * @param failure
+         *            The {@link Throwable} that failed the request.
+         */
+        void failed(Throwable failure) {
+            if (host != null && finished.compareAndSet(false, true)) {
+                final long failedAt = System.nanoTime();
+                final long respondedAt = this.respondedAt == 0 ? failedAt : this.respondedAt;
+                notifyCompleted(new RequestMetrics(operation, host, status, connectNanos, respondedAt - startedAt, failedAt - respondedAt, 0, failure));
+            }
+        }
+
+        /**
+         * Finish this exchange once the body of its response has been read.
+         *
+         * @param responseBytes
+         *            The number of bytes read from the body.
+         */
+        private void completed(long responseBytes) {
+            if (host != null && finished.compareAndSet(false, true)) {
+                notifyCompleted(new RequestMetrics(operation, host, status, connectNanos, respondedAt - startedAt, System.nanoTime() - respondedAt, responseBytes, null));
+            }
+        }
+
+        /**
+         * Record the time spent establishing a connection for this exchange.
+         *
+         * @param nanos
+         *            The time, in nanoseconds, spent establishing the connection.
+         */
+        private void connected(long nanos) {
+            connectNanos += nanos;
+        }
+
+        /**
+         * Tell the listener about a finished request, recovering from its failures.
+         *
+         * @param metrics
+         *            The {@link RequestMetrics} of the request.
+         */
+        private void notifyCompleted(RequestMetrics metrics) {
+            try {
+                listener.requestCompleted(metrics);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Metrics listener failed to record request.", e);
+            }
+        }
+
+        /**
+         * Record the arrival of the response's headers.
+         *
+         * @param status
+         *            The status of the response.
+         */
+        private void responded(int status) {
+            this.status = status;
+            this.respondedAt = System.nanoTime();
+        }
+
+        /**
+         * Start this exchange as its request is sent.
+         *
+         * @param operation
+         *            The {@link Operation} the request is sent for.
+         * @param host
+         *            The host to which the request is sent.
+         */
+        private void started(Operation operation, String host) {
+            this.operation = operation;
+            this.startedAt = System.nanoTime();
+            try {
+                listener.requestStarted(host);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Metrics listener failed to record request.", e);
+            }
+            this.host = host;
+        }
+    }
+
+    /**
+     * A filter that starts exchanges as their requests are sent and times the arrival of their responses.
+     *
+     * @author Joshua Hyde
+     */
+    private static class Filter implements ClientRequestFilter, ClientResponseFilter {
+        @Override
+        public void filter(ClientRequestContext requestContext) throws IOException {
+            final Exchange exchange = (Exchange) requestContext.getProperty(EXCHANGE_PROPERTY);
+            final Operation operation = (Operation) requestContext.getProperty(OPERATION_PROPERTY);
+            if (exchange == null || operation == null) {
+                SENDING.remove();
+                return;
+            }
+            final URI uri = requestContext.getUri();
+            exchange.started(operation, uri.getPort() < 0 ? uri.getHost() : uri.getHost() + ":" + uri.getPort());
+            SENDING.set(exchange);
+        }
+
+        @Override
+        public void filter(ClientRequestContext requestContext, ClientResponseContext responseContext) throws IOException {
+            SENDING.remove();
+            final Exchange exchange = (Exchange) requestContext.getProperty(EXCHANGE_PROPERTY);
+            if (exchange == null || exchange.host == null) {
+                return;
+            }
+            exchange.responded(responseContext.getStatus());
+            if (responseContext.hasEntity()) {
+                responseContext.setEntityStream(new CountingInputStream(responseContext.getEntityStream(), exchange));
+            } else {
+                exchange.completed(0);
+            }
+        }
+    }
+
+    /**
+     * A stream that counts the bytes read from the body of a response and finishes its exchange when closed.
+     *
+     * @author Joshua Hyde
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final Exchange exchange;
+        private long count;
+
+        /**
+         * Create a stream.
+         *
+         * @param in
+         *            The {@link InputStream} of the response's body.
+         * @param exchange
+         *            The {@link Exchange} to be finished when the stream is closed.
+         */
+        public CountingInputStream(InputStream in, Exchange exchange) {
+            super(in);
+            this.exchange = exchange;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                exchange.completed(count);
+            }
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int read = super.read();
+            if (read >= 0) {
+                count++;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * A socket factory that adds the time spent establishing each connection to the exchange being sent on the current thread.
+     *
+     * @author Joshua Hyde
+     */
+    private static class TimedSocketFactory implements LayeredConnectionSocketFactory {
+        private final ConnectionSocketFactory delegate;
+
+        /**
+         * Create a factory.
+         *
+         * @param delegate
+         *            The {@link ConnectionSocketFactory} establishing the connections.
+         */
+        public TimedSocketFactory(ConnectionSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress, InetSocketAddress localAddress, HttpContext context) throws IOException {
+            final long startedAt = System.nanoTime();
+            try {
+                return delegate.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+            } finally {
+                final Exchange exchange = SENDING.get();
+                if (exchange != null) {
+                    exchange.connected(System.nanoTime() - startedAt);
+                }
+            }
+        }
+
+        @Override
+        public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException {
+            if (!(delegate instanceof LayeredConnectionSocketFactory)) {
+                throw new IOException("Cannot layer a connection over a socket factory that does not support it: " + delegate);
+            }
+            return ((LayeredConnectionSocketFactory) delegate).createLayeredSocket(socket, target, port, context);
+        }
+
+        @Override
+        public Socket createSocket(HttpContext context) throws IOException {
+            return delegate.createSocket(context);
+        }
+    }
+}
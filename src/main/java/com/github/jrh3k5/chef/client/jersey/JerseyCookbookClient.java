@@ -17,57 +17,100 @@
  */
 package com.github.jrh3k5.chef.client.jersey;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.HashMap;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import org.apache.commons.lang.builder.ToStringBuilder;
-import org.glassfish.jersey.client.ClientConfig;
-import org.glassfish.jersey.client.ClientProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import com.github.jrh3k5.chef.client.AbstractCookbookClient;
+import com.github.jrh3k5.chef.client.ArchiveDownload;
+import com.github.jrh3k5.chef.client.CatalogCallback;
+import com.github.jrh3k5.chef.client.CatalogSyncResult;
 import com.github.jrh3k5.chef.client.Cookbook;
+import com.github.jrh3k5.chef.client.CookbookCatalog;
 import com.github.jrh3k5.chef.client.CookbookClient;
+import com.github.jrh3k5.chef.client.Deadline;
+import com.github.jrh3k5.chef.client.Deadline.DeadlineExceededException;
+import com.github.jrh3k5.chef.client.RetrievalCallback;
+import com.github.jrh3k5.chef.client.concurrent.ResultFuture;
+import com.github.jrh3k5.chef.client.jersey.ConditionalCache.Validated;
+import com.github.jrh3k5.chef.client.jersey.JerseyCookbookClient.JsonCookbook.JsonVersion;
+import com.github.jrh3k5.chef.client.jersey.MetadataStore.StoredCookbook;
+import com.github.jrh3k5.chef.client.jersey.MetadataStore.StoredVersion;
+import com.github.jrh3k5.chef.client.jersey.ResilientInvoker.RequestSource;
+import com.github.jrh3k5.chef.client.metrics.MetricsListener;
+import com.github.jrh3k5.chef.client.metrics.RequestMetrics.Operation;
+import com.github.jrh3k5.chef.client.version.VersionConstraint;
+import com.github.jrh3k5.chef.client.version.VersionIndex;
 
 /**
- * A Jersey implementation of {@link CookbookClient}.
+ * A Jersey implementation of {@link CookbookClient} and {@link CookbookCatalog}.
  * 
  * @author Joshua Hyde
  */
 
-public class JerseyCookbookClient implements CookbookClient {
+public class JerseyCookbookClient extends AbstractCookbookClient implements CookbookCatalog {
     /**
      * The v1 API URL for cookbooks.
      */
     public static final String V1_API_URL = "https://cookbooks.opscode.com/api/v1/";
-    private static final int TIMEOUT_MS = 30000;
-    private final Client client = getClient();
-    private final String serviceUrl;
-
+    private static final Logger LOGGER = LoggerFactory.getLogger(JerseyCookbookClient.class);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
     /**
-     * Get a Jersey client instance configured to speak with the Chef server.
-     * 
-     * @return A {@link Client} object.
+     * The time, in milliseconds, for which the writing of a stored cookbook's newly-resolved versions is put off so that versions resolved together are written together.
      */
-    private static Client getClient() {
-        final ClientConfig configuration = new ClientConfig();
-        configuration.property(ClientProperties.CONNECT_TIMEOUT, Integer.toString(TIMEOUT_MS));
-        configuration.property(ClientProperties.READ_TIMEOUT, Integer.toString(TIMEOUT_MS));
-        configuration.register(JacksonJsonProvider.class);
-        return ClientBuilder.newClient(configuration);
-    }
+    static final long STORE_DELAY_MS = 250;
+    private final PooledTransport transport;
+    private final Client client;
+    private final String serviceUrl;
+    private final EndpointRouter router;
+    private final int batchParallelism;
+    private final boolean eagerVersions;
+    private final ConditionalCache<JsonCookbook> cookbookValidators;
+    private final ConditionalCache<JsonVersion> versionValidators;
+    private final MetadataStore metadataStore;
+    private final Instrumentation instrumentation;
+    private final ResilientInvoker invoker;
+    private final CatalogSync catalog;
+    private final ScheduledExecutorService storeWriter;
+    private final ConcurrentMap<String, JsonCookbook> unstoredCookbooks = new ConcurrentHashMap<String, JsonCookbook>();
 
     /**
      * Create a Jersey-backed cookbook client pointing at the {@code v1} Chef cookbook API.
@@ -83,42 +126,712 @@ public class JerseyCookbookClient implements CookbookClient {
      *            The URL identifying the server with which this client is to communicate for cookbook information.
      */
     public JerseyCookbookClient(String serviceUrl) {
-        this.serviceUrl = serviceUrl;
+        this(serviceUrl, new JerseyCookbookClientConfiguration());
+    }
+
+    /**
+     * Create a Jersey-backed cookbook client.
+     * 
+     * @param serviceUrl
+     *            The URL identifying the server with which this client is to communicate for cookbook information.
+     * @param configuration
+     *            A {@link JerseyCookbookClientConfiguration} object describing how the client is to communicate with the server.
+     */
+    public JerseyCookbookClient(String serviceUrl, JerseyCookbookClientConfiguration configuration) {
+        this(Collections.singletonList(serviceUrl), configuration);
+    }
+
+    /**
+     * Create a Jersey-backed cookbook client that routes its requests among several servers of the same cookbook API, such as internal mirrors and the public site. Each request is sent to the
+     * server that has recently answered fastest, and a request that fails is retried on another server; see {@link #getEndpointStatistics()}.
+     * <p />
+     * The first server is the canonical one: the URLs of versions served by any of the servers are rewritten to it, so that requests for versions are routed too, and the metadata store, if any,
+     * keeps the cookbooks under its URL.
+     * 
+     * @param serviceUrls
+     *            The URLs identifying the servers with which this client is to communicate for cookbook information, in order of preference.
+     * @param configuration
+     *            A {@link JerseyCookbookClientConfiguration} object describing how the client is to communicate with the servers.
+     * @throws IllegalArgumentException
+     *             If no URLs are given.
+     */
+    public JerseyCookbookClient(List<String> serviceUrls, JerseyCookbookClientConfiguration configuration) {
+        if (serviceUrls.isEmpty()) {
+            throw new IllegalArgumentException("At least one service URL is required.");
+        }
+        this.serviceUrl = serviceUrls.get(0);
+        this.router = serviceUrls.size() == 1 ? null : new EndpointRouter(serviceUrls, configuration.getResilienceConfiguration().getEndpointCooldownMs());
+        this.instrumentation = configuration.getMetricsListener() == null ? null : new Instrumentation(configuration.getMetricsListener());
+        this.transport = new PooledTransport(configuration, instrumentation, router);
+        this.client = transport.getClient();
+        this.batchParallelism = configuration.getBatchParallelism();
+        this.eagerVersions = configuration.isEagerVersions();
+        this.cookbookValidators = new ConditionalCache<JsonCookbook>(configuration.getValidatorCacheSize());
+        this.versionValidators = new ConditionalCache<JsonVersion>(configuration.getValidatorCacheSize());
+        this.metadataStore = configuration.getMetadataStoreDirectory() == null ? null : new MetadataStore(configuration.getMetadataStoreDirectory(), configuration.getMetadataStoreMaxAgeMs());
+        this.storeWriter = metadataStore == null ? null : Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "chef-cookbook-client-metadata");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.invoker = new ResilientInvoker(configuration.getResilienceConfiguration(), instrumentation, router);
+        this.catalog = new CatalogSync(invoker, client, serviceUrl, configuration.getCatalogPageSize(), batchParallelism, instrumentation != null);
     }
 
     @Override
     public void close() throws IOException {
-        client.close();
+        try {
+            if (storeWriter != null) {
+                storeWriter.shutdownNow();
+                // Store the versions resolved too recently to have been written yet
+                for (JsonCookbook cookbook : unstoredCookbooks.values()) {
+                    storeVersions(cookbook);
+                }
+            }
+        } finally {
+            invoker.close();
+            transport.close();
+        }
     }
 
     @Override
     public Cookbook getCookbook(String name) {
-        final Response response = client.target(serviceUrl).path("cookbooks").path(name).request(MediaType.APPLICATION_JSON_TYPE).accept(MediaType.APPLICATION_JSON_TYPE).get();
-        if (response.getStatus() == Response.Status.OK.getStatusCode()) {
-            final JsonCookbook found = response.readEntity(JsonCookbook.class);
-            found.init();
+        return retrieveCookbook(name, null);
+    }
+
+    /**
+     * {@inheritDoc} The cookbook is retrieved on the calling thread; each request made for it, or for the versions retrieved through it, waits no longer than the deadline allows and is aborted,
+     * releasing its connection, when the deadline expires or is cancelled.
+     */
+    @Override
+    public Cookbook getCookbook(String name, Deadline deadline) {
+        deadline.check("cookbook " + name);
+        return retrieveCookbook(name, deadline);
+    }
+
+    @Override
+    public Future<Cookbook> getCookbookAsync(final String name, RetrievalCallback<? super Cookbook> callback) {
+        final ResultFuture<Cookbook> result = new ResultFuture<Cookbook>(callback);
+        final String cookbookUrl = cookbookUrl(name);
+        final JsonCookbook restored = restore(name, cookbookUrl);
+        if (restored != null) {
+            complete(result, restored);
+            return result;
+        }
+
+        final Validated<JsonCookbook> validated = cookbookValidators.get(cookbookUrl);
+        result.setDelegate(invoker.getAsync(conditionalRequest(cookbookValidators, cookbookUrl, validated, Operation.COOKBOOK), new InvocationCallback<Response>() {
+            @Override
+            public void completed(Response response) {
+                final JsonCookbook cookbook;
+                try {
+                    cookbook = toCookbook(name, cookbookUrl, validated, response);
+                } catch (RuntimeException e) {
+                    result.setException(e);
+                    return;
+                }
+                complete(result, cookbook);
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                result.setException(throwable instanceof CookbookRetrievalException ? throwable : new CookbookRetrievalException("Failed to retrieve cookbook.", throwable));
+            }
+        }));
+        return result;
+    }
+
+    /**
+     * Get the current statistics of the compressed responses received by this client.
+     *
+     * @return A {@link CompressionStatistics} object representing the compressed responses received so far; all of its counts are zero unless
+     *         {@link JerseyCookbookClientConfiguration#setCompressionEnabled(boolean) compression is enabled}.
+     */
+    public CompressionStatistics getCompressionStatistics() {
+        return transport.getCompressionStatistics();
+    }
+
+    /**
+     * Get the current statistics of each server among which this client routes its requests.
+     * 
+     * @return A {@link List} of {@link EndpointStatistics} objects, in the order in which the servers were given; empty if this client communicates with a single server.
+     */
+    public List<EndpointStatistics> getEndpointStatistics() {
+        return router == null ? Collections.<EndpointStatistics> emptyList() : router.getStatistics();
+    }
+
+    /**
+     * {@inheritDoc} Unless this client already holds the cookbook, the cookbook document is read only as far as its latest version, whose URL is then requested directly; the cookbook's other
+     * versions are never mapped, and nothing is remembered of the cookbook.
+     */
+    @Override
+    public Cookbook.Version getLatestVersion(String name) {
+        final String cookbookUrl = cookbookUrl(name);
+        final JsonCookbook restored = restore(name, cookbookUrl);
+        if (restored != null) {
+            return restored.getLatestVersion();
+        }
+
+        final Validated<JsonCookbook> validated = cookbookValidators.get(cookbookUrl);
+        if (validated != null) {
+            // Revalidate the remembered cookbook as usual, so that a 304 reuses the versions it has already resolved
+            final JsonCookbook cookbook = toCookbook(name, cookbookUrl, validated, invoker.get(conditionalRequest(cookbookValidators, cookbookUrl, validated, Operation.COOKBOOK)));
+            return cookbook == null ? null : cookbook.getLatestVersion();
+        }
+
+        final String latestVersionUrl = toLatestVersionUrl(name, invoker.get(new RequestSource() {
+            @Override
+            public Invocation.Builder newRequest() {
+                return request(cookbookUrl, Operation.COOKBOOK);
+            }
+        }));
+        return latestVersionUrl == null ? null : fetchVersion(router == null ? latestVersionUrl : router.canonicalize(latestVersionUrl), null);
+    }
+
+    /**
+     * Get the current statistics of the connection pool shared by this client and the cookbooks it has retrieved.
+     * 
+     * @return A {@link PoolStatistics} object representing the current state of the connection pool.
+     */
+    public PoolStatistics getPoolStatistics() {
+        return transport.getStatistics();
+    }
+
+    /**
+     * Get the current statistics of the retries, hedged requests and circuit breaker of this client.
+     * 
+     * @return A {@link ResilienceStatistics} object representing the current resilience statistics.
+     */
+    public ResilienceStatistics getResilienceStatistics() {
+        return invoker.getStatistics();
+    }
+
+    @Override
+    public CatalogSyncResult syncCatalog(CatalogCallback callback) {
+        return catalog.syncAll(callback);
+    }
+
+    @Override
+    public CatalogSyncResult syncCatalog(String watermark, CatalogCallback callback) {
+        return watermark == null ? catalog.syncAll(callback) : catalog.syncSince(watermark, callback);
+    }
+
+    @Override
+    protected int getBatchParallelism() {
+        return batchParallelism;
+    }
+
+    /**
+     * Retrieve the data about a specific version of a cookbook.
+     * 
+     * @param versionUrl
+     *            The URL of the version to be retrieved.
+     * @param deadline
+     *            The {@link Deadline} within which the version is to be retrieved; {@code null} if the retrieval is not bounded.
+     * @return A {@link JsonVersion} object representing the retrieved version.
+     */
+    JsonVersion fetchVersion(String versionUrl, Deadline deadline) {
+        final Validated<JsonVersion> validated = versionValidators.get(versionUrl);
+        try {
+            return toVersion(versionUrl, validated, invoker.get(conditionalRequest(versionValidators, versionUrl, validated, Operation.VERSION), deadline));
+        } catch (RuntimeException e) {
+            checkDeadline(deadline, "version " + versionUrl);
+            throw e;
+        }
+    }
+
+    /**
+     * Retrieve the data about a specific version of a cookbook without blocking the calling thread.
+     * 
+     * @param versionUrl
+     *            The URL of the version to be retrieved.
+     * @param result
+     *            The {@link ResultFuture} to be completed with the retrieved {@link JsonVersion}.
+     * @param deadline
+     *            The {@link Deadline} within which the version is to be retrieved; {@code null} if the retrieval is not bounded.
+     */
+    void fetchVersionAsync(final String versionUrl, final ResultFuture<JsonVersion> result, final Deadline deadline) {
+        final Validated<JsonVersion> validated = versionValidators.get(versionUrl);
+        result.setDelegate(invoker.getAsync(conditionalRequest(versionValidators, versionUrl, validated, Operation.VERSION), deadline, new InvocationCallback<Response>() {
+            @Override
+            public void completed(Response response) {
+                final JsonVersion version;
+                try {
+                    version = toVersion(versionUrl, validated, response);
+                } catch (RuntimeException e) {
+                    try {
+                        checkDeadline(deadline, "version " + versionUrl);
+                    } catch (CookbookRetrievalException deadlineFailure) {
+                        result.setException(deadlineFailure);
+                        return;
+                    }
+                    result.setException(e);
+                    return;
+                }
+                result.set(version);
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                result.setException(throwable instanceof CookbookRetrievalException ? throwable : new CookbookRetrievalException("Failed to retrieve cookbook version.", throwable));
+            }
+        }));
+    }
+
+    /**
+     * Fail a retrieval once its deadline expires or is cancelled, unless it completes first.
+     * 
+     * @param result
+     *            The {@link ResultFuture} representing the retrieval.
+     * @param deadline
+     *            The {@link Deadline} within which the retrieval is to complete.
+     * @param description
+     *            A description of what is being retrieved, for error messages.
+     */
+    void bound(ResultFuture<?> result, Deadline deadline, String description) {
+        invoker.bound(result, deadline, description);
+    }
+
+    /**
+     * Verify that a deadline has neither expired nor been cancelled, so that a request aborted by its deadline is reported as such rather than as the failure the abort caused.
+     * 
+     * @param deadline
+     *            The {@link Deadline} to be verified; may be {@code null}.
+     * @param description
+     *            A description of what was being retrieved, for error messages.
+     * @throws com.github.jrh3k5.chef.client.Deadline.DeadlineExceededException
+     *             If the deadline has expired.
+     * @throws CookbookRetrievalException
+     *             If the deadline has been cancelled.
+     */
+    private static void checkDeadline(Deadline deadline, String description) {
+        if (deadline != null) {
+            deadline.check(description);
+        }
+    }
+
+    /**
+     * Complete the asynchronous retrieval of a cookbook, prefetching its versions first if this client resolves versions eagerly.
+     * 
+     * @param result
+     *            The {@link ResultFuture} to be completed.
+     * @param cookbook
+     *            The retrieved {@link JsonCookbook}; may be {@code null}.
+     */
+    private void complete(final ResultFuture<Cookbook> result, final JsonCookbook cookbook) {
+        if (cookbook == null || !eagerVersions) {
+            result.set(cookbook);
+            return;
+        }
+
+        cookbook.prefetchVersionsAsync(null).addCallback(new RetrievalCallback<Object>() {
+            @Override
+            public void completed(Object ignored) {
+                result.set(cookbook);
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                // Versions that could not be prefetched are resolved again on demand
+                result.set(cookbook);
+            }
+        });
+    }
+
+    /**
+     * Build the URL of a cookbook.
+     * 
+     * @param name
+     *            The name of the cookbook.
+     * @return The URL of the cookbook.
+     */
+    private String cookbookUrl(String name) {
+        return client.target(serviceUrl).path("cookbooks").path(name).getUri().toString();
+    }
+
+    /**
+     * Retrieve a cookbook on the calling thread.
+     * 
+     * @param name
+     *            The name of the cookbook to be retrieved.
+     * @param deadline
+     *            The {@link Deadline} within which the cookbook, and the versions retrieved through it, are to be retrieved; {@code null} if the retrieval is not bounded.
+     * @return {@code null} if the cookbook was not found; otherwise, the retrieved {@link Cookbook}.
+     */
+    private Cookbook retrieveCookbook(String name, Deadline deadline) {
+        final String cookbookUrl = cookbookUrl(name);
+        JsonCookbook cookbook = restore(name, cookbookUrl);
+        if (cookbook == null) {
+            final Validated<JsonCookbook> validated = cookbookValidators.get(cookbookUrl);
+            try {
+                cookbook = toCookbook(name, cookbookUrl, validated, invoker.get(conditionalRequest(cookbookValidators, cookbookUrl, validated, Operation.COOKBOOK), deadline));
+            } catch (RuntimeException e) {
+                checkDeadline(deadline, "cookbook " + name);
+                throw e;
+            }
+        }
+        if (cookbook == null) {
+            return null;
+        }
+
+        if (eagerVersions) {
+            if (deadline == null) {
+                try {
+                    cookbook.prefetchVersionsAsync(null).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CookbookRetrievalException("Interrupted while prefetching versions of cookbook: " + name, e);
+                } catch (ExecutionException e) {
+                    // Versions that could not be prefetched are resolved again on demand
+                }
+            } else {
+                try {
+                    deadline.await(cookbook.prefetchVersionsAsync(deadline), "versions of cookbook " + name);
+                } catch (CookbookRetrievalException e) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw e;
+                    }
+                    // Versions that could not be prefetched are resolved again on demand
+                }
+            }
+        }
+        return deadline == null ? cookbook : cookbook.withDeadline(deadline);
+    }
+
+    /**
+     * Convert the response to a cookbook request into a cookbook.
+     * 
+     * @param name
+     *            The name of the requested cookbook.
+     * @param cookbookUrl
+     *            The URL of the requested cookbook.
+     * @param validated
+     *            The {@link Validated} cookbook on which the request was conditioned; may be {@code null}.
+     * @param response
+     *            The {@link Response} to a cookbook request.
+     * @return {@code null} if the cookbook was not found; otherwise, a {@link JsonCookbook} representing the retrieved cookbook.
+     * @throws CookbookRetrievalException
+     *             If the response does not describe a cookbook.
+     */
+    private JsonCookbook toCookbook(String name, String cookbookUrl, Validated<JsonCookbook> validated, Response response) {
+        final boolean notModified = cookbookValidators.isNotModified(response, validated);
+        if (validated != null) {
+            recordCacheAccess(MetricsListener.CONDITIONAL_CACHE, notModified);
+        }
+        if (notModified) {
+            // Reuse the cookbook - and the versions it has already resolved - rather than parsing it again
+            response.close();
+            final JsonCookbook unmodified = validated.getDocument();
+            persist(name, unmodified, validated.getEntityTag(), validated.getLastModified());
+            return unmodified;
+        } else if (response.getStatus() == Response.Status.OK.getStatusCode()) {
+            final JsonCookbook found;
+            try {
+                found = JsonDecoder.decodeCookbook(response.readEntity(InputStream.class));
+            } catch (IOException e) {
+                throw new CookbookRetrievalException("Failed to parse JSON of cookbook: " + name, e);
+            } finally {
+                response.close();
+            }
+            found.attach(this);
+            cookbookValidators.store(cookbookUrl, response, found);
+            persist(name, found, response.getHeaderString(HttpHeaders.ETAG), response.getHeaderString(HttpHeaders.LAST_MODIFIED));
             return found;
         } else if (response.getStatus() == Response.Status.NOT_FOUND.getStatusCode()) {
-            // The doc says 400, but the server returns 404
-            // See: https://tickets.opscode.com/browse/CHEF-4950
-            // We can't qualify on content type of the response (which means no Jackson)
-            // See: https://tickets.opscode.com/browse/CHEF-4949
-            final ObjectMapper objectMapper = new ObjectMapper();
-            final String stringEntity = response.readEntity(String.class);
-            ErrorResponse errorResponse;
+            checkNotFound(response);
+            return null;
+        }
+        response.close();
+        throw new CookbookRetrievalException(String.format("Unexpected response from cookbook server: %d", response.getStatus()));
+    }
+
+    /**
+     * Convert the response to a cookbook request into the URL of the cookbook's latest version, reading no more of the cookbook than that.
+     * 
+     * @param name
+     *            The name of the requested cookbook.
+     * @param response
+     *            The {@link Response} to a cookbook request.
+     * @return {@code null} if the cookbook was not found; otherwise, the URL of the cookbook's latest version.
+     * @throws CookbookRetrievalException
+     *             If the response does not describe a cookbook.
+     */
+    private String toLatestVersionUrl(String name, Response response) {
+        if (response.getStatus() == Response.Status.OK.getStatusCode()) {
             try {
-                errorResponse = objectMapper.readValue(stringEntity, ErrorResponse.class);
+                return JsonDecoder.decodeLatestVersionUrl(response.readEntity(InputStream.class));
             } catch (IOException e) {
-                throw new CookbookRetrievalException("Failed to parse JSON of response: " + stringEntity, e);
-            }
-            if ("NOT_FOUND".equals(errorResponse.getErrorCode())) {
-                return null;
+                throw new CookbookRetrievalException("Failed to parse JSON of cookbook: " + name, e);
+            } finally {
+                response.close();
             }
-            throw new CookbookRetrievalException("Invalid request; response was: " + response.readEntity(String.class));
+        } else if (response.getStatus() == Response.Status.NOT_FOUND.getStatusCode()) {
+            checkNotFound(response);
+            return null;
         }
+        response.close();
         throw new CookbookRetrievalException(String.format("Unexpected response from cookbook server: %d", response.getStatus()));
     }
 
+    /**
+     * Verify that a {@code 404} response to a cookbook request means that the cookbook does not exist.
+     * 
+     * @param response
+     *            The {@code 404} {@link Response} to a cookbook request; its entity is read.
+     * @throws CookbookRetrievalException
+     *             If the response reports any error other than a missing cookbook.
+     */
+    private static void checkNotFound(Response response) {
+        // The doc says 400, but the server returns 404
+        // See: https://tickets.opscode.com/browse/CHEF-4950
+        // We can't qualify on content type of the response (which means no Jackson)
+        // See: https://tickets.opscode.com/browse/CHEF-4949
+        final byte[] entity = response.readEntity(byte[].class);
+        ErrorResponse errorResponse;
+        try {
+            errorResponse = JsonDecoder.decodeError(entity);
+        } catch (IOException e) {
+            throw new CookbookRetrievalException("Failed to parse JSON of response: " + new String(entity, UTF_8), e);
+        }
+        if (!"NOT_FOUND".equals(errorResponse.getErrorCode())) {
+            throw new CookbookRetrievalException("Invalid request; response was: " + new String(entity, UTF_8));
+        }
+    }
+
+    /**
+     * Write a retrieved cookbook to the metadata store, if this client has one.
+     * 
+     * @param name
+     *            The name of the cookbook.
+     * @param cookbook
+     *            The retrieved {@link JsonCookbook}.
+     * @param entityTag
+     *            The {@code ETag} sent with the cookbook; may be {@code null}.
+     * @param lastModified
+     *            The {@code Last-Modified} date sent with the cookbook; may be {@code null}.
+     */
+    private void persist(String name, JsonCookbook cookbook, String entityTag, String lastModified) {
+        if (metadataStore != null) {
+            store(cookbook, cookbook.toStored(name, entityTag, lastModified, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Read a cookbook from the metadata store, if this client has one. If the stored cookbook is too old to be used but can be revalidated, it is remembered so that the next request for it is
+     * conditional.
+     * 
+     * @param name
+     *            The name of the cookbook.
+     * @param cookbookUrl
+     *            The URL of the cookbook.
+     * @return {@code null} if no fresh metadata is stored for the cookbook; otherwise, a {@link JsonCookbook} representing the stored cookbook.
+     */
+    private JsonCookbook restore(String name, String cookbookUrl) {
+        if (metadataStore == null) {
+            return null;
+        }
+
+        final JsonCookbook restored = readStore(name, cookbookUrl);
+        recordCacheAccess(MetricsListener.METADATA_STORE, restored != null);
+        return restored;
+    }
+
+    /**
+     * Read a cookbook from the metadata store.
+     * 
+     * @param name
+     *            The name of the cookbook.
+     * @param cookbookUrl
+     *            The URL of the cookbook.
+     * @return {@code null} if no fresh metadata is stored for the cookbook; otherwise, a {@link JsonCookbook} representing the stored cookbook.
+     * @see #restore(String, String)
+     */
+    private JsonCookbook readStore(String name, String cookbookUrl) {
+        // A cookbook whose newest versions are yet to be written knows more than its file
+        final JsonCookbook unstored = unstoredCookbooks.get(name);
+        if (unstored != null && metadataStore.isFresh(unstored.getStored())) {
+            return unstored;
+        }
+
+        final StoredCookbook stored = metadataStore.read(serviceUrl, name);
+        if (stored == null) {
+            return null;
+        }
+
+        final JsonCookbook restored;
+        try {
+            restored = JsonCookbook.restore(stored, this);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+
+        if (metadataStore.isFresh(stored)) {
+            restored.markStored(stored);
+            return restored;
+        }
+        if (stored.getEntityTag() != null || stored.getLastModified() != null) {
+            cookbookValidators.seed(cookbookUrl, new Validated<JsonCookbook>(stored.getEntityTag(), stored.getLastModified(), restored));
+        }
+        return null;
+    }
+
+    /**
+     * Tell the metrics listener, if this client has one, about an access to a cache.
+     * 
+     * @param cache
+     *            The name of the cache.
+     * @param hit
+     *            {@code true} if the cache could answer; {@code false} if it could not.
+     */
+    private void recordCacheAccess(String cache, boolean hit) {
+        if (instrumentation != null) {
+            instrumentation.cacheAccessed(cache, hit);
+        }
+    }
+
+    /**
+     * Write cookbook metadata to the metadata store. A failure to write is logged rather than failing the retrieval.
+     * 
+     * @param cookbook
+     *            The {@link JsonCookbook} whose metadata is to be written.
+     * @param stored
+     *            The {@link StoredCookbook} to be written.
+     */
+    private void store(JsonCookbook cookbook, StoredCookbook stored) {
+        try {
+            metadataStore.write(serviceUrl, stored);
+            cookbook.markStored(stored);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to store metadata of cookbook: " + stored.getName(), e);
+        }
+        // An earlier retrieval of the cookbook, yet to be written, must not overwrite this one
+        final JsonCookbook unstored = unstoredCookbooks.get(stored.getName());
+        if (unstored != null && unstored != cookbook) {
+            unstoredCookbooks.remove(stored.getName(), unstored);
+        }
+    }
+
+    /**
+     * Note that a version of a cookbook has been resolved. If the cookbook has been written to the metadata store, it is written again shortly afterwards, together with any other versions
+     * resolved in the meantime, so that other clients sharing the store can use the version.
+     * 
+     * @param cookbook
+     *            The {@link JsonCookbook} whose version has been resolved.
+     */
+    void versionResolved(final JsonCookbook cookbook) {
+        final StoredCookbook stored = cookbook.getStored();
+        if (storeWriter == null || stored == null || unstoredCookbooks.putIfAbsent(stored.getName(), cookbook) != null) {
+            return;
+        }
+
+        try {
+            storeWriter.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    storeVersions(cookbook);
+                }
+            }, STORE_DELAY_MS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The client is closing, and writes the cookbook itself
+        }
+    }
+
+    /**
+     * Write the versions of a cookbook resolved since it was last written to the metadata store.
+     * 
+     * @param cookbook
+     *            The {@link JsonCookbook} whose versions are to be written.
+     */
+    private void storeVersions(JsonCookbook cookbook) {
+        final StoredCookbook previous = cookbook.getStored();
+        // Versions resolved from here on are written by another write
+        if (!unstoredCookbooks.remove(previous.getName(), cookbook)) {
+            return;
+        }
+
+        final StoredCookbook current = cookbook.toStored(previous.getName(), previous.getEntityTag(), previous.getLastModified(), previous.getWrittenAtMillis());
+        if (current.getResolvedVersions().size() > previous.getResolvedVersions().size()) {
+            store(cookbook, current);
+        }
+    }
+
+    /**
+     * Convert the response to a version request into a version.
+     * 
+     * @param versionUrl
+     *            The URL of the requested version.
+     * @param validated
+     *            The {@link Validated} version on which the request was conditioned; may be {@code null}.
+     * @param response
+     *            The {@link Response} to a version request.
+     * @return A {@link JsonVersion} representing the retrieved version.
+     * @throws CookbookRetrievalException
+     *             If the response does not describe a version.
+     */
+    private JsonVersion toVersion(String versionUrl, Validated<JsonVersion> validated, Response response) {
+        final boolean notModified = versionValidators.isNotModified(response, validated);
+        if (validated != null) {
+            recordCacheAccess(MetricsListener.CONDITIONAL_CACHE, notModified);
+        }
+        if (notModified) {
+            response.close();
+            return validated.getDocument();
+        } else if (response.getStatus() == Response.Status.OK.getStatusCode()) {
+            final JsonVersion found;
+            try {
+                found = JsonDecoder.decodeVersion(response.readEntity(InputStream.class));
+                found.attach(this);
+            } catch (IOException e) {
+                throw new CookbookRetrievalException("Failed to parse JSON of version: " + versionUrl, e);
+            } finally {
+                response.close();
+            }
+            versionValidators.store(versionUrl, response, found);
+            return found;
+        }
+        response.close();
+        throw new CookbookRetrievalException(String.format("Unexpected response from cookbook server for version %s: %d", versionUrl, response.getStatus()));
+    }
+
+    /**
+     * Build a source of conditional requests for a cookbook or version document.
+     * 
+     * @param validators
+     *            The {@link ConditionalCache} holding the validators of the document.
+     * @param url
+     *            The URL of the document to be requested.
+     * @param validated
+     *            The {@link Validated} document on which the requests are to be conditioned; may be {@code null}.
+     * @param operation
+     *            The {@link Operation} for which the document is requested.
+     * @return A {@link RequestSource} building the requests.
+     */
+    private <T> RequestSource conditionalRequest(final ConditionalCache<T> validators, final String url, final Validated<T> validated, final Operation operation) {
+        return new RequestSource() {
+            @Override
+            public Invocation.Builder newRequest() {
+                return validators.condition(request(url, operation), validated);
+            }
+        };
+    }
+
+    /**
+     * Build a request for a cookbook or version document.
+     * 
+     * @param url
+     *            The URL of the document to be requested.
+     * @param operation
+     *            The {@link Operation} for which the document is requested.
+     * @return An {@link Invocation.Builder} for the request.
+     */
+    private Invocation.Builder request(String url, Operation operation) {
+        final Invocation.Builder request = client.target(url).request(MediaType.APPLICATION_JSON_TYPE).accept(MediaType.APPLICATION_JSON_TYPE);
+        return instrumentation == null ? request : Instrumentation.label(request, operation);
+    }
+
     /**
      * An object representing the error response from the cookbook server.
      * 
@@ -177,39 +890,135 @@ public class JerseyCookbookClient implements CookbookClient {
     /**
      * A JSON object that represents a cookbook.
      * <p />
-     * Instances of this class must be {@link #init() initialized} before use. This is to work around issues in Jackson that do not handle custom setters for classes well.
+     * Instances of this class must be {@link #init(JerseyCookbookClient) initialized} before use. This is to work around issues in Jackson that do not handle custom setters for classes well.
+     * <p />
+     * Once initialized, instances of this class are safe to share across threads. Concurrent requests for the same unresolved version share a single request to the server.
      * 
      * @author Joshua Hyde
      */
     @JsonIgnoreProperties(ignoreUnknown = true)
     public static class JsonCookbook implements Cookbook {
+        private static final VersionIndex EMPTY_INDEX = new VersionIndex(Collections.<String> emptyList());
         @JsonProperty("latest_version")
         private URL latestVersionUrl;
         @JsonProperty("versions")
         private URL[] versionUrls;
-        private final Map<String, String> versionUrlMappings = new HashMap<String, String>();
-        private final Map<String, JsonVersion> versions = new HashMap<String, JsonVersion>();
-        private String latestVersion;
+        private List<String> pendingVersionUrls = new ArrayList<String>();
+        private volatile VersionIndex versionIndex = EMPTY_INDEX;
+        private final ConcurrentMap<String, ResultFuture<JsonVersion>> versions = new ConcurrentHashMap<String, ResultFuture<JsonVersion>>(4, 0.75f, 1);
+        private volatile String latestVersion;
         private String name;
+        private JerseyCookbookClient owner;
+        private volatile StoredCookbook stored;
+
+        @Override
+        @JsonIgnore
+        public Version getBestVersion(VersionConstraint constraint) {
+            return resolveVersion(versionIndex.getBestVersionNumber(constraint), null);
+        }
 
         @Override
         public Version getLatestVersion() {
-            return resolveVersion(latestVersion);
+            return resolveVersion(latestVersion, null);
         }
 
         /**
          * Initialize the object.
+         * 
+         * @param owner
+         *            The {@link JerseyCookbookClient} that retrieved this cookbook and through whose transport its versions are to be resolved.
          */
-        public void init() {
-            final String latestVersionExternalForm = latestVersionUrl.toExternalForm();
+        public void init(JerseyCookbookClient owner) {
             for (URL versionUrl : versionUrls) {
-                final String externalVersionForm = versionUrl.toExternalForm();
-                final String versionNumber = externalVersionForm.substring(externalVersionForm.lastIndexOf('/') + 1).replaceAll("\\_", ".");
-                versionUrlMappings.put(versionNumber, externalVersionForm);
-                if (externalVersionForm.equals(latestVersionExternalForm)) {
-                    this.latestVersion = versionNumber;
-                }
+                addVersionUrl(versionUrl.toExternalForm());
             }
+            // The versions are now held by the index
+            this.versionUrls = null;
+            attach(owner);
+        }
+
+        /**
+         * Add a version of this cookbook.
+         * 
+         * @param versionUrl
+         *            The URL of the version.
+         */
+        void addVersionUrl(String versionUrl) {
+            pendingVersionUrls.add(versionUrl);
+        }
+
+        /**
+         * Complete the initialization of a cookbook whose versions have been {@link #addVersionUrl(String) added}.
+         * 
+         * @param owner
+         *            The {@link JerseyCookbookClient} that retrieved this cookbook and through whose transport its versions are to be resolved; {@code null} if the cookbook is only to be read, in
+         *            which case only the versions already resolved can be retrieved.
+         */
+        void attach(JerseyCookbookClient owner) {
+            this.owner = owner;
+            String latestVersionLocation = latestVersionUrl.toExternalForm();
+            if (owner != null && owner.router != null) {
+                // Versions described by any of the owner's servers are requested through whichever server the owner routes them to
+                for (int i = 0; i < pendingVersionUrls.size(); i++) {
+                    pendingVersionUrls.set(i, owner.router.canonicalize(pendingVersionUrls.get(i)));
+                }
+                latestVersionLocation = owner.router.canonicalize(latestVersionLocation);
+            }
+            this.versionIndex = new VersionIndex(pendingVersionUrls);
+            this.pendingVersionUrls = null;
+            this.latestVersion = versionIndex.getVersionNumber(latestVersionLocation);
+        }
+
+        /**
+         * Get the client through whose transport the versions of this cookbook are resolved.
+         * 
+         * @return The owning {@link JerseyCookbookClient}.
+         * @throws IllegalStateException
+         *             If this cookbook is not attached to a client.
+         */
+        private JerseyCookbookClient owner() {
+            if (owner == null) {
+                throw new IllegalStateException("Cookbook " + name + " is not attached to a client, so its versions cannot be requested.");
+            }
+            return owner;
+        }
+
+        /**
+         * Get the metadata last written for this cookbook to the metadata store.
+         * 
+         * @return {@code null} if this cookbook has not been written; otherwise, the {@link StoredCookbook} last written for it.
+         */
+        StoredCookbook getStored() {
+            return stored;
+        }
+
+        /**
+         * Note that metadata has been written for this cookbook to the metadata store.
+         * 
+         * @param stored
+         *            The {@link StoredCookbook} written for this cookbook.
+         */
+        void markStored(StoredCookbook stored) {
+            this.stored = stored;
+        }
+
+        /**
+         * Get the URL of the latest version.
+         * 
+         * @return A {@link URL} object representing the location of the latest version of the cookbook; {@code null} if it has not been set.
+         */
+        URL getLatestVersionUrl() {
+            return latestVersionUrl;
+        }
+
+        /**
+         * Set the URL of the latest version without mapping it to a version number; the mapping is made when the cookbook is {@link #attach(JerseyCookbookClient) attached}.
+         * 
+         * @param latestVersionUrl
+         *            A {@link URL} object representing the location of the latest version of the cookbook.
+         */
+        void setLatestVersionUrl(URL latestVersionUrl) {
+            this.latestVersionUrl = latestVersionUrl;
         }
 
         @Override
@@ -220,13 +1029,62 @@ public class JerseyCookbookClient implements CookbookClient {
         @Override
         @JsonIgnore
         public Version getVersion(String version) {
-            return resolveVersion(version);
+            return resolveVersion(version, null);
+        }
+
+        @Override
+        @JsonIgnore
+        public Future<Version> getVersionAsync(String version) {
+            return getVersionAsync(version, null);
+        }
+
+        @Override
+        @JsonIgnore
+        public Future<Version> getVersionAsync(String version, RetrievalCallback<? super Version> callback) {
+            return getVersionAsync(version, callback, null);
         }
 
         @Override
         @JsonIgnore
         public Set<String> getVersions() {
-            return versionUrlMappings.keySet();
+            return versionIndex.getVersionNumbers();
+        }
+
+        @Override
+        @JsonIgnore
+        public List<String> getVersions(VersionConstraint constraint) {
+            return versionIndex.getVersionNumbers(constraint);
+        }
+
+        @Override
+        public void prefetchVersions() {
+            try {
+                prefetchVersionsAsync(null).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CookbookRetrievalException("Interrupted while prefetching versions of cookbook: " + name, e);
+            } catch (ExecutionException e) {
+                throw new CookbookRetrievalException("Failed to prefetch versions of cookbook: " + name, e.getCause());
+            }
+        }
+
+        @Override
+        public Cookbook withDeadline(Deadline deadline) {
+            return new BoundedCookbook(this, deadline);
+        }
+
+        /**
+         * Resolve every known version of this cookbook without blocking the calling thread. No more than the owning client's batch parallelism of versions are requested at once; as each request
+         * completes, the next unresolved version is requested.
+         * 
+         * @param deadline
+         *            The {@link Deadline} within which the versions are to be resolved; {@code null} if the resolution is not bounded.
+         * @return A {@link ResultFuture} that completes once every version has been resolved or has failed to resolve; it fails with the first failure encountered, if any.
+         */
+        ResultFuture<Void> prefetchVersionsAsync(Deadline deadline) {
+            final VersionPrefetch prefetch = new VersionPrefetch(versionIndex.getVersionNumbers(), deadline);
+            prefetch.start(owner().getBatchParallelism());
+            return prefetch.getResult();
         }
 
         /**
@@ -237,12 +1095,9 @@ public class JerseyCookbookClient implements CookbookClient {
          */
         public void setLatestVersion(URL latestVersionUrl) {
             this.latestVersionUrl = latestVersionUrl;
-            final String externalForm = latestVersionUrl.toExternalForm();
-            for (Entry<String, String> versionUrlMapping : versionUrlMappings.entrySet()) {
-                if (versionUrlMapping.getValue().equals(externalForm)) {
-                    this.latestVersion = versionUrlMapping.getKey();
-                    break;
-                }
+            final String latestVersionNumber = versionIndex.getVersionNumber(latestVersionUrl.toExternalForm());
+            if (latestVersionNumber != null) {
+                this.latestVersion = latestVersionNumber;
             }
         }
 
@@ -256,23 +1111,521 @@ public class JerseyCookbookClient implements CookbookClient {
             this.name = name;
         }
 
-        private JsonVersion resolveVersion(String version) {
-            if (versions.containsKey(version)) {
-                return versions.get(version);
+        /**
+         * Capture the metadata of this cookbook for storage.
+         * 
+         * @param cookbookName
+         *            The name by which the cookbook was requested.
+         * @param entityTag
+         *            The {@code ETag} sent with the cookbook; may be {@code null}.
+         * @param lastModified
+         *            The {@code Last-Modified} date sent with the cookbook; may be {@code null}.
+         * @param writtenAtMillis
+         *            The time, in milliseconds since the epoch, at which the cookbook was retrieved or last revalidated.
+         * @return A {@link StoredCookbook} representing this cookbook and those of its versions that have been resolved.
+         */
+        StoredCookbook toStored(String cookbookName, String entityTag, String lastModified, long writtenAtMillis) {
+            final List<String> storedUrls = versionIndex.getUrls();
+
+            final List<StoredVersion> resolvedVersions = new ArrayList<StoredVersion>();
+            for (Entry<String, ResultFuture<JsonVersion>> resolution : versions.entrySet()) {
+                if (!resolution.getValue().isDone()) {
+                    continue;
+                }
+                final JsonVersion resolvedVersion;
+                try {
+                    resolvedVersion = resolution.getValue().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    continue;
+                }
+                if (resolvedVersion != null) {
+                    final URL fileLocation = resolvedVersion.getFileLocation();
+                    resolvedVersions.add(new StoredVersion(resolution.getKey(), fileLocation == null ? null : fileLocation.toExternalForm(), resolvedVersion.getFileSize(), resolvedVersion
+                            .getVersion(), resolvedVersion.getDependencies()));
+                }
+            }
+            return new StoredCookbook(cookbookName, latestVersionUrl.toExternalForm(), storedUrls, resolvedVersions, entityTag, lastModified, writtenAtMillis);
+        }
+
+        /**
+         * Rebuild a cookbook from its stored metadata.
+         * 
+         * @param stored
+         *            The {@link StoredCookbook} from which the cookbook is to be rebuilt.
+         * @param owner
+         *            The {@link JerseyCookbookClient} through whose transport the cookbook's unresolved versions are to be resolved.
+         * @return An initialized {@link JsonCookbook} whose stored versions are already resolved.
+         * @throws MalformedURLException
+         *             If the stored metadata contains an invalid URL.
+         */
+        static JsonCookbook restore(StoredCookbook stored, JerseyCookbookClient owner) throws MalformedURLException {
+            final JsonCookbook cookbook = new JsonCookbook();
+            cookbook.setName(stored.getName());
+            cookbook.setLatestVersionUrl(new URL(stored.getLatestVersionUrl()));
+            for (String versionUrl : stored.getVersionUrls()) {
+                cookbook.addVersionUrl(versionUrl);
+            }
+            cookbook.attach(owner);
+
+            for (StoredVersion storedVersion : stored.getResolvedVersions()) {
+                final JsonVersion version = new JsonVersion();
+                version.setFileLocation(storedVersion.getFileLocation() == null ? null : new URL(storedVersion.getFileLocation()));
+                version.setFileSize(storedVersion.getFileSize());
+                version.setVersion(storedVersion.getVersion());
+                version.setDependencies(storedVersion.getDependencies());
+                version.attach(owner);
+                cookbook.versions.put(storedVersion.getVersionNumber(), ResultFuture.completed(version, null));
+            }
+            return cookbook;
+        }
+
+        /**
+         * Retrieve a version of this cookbook without blocking the calling thread.
+         * 
+         * @param version
+         *            The version to be retrieved; may be {@code null}.
+         * @param callback
+         *            A {@link RetrievalCallback} to be notified when the retrieval completes; may be {@code null}.
+         * @param deadline
+         *            The {@link Deadline} within which the version is to be retrieved; {@code null} if the retrieval is not bounded.
+         * @return A {@link Future} that yields {@code null} if the version is not a known version of this cookbook; otherwise, the retrieved {@link Version}.
+         */
+        private Future<Version> getVersionAsync(String version, RetrievalCallback<? super Version> callback, Deadline deadline) {
+            if (version == null) {
+                return ResultFuture.<Version> completed(null, callback);
+            }
+
+            // Cancelling the returned future, or its deadline passing, must not fail a resolution shared with other callers
+            final ResultFuture<Version> result = new ResultFuture<Version>(callback);
+            resolveInto(version, result, deadline);
+            if (deadline != null && !result.isDone()) {
+                owner().bound(result, deadline, describe(version));
+            }
+            return result;
+        }
+
+        /**
+         * Resolve a version of this cookbook on the calling thread. If the version is already resolved or being resolved by another caller, that resolution is used rather than issuing another
+         * request.
+         * 
+         * @param version
+         *            The version to be resolved.
+         * @param deadline
+         *            The {@link Deadline} within which the version is to be resolved; {@code null} if the resolution is not bounded.
+         * @return {@code null} if the version is not a known version of this cookbook; otherwise, the resolved {@link JsonVersion}.
+         */
+        private JsonVersion resolveVersion(String version, Deadline deadline) {
+            if (version == null) {
+                return null;
+            }
+
+            while (true) {
+                ResultFuture<JsonVersion> resolution = versions.get(version);
+                if (resolution == null) {
+                    final String mappedUrl = versionIndex.getUrl(version);
+                    if (mappedUrl == null) {
+                        return null;
+                    }
+
+                    // Fail before the resolution is shared, so that it cannot be left incomplete
+                    final JerseyCookbookClient client = owner();
+                    final ResultFuture<JsonVersion> newResolution = new ResultFuture<JsonVersion>();
+                    resolution = versions.putIfAbsent(version, newResolution);
+                    if (resolution == null) {
+                        try {
+                            final JsonVersion resolvedVersion = client.fetchVersion(mappedUrl, deadline);
+                            newResolution.set(resolvedVersion);
+                            client.versionResolved(this);
+                            return resolvedVersion;
+                        } catch (RuntimeException e) {
+                            versions.remove(version, newResolution);
+                            newResolution.setException(e);
+                            throw e;
+                        }
+                    }
+                }
+
+                try {
+                    return await(resolution, version, deadline);
+                } catch (RuntimeException e) {
+                    if (!isAbortedByDeadline(e) || isOver(deadline)) {
+                        throw e;
+                    }
+                    // The caller that started the resolution gave up on it; start another
+                    versions.remove(version, resolution);
+                }
+            }
+        }
+
+        /**
+         * Resolve a version of this cookbook without blocking the calling thread. If the version is already resolved or being resolved by another caller, that resolution is returned rather than
+         * issuing another request.
+         * 
+         * @param version
+         *            The version to be resolved.
+         * @param deadline
+         *            The {@link Deadline} within which the version is to be resolved should a request be issued; {@code null} if the resolution is not bounded.
+         * @return {@code null} if the version is not a known version of this cookbook; otherwise, a {@link ResultFuture} representing the resolution of the version, which may be shared with other
+         *         callers.
+         */
+        private ResultFuture<JsonVersion> resolveVersionAsync(final String version, Deadline deadline) {
+            final ResultFuture<JsonVersion> existing = versions.get(version);
+            if (existing != null) {
+                return existing;
             }
-        
-            final String mappedUrl = versionUrlMappings.get(version);
+
+            final String mappedUrl = versionIndex.getUrl(version);
             if (mappedUrl == null) {
                 return null;
             }
-        
-            final Client client = getClient();
+
+            // Fail before the resolution is shared, so that it cannot be left incomplete
+            final JerseyCookbookClient client = owner();
+            final ResultFuture<JsonVersion> resolution = new ResultFuture<JsonVersion>();
+            final ResultFuture<JsonVersion> concurrentResolution = versions.putIfAbsent(version, resolution);
+            if (concurrentResolution != null) {
+                return concurrentResolution;
+            }
+
+            resolution.addCallback(new RetrievalCallback<JsonVersion>() {
+                @Override
+                public void completed(JsonVersion resolvedVersion) {
+                    // The resolution remains in the cache
+                    client.versionResolved(JsonCookbook.this);
+                }
+
+                @Override
+                public void failed(Throwable throwable) {
+                    // Forget failed resolutions so that they can be retried
+                    versions.remove(version, resolution);
+                }
+            });
+            client.fetchVersionAsync(mappedUrl, resolution, deadline);
+            return resolution;
+        }
+
+        /**
+         * Complete a caller's retrieval with the resolution of a version, starting another resolution should the one it joined be abandoned by the caller that started it.
+         * 
+         * @param version
+         *            The version to be resolved.
+         * @param result
+         *            The {@link ResultFuture} to be completed.
+         * @param deadline
+         *            The {@link Deadline} within which the version is to be resolved; {@code null} if the resolution is not bounded.
+         */
+        private void resolveInto(final String version, final ResultFuture<? super JsonVersion> result, final Deadline deadline) {
+            final ResultFuture<JsonVersion> resolution = resolveVersionAsync(version, deadline);
+            if (resolution == null) {
+                result.set(null);
+                return;
+            }
+
+            resolution.addCallback(new RetrievalCallback<JsonVersion>() {
+                @Override
+                public void completed(JsonVersion resolvedVersion) {
+                    result.set(resolvedVersion);
+                }
+
+                @Override
+                public void failed(Throwable throwable) {
+                    if (isAbortedByDeadline(throwable) && !isOver(deadline) && !result.isDone()) {
+                        versions.remove(version, resolution);
+                        resolveInto(version, result, deadline);
+                    } else {
+                        result.setException(throwable);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Wait for the resolution of a version.
+         * 
+         * @param resolution
+         *            The {@link ResultFuture} representing the resolution of the version.
+         * @param version
+         *            The version being resolved.
+         * @param deadline
+         *            The {@link Deadline} beyond which the calling thread is not to wait; {@code null} if it may wait indefinitely.
+         * @return The resolved {@link JsonVersion}.
+         * @throws DeadlineExceededException
+         *             If the deadline expires before the version is resolved.
+         * @throws CookbookRetrievalException
+         *             If the deadline is cancelled, the calling thread is interrupted while waiting or the resolution failed with a checked exception.
+         */
+        private JsonVersion await(ResultFuture<JsonVersion> resolution, String version, Deadline deadline) {
+            if (deadline != null) {
+                // Giving up on the wait must not cancel a resolution shared with other callers
+                final ResultFuture<JsonVersion> wait = new ResultFuture<JsonVersion>();
+                resolution.addCallback(new RetrievalCallback<JsonVersion>() {
+                    @Override
+                    public void completed(JsonVersion resolvedVersion) {
+                        wait.set(resolvedVersion);
+                    }
+
+                    @Override
+                    public void failed(Throwable throwable) {
+                        wait.setException(throwable);
+                    }
+                });
+                return deadline.await(wait, describe(version));
+            }
+
             try {
-                final JsonVersion resolvedVersion = client.target(mappedUrl).request(MediaType.APPLICATION_JSON_TYPE).accept(MediaType.APPLICATION_JSON_TYPE).get(JsonVersion.class);
-                versions.put(version, resolvedVersion);
-                return resolvedVersion;
-            } finally {
-                client.close();
+                return resolution.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CookbookRetrievalException("Interrupted while resolving a version of cookbook: " + name, e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new CookbookRetrievalException("Failed to resolve a version of cookbook: " + name, e.getCause());
+            }
+        }
+
+        /**
+         * Describe a version of this cookbook for error messages.
+         * 
+         * @param version
+         *            The version to be described.
+         * @return A description of the version.
+         */
+        private String describe(String version) {
+            return "version " + version + " of cookbook " + name;
+        }
+
+        /**
+         * Determine whether a resolution failed because the deadline of the caller that started it expired or was cancelled, rather than because the version could not be retrieved.
+         * 
+         * @param throwable
+         *            The {@link Throwable} with which the resolution failed.
+         * @return {@code true} if the resolution was abandoned by the caller that started it.
+         */
+        private static boolean isAbortedByDeadline(Throwable throwable) {
+            return throwable instanceof DeadlineExceededException || throwable instanceof CookbookRetrievalException && throwable.getCause() instanceof CancellationException;
+        }
+
+        /**
+         * Determine whether a deadline has passed.
+         * 
+         * @param deadline
+         *            The {@link Deadline} to be examined; may be {@code null}.
+         * @return {@code true} if the deadline has expired or been cancelled; {@code false} if it has not or there is none.
+         */
+        private static boolean isOver(Deadline deadline) {
+            return deadline != null && (deadline.isCancelled() || deadline.isExpired());
+        }
+
+        /**
+         * The resolution of a set of versions with a bounded number of requests in flight, where each completed request issues the request for the next version.
+         * 
+         * @author Joshua Hyde
+         */
+        private class VersionPrefetch implements RetrievalCallback<Version> {
+            private final ResultFuture<Void> result = new ResultFuture<Void>();
+            private final AtomicReference<Throwable> firstFailure = new AtomicReference<Throwable>();
+            private final Iterator<String> pending;
+            private final AtomicInteger outstanding;
+            private final AtomicInteger unissued = new AtomicInteger();
+            private final Deadline deadline;
+
+            /**
+             * Create a prefetch.
+             * 
+             * @param versionNumbers
+             *            The versions to be resolved.
+             * @param deadline
+             *            The {@link Deadline} within which the versions are to be resolved; {@code null} if the resolution is not bounded.
+             */
+            public VersionPrefetch(Collection<String> versionNumbers, Deadline deadline) {
+                this.pending = new ArrayList<String>(versionNumbers).iterator();
+                this.outstanding = new AtomicInteger(versionNumbers.size());
+                this.deadline = deadline;
+            }
+
+            @Override
+            public void completed(Version version) {
+                finishOne();
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                firstFailure.compareAndSet(null, throwable);
+                finishOne();
+            }
+
+            /**
+             * Get the result of this prefetch.
+             * 
+             * @return A {@link ResultFuture} representing the result of this prefetch.
+             */
+            public ResultFuture<Void> getResult() {
+                return result;
+            }
+
+            /**
+             * Start this prefetch.
+             * 
+             * @param parallelism
+             *            The number of versions to be requested at once.
+             */
+            public void start(int parallelism) {
+                if (outstanding.get() == 0) {
+                    result.set(null);
+                    return;
+                }
+
+                issue(Math.max(1, parallelism));
+            }
+
+            /**
+             * Record the completion of a version request and request the next version, if any.
+             */
+            private void finishOne() {
+                issue(1);
+                if (outstanding.decrementAndGet() == 0) {
+                    final Throwable failure = firstFailure.get();
+                    if (failure == null) {
+                        result.set(null);
+                    } else {
+                        result.setException(failure);
+                    }
+                }
+            }
+
+            /**
+             * Request the next unresolved versions. A version that is already resolved completes within the call that requests it; rather than request the version after it from within that
+             * completion, which would nest one call deeper for every resolved version, the requests are counted and issued in a loop by whichever call found none already being issued.
+             * 
+             * @param count
+             *            The number of versions to be requested.
+             */
+            private void issue(int count) {
+                if (unissued.getAndAdd(count) != 0) {
+                    // Another call is issuing requests and will issue these as well
+                    return;
+                }
+
+                int issuing = count;
+                do {
+                    for (int i = 0; i < issuing; i++) {
+                        requestNext();
+                    }
+                    issuing = unissued.addAndGet(-issuing);
+                } while (issuing != 0);
+            }
+
+            /**
+             * Request the next unresolved version, if any remain.
+             */
+            private void requestNext() {
+                final String versionNumber;
+                synchronized (pending) {
+                    if (!pending.hasNext()) {
+                        return;
+                    }
+                    versionNumber = pending.next();
+                }
+
+                try {
+                    getVersionAsync(versionNumber, this, deadline);
+                } catch (RuntimeException e) {
+                    failed(e);
+                }
+            }
+        }
+
+        /**
+         * A view of a {@link JsonCookbook} whose version retrievals are bounded by a {@link Deadline}.
+         * 
+         * @author Joshua Hyde
+         */
+        private static class BoundedCookbook implements Cookbook {
+            private final JsonCookbook cookbook;
+            private final Deadline deadline;
+
+            /**
+             * Create a view.
+             * 
+             * @param cookbook
+             *            The {@link JsonCookbook} to be viewed.
+             * @param deadline
+             *            The {@link Deadline} within which versions are to be retrieved.
+             */
+            public BoundedCookbook(JsonCookbook cookbook, Deadline deadline) {
+                this.cookbook = cookbook;
+                this.deadline = deadline;
+            }
+
+            @Override
+            public Version getBestVersion(VersionConstraint constraint) {
+                return resolve(cookbook.versionIndex.getBestVersionNumber(constraint));
+            }
+
+            @Override
+            public Version getLatestVersion() {
+                return resolve(cookbook.latestVersion);
+            }
+
+            @Override
+            public String getName() {
+                return cookbook.getName();
+            }
+
+            @Override
+            public Version getVersion(String version) {
+                return resolve(version);
+            }
+
+            @Override
+            public Future<Version> getVersionAsync(String version) {
+                return getVersionAsync(version, null);
+            }
+
+            @Override
+            public Future<Version> getVersionAsync(String version, RetrievalCallback<? super Version> callback) {
+                return cookbook.getVersionAsync(version, callback, deadline);
+            }
+
+            @Override
+            public Set<String> getVersions() {
+                return cookbook.getVersions();
+            }
+
+            @Override
+            public List<String> getVersions(VersionConstraint constraint) {
+                return cookbook.getVersions(constraint);
+            }
+
+            @Override
+            public void prefetchVersions() {
+                deadline.await(cookbook.prefetchVersionsAsync(deadline), "versions of cookbook " + cookbook.getName());
+            }
+
+            @Override
+            public Cookbook withDeadline(Deadline otherDeadline) {
+                return cookbook.withDeadline(otherDeadline);
+            }
+
+            @Override
+            public String toString() {
+                return cookbook.getName() + " within " + deadline;
+            }
+
+            /**
+             * Resolve a version within the deadline of this view. Versions that are already resolved are returned even once the deadline has passed.
+             * 
+             * @param version
+             *            The version to be resolved; may be {@code null}.
+             * @return {@code null} if the version is not a known version of the cookbook; otherwise, the resolved {@link JsonVersion}.
+             */
+            private JsonVersion resolve(String version) {
+                return cookbook.resolveVersion(version, deadline);
             }
         }
 
@@ -285,18 +1638,88 @@ public class JerseyCookbookClient implements CookbookClient {
         public static class JsonVersion implements Cookbook.Version {
             @JsonProperty("file")
             private URL fileLocation;
+            @JsonProperty("tarball_file_size")
+            private long fileSize = -1;
             private String version;
+            private Map<String, String> dependencies = Collections.emptyMap();
+            private JerseyCookbookClient owner;
+
+            @Override
+            public ArchiveDownload downloadTo(File destination) {
+                return downloadTo(destination, null);
+            }
+
+            @Override
+            public ArchiveDownload downloadTo(File destination, String expectedSha256) {
+                final JerseyCookbookClient client = owner();
+                return ArchiveTransfer.download(client.invoker, client.client, fileLocation, destination, fileSize, expectedSha256);
+            }
+
+            @Override
+            public Map<String, String> getDependencies() {
+                return dependencies;
+            }
 
             @Override
             public URL getFileLocation() {
                 return fileLocation;
             }
 
+            /**
+             * Set the cookbooks on which this version depends.
+             * 
+             * @param dependencies
+             *            A {@link Map} of the names of the cookbooks on which this version depends to the constraints on their versions; may be {@code null}.
+             */
+            public void setDependencies(Map<String, String> dependencies) {
+                this.dependencies = dependencies == null || dependencies.isEmpty() ? Collections.<String, String> emptyMap() : Collections.unmodifiableMap(new LinkedHashMap<String, String>(
+                        dependencies));
+            }
+
             @Override
             public String getVersion() {
                 return version;
             }
 
+            @Override
+            public InputStream openArchive() {
+                final JerseyCookbookClient client = owner();
+                return ArchiveTransfer.open(client.invoker, client.client, fileLocation);
+            }
+
+            /**
+             * Attach this version to the client through whose transport its archive is to be retrieved.
+             * 
+             * @param owner
+             *            The {@link JerseyCookbookClient} that retrieved this version; {@code null} if the version is only to be read, in which case its archive cannot be retrieved.
+             */
+            void attach(JerseyCookbookClient owner) {
+                this.owner = owner;
+            }
+
+            /**
+             * Get the client through whose transport the archive of this version is retrieved.
+             * 
+             * @return The owning {@link JerseyCookbookClient}.
+             * @throws IllegalStateException
+             *             If this version is not attached to a client.
+             */
+            private JerseyCookbookClient owner() {
+                if (owner == null) {
+                    throw new IllegalStateException("Version " + version + " is not attached to a client, so its archive cannot be retrieved.");
+                }
+                return owner;
+            }
+
+            /**
+             * Get the size of the archive.
+             * 
+             * @return The size, in bytes, of the archive; {@code -1} if it is not known.
+             */
+            long getFileSize() {
+                return fileSize;
+            }
+
             /**
              * Set the location of the file.
              * 
@@ -307,6 +1730,16 @@ public class JerseyCookbookClient implements CookbookClient {
                 this.fileLocation = fileLocation;
             }
 
+            /**
+             * Set the size of the archive.
+             * 
+             * @param fileSize
+             *            The size, in bytes, of the archive; {@code -1} if it is not known.
+             */
+            public void setFileSize(long fileSize) {
+                this.fileSize = fileSize;
+            }
+
             /**
              * Set the version represented by this object.
              * 
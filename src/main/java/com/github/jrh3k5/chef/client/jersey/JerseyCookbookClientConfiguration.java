@@ -0,0 +1,360 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import java.io.File;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+import com.github.jrh3k5.chef.client.AbstractCookbookClient;
+import com.github.jrh3k5.chef.client.metrics.MetricsListener;
+
+/**
+ * Configuration of a {@link JerseyCookbookClient}. The values of this object are read when the client is created; changing them afterwards has no effect on clients that have already been created.
+ *
+ * @author Joshua Hyde
+ */
+
+public class JerseyCookbookClientConfiguration {
+    /**
+     * The default connect and read timeout, in milliseconds.
+     */
+    public static final int DEFAULT_TIMEOUT_MS = 30000;
+    /**
+     * The default maximum number of pooled connections kept per route (host).
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+    /**
+     * The default maximum number of pooled connections across all routes.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 50;
+    /**
+     * The default number of threads used to dispatch asynchronous requests.
+     */
+    public static final int DEFAULT_ASYNC_THREAD_POOL_SIZE = 8;
+    /**
+     * The default maximum number of cookbook and version documents remembered, each, for conditional revalidation.
+     */
+    public static final int DEFAULT_VALIDATOR_CACHE_SIZE = 1000;
+    /**
+     * The default amount of time, in milliseconds, for which cookbook metadata held in the metadata store is used without contacting the server.
+     */
+    public static final long DEFAULT_METADATA_STORE_MAX_AGE_MS = 24 * 60 * 60 * 1000L;
+    /**
+     * The default number of cookbooks requested per page of the catalog.
+     */
+    public static final int DEFAULT_CATALOG_PAGE_SIZE = 100;
+    private int asyncThreadPoolSize = DEFAULT_ASYNC_THREAD_POOL_SIZE;
+    private int batchParallelism = AbstractCookbookClient.DEFAULT_BATCH_PARALLELISM;
+    private int catalogPageSize = DEFAULT_CATALOG_PAGE_SIZE;
+    private boolean compressionEnabled;
+    private boolean eagerVersions;
+    private int connectTimeoutMs = DEFAULT_TIMEOUT_MS;
+    private int readTimeoutMs = DEFAULT_TIMEOUT_MS;
+    private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+    private int maxConnectionsTotal = DEFAULT_MAX_CONNECTIONS_TOTAL;
+    private int validatorCacheSize = DEFAULT_VALIDATOR_CACHE_SIZE;
+    private File metadataStoreDirectory;
+    private long metadataStoreMaxAgeMs = DEFAULT_METADATA_STORE_MAX_AGE_MS;
+    private ResilienceConfiguration resilienceConfiguration = new ResilienceConfiguration();
+    private MetricsListener metricsListener;
+
+    /**
+     * Get the number of threads used to dispatch asynchronous requests.
+     *
+     * @return The number of threads used to dispatch asynchronous requests.
+     */
+    public int getAsyncThreadPoolSize() {
+        return asyncThreadPoolSize;
+    }
+
+    /**
+     * Get the maximum number of cookbooks or versions retrieved concurrently by a batch retrieval or version prefetch.
+     *
+     * @return The maximum number of cookbooks or versions retrieved concurrently by a batch retrieval or version prefetch.
+     */
+    public int getBatchParallelism() {
+        return batchParallelism;
+    }
+
+    /**
+     * Get the number of cookbooks requested per page when synchronizing with the catalog.
+     *
+     * @return The number of cookbooks requested per page of the catalog.
+     */
+    public int getCatalogPageSize() {
+        return catalogPageSize;
+    }
+
+    /**
+     * Determine whether compressed responses are requested from the server.
+     *
+     * @return {@code true} if responses are requested with gzip or deflate content encoding and decoded, and counted, by the client; {@code false} if content encoding is left to the
+     *         underlying HTTP client.
+     */
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    /**
+     * Get the connect timeout.
+     *
+     * @return The amount of time, in milliseconds, to wait for a connection to be established.
+     */
+    public int getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    /**
+     * Get the maximum number of pooled connections across all routes.
+     *
+     * @return The maximum number of pooled connections across all routes.
+     */
+    public int getMaxConnectionsTotal() {
+        return maxConnectionsTotal;
+    }
+
+    /**
+     * Get the maximum number of pooled connections kept per route.
+     *
+     * @return The maximum number of pooled connections kept per route.
+     */
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    /**
+     * Determine whether every version of a cookbook is to be resolved as soon as the cookbook is retrieved.
+     *
+     * @return {@code true} if versions are resolved eagerly; {@code false} if they are resolved on demand.
+     */
+    public boolean isEagerVersions() {
+        return eagerVersions;
+    }
+
+    /**
+     * Get the directory in which cookbook metadata is stored across JVMs.
+     *
+     * @return {@code null} if cookbook metadata is not stored; otherwise, a {@link File} representing the directory in which cookbook metadata is stored.
+     */
+    public File getMetadataStoreDirectory() {
+        return metadataStoreDirectory;
+    }
+
+    /**
+     * Get the listener to be told about the requests sent by the client.
+     *
+     * @return {@code null} if requests are not measured; otherwise, the {@link MetricsListener} to be told about requests.
+     */
+    public MetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * Get the amount of time for which stored cookbook metadata is used without contacting the server.
+     *
+     * @return The amount of time, in milliseconds, for which stored cookbook metadata is used without contacting the server.
+     */
+    public long getMetadataStoreMaxAgeMs() {
+        return metadataStoreMaxAgeMs;
+    }
+
+    /**
+     * Get the read timeout.
+     *
+     * @return The amount of time, in milliseconds, to wait for data to be read from an established connection.
+     */
+    public int getReadTimeoutMs() {
+        return readTimeoutMs;
+    }
+
+    /**
+     * Get the configuration of retries, hedged requests and the circuit breaker.
+     *
+     * @return The {@link ResilienceConfiguration} of the client.
+     */
+    public ResilienceConfiguration getResilienceConfiguration() {
+        return resilienceConfiguration;
+    }
+
+    /**
+     * Get the maximum number of documents remembered for conditional revalidation.
+     *
+     * @return The maximum number of cookbook and version documents remembered, each, for conditional revalidation.
+     */
+    public int getValidatorCacheSize() {
+        return validatorCacheSize;
+    }
+
+    /**
+     * Set the number of threads used to dispatch asynchronous requests. This bounds the number of asynchronous requests that are actively being exchanged with the server; further requests are
+     * queued until a thread is free.
+     *
+     * @param asyncThreadPoolSize
+     *            The number of threads used to dispatch asynchronous requests.
+     */
+    public void setAsyncThreadPoolSize(int asyncThreadPoolSize) {
+        this.asyncThreadPoolSize = asyncThreadPoolSize;
+    }
+
+    /**
+     * Set the maximum number of cookbooks or versions retrieved concurrently by a batch retrieval or version prefetch.
+     *
+     * @param batchParallelism
+     *            The maximum number of cookbooks or versions retrieved concurrently by a batch retrieval or version prefetch.
+     * @see JerseyCookbookClient#getCookbooks(java.util.Collection)
+     * @see com.github.jrh3k5.chef.client.Cookbook#prefetchVersions()
+     */
+    public void setBatchParallelism(int batchParallelism) {
+        this.batchParallelism = batchParallelism;
+    }
+
+    /**
+     * Set the number of cookbooks requested per page when synchronizing with the catalog. The pages of a full synchronization are retrieved as many at a time as the
+     * {@link #setBatchParallelism(int) batch parallelism} allows.
+     *
+     * @param catalogPageSize
+     *            The number of cookbooks requested per page of the catalog.
+     * @see JerseyCookbookClient#syncCatalog(com.github.jrh3k5.chef.client.CatalogCallback)
+     */
+    public void setCatalogPageSize(int catalogPageSize) {
+        this.catalogPageSize = catalogPageSize;
+    }
+
+    /**
+     * Set whether compressed responses are to be requested from the server.
+     *
+     * @param compressionEnabled
+     *            {@code true} if responses are to be requested with gzip or deflate content encoding and decoded, and counted, by the client; {@code false} if content encoding is to be left to
+     *            the underlying HTTP client.
+     */
+    public void setCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    /**
+     * Set whether every version of a cookbook is to be resolved as soon as the cookbook is retrieved.
+     *
+     * @param eagerVersions
+     *            {@code true} if cookbooks are to {@link com.github.jrh3k5.chef.client.Cookbook#prefetchVersions() prefetch} all of their versions before being handed out; {@code false} if
+     *            versions are to be resolved on demand.
+     */
+    public void setEagerVersions(boolean eagerVersions) {
+        this.eagerVersions = eagerVersions;
+    }
+
+    /**
+     * Set the connect timeout.
+     *
+     * @param connectTimeoutMs
+     *            The amount of time, in milliseconds, to wait for a connection to be established.
+     */
+    public void setConnectTimeoutMs(int connectTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+    }
+
+    /**
+     * Set the maximum number of pooled connections across all routes.
+     *
+     * @param maxConnectionsTotal
+     *            The maximum number of pooled connections across all routes.
+     */
+    public void setMaxConnectionsTotal(int maxConnectionsTotal) {
+        this.maxConnectionsTotal = maxConnectionsTotal;
+    }
+
+    /**
+     * Set the maximum number of pooled connections kept per route.
+     *
+     * @param maxConnectionsPerRoute
+     *            The maximum number of pooled connections kept per route.
+     */
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    /**
+     * Set the directory in which cookbook metadata is to be stored across JVMs. A cookbook, and those of its versions that have been resolved, are written to this directory as they are retrieved
+     * and when the client is closed; a later client configured with the same directory answers for the cookbook from disk until the metadata is older than the
+     * {@link #setMetadataStoreMaxAgeMs(long) maximum age}.
+     *
+     * @param metadataStoreDirectory
+     *            A {@link File} representing the directory in which cookbook metadata is to be stored; {@code null} disables the metadata store.
+     */
+    public void setMetadataStoreDirectory(File metadataStoreDirectory) {
+        this.metadataStoreDirectory = metadataStoreDirectory;
+    }
+
+    /**
+     * Set the listener to be told about the requests sent by the client and the effectiveness of its caches. When no listener is set, requests are not measured at all.
+     *
+     * @param metricsListener
+     *            The {@link MetricsListener} to be told about requests; {@code null} if requests are not to be measured.
+     * @see com.github.jrh3k5.chef.client.metrics.AggregatingMetricsListener
+     */
+    public void setMetricsListener(MetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Set the amount of time for which stored cookbook metadata is used without contacting the server. Older metadata is revalidated with the server, if the server supplied validators for it, or
+     * retrieved again.
+     *
+     * @param metadataStoreMaxAgeMs
+     *            The amount of time, in milliseconds, for which stored cookbook metadata is used without contacting the server.
+     */
+    public void setMetadataStoreMaxAgeMs(long metadataStoreMaxAgeMs) {
+        this.metadataStoreMaxAgeMs = metadataStoreMaxAgeMs;
+    }
+
+    /**
+     * Set the read timeout.
+     *
+     * @param readTimeoutMs
+     *            The amount of time, in milliseconds, to wait for data to be read from an established connection.
+     */
+    public void setReadTimeoutMs(int readTimeoutMs) {
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    /**
+     * Set the configuration of retries, hedged requests and the circuit breaker, which apply to the retrieval of cookbook and version documents.
+     *
+     * @param resilienceConfiguration
+     *            The {@link ResilienceConfiguration} of the client.
+     */
+    public void setResilienceConfiguration(ResilienceConfiguration resilienceConfiguration) {
+        this.resilienceConfiguration = resilienceConfiguration;
+    }
+
+    /**
+     * Set the maximum number of documents remembered for conditional revalidation. A remembered document is requested again with its {@code ETag} and {@code Last-Modified} validators and, if the
+     * server answers {@code 304 Not Modified}, the previously-parsed document is reused.
+     *
+     * @param validatorCacheSize
+     *            The maximum number of cookbook and version documents remembered, each, for conditional revalidation; {@code 0} disables conditional requests.
+     */
+    public void setValidatorCacheSize(int validatorCacheSize) {
+        this.validatorCacheSize = validatorCacheSize;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
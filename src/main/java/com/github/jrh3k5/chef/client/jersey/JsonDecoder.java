@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.jrh3k5.chef.client.jersey.CatalogSync.JsonCatalogPage;
+import com.github.jrh3k5.chef.client.jersey.JerseyCookbookClient.ErrorResponse;
+import com.github.jrh3k5.chef.client.jersey.JerseyCookbookClient.JsonCookbook;
+import com.github.jrh3k5.chef.client.jersey.JerseyCookbookClient.JsonCookbook.JsonVersion;
+
+/**
+ * Decoders of the JSON documents returned by the cookbook server. The readers used are built once and shared, as they are thread-safe; cookbooks are decoded with a streaming parser that builds
+ * the cookbook's version mappings as the {@code versions} array is read.
+ *
+ * @author Joshua Hyde
+ */
+
+final class JsonDecoder {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final JsonFactory JSON_FACTORY = OBJECT_MAPPER.getFactory();
+    private static final ObjectReader VERSION_READER = OBJECT_MAPPER.reader(JsonVersion.class);
+    private static final ObjectReader ERROR_READER = OBJECT_MAPPER.reader(ErrorResponse.class);
+    private static final ObjectReader CATALOG_PAGE_READER = OBJECT_MAPPER.reader(JsonCatalogPage.class);
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private JsonDecoder() {
+    }
+
+    /**
+     * Decode a page of the catalog.
+     *
+     * @param inputStream
+     *            The {@link InputStream} containing the page; it is closed once the page has been read.
+     * @return A {@link JsonCatalogPage} representing the decoded page.
+     * @throws IOException
+     *             If the page cannot be read or is not a page of the catalog.
+     */
+    static JsonCatalogPage decodeCatalogPage(InputStream inputStream) throws IOException {
+        return CATALOG_PAGE_READER.readValue(inputStream);
+    }
+
+    /**
+     * Decode a cookbook. The returned cookbook must still be {@link JsonCookbook#attach(JerseyCookbookClient) attached} to the client that retrieved it.
+     *
+     * @param inputStream
+     *            The {@link InputStream} containing the cookbook document; it is closed once the document has been read.
+     * @return A {@link JsonCookbook} representing the decoded cookbook.
+     * @throws IOException
+     *             If the document cannot be read or is not a cookbook.
+     */
+    static JsonCookbook decodeCookbook(InputStream inputStream) throws IOException {
+        final JsonParser parser = JSON_FACTORY.createParser(inputStream);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException("Expected a cookbook object.", parser.getCurrentLocation());
+            }
+
+            final JsonCookbook cookbook = new JsonCookbook();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String fieldName = parser.getCurrentName();
+                final JsonToken valueToken = parser.nextToken();
+                if ("name".equals(fieldName)) {
+                    cookbook.setName(valueToken == JsonToken.VALUE_NULL ? null : parser.getText());
+                } else if ("latest_version".equals(fieldName)) {
+                    cookbook.setLatestVersionUrl(valueToken == JsonToken.VALUE_NULL ? null : new URL(parser.getText()));
+                } else if ("versions".equals(fieldName) && valueToken == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.VALUE_STRING) {
+                        cookbook.addVersionUrl(parser.getText());
+                    }
+                    if (parser.getCurrentToken() != JsonToken.END_ARRAY) {
+                        throw new JsonParseException("Expected a version URL.", parser.getCurrentLocation());
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+            if (cookbook.getLatestVersionUrl() == null) {
+                throw new JsonParseException("The cookbook has no latest version.", parser.getCurrentLocation());
+            }
+            return cookbook;
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Decode an error response.
+     *
+     * @param body
+     *            The body of the error response.
+     * @return An {@link ErrorResponse} representing the decoded error.
+     * @throws IOException
+     *             If the body is not an error response.
+     */
+    static ErrorResponse decodeError(byte[] body) throws IOException {
+        return ERROR_READER.readValue(body);
+    }
+
+    /**
+     * Read the URL of the latest version of a cookbook, skipping the rest of the cookbook document. The document is read only as far as its {@code latest_version} field, so its
+     * {@code versions} array is neither parsed nor held unless it comes first.
+     *
+     * @param inputStream
+     *            The {@link InputStream} containing the cookbook document; it is closed once the URL has been read.
+     * @return The value of the cookbook's {@code latest_version} field.
+     * @throws IOException
+     *             If the document cannot be read, is not a cookbook or has no latest version.
+     */
+    static String decodeLatestVersionUrl(InputStream inputStream) throws IOException {
+        final JsonParser parser = JSON_FACTORY.createParser(inputStream);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException("Expected a cookbook object.", parser.getCurrentLocation());
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String fieldName = parser.getCurrentName();
+                final JsonToken valueToken = parser.nextToken();
+                if ("latest_version".equals(fieldName) && valueToken == JsonToken.VALUE_STRING) {
+                    return parser.getText();
+                }
+                parser.skipChildren();
+            }
+            throw new JsonParseException("The cookbook has no latest version.", parser.getCurrentLocation());
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Decode a version.
+     *
+     * @param inputStream
+     *            The {@link InputStream} containing the version document; it is closed once the document has been read.
+     * @return A {@link JsonVersion} representing the decoded version.
+     * @throws IOException
+     *             If the document cannot be read or is not a version.
+     */
+    static JsonVersion decodeVersion(InputStream inputStream) throws IOException {
+        return VERSION_READER.readValue(inputStream);
+    }
+
+    /**
+     * Read the time at which a cookbook was last updated, skipping the rest of the cookbook document.
+     *
+     * @param inputStream
+     *            The {@link InputStream} containing the cookbook document; it is closed once the document has been read.
+     * @return The value of the cookbook's {@code updated_at} field; {@code null} if it has none.
+     * @throws IOException
+     *             If the document cannot be read or is not a cookbook.
+     */
+    static String decodeUpdatedAt(InputStream inputStream) throws IOException {
+        final JsonParser parser = JSON_FACTORY.createParser(inputStream);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException("Expected a cookbook object.", parser.getCurrentLocation());
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String fieldName = parser.getCurrentName();
+                final JsonToken valueToken = parser.nextToken();
+                if ("updated_at".equals(fieldName)) {
+                    return valueToken == JsonToken.VALUE_NULL ? null : parser.getText();
+                }
+                parser.skipChildren();
+            }
+            return null;
+        } finally {
+            parser.close();
+        }
+    }
+}
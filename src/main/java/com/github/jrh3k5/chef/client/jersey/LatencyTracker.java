@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import java.util.Arrays;
+
+/**
+ * A record of recent request latencies from which percentiles can be estimated.
+ *
+ * @author Joshua Hyde
+ */
+
+class LatencyTracker {
+    /**
+     * The number of latencies that must be recorded before percentiles are estimated.
+     */
+    static final int MINIMUM_SAMPLES = 20;
+    private static final int RECOMPUTE_INTERVAL = 16;
+    private final long[] samples;
+    private int count;
+    private int next;
+    private long[] sorted;
+
+    /**
+     * Create a tracker.
+     *
+     * @param capacity
+     *            The number of most recent latencies to be kept.
+     */
+    LatencyTracker(int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    /**
+     * Estimate a percentile of the recent latencies.
+     *
+     * @param percentile
+     *            The percentile, between {@code 0.0} and {@code 1.0}.
+     * @return {@code -1} if too few latencies have been recorded to estimate the percentile; otherwise, the estimated latency, in milliseconds.
+     */
+    synchronized long getPercentile(double percentile) {
+        if (count < MINIMUM_SAMPLES) {
+            return -1;
+        }
+        if (sorted == null) {
+            sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+        }
+        final int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * Record a latency.
+     *
+     * @param latencyMs
+     *            The latency, in milliseconds.
+     */
+    synchronized void record(long latencyMs) {
+        samples[next] = latencyMs;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+        // Sorting on every request would cost more than the percentile is worth; a slightly stale estimate is fine
+        if (sorted != null && (sorted.length < count || next % RECOMPUTE_INTERVAL == 0)) {
+            sorted = null;
+        }
+    }
+}
@@ -0,0 +1,629 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.CRC32;
+
+/**
+ * A directory of files holding cookbook metadata - a cookbook's versions and those of its versions that have been resolved - so that a new JVM can answer for a cookbook without contacting the
+ * server.
+ * <p />
+ * Each cookbook is held in its own file, named for the cookbook within a directory named for a digest of the service URL. Files are read through a memory mapping and written to a temporary file that
+ * is then renamed over the previous one, so a reader never sees a partially-written file; a trailing checksum guards against files truncated by a crash.
+ * <p />
+ * The URLs of a cookbook's versions share all but their last few characters, so the prefix they share is written once and each URL, and each archive location under it, is written as the rest
+ * of the URL. Lengths and counts are written as variable-length integers, and a version number is not written again as the version reported by its document when the two are the same.
+ *
+ * @author Joshua Hyde
+ */
+
+class MetadataStore {
+    private static final int MAGIC = 0x43424d44;
+    private static final int FORMAT_VERSION = 3;
+    private static final int SAME_VERSION = 1;
+    private static final int RELATIVE_FILE_LOCATION = 2;
+    private static final int FILE_SIZE = 4;
+    private static final String SUFFIX = ".cookbook";
+    private static final String UTF_8 = "UTF-8";
+    private final File directory;
+    private final long maxAgeMs;
+
+    /**
+     * Create a store.
+     *
+     * @param directory
+     *            The directory in which the metadata is to be stored; it is created if it does not exist.
+     * @param maxAgeMs
+     *            The amount of time, in milliseconds, for which stored metadata is considered fresh.
+     */
+    MetadataStore(File directory, long maxAgeMs) {
+        this.directory = directory;
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * Determine whether stored metadata is fresh enough to be used without contacting the server.
+     *
+     * @param cookbook
+     *            The {@link StoredCookbook} to be evaluated.
+     * @return {@code true} if the metadata is fresh; {@code false} if not.
+     */
+    boolean isFresh(StoredCookbook cookbook) {
+        final long age = System.currentTimeMillis() - cookbook.getWrittenAtMillis();
+        return age >= 0 && age < maxAgeMs;
+    }
+
+    /**
+     * Read the stored metadata of a cookbook.
+     *
+     * @param serviceUrl
+     *            The URL of the service from which the cookbook was retrieved.
+     * @param name
+     *            The name of the cookbook.
+     * @return {@code null} if no usable metadata is stored for the cookbook; otherwise, the {@link StoredCookbook}.
+     */
+    StoredCookbook read(String serviceUrl, String name) {
+        final File file = getFile(serviceUrl, name);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try {
+            final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            try {
+                final FileChannel channel = randomAccessFile.getChannel();
+                return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), serviceUrl, name);
+            } finally {
+                randomAccessFile.close();
+            }
+        } catch (IOException e) {
+            // An unreadable file is treated as absent and is replaced on the next write
+            return null;
+        }
+    }
+
+    /**
+     * Store the metadata of a cookbook, replacing any previously-stored metadata.
+     *
+     * @param serviceUrl
+     *            The URL of the service from which the cookbook was retrieved.
+     * @param cookbook
+     *            The {@link StoredCookbook} to be stored.
+     * @throws IOException
+     *             If the metadata cannot be written.
+     */
+    void write(String serviceUrl, StoredCookbook cookbook) throws IOException {
+        final File file = getFile(serviceUrl, cookbook.getName());
+        final File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Unable to create metadata directory: " + parent);
+        }
+
+        final byte[] encoded = encode(serviceUrl, cookbook);
+        final File temporary = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            final FileOutputStream outputStream = new FileOutputStream(temporary);
+            try {
+                outputStream.write(encoded);
+                outputStream.getFD().sync();
+            } finally {
+                outputStream.close();
+            }
+
+            if (!temporary.renameTo(file)) {
+                // Some platforms will not rename over an existing file
+                if (!file.delete() || !temporary.renameTo(file)) {
+                    throw new IOException("Unable to move " + temporary + " to " + file);
+                }
+            }
+        } finally {
+            if (temporary.exists() && !temporary.delete()) {
+                temporary.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Decode stored metadata.
+     *
+     * @param buffer
+     *            The {@link ByteBuffer} containing the stored metadata.
+     * @param serviceUrl
+     *            The URL of the service whose metadata is expected.
+     * @param name
+     *            The name of the cookbook whose metadata is expected.
+     * @return {@code null} if the buffer does not contain complete metadata of the expected cookbook; otherwise, the {@link StoredCookbook}.
+     */
+    private StoredCookbook decode(ByteBuffer buffer, String serviceUrl, String name) {
+        if (buffer.remaining() < 8) {
+            return null;
+        }
+
+        final int bodyLength = buffer.remaining() - 8;
+        final CRC32 crc = new CRC32();
+        for (int i = 0; i < bodyLength; i++) {
+            crc.update(buffer.get(i));
+        }
+        if (crc.getValue() != buffer.getLong(bodyLength)) {
+            return null;
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            final long writtenAtMillis = buffer.getLong();
+            if (!serviceUrl.equals(readString(buffer)) || !name.equals(readString(buffer))) {
+                return null;
+            }
+            final String entityTag = readString(buffer);
+            final String lastModified = readString(buffer);
+            final String urlPrefix = readString(buffer);
+            final String latestVersionUrl = urlPrefix + readString(buffer);
+
+            final int versionUrlCount = readCount(buffer);
+            final List<String> versionUrls = new ArrayList<String>(versionUrlCount);
+            for (int i = 0; i < versionUrlCount; i++) {
+                versionUrls.add(urlPrefix + readString(buffer));
+            }
+
+            final int resolvedCount = readCount(buffer);
+            final List<StoredVersion> resolvedVersions = new ArrayList<StoredVersion>(resolvedCount);
+            for (int i = 0; i < resolvedCount; i++) {
+                final int flags = buffer.get();
+                final String versionNumber = readString(buffer);
+                final String version = (flags & SAME_VERSION) == 0 ? readString(buffer) : versionNumber;
+                final String fileLocation = (flags & RELATIVE_FILE_LOCATION) == 0 ? readString(buffer) : urlPrefix + readString(buffer);
+                final long fileSize = (flags & FILE_SIZE) == 0 ? -1 : readVarLong(buffer);
+                final int dependencyCount = readCount(buffer);
+                final Map<String, String> dependencies = new LinkedHashMap<String, String>();
+                for (int d = 0; d < dependencyCount; d++) {
+                    dependencies.put(readString(buffer), readString(buffer));
+                }
+                resolvedVersions.add(new StoredVersion(versionNumber, fileLocation, fileSize, version, dependencies));
+            }
+
+            return new StoredCookbook(name, latestVersionUrl, versionUrls, resolvedVersions, entityTag, lastModified, writtenAtMillis);
+        } catch (BufferUnderflowException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported.", e);
+        }
+    }
+
+    /**
+     * Encode metadata.
+     *
+     * @param serviceUrl
+     *            The URL of the service from which the cookbook was retrieved.
+     * @param cookbook
+     *            The {@link StoredCookbook} to be encoded.
+     * @return The encoded metadata.
+     * @throws IOException
+     *             If the metadata cannot be encoded.
+     */
+    private byte[] encode(String serviceUrl, StoredCookbook cookbook) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(MAGIC);
+        output.writeInt(FORMAT_VERSION);
+        output.writeLong(cookbook.getWrittenAtMillis());
+        writeString(output, serviceUrl);
+        writeString(output, cookbook.getName());
+        writeString(output, cookbook.getEntityTag());
+        writeString(output, cookbook.getLastModified());
+        final String urlPrefix = getUrlPrefix(cookbook);
+        writeString(output, urlPrefix);
+        writeString(output, cookbook.getLatestVersionUrl().substring(urlPrefix.length()));
+
+        writeVarLong(output, cookbook.getVersionUrls().size());
+        for (String versionUrl : cookbook.getVersionUrls()) {
+            writeString(output, versionUrl.substring(urlPrefix.length()));
+        }
+
+        writeVarLong(output, cookbook.getResolvedVersions().size());
+        for (StoredVersion version : cookbook.getResolvedVersions()) {
+            final String fileLocation = version.getFileLocation();
+            final boolean sameVersion = version.getVersionNumber() != null && version.getVersionNumber().equals(version.getVersion());
+            final boolean relativeFileLocation = fileLocation != null && fileLocation.startsWith(urlPrefix);
+            output.writeByte((sameVersion ? SAME_VERSION : 0) | (relativeFileLocation ? RELATIVE_FILE_LOCATION : 0) | (version.getFileSize() >= 0 ? FILE_SIZE : 0));
+            writeString(output, version.getVersionNumber());
+            if (!sameVersion) {
+                writeString(output, version.getVersion());
+            }
+            writeString(output, relativeFileLocation ? fileLocation.substring(urlPrefix.length()) : fileLocation);
+            if (version.getFileSize() >= 0) {
+                writeVarLong(output, version.getFileSize());
+            }
+            writeVarLong(output, version.getDependencies().size());
+            for (Entry<String, String> dependency : version.getDependencies().entrySet()) {
+                writeString(output, dependency.getKey());
+                writeString(output, dependency.getValue());
+            }
+        }
+        output.flush();
+
+        final CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        output.writeLong(crc.getValue());
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Get the prefix shared by the URLs of a cookbook's versions.
+     *
+     * @param cookbook
+     *            The {@link StoredCookbook} whose URLs are to be compared.
+     * @return The longest prefix shared by the URL of the cookbook's latest version and the URLs of all of its versions.
+     */
+    private static String getUrlPrefix(StoredCookbook cookbook) {
+        final String latestVersionUrl = cookbook.getLatestVersionUrl();
+        int length = latestVersionUrl.length();
+        for (String versionUrl : cookbook.getVersionUrls()) {
+            length = Math.min(length, versionUrl.length());
+            for (int i = 0; i < length; i++) {
+                if (versionUrl.charAt(i) != latestVersionUrl.charAt(i)) {
+                    length = i;
+                    break;
+                }
+            }
+        }
+        return latestVersionUrl.substring(0, length);
+    }
+
+    /**
+     * Get the file in which a cookbook's metadata is stored.
+     *
+     * @param serviceUrl
+     *            The URL of the service from which the cookbook was retrieved.
+     * @param name
+     *            The name of the cookbook.
+     * @return A {@link File} representing the location of the cookbook's metadata.
+     */
+    private File getFile(String serviceUrl, String name) {
+        return new File(new File(directory, digest(serviceUrl)), digest(name) + SUFFIX);
+    }
+
+    /**
+     * Produce a digest of a string that is safe to use as a file name.
+     *
+     * @param value
+     *            The value to be digested.
+     * @return A hexadecimal SHA-1 digest of the given value.
+     */
+    private static String digest(String value) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes(UTF_8));
+            final StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not supported.", e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported.", e);
+        }
+    }
+
+    /**
+     * Read a count.
+     *
+     * @param buffer
+     *            The {@link ByteBuffer} from which the count is to be read.
+     * @return The count.
+     * @throws BufferUnderflowException
+     *             If the count exceeds the bytes remaining in the buffer, and so cannot have been written.
+     */
+    private static int readCount(ByteBuffer buffer) {
+        final long count = readVarLong(buffer);
+        if (count > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return (int) count;
+    }
+
+    /**
+     * Read a string prefixed with its length plus one, or with zero if it is {@code null}.
+     *
+     * @param buffer
+     *            The {@link ByteBuffer} from which the string is to be read.
+     * @return The string; {@code null} if a {@code null} string was written.
+     * @throws UnsupportedEncodingException
+     *             If UTF-8 is not supported.
+     */
+    private static String readString(ByteBuffer buffer) throws UnsupportedEncodingException {
+        final long prefix = readVarLong(buffer);
+        if (prefix == 0) {
+            return null;
+        }
+        if (prefix - 1 > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        final byte[] bytes = new byte[(int) (prefix - 1)];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Read a non-negative integer written in seven-bit groups, least significant first, with the high bit of each byte set if another byte follows.
+     *
+     * @param buffer
+     *            The {@link ByteBuffer} from which the integer is to be read.
+     * @return The integer.
+     * @throws IllegalArgumentException
+     *             If the integer does not fit in a {@code long}.
+     */
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 63; shift += 7) {
+            final byte b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Variable-length integer is too long.");
+    }
+
+    /**
+     * Write a string prefixed with its length plus one, or with zero if it is {@code null}.
+     *
+     * @param output
+     *            The {@link DataOutputStream} to which the string is to be written.
+     * @param value
+     *            The string to be written; may be {@code null}.
+     * @throws IOException
+     *             If the string cannot be written.
+     */
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            writeVarLong(output, 0);
+            return;
+        }
+        final byte[] bytes = value.getBytes(UTF_8);
+        writeVarLong(output, bytes.length + 1L);
+        output.write(bytes);
+    }
+
+    /**
+     * Write a non-negative integer in seven-bit groups, least significant first, with the high bit of each byte set if another byte follows.
+     *
+     * @param output
+     *            The {@link DataOutputStream} to which the integer is to be written.
+     * @param value
+     *            The non-negative integer to be written.
+     * @throws IOException
+     *             If the integer cannot be written.
+     */
+    private static void writeVarLong(DataOutputStream output, long value) throws IOException {
+        long remaining = value;
+        while ((remaining & ~0x7fL) != 0) {
+            output.writeByte((int) (remaining & 0x7f) | 0x80);
+            remaining >>>= 7;
+        }
+        output.writeByte((int) remaining);
+    }
+
+    /**
+     * The stored metadata of a cookbook.
+     *
+     * @author Joshua Hyde
+     */
+    static class StoredCookbook {
+        private final String name;
+        private final String latestVersionUrl;
+        private final List<String> versionUrls;
+        private final List<StoredVersion> resolvedVersions;
+        private final String entityTag;
+        private final String lastModified;
+        private final long writtenAtMillis;
+
+        /**
+         * Create stored metadata.
+         *
+         * @param name
+         *            The name of the cookbook.
+         * @param latestVersionUrl
+         *            The URL of the latest version of the cookbook.
+         * @param versionUrls
+         *            The URLs of all versions of the cookbook.
+         * @param resolvedVersions
+         *            A {@link List} of {@link StoredVersion} objects representing the versions that have been resolved.
+         * @param entityTag
+         *            The {@code ETag} sent with the cookbook; may be {@code null}.
+         * @param lastModified
+         *            The {@code Last-Modified} date sent with the cookbook; may be {@code null}.
+         * @param writtenAtMillis
+         *            The time, in milliseconds since the epoch, at which the cookbook was retrieved or last revalidated.
+         */
+        StoredCookbook(String name, String latestVersionUrl, List<String> versionUrls, List<StoredVersion> resolvedVersions, String entityTag, String lastModified, long writtenAtMillis) {
+            this.name = name;
+            this.latestVersionUrl = latestVersionUrl;
+            this.versionUrls = Collections.unmodifiableList(versionUrls);
+            this.resolvedVersions = Collections.unmodifiableList(resolvedVersions);
+            this.entityTag = entityTag;
+            this.lastModified = lastModified;
+            this.writtenAtMillis = writtenAtMillis;
+        }
+
+        /**
+         * Get the entity tag of the cookbook.
+         *
+         * @return The {@code ETag} sent with the cookbook; {@code null} if none was sent.
+         */
+        String getEntityTag() {
+            return entityTag;
+        }
+
+        /**
+         * Get the last-modified date of the cookbook.
+         *
+         * @return The {@code Last-Modified} date sent with the cookbook; {@code null} if none was sent.
+         */
+        String getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Get the URL of the latest version.
+         *
+         * @return The URL of the latest version of the cookbook.
+         */
+        String getLatestVersionUrl() {
+            return latestVersionUrl;
+        }
+
+        /**
+         * Get the name of the cookbook.
+         *
+         * @return The name of the cookbook.
+         */
+        String getName() {
+            return name;
+        }
+
+        /**
+         * Get the resolved versions.
+         *
+         * @return A {@link List} of {@link StoredVersion} objects representing the versions that have been resolved.
+         */
+        List<StoredVersion> getResolvedVersions() {
+            return resolvedVersions;
+        }
+
+        /**
+         * Get the URLs of the versions.
+         *
+         * @return The URLs of all versions of the cookbook.
+         */
+        List<String> getVersionUrls() {
+            return versionUrls;
+        }
+
+        /**
+         * Get the time at which the metadata was written.
+         *
+         * @return The time, in milliseconds since the epoch, at which the cookbook was retrieved or last revalidated.
+         */
+        long getWrittenAtMillis() {
+            return writtenAtMillis;
+        }
+    }
+
+    /**
+     * The stored metadata of a resolved version.
+     *
+     * @author Joshua Hyde
+     */
+    static class StoredVersion {
+        private final String versionNumber;
+        private final String fileLocation;
+        private final long fileSize;
+        private final String version;
+        private final Map<String, String> dependencies;
+
+        /**
+         * Create stored metadata.
+         *
+         * @param versionNumber
+         *            The version number by which the version is known to its cookbook.
+         * @param fileLocation
+         *            The location of the version's file.
+         * @param fileSize
+         *            The size, in bytes, of the version's file; {@code -1} if it is not known.
+         * @param version
+         *            The version reported by the version document.
+         * @param dependencies
+         *            A {@link Map} of the names of the cookbooks on which the version depends to the constraints on their versions.
+         */
+        StoredVersion(String versionNumber, String fileLocation, long fileSize, String version, Map<String, String> dependencies) {
+            this.versionNumber = versionNumber;
+            this.fileLocation = fileLocation;
+            this.fileSize = fileSize;
+            this.version = version;
+            this.dependencies = dependencies;
+        }
+
+        /**
+         * Get the dependencies.
+         *
+         * @return A {@link Map} of the names of the cookbooks on which the version depends to the constraints on their versions.
+         */
+        Map<String, String> getDependencies() {
+            return dependencies;
+        }
+
+        /**
+         * Get the location of the file.
+         *
+         * @return The location of the version's file.
+         */
+        String getFileLocation() {
+            return fileLocation;
+        }
+
+        /**
+         * Get the size of the file.
+         *
+         * @return The size, in bytes, of the version's file; {@code -1} if it is not known.
+         */
+        long getFileSize() {
+            return fileSize;
+        }
+
+        /**
+         * Get the version.
+         *
+         * @return The version reported by the version document.
+         */
+        String getVersion() {
+            return version;
+        }
+
+        /**
+         * Get the version number.
+         *
+         * @return The version number by which the version is known to its cookbook.
+         */
+        String getVersionNumber() {
+            return versionNumber;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * A point-in-time snapshot of the state of the connection pool used by a {@link JerseyCookbookClient}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class PoolStatistics {
+    private final int leased;
+    private final int pending;
+    private final int available;
+    private final int max;
+    private final long connectionsCreated;
+    private final long requestsSent;
+
+    /**
+     * Create a snapshot of pool statistics.
+     *
+     * @param leased
+     *            The number of connections currently in use.
+     * @param pending
+     *            The number of requests waiting for a connection.
+     * @param available
+     *            The number of idle, kept-alive connections in the pool.
+     * @param max
+     *            The maximum size of the pool.
+     * @param connectionsCreated
+     *            The number of connections that have been opened over the lifetime of the pool.
+     * @param requestsSent
+     *            The number of requests that have been sent over the lifetime of the pool.
+     */
+    public PoolStatistics(int leased, int pending, int available, int max, long connectionsCreated, long requestsSent) {
+        this.leased = leased;
+        this.pending = pending;
+        this.available = available;
+        this.max = max;
+        this.connectionsCreated = connectionsCreated;
+        this.requestsSent = requestsSent;
+    }
+
+    /**
+     * Get the number of idle connections.
+     *
+     * @return The number of idle, kept-alive connections in the pool.
+     */
+    public int getAvailable() {
+        return available;
+    }
+
+    /**
+     * Get the number of connections opened.
+     *
+     * @return The number of connections that have been opened over the lifetime of the pool.
+     */
+    public long getConnectionsCreated() {
+        return connectionsCreated;
+    }
+
+    /**
+     * Get the number of connections in use.
+     *
+     * @return The number of connections currently in use.
+     */
+    public int getLeased() {
+        return leased;
+    }
+
+    /**
+     * Get the maximum size of the pool.
+     *
+     * @return The maximum size of the pool.
+     */
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * Get the number of requests waiting for a connection.
+     *
+     * @return The number of requests waiting for a connection to become available.
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    /**
+     * Get the number of requests sent.
+     *
+     * @return The number of requests that have been sent over the lifetime of the pool.
+     */
+    public long getRequestsSent() {
+        return requestsSent;
+    }
+
+    /**
+     * Get the fraction of requests that were served by an already-open connection.
+     *
+     * @return A value between {@code 0.0} and {@code 1.0}, where {@code 1.0} means that every request reused a kept-alive connection; {@code 0.0} if no requests have been sent.
+     */
+    public double getReuseRate() {
+        if (requestsSent == 0) {
+            return 0.0;
+        }
+        return Math.max(0.0, 1.0 - ((double) connectionsCreated / (double) requestsSent));
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
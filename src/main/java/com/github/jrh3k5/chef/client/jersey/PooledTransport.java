@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.Priorities;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.pool.PoolStats;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+
+import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import com.github.jrh3k5.chef.client.jersey.Deadlines.EnforcingConnectionManager;
+
+/**
+ * The HTTP transport shared by a {@link JerseyCookbookClient} and all of the cookbooks it produces. Connections are kept alive and pooled so that subsequent requests to the same host do not pay
+ * for another TCP and TLS handshake. The pool enforces the {@link Deadlines deadlines} of the requests it serves and, if compression is enabled, its connections
+ * {@link ContentDecoding decode} compressed responses.
+ *
+ * @author Joshua Hyde
+ */
+
+class PooledTransport implements Closeable {
+    private final AtomicLong connectionsCreated = new AtomicLong();
+    private final AtomicLong requestsSent = new AtomicLong();
+    private final ScheduledExecutorService deadlineScheduler;
+    private final EnforcingConnectionManager connectionManager;
+    private final ContentDecoding contentDecoding;
+    private final Client client;
+
+    /**
+     * Create a transport.
+     *
+     * @param configuration
+     *            A {@link JerseyCookbookClientConfiguration} describing the transport to be created.
+     * @param instrumentation
+     *            The {@link Instrumentation} measuring the requests sent over the transport; {@code null} if they are not to be measured.
+     */
+    PooledTransport(JerseyCookbookClientConfiguration configuration, Instrumentation instrumentation) {
+        this(configuration, instrumentation, null);
+    }
+
+    /**
+     * Create a transport.
+     *
+     * @param configuration
+     *            A {@link JerseyCookbookClientConfiguration} describing the transport to be created.
+     * @param instrumentation
+     *            The {@link Instrumentation} measuring the requests sent over the transport; {@code null} if they are not to be measured.
+     * @param router
+     *            The {@link EndpointRouter} routing the requests sent over the transport among several servers; {@code null} if there is a single server.
+     */
+    PooledTransport(JerseyCookbookClientConfiguration configuration, Instrumentation instrumentation, EndpointRouter router) {
+        ConnectionSocketFactory plainSocketFactory = PlainConnectionSocketFactory.getSocketFactory();
+        ConnectionSocketFactory sslSocketFactory = SSLConnectionSocketFactory.getSocketFactory();
+        if (instrumentation != null) {
+            plainSocketFactory = Instrumentation.timed(plainSocketFactory);
+            sslSocketFactory = Instrumentation.timed(sslSocketFactory);
+        }
+        final RegistryBuilder<ConnectionSocketFactory> registryBuilder = RegistryBuilder.create();
+        registryBuilder.register("http", plainSocketFactory);
+        registryBuilder.register("https", sslSocketFactory);
+        deadlineScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "chef-cookbook-client-deadlines");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        contentDecoding = configuration.isCompressionEnabled() ? new ContentDecoding() : null;
+        final ManagedHttpClientConnectionFactory connectionFactory = contentDecoding == null ? ManagedHttpClientConnectionFactory.INSTANCE : new ManagedHttpClientConnectionFactory(
+                contentDecoding.getParserFactory());
+        connectionManager = new EnforcingConnectionManager(registryBuilder.build(), new CountingConnectionFactory(connectionFactory, connectionsCreated), deadlineScheduler);
+        connectionManager.setDefaultMaxPerRoute(configuration.getMaxConnectionsPerRoute());
+        connectionManager.setMaxTotal(configuration.getMaxConnectionsTotal());
+        connectionManager.setDefaultConnectionConfig(ConnectionConfig.DEFAULT);
+
+        final ClientConfig clientConfig = new ClientConfig();
+        clientConfig.property(ClientProperties.CONNECT_TIMEOUT, Integer.valueOf(configuration.getConnectTimeoutMs()));
+        clientConfig.property(ClientProperties.READ_TIMEOUT, Integer.valueOf(configuration.getReadTimeoutMs()));
+        clientConfig.property(ClientProperties.ASYNC_THREADPOOL_SIZE, Integer.valueOf(configuration.getAsyncThreadPoolSize()));
+        clientConfig.property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager);
+        clientConfig.connectorProvider(new ApacheConnectorProvider());
+        clientConfig.register(JacksonJsonProvider.class);
+        clientConfig.register(new RequestCountingFilter(requestsSent));
+        clientConfig.register(Deadlines.getFilter());
+        if (router != null) {
+            // Route requests before any other filter reads their URLs
+            clientConfig.register(router.getFilter(), Priorities.AUTHENTICATION);
+        }
+        if (contentDecoding != null) {
+            clientConfig.register(contentDecoding.getFilter());
+        }
+        if (instrumentation != null) {
+            clientConfig.register(instrumentation.getFilter());
+        }
+        client = ClientBuilder.newClient(clientConfig);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            client.close();
+        } finally {
+            try {
+                connectionManager.shutdown();
+            } finally {
+                deadlineScheduler.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Get the Jersey client backed by this transport.
+     *
+     * @return A {@link Client} object.
+     */
+    Client getClient() {
+        return client;
+    }
+
+    /**
+     * Get the current statistics of the compressed responses received.
+     *
+     * @return A {@link CompressionStatistics} object representing the compressed responses received so far; all of its counts are zero if compression is not enabled.
+     */
+    CompressionStatistics getCompressionStatistics() {
+        if (contentDecoding == null) {
+            return new CompressionStatistics(0, 0, 0);
+        }
+        return contentDecoding.getStatistics();
+    }
+
+    /**
+     * Get the current statistics of the connection pool.
+     *
+     * @return A {@link PoolStatistics} object representing the current state of the pool.
+     */
+    PoolStatistics getStatistics() {
+        final PoolStats totalStats = connectionManager.getTotalStats();
+        return new PoolStatistics(totalStats.getLeased(), totalStats.getPending(), totalStats.getAvailable(), totalStats.getMax(), connectionsCreated.get(), requestsSent.get());
+    }
+
+    /**
+     * A connection factory that counts the number of connections it creates.
+     *
+     * @author Joshua Hyde
+     */
+    private static class CountingConnectionFactory implements HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> {
+        private final HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> delegate;
+        private final AtomicLong counter;
+
+        /**
+         * Create a factory.
+         *
+         * @param delegate
+         *            The {@link HttpConnectionFactory} by which connections are to be created.
+         * @param counter
+         *            The {@link AtomicLong} to be incremented for every connection created.
+         */
+        public CountingConnectionFactory(HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> delegate, AtomicLong counter) {
+            this.delegate = delegate;
+            this.counter = counter;
+        }
+
+        @Override
+        public ManagedHttpClientConnection create(HttpRoute route, ConnectionConfig config) {
+            counter.incrementAndGet();
+            return delegate.create(route, config);
+        }
+    }
+
+    /**
+     * A request filter that counts the number of requests that pass through it.
+     *
+     * @author Joshua Hyde
+     */
+    private static class RequestCountingFilter implements ClientRequestFilter {
+        private final AtomicLong counter;
+
+        /**
+         * Create a filter.
+         *
+         * @param counter
+         *            The {@link AtomicLong} to be incremented for every request.
+         */
+        public RequestCountingFilter(AtomicLong counter) {
+            this.counter = counter;
+        }
+
+        @Override
+        public void filter(ClientRequestContext requestContext) throws IOException {
+            counter.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Configuration of how a {@link JerseyCookbookClient} copes with a slow, failing or overloaded server when retrieving cookbook and version documents: retries, hedged requests, a circuit
+ * breaker, an adaptive concurrency limit and, for a client of several servers, failover among them.
+ *
+ * @author Joshua Hyde
+ */
+
+public class ResilienceConfiguration {
+    /**
+     * The default number of times a failed request is retried.
+     */
+    public static final int DEFAULT_MAX_RETRIES = 2;
+    /**
+     * The default base of the exponential backoff between retries, in milliseconds.
+     */
+    public static final long DEFAULT_RETRY_BACKOFF_MS = 100;
+    /**
+     * The default upper bound of the backoff between retries, in milliseconds.
+     */
+    public static final long DEFAULT_MAX_RETRY_BACKOFF_MS = 5000;
+    /**
+     * The default lower bound of the delay before a hedged request is sent, in milliseconds.
+     */
+    public static final long DEFAULT_MINIMUM_HEDGE_DELAY_MS = 10;
+    /**
+     * The default amount of time, in milliseconds, for which an open circuit breaker rejects requests before letting a trial request through.
+     */
+    public static final long DEFAULT_CIRCUIT_BREAKER_OPEN_MS = 30000;
+    /**
+     * The default amount of time, in milliseconds, for which a server whose request failed is passed over by a client of several servers.
+     */
+    public static final long DEFAULT_ENDPOINT_COOLDOWN_MS = 5000;
+    /**
+     * The default number of requests allowed in flight by the adaptive concurrency limit before any have been answered.
+     */
+    public static final int DEFAULT_INITIAL_CONCURRENCY_LIMIT = 10;
+    /**
+     * The default upper bound of the adaptive concurrency limit.
+     */
+    public static final int DEFAULT_MAX_CONCURRENCY_LIMIT = 200;
+    /**
+     * The default number of requests that may wait for the adaptive concurrency limit to allow them.
+     */
+    public static final int DEFAULT_CONCURRENCY_QUEUE_SIZE = 1000;
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    private long retryBackoffMs = DEFAULT_RETRY_BACKOFF_MS;
+    private long maxRetryBackoffMs = DEFAULT_MAX_RETRY_BACKOFF_MS;
+    private double hedgePercentile;
+    private long minimumHedgeDelayMs = DEFAULT_MINIMUM_HEDGE_DELAY_MS;
+    private int circuitBreakerFailureThreshold;
+    private long circuitBreakerOpenMs = DEFAULT_CIRCUIT_BREAKER_OPEN_MS;
+    private long endpointCooldownMs = DEFAULT_ENDPOINT_COOLDOWN_MS;
+    private boolean concurrencyLimitEnabled;
+    private int initialConcurrencyLimit = DEFAULT_INITIAL_CONCURRENCY_LIMIT;
+    private int maxConcurrencyLimit = DEFAULT_MAX_CONCURRENCY_LIMIT;
+    private int concurrencyQueueSize = DEFAULT_CONCURRENCY_QUEUE_SIZE;
+
+    /**
+     * Get the number of consecutive failed requests that open the circuit breaker.
+     *
+     * @return The number of consecutive failed requests that open the circuit breaker; {@code 0} if the circuit breaker is disabled.
+     */
+    public int getCircuitBreakerFailureThreshold() {
+        return circuitBreakerFailureThreshold;
+    }
+
+    /**
+     * Get the amount of time for which an open circuit breaker rejects requests.
+     *
+     * @return The amount of time, in milliseconds, for which an open circuit breaker rejects requests before letting a trial request through.
+     */
+    public long getCircuitBreakerOpenMs() {
+        return circuitBreakerOpenMs;
+    }
+
+    /**
+     * Get the number of requests that may wait for the adaptive concurrency limit to allow them.
+     *
+     * @return The number of requests that may wait for the adaptive concurrency limit to allow them.
+     */
+    public int getConcurrencyQueueSize() {
+        return concurrencyQueueSize;
+    }
+
+    /**
+     * Get the amount of time for which a server whose request failed is passed over.
+     *
+     * @return The amount of time, in milliseconds, for which a server whose request failed is passed over by a client of several servers.
+     */
+    public long getEndpointCooldownMs() {
+        return endpointCooldownMs;
+    }
+
+    /**
+     * Get the latency percentile after which a hedged request is sent.
+     *
+     * @return A value between {@code 0.0} and {@code 1.0}; {@code 0.0} if requests are not hedged.
+     */
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    /**
+     * Get the number of requests allowed in flight by the adaptive concurrency limit before any have been answered.
+     *
+     * @return The initial adaptive concurrency limit.
+     */
+    public int getInitialConcurrencyLimit() {
+        return initialConcurrencyLimit;
+    }
+
+    /**
+     * Get the upper bound of the adaptive concurrency limit.
+     *
+     * @return The upper bound of the adaptive concurrency limit.
+     */
+    public int getMaxConcurrencyLimit() {
+        return maxConcurrencyLimit;
+    }
+
+    /**
+     * Get the number of times a failed request is retried.
+     *
+     * @return The number of times a failed request is retried.
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Get the upper bound of the backoff between retries.
+     *
+     * @return The upper bound, in milliseconds, of the backoff between retries.
+     */
+    public long getMaxRetryBackoffMs() {
+        return maxRetryBackoffMs;
+    }
+
+    /**
+     * Get the lower bound of the delay before a hedged request is sent.
+     *
+     * @return The lower bound, in milliseconds, of the delay before a hedged request is sent.
+     */
+    public long getMinimumHedgeDelayMs() {
+        return minimumHedgeDelayMs;
+    }
+
+    /**
+     * Get the base of the exponential backoff between retries.
+     *
+     * @return The base, in milliseconds, of the exponential backoff between retries.
+     */
+    public long getRetryBackoffMs() {
+        return retryBackoffMs;
+    }
+
+    /**
+     * Determine whether the requests in flight are bounded by an adaptive concurrency limit.
+     *
+     * @return {@code true} if the requests in flight are bounded by an adaptive concurrency limit; {@code false} if they are not.
+     */
+    public boolean isConcurrencyLimitEnabled() {
+        return concurrencyLimitEnabled;
+    }
+
+    /**
+     * Set the number of consecutive failed requests that open the circuit breaker. While the circuit breaker is open, requests fail immediately without contacting the server; once it has been
+     * open for {@link #setCircuitBreakerOpenMs(long) long enough}, a single trial request is let through, and its success closes the circuit breaker again.
+     *
+     * @param circuitBreakerFailureThreshold
+     *            The number of consecutive failed requests that open the circuit breaker; {@code 0} disables the circuit breaker.
+     */
+    public void setCircuitBreakerFailureThreshold(int circuitBreakerFailureThreshold) {
+        this.circuitBreakerFailureThreshold = circuitBreakerFailureThreshold;
+    }
+
+    /**
+     * Set the amount of time for which an open circuit breaker rejects requests.
+     *
+     * @param circuitBreakerOpenMs
+     *            The amount of time, in milliseconds, for which an open circuit breaker rejects requests before letting a trial request through.
+     */
+    public void setCircuitBreakerOpenMs(long circuitBreakerOpenMs) {
+        this.circuitBreakerOpenMs = circuitBreakerOpenMs;
+    }
+
+    /**
+     * Set whether the requests in flight are bounded by an adaptive concurrency limit. The limit rises by one for each limit's worth of requests answered in good time, halves when a request
+     * fails, and shrinks slightly when answers slow down markedly; while a server's {@code Retry-After} lasts, no requests are sent. Requests beyond the limit wait for their turn in a
+     * {@link #setConcurrencyQueueSize(int) bounded queue}. The limit is shared by every request sent by the client, including retries and hedged requests; a hedged request is only sent if the
+     * limit allows it immediately.
+     *
+     * @param concurrencyLimitEnabled
+     *            {@code true} if the requests in flight are to be bounded by an adaptive concurrency limit; {@code false} if they are not.
+     */
+    public void setConcurrencyLimitEnabled(boolean concurrencyLimitEnabled) {
+        this.concurrencyLimitEnabled = concurrencyLimitEnabled;
+    }
+
+    /**
+     * Set the number of requests that may wait for the adaptive concurrency limit to allow them. A request that would exceed the queue fails immediately.
+     *
+     * @param concurrencyQueueSize
+     *            The number of requests that may wait for the adaptive concurrency limit to allow them.
+     */
+    public void setConcurrencyQueueSize(int concurrencyQueueSize) {
+        this.concurrencyQueueSize = concurrencyQueueSize;
+    }
+
+    /**
+     * Set the amount of time for which a server whose request failed is passed over. A client of several servers routes its requests to the other servers in the meantime, unless they are all
+     * failing too.
+     *
+     * @param endpointCooldownMs
+     *            The amount of time, in milliseconds, for which a server whose request failed is passed over by a client of several servers.
+     */
+    public void setEndpointCooldownMs(long endpointCooldownMs) {
+        this.endpointCooldownMs = endpointCooldownMs;
+    }
+
+    /**
+     * Set the latency percentile after which a hedged request is sent. If a request has not been answered once the given percentile of recent request latencies has elapsed, a second, identical
+     * request is sent and whichever is answered first is used. Requests are not hedged until enough latencies have been observed to estimate the percentile.
+     *
+     * @param hedgePercentile
+     *            A value between {@code 0.0} and {@code 1.0} (e.g., {@code 0.95}); {@code 0.0} disables hedging.
+     */
+    public void setHedgePercentile(double hedgePercentile) {
+        this.hedgePercentile = hedgePercentile;
+    }
+
+    /**
+     * Set the number of requests allowed in flight by the adaptive concurrency limit before any have been answered.
+     *
+     * @param initialConcurrencyLimit
+     *            The initial adaptive concurrency limit.
+     */
+    public void setInitialConcurrencyLimit(int initialConcurrencyLimit) {
+        this.initialConcurrencyLimit = initialConcurrencyLimit;
+    }
+
+    /**
+     * Set the upper bound of the adaptive concurrency limit.
+     *
+     * @param maxConcurrencyLimit
+     *            The upper bound of the adaptive concurrency limit.
+     */
+    public void setMaxConcurrencyLimit(int maxConcurrencyLimit) {
+        this.maxConcurrencyLimit = maxConcurrencyLimit;
+    }
+
+    /**
+     * Set the number of times a failed request is retried. A request fails if it cannot be sent or if the server answers with a {@code 5xx} or {@code 429} status. A retry is not sent before the
+     * time given by the server's {@code Retry-After} header, if any; a request whose {@code Retry-After} exceeds the {@link #setMaxRetryBackoffMs(long) upper bound of the backoff} is not retried.
+     *
+     * @param maxRetries
+     *            The number of times a failed request is retried; {@code 0} disables retries.
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Set the upper bound of the backoff between retries.
+     *
+     * @param maxRetryBackoffMs
+     *            The upper bound, in milliseconds, of the backoff between retries.
+     */
+    public void setMaxRetryBackoffMs(long maxRetryBackoffMs) {
+        this.maxRetryBackoffMs = maxRetryBackoffMs;
+    }
+
+    /**
+     * Set the lower bound of the delay before a hedged request is sent.
+     *
+     * @param minimumHedgeDelayMs
+     *            The lower bound, in milliseconds, of the delay before a hedged request is sent.
+     */
+    public void setMinimumHedgeDelayMs(long minimumHedgeDelayMs) {
+        this.minimumHedgeDelayMs = minimumHedgeDelayMs;
+    }
+
+    /**
+     * Set the base of the exponential backoff between retries. Before the <i>n</i>th retry, the client waits for a random amount of time between zero and the base multiplied by 2<sup><i>n</i>
+     * </sup>, up to the {@link #setMaxRetryBackoffMs(long) upper bound}.
+     *
+     * @param retryBackoffMs
+     *            The base, in milliseconds, of the exponential backoff between retries.
+     */
+    public void setRetryBackoffMs(long retryBackoffMs) {
+        this.retryBackoffMs = retryBackoffMs;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
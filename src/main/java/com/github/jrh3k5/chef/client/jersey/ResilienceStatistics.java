@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * A point-in-time snapshot of the retries, hedged requests, circuit breaker and concurrency limit activity of a {@link JerseyCookbookClient}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class ResilienceStatistics {
+    private final long requests;
+    private final long attempts;
+    private final long retries;
+    private final long hedges;
+    private final long hedgeWins;
+    private final long rejections;
+    private final long circuitOpenings;
+    private final CircuitState circuitState;
+    private final int concurrencyLimit;
+    private final int queuedRequests;
+    private final long queueRejections;
+
+    /**
+     * Create a snapshot of resilience statistics.
+     *
+     * @param requests
+     *            The number of cookbook and version documents requested.
+     * @param attempts
+     *            The number of requests sent to the server, including retries and hedged requests.
+     * @param retries
+     *            The number of requests retried after a failure.
+     * @param hedges
+     *            The number of hedged requests sent.
+     * @param hedgeWins
+     *            The number of hedged requests that were answered before the requests they hedged.
+     * @param rejections
+     *            The number of requests that failed immediately because the circuit breaker was open.
+     * @param circuitOpenings
+     *            The number of times the circuit breaker has opened.
+     * @param circuitState
+     *            The current {@link CircuitState} of the circuit breaker.
+     */
+    public ResilienceStatistics(long requests, long attempts, long retries, long hedges, long hedgeWins, long rejections, long circuitOpenings, CircuitState circuitState) {
+        this(requests, attempts, retries, hedges, hedgeWins, rejections, circuitOpenings, circuitState, 0, 0, 0);
+    }
+
+    /**
+     * Create a snapshot of resilience statistics.
+     *
+     * @param requests
+     *            The number of cookbook and version documents requested.
+     * @param attempts
+     *            The number of requests sent to the server, including retries and hedged requests.
+     * @param retries
+     *            The number of requests retried after a failure.
+     * @param hedges
+     *            The number of hedged requests sent.
+     * @param hedgeWins
+     *            The number of hedged requests that were answered before the requests they hedged.
+     * @param rejections
+     *            The number of requests that failed immediately because the circuit breaker was open.
+     * @param circuitOpenings
+     *            The number of times the circuit breaker has opened.
+     * @param circuitState
+     *            The current {@link CircuitState} of the circuit breaker.
+     * @param concurrencyLimit
+     *            The current adaptive concurrency limit; {@code 0} if requests are not limited.
+     * @param queuedRequests
+     *            The number of requests currently waiting for the concurrency limit to allow them.
+     * @param queueRejections
+     *            The number of requests that failed immediately because too many requests were waiting for the concurrency limit to allow them.
+     */
+    public ResilienceStatistics(long requests, long attempts, long retries, long hedges, long hedgeWins, long rejections, long circuitOpenings, CircuitState circuitState, int concurrencyLimit,
+            int queuedRequests, long queueRejections) {
+        this.requests = requests;
+        this.attempts = attempts;
+        this.retries = retries;
+        this.hedges = hedges;
+        this.hedgeWins = hedgeWins;
+        this.rejections = rejections;
+        this.circuitOpenings = circuitOpenings;
+        this.circuitState = circuitState;
+        this.concurrencyLimit = concurrencyLimit;
+        this.queuedRequests = queuedRequests;
+        this.queueRejections = queueRejections;
+    }
+
+    /**
+     * Get the number of requests sent to the server.
+     *
+     * @return The number of requests sent to the server, including retries and hedged requests.
+     */
+    public long getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Get the number of times the circuit breaker has opened.
+     *
+     * @return The number of times the circuit breaker has opened.
+     */
+    public long getCircuitOpenings() {
+        return circuitOpenings;
+    }
+
+    /**
+     * Get the state of the circuit breaker.
+     *
+     * @return The {@link CircuitState} of the circuit breaker when this snapshot was taken.
+     */
+    public CircuitState getCircuitState() {
+        return circuitState;
+    }
+
+    /**
+     * Get the adaptive concurrency limit.
+     *
+     * @return The current number of requests allowed in flight; {@code 0} if requests are not limited.
+     */
+    public int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    /**
+     * Get the fraction of requests that were hedged.
+     *
+     * @return A value between {@code 0.0} and {@code 1.0}; {@code 0.0} if no documents have been requested.
+     */
+    public double getHedgeRate() {
+        return requests == 0 ? 0.0 : (double) hedges / (double) requests;
+    }
+
+    /**
+     * Get the number of hedged requests sent.
+     *
+     * @return The number of hedged requests sent.
+     */
+    public long getHedges() {
+        return hedges;
+    }
+
+    /**
+     * Get the number of hedged requests that won.
+     *
+     * @return The number of hedged requests that were answered before the requests they hedged.
+     */
+    public long getHedgeWins() {
+        return hedgeWins;
+    }
+
+    /**
+     * Get the number of requests rejected by the circuit breaker.
+     *
+     * @return The number of requests that failed immediately because the circuit breaker was open.
+     */
+    public long getRejections() {
+        return rejections;
+    }
+
+    /**
+     * Get the number of documents requested.
+     *
+     * @return The number of cookbook and version documents requested.
+     */
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * Get the fraction of requests that were retried.
+     *
+     * @return The number of retries per requested document; {@code 0.0} if no documents have been requested.
+     */
+    public double getRetryRate() {
+        return requests == 0 ? 0.0 : (double) retries / (double) requests;
+    }
+
+    /**
+     * Get the number of requests waiting for the concurrency limit.
+     *
+     * @return The number of requests currently waiting for the concurrency limit to allow them.
+     */
+    public int getQueuedRequests() {
+        return queuedRequests;
+    }
+
+    /**
+     * Get the number of requests rejected by a full queue.
+     *
+     * @return The number of requests that failed immediately because too many requests were waiting for the concurrency limit to allow them.
+     */
+    public long getQueueRejections() {
+        return queueRejections;
+    }
+
+    /**
+     * Get the number of retries.
+     *
+     * @return The number of requests retried after a failure.
+     */
+    public long getRetries() {
+        return retries;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+
+    /**
+     * The states of a circuit breaker.
+     *
+     * @author Joshua Hyde
+     */
+    public static enum CircuitState {
+        /**
+         * Requests are sent to the server.
+         */
+        CLOSED,
+        /**
+         * Requests fail immediately without contacting the server.
+         */
+        OPEN,
+        /**
+         * A single trial request is being sent to determine whether the server has recovered.
+         */
+        HALF_OPEN
+    }
+}
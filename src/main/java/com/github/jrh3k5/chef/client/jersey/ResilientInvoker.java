@@ -0,0 +1,929 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import org.apache.http.client.utils.DateUtils;
+
+import com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException;
+import com.github.jrh3k5.chef.client.Deadline;
+import com.github.jrh3k5.chef.client.Deadline.DeadlineExceededException;
+import com.github.jrh3k5.chef.client.RetrievalCallback;
+import com.github.jrh3k5.chef.client.concurrent.ResultFuture;
+import com.github.jrh3k5.chef.client.jersey.ConcurrencyLimiter.Permit;
+import com.github.jrh3k5.chef.client.jersey.EndpointRouter.Route;
+import com.github.jrh3k5.chef.client.jersey.Instrumentation.Exchange;
+
+/**
+ * Sends idempotent {@code GET} requests on behalf of a {@link JerseyCookbookClient}, retrying failures with jittered exponential backoff, optionally hedging slow requests, and failing fast while
+ * a circuit breaker is open.
+ * <p />
+ * A request fails if it cannot be sent or if the server answers with a {@code 5xx} or {@code 429} status. Once the retries are exhausted, the last response is handed to the caller as-is, so that
+ * the caller reports the server's answer; if no response was received, the last error is.
+ * <p />
+ * A request bound by a {@link Deadline} is not retried once the deadline would expire before the next attempt, and fails as soon as the deadline expires or is cancelled, aborting the attempts in
+ * flight. Attempts aborted by their deadline are not held against the server by the circuit breaker.
+ * <p />
+ * If the client has several servers, each attempt is routed by an {@link EndpointRouter}, which is told how the attempt fared. A failed attempt is retried on another server without backing off if
+ * one is available, and a hedge is sent to another server than the attempt it hedges.
+ *
+ * @author Joshua Hyde
+ */
+
+class ResilientInvoker implements Closeable {
+    private static final int LATENCY_SAMPLES = 512;
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final String RESPONSE = "a response";
+    private final Random random = new Random();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong attempts = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final LatencyTracker latencies = new LatencyTracker(LATENCY_SAMPLES);
+    private final CircuitBreaker circuitBreaker;
+    private final ScheduledExecutorService scheduler;
+    private final int maxRetries;
+    private final long retryBackoffMs;
+    private final long maxRetryBackoffMs;
+    private final double hedgePercentile;
+    private final long minimumHedgeDelayMs;
+    private final Instrumentation instrumentation;
+    private final EndpointRouter router;
+    private final ConcurrencyLimiter limiter;
+
+    /**
+     * Create an invoker whose requests are not measured.
+     *
+     * @param configuration
+     *            A {@link ResilienceConfiguration} describing how requests are to be retried, hedged and broken.
+     */
+    ResilientInvoker(ResilienceConfiguration configuration) {
+        this(configuration, null, null);
+    }
+
+    /**
+     * Create an invoker.
+     *
+     * @param configuration
+     *            A {@link ResilienceConfiguration} describing how requests are to be retried, hedged and broken.
+     * @param instrumentation
+     *            The {@link Instrumentation} measuring each attempt; {@code null} if attempts are not to be measured.
+     * @param router
+     *            The {@link EndpointRouter} routing each attempt among the client's servers; {@code null} if the client has a single server.
+     */
+    ResilientInvoker(ResilienceConfiguration configuration, Instrumentation instrumentation, EndpointRouter router) {
+        this.instrumentation = instrumentation;
+        this.router = router;
+        this.circuitBreaker = new CircuitBreaker(configuration.getCircuitBreakerFailureThreshold(), configuration.getCircuitBreakerOpenMs());
+        this.maxRetries = Math.max(0, configuration.getMaxRetries());
+        this.retryBackoffMs = configuration.getRetryBackoffMs();
+        this.maxRetryBackoffMs = configuration.getMaxRetryBackoffMs();
+        this.hedgePercentile = configuration.getHedgePercentile();
+        this.minimumHedgeDelayMs = configuration.getMinimumHedgeDelayMs();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "chef-cookbook-client-resilience");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.limiter = configuration.isConcurrencyLimitEnabled() ? new ConcurrencyLimiter(configuration.getInitialConcurrencyLimit(), configuration.getMaxConcurrencyLimit(),
+                configuration.getConcurrencyQueueSize(), scheduler) : null;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        if (limiter != null) {
+            limiter.close();
+        }
+    }
+
+    /**
+     * Send a request on the calling thread, unless it is to be hedged, in which case the calling thread waits for the hedged requests.
+     *
+     * @param source
+     *            The {@link RequestSource} from which each attempt's request is built.
+     * @return The {@link Response} to the request.
+     * @throws CookbookRetrievalException
+     *             If the circuit breaker is open or the calling thread is interrupted.
+     * @throws ProcessingException
+     *             If no attempt could be sent.
+     */
+    Response get(RequestSource source) {
+        return get(source, null);
+    }
+
+    /**
+     * Send a request within a deadline on the calling thread, unless it is to be hedged, in which case the calling thread waits for the hedged requests.
+     *
+     * @param source
+     *            The {@link RequestSource} from which each attempt's request is built.
+     * @param deadline
+     *            The {@link Deadline} within which the request is to be answered; {@code null} if the request is not bounded.
+     * @return The {@link Response} to the request.
+     * @throws DeadlineExceededException
+     *             If the deadline expires before the request is answered.
+     * @throws CookbookRetrievalException
+     *             If the deadline is cancelled, the circuit breaker is open or the calling thread is interrupted.
+     * @throws ProcessingException
+     *             If no attempt could be sent.
+     */
+    Response get(RequestSource source, Deadline deadline) {
+        if (hedgePercentile > 0) {
+            return await(getAsync(source, deadline, null));
+        }
+
+        requests.incrementAndGet();
+        Route route = null;
+        for (int retry = 0;; retry++) {
+            if (deadline != null) {
+                deadline.check(RESPONSE);
+            }
+            if (!circuitBreaker.allowRequest()) {
+                throw reject();
+            }
+            final Invocation.Builder request = Deadlines.bind(source.newRequest(), deadline);
+            route = router == null ? null : router.route(request, route);
+            final Permit permit = limiter == null ? null : awaitPermit(deadline);
+            attempts.incrementAndGet();
+            final long startedAt = System.nanoTime();
+            Response response = null;
+            ProcessingException failure = null;
+            final Exchange exchange = instrumentation == null ? null : instrumentation.begin(request);
+            try {
+                response = request.get();
+            } catch (ProcessingException e) {
+                failure = e;
+                if (exchange != null) {
+                    exchange.failed(e);
+                }
+                // An attempt aborted by its deadline says nothing about the server
+                if (isOver(deadline)) {
+                    ignore(permit);
+                    deadline.check(RESPONSE);
+                }
+            } catch (RuntimeException e) {
+                ignore(permit);
+                throw e;
+            }
+
+            if (response != null) {
+                final long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+                latencies.record(latencyMs);
+                if (!isFailure(response)) {
+                    circuitBreaker.recordSuccess();
+                    if (route != null) {
+                        router.recordSuccess(route, latencyMs);
+                    }
+                    if (permit != null) {
+                        limiter.onSuccess(permit, latencyMs);
+                    }
+                    return response;
+                }
+            }
+            circuitBreaker.recordFailure();
+            if (route != null) {
+                router.recordFailure(route);
+            }
+            if (permit != null) {
+                limiter.onDropped(permit);
+            }
+            final long retryAfterMs = response == null ? -1 : honourRetryAfter(response, route);
+            final long backoffMs = retry >= maxRetries ? -1 : getRetryBackoffMs(retry, route, retryAfterMs);
+            if (backoffMs < 0 || deadline != null && backoffMs >= deadline.getRemainingMillis()) {
+                // The retries are exhausted, or the deadline would expire before the next attempt
+                if (response != null) {
+                    return response;
+                }
+                throw failure;
+            }
+
+            if (response != null) {
+                response.close();
+            }
+            retries.incrementAndGet();
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CookbookRetrievalException("Interrupted while waiting to retry request.", e);
+            }
+        }
+    }
+
+    /**
+     * Send a request without blocking the calling thread.
+     *
+     * @param source
+     *            The {@link RequestSource} from which each attempt's request is built.
+     * @param callback
+     *            The {@link InvocationCallback} to be notified of the outcome; may be {@code null}.
+     * @return A {@link Future} representing the request; cancelling it cancels every attempt in flight.
+     */
+    Future<Response> getAsync(RequestSource source, InvocationCallback<Response> callback) {
+        return getAsync(source, null, callback);
+    }
+
+    /**
+     * Send a request within a deadline without blocking the calling thread.
+     *
+     * @param source
+     *            The {@link RequestSource} from which each attempt's request is built.
+     * @param deadline
+     *            The {@link Deadline} within which the request is to be answered; {@code null} if the request is not bounded.
+     * @param callback
+     *            The {@link InvocationCallback} to be notified of the outcome; may be {@code null}.
+     * @return A {@link Future} representing the request; cancelling it cancels every attempt in flight. If the deadline expires first, it fails with a {@link DeadlineExceededException}.
+     */
+    Future<Response> getAsync(RequestSource source, Deadline deadline, InvocationCallback<Response> callback) {
+        requests.incrementAndGet();
+        final Call call = new Call(source, deadline, callback);
+        call.start();
+        return call.outcome;
+    }
+
+    /**
+     * Fail a retrieval once its deadline expires or is cancelled, unless it completes first.
+     *
+     * @param result
+     *            The {@link ResultFuture} representing the retrieval.
+     * @param deadline
+     *            The {@link Deadline} within which the retrieval is to complete.
+     * @param description
+     *            A description of what is being retrieved, for error messages.
+     */
+    void bound(final ResultFuture<?> result, final Deadline deadline, final String description) {
+        if (isOver(deadline)) {
+            failWithDeadline(result, deadline, description);
+            return;
+        }
+
+        final Deadline.Registration cancellation = deadline.onCancel(new Runnable() {
+            @Override
+            public void run() {
+                failWithDeadline(result, deadline, description);
+            }
+        });
+        ScheduledFuture<?> expiry = null;
+        try {
+            expiry = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    result.setException(new DeadlineExceededException("Deadline expired before retrieving " + description));
+                }
+            }, deadline.getRemainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The invoker has been closed, and the retrieval fails with it
+        }
+        final ScheduledFuture<?> scheduledExpiry = expiry;
+        result.addCallback(new RetrievalCallback<Object>() {
+            @Override
+            public void completed(Object ignored) {
+                release();
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                release();
+            }
+
+            private void release() {
+                cancellation.remove();
+                if (scheduledExpiry != null) {
+                    scheduledExpiry.cancel(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Get a snapshot of the statistics of this invoker.
+     *
+     * @return A {@link ResilienceStatistics} object representing the current statistics.
+     */
+    ResilienceStatistics getStatistics() {
+        if (limiter == null) {
+            return new ResilienceStatistics(requests.get(), attempts.get(), retries.get(), hedges.get(), hedgeWins.get(), rejections.get(), circuitBreaker.getOpenings(), circuitBreaker.getState());
+        }
+        return new ResilienceStatistics(requests.get(), attempts.get(), retries.get(), hedges.get(), hedgeWins.get(), rejections.get(), circuitBreaker.getOpenings(), circuitBreaker.getState(),
+                limiter.getLimit(), limiter.getQueued(), limiter.getQueueRejections());
+    }
+
+    /**
+     * Wait for a request sent without blocking, or for a permit to send one.
+     *
+     * @param outcome
+     *            The {@link Future} representing the request or permit.
+     * @return The {@link Response} to the request, or the granted {@link Permit}.
+     */
+    private <T> T await(Future<T> outcome) {
+        try {
+            return outcome.get();
+        } catch (InterruptedException e) {
+            outcome.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CookbookRetrievalException("Interrupted while waiting for response.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new CookbookRetrievalException("Request failed.", e.getCause());
+        }
+    }
+
+    /**
+     * Compute the backoff before a retry.
+     *
+     * @param retry
+     *            The number of retries already made.
+     * @return A random delay, in milliseconds, between zero and the exponential backoff for the given retry.
+     */
+    private long getBackoffMs(int retry) {
+        final long ceiling = Math.min(maxRetryBackoffMs, retryBackoffMs << Math.min(retry, 30));
+        if (ceiling <= 0) {
+            return 0;
+        }
+        synchronized (random) {
+            return (long) (random.nextDouble() * (ceiling + 1));
+        }
+    }
+
+    /**
+     * Compute the backoff before a retry, which is skipped if the retry can be sent to another server than the failed attempt.
+     *
+     * @param retry
+     *            The number of retries already made.
+     * @param route
+     *            The {@link Route} of the failed attempt; {@code null} if attempts are not routed.
+     * @param retryAfterMs
+     *            The delay, in milliseconds, after which the server asked for the request to be sent again; {@code -1} if it did not.
+     * @return {@code -1} if the request is not to be retried because the server asked for a longer delay than the upper bound of the backoff; otherwise, the delay, in milliseconds, before the
+     *         retry.
+     */
+    private long getRetryBackoffMs(int retry, Route route, long retryAfterMs) {
+        if (route != null && router.hasAlternative(route.getEndpoint())) {
+            return 0;
+        }
+        if (retryAfterMs > maxRetryBackoffMs) {
+            return -1;
+        }
+        return Math.max(getBackoffMs(retry), retryAfterMs);
+    }
+
+    /**
+     * Compute the delay before a request is hedged.
+     *
+     * @return {@code -1} if the request is not to be hedged; otherwise, the delay, in milliseconds.
+     */
+    private long getHedgeDelayMs() {
+        if (hedgePercentile <= 0) {
+            return -1;
+        }
+        final long percentile = latencies.getPercentile(hedgePercentile);
+        return percentile < 0 ? -1 : Math.max(minimumHedgeDelayMs, percentile);
+    }
+
+    /**
+     * Wait for the concurrency limit to allow an attempt.
+     *
+     * @param deadline
+     *            The {@link Deadline} within which the request is to be answered; {@code null} if the request is not bounded.
+     * @return The {@link Permit} of the attempt.
+     * @throws DeadlineExceededException
+     *             If the deadline expires before the attempt is allowed.
+     * @throws CookbookRetrievalException
+     *             If too many attempts are already waiting, the deadline is cancelled or the calling thread is interrupted.
+     */
+    private Permit awaitPermit(Deadline deadline) {
+        final ResultFuture<Permit> pending = limiter.acquire();
+        return deadline == null ? await(pending) : deadline.await(pending, RESPONSE);
+    }
+
+    /**
+     * Hand back a permit whose attempt was not sent, or whose outcome says nothing about the server.
+     *
+     * @param permit
+     *            The {@link Permit} to be handed back; {@code null} if attempts are not limited.
+     */
+    private void ignore(Permit permit) {
+        if (permit != null) {
+            limiter.onIgnored(permit);
+        }
+    }
+
+    /**
+     * Honour the {@code Retry-After} header of a failed response, if any: unless another server can take the request, no attempts are sent until the server is ready for them again.
+     *
+     * @param response
+     *            The failed {@link Response}.
+     * @param route
+     *            The {@link Route} of the failed attempt; {@code null} if attempts are not routed.
+     * @return {@code -1} if the response has no valid {@code Retry-After} header; otherwise, the delay, in milliseconds, after which the server asked for the request to be sent again.
+     */
+    private long honourRetryAfter(Response response, Route route) {
+        final long retryAfterMs = getRetryAfterMs(response);
+        if (retryAfterMs > 0 && limiter != null && (route == null || !router.hasAlternative(route.getEndpoint()))) {
+            limiter.pause(Math.min(retryAfterMs, maxRetryBackoffMs));
+        }
+        return retryAfterMs;
+    }
+
+    /**
+     * Read the {@code Retry-After} header of a response, which may be given either as a number of seconds or as an HTTP date.
+     *
+     * @param response
+     *            The {@link Response} whose header is to be read.
+     * @return {@code -1} if the response has no valid {@code Retry-After} header; otherwise, the delay, in milliseconds, after which the server asked for the request to be sent again.
+     */
+    private static long getRetryAfterMs(Response response) {
+        final String retryAfter = response.getHeaderString(HttpHeaders.RETRY_AFTER);
+        if (retryAfter == null) {
+            return -1;
+        }
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim())));
+        } catch (NumberFormatException e) {
+            final Date retryAt = DateUtils.parseDate(retryAfter.trim());
+            return retryAt == null ? -1 : Math.max(0, retryAt.getTime() - System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Determine whether a response is a failure that is worth retrying.
+     *
+     * @param response
+     *            The {@link Response} to be examined.
+     * @return {@code true} if the server failed or asked for the request to be slowed; {@code false} otherwise.
+     */
+    private static boolean isFailure(Response response) {
+        return response.getStatus() >= 500 || response.getStatus() == TOO_MANY_REQUESTS;
+    }
+
+    /**
+     * Fail a retrieval because its deadline has expired or been cancelled.
+     *
+     * @param result
+     *            The {@link ResultFuture} representing the retrieval.
+     * @param deadline
+     *            The {@link Deadline} that has passed.
+     * @param description
+     *            A description of what is being retrieved, for error messages.
+     */
+    private static void failWithDeadline(ResultFuture<?> result, Deadline deadline, String description) {
+        try {
+            deadline.check(description);
+        } catch (CookbookRetrievalException e) {
+            result.setException(e);
+        }
+    }
+
+    /**
+     * Determine whether a deadline has passed.
+     *
+     * @param deadline
+     *            The {@link Deadline} to be examined; may be {@code null}.
+     * @return {@code true} if the deadline has expired or been cancelled; {@code false} if it has not or there is none.
+     */
+    private static boolean isOver(Deadline deadline) {
+        return deadline != null && (deadline.isCancelled() || deadline.isExpired());
+    }
+
+    /**
+     * Build the exception with which a request rejected by the circuit breaker fails.
+     *
+     * @return A {@link CookbookRetrievalException}.
+     */
+    private CookbookRetrievalException reject() {
+        rejections.incrementAndGet();
+        return new CookbookRetrievalException("Circuit breaker is open; the cookbook server has been failing.");
+    }
+
+    /**
+     * Definition of a source of requests. Each attempt builds a new request, so that every attempt carries the headers that are current when it is sent.
+     *
+     * @author Joshua Hyde
+     */
+    interface RequestSource {
+        /**
+         * Build a request.
+         *
+         * @return An {@link Invocation.Builder} for the request.
+         */
+        Invocation.Builder newRequest();
+    }
+
+    /**
+     * A request sent without blocking, and the attempts made to complete it.
+     *
+     * @author Joshua Hyde
+     */
+    private class Call implements RetrievalCallback<Response> {
+        private final ResultFuture<Response> outcome = new ResultFuture<Response>();
+        private final List<Future<Response>> inFlight = new ArrayList<Future<Response>>();
+        private final List<Exchange> exchanges = new ArrayList<Exchange>();
+        private final RequestSource source;
+        private final Deadline deadline;
+        private final InvocationCallback<Response> callback;
+        private Route lastRoute;
+        private ResultFuture<Permit> pendingPermit;
+        private int retry;
+        private int outstanding;
+        private boolean hedged;
+
+        /**
+         * Create a call.
+         *
+         * @param source
+         *            The {@link RequestSource} from which each attempt's request is built.
+         * @param deadline
+         *            The {@link Deadline} within which the call is to be completed; {@code null} if it is not bounded.
+         * @param callback
+         *            The {@link InvocationCallback} to be notified of the outcome; may be {@code null}.
+         */
+        public Call(RequestSource source, Deadline deadline, InvocationCallback<Response> callback) {
+            this.source = source;
+            this.deadline = deadline;
+            this.callback = callback;
+            outcome.addCallback(this);
+        }
+
+        @Override
+        public void completed(Response response) {
+            if (callback != null) {
+                callback.completed(response);
+            }
+        }
+
+        @Override
+        public void failed(Throwable throwable) {
+            final List<Future<Response>> toCancel;
+            final ResultFuture<Permit> toAbandon;
+            synchronized (this) {
+                toCancel = new ArrayList<Future<Response>>(inFlight);
+                toAbandon = pendingPermit;
+            }
+            if (toAbandon != null) {
+                toAbandon.cancel(false);
+            }
+            for (Future<Response> attempt : toCancel) {
+                attempt.cancel(true);
+            }
+            abandonExchanges(null);
+            if (callback != null && !outcome.isCancelled()) {
+                callback.failed(throwable);
+            }
+        }
+
+        /**
+         * Send the first attempt.
+         */
+        public void start() {
+            if (deadline != null) {
+                bound(outcome, deadline, RESPONSE);
+            }
+            send();
+        }
+
+        /**
+         * Send the first attempt of a round once the concurrency limit, if any, allows it.
+         */
+        private void send() {
+            if (limiter == null) {
+                send(false, null);
+                return;
+            }
+
+            final ResultFuture<Permit> pending = limiter.acquire();
+            synchronized (this) {
+                pendingPermit = pending;
+            }
+            pending.addCallback(new RetrievalCallback<Permit>() {
+                @Override
+                public void completed(Permit permit) {
+                    send(false, permit);
+                }
+
+                @Override
+                public void failed(Throwable throwable) {
+                    outcome.setException(throwable);
+                }
+            });
+        }
+
+        /**
+         * Send an attempt.
+         *
+         * @param hedge
+         *            {@code true} if the attempt hedges another attempt that is still in flight; {@code false} if it is the first attempt of its round.
+         * @param permit
+         *            The {@link Permit} granted to the attempt by the concurrency limit; {@code null} if attempts are not limited.
+         */
+        private void send(final boolean hedge, final Permit permit) {
+            if (outcome.isDone()) {
+                ignore(permit);
+                return;
+            }
+            if (!circuitBreaker.allowRequest()) {
+                ignore(permit);
+                if (!hedge) {
+                    outcome.setException(reject());
+                }
+                return;
+            }
+
+            final int round;
+            final Route previousRoute;
+            synchronized (this) {
+                outstanding++;
+                round = retry;
+                if (!hedge) {
+                    hedged = false;
+                }
+                previousRoute = lastRoute;
+            }
+            attempts.incrementAndGet();
+            final long startedAt = System.nanoTime();
+            final Future<Response> attempt;
+            final Invocation.Builder request;
+            final Exchange exchange;
+            try {
+                request = Deadlines.bind(source.newRequest(), deadline);
+            } catch (RuntimeException e) {
+                ignore(permit);
+                circuitBreaker.recordFailure();
+                attemptFailed(null, e, -1);
+                return;
+            }
+            final Route route;
+            if (router == null) {
+                route = null;
+            } else {
+                route = router.route(request, previousRoute);
+                synchronized (this) {
+                    lastRoute = route;
+                }
+            }
+            if (instrumentation == null) {
+                exchange = null;
+            } else {
+                exchange = instrumentation.begin(request);
+                synchronized (this) {
+                    exchanges.add(exchange);
+                }
+            }
+            try {
+                attempt = request.async().get(new InvocationCallback<Response>() {
+                    @Override
+                    public void completed(Response response) {
+                        final long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+                        latencies.record(latencyMs);
+                        if (isFailure(response)) {
+                            circuitBreaker.recordFailure();
+                            if (route != null) {
+                                router.recordFailure(route);
+                            }
+                            if (permit != null) {
+                                limiter.onDropped(permit);
+                            }
+                            attemptFailed(response, null, honourRetryAfter(response, route));
+                        } else {
+                            circuitBreaker.recordSuccess();
+                            if (route != null) {
+                                router.recordSuccess(route, latencyMs);
+                            }
+                            if (permit != null) {
+                                limiter.onSuccess(permit, latencyMs);
+                            }
+                            // Count the win before the caller is released, so that the statistics it reads include its own call
+                            if (hedge) {
+                                hedgeWins.incrementAndGet();
+                            }
+                            if (outcome.set(response)) {
+                                cancelOthers(exchange);
+                            } else {
+                                if (hedge) {
+                                    hedgeWins.decrementAndGet();
+                                }
+                                response.close();
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void failed(Throwable throwable) {
+                        // Attempts cancelled because the call is already complete, or aborted by its deadline, say nothing about the server
+                        if (!outcome.isDone() && !isOver(deadline)) {
+                            circuitBreaker.recordFailure();
+                            if (route != null) {
+                                router.recordFailure(route);
+                            }
+                            if (permit != null) {
+                                limiter.onDropped(permit);
+                            }
+                        } else {
+                            ignore(permit);
+                        }
+                        if (exchange != null) {
+                            exchange.failed(throwable);
+                        }
+                        attemptFailed(null, throwable, -1);
+                    }
+                });
+            } catch (RuntimeException e) {
+                if (exchange != null) {
+                    exchange.failed(e);
+                }
+                ignore(permit);
+                circuitBreaker.recordFailure();
+                if (route != null) {
+                    router.recordFailure(route);
+                }
+                attemptFailed(null, e, -1);
+                return;
+            }
+            synchronized (this) {
+                inFlight.add(attempt);
+            }
+
+            final long hedgeDelayMs = hedge ? -1 : getHedgeDelayMs();
+            if (hedgeDelayMs >= 0) {
+                schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (Call.this) {
+                            if (hedged || round != retry || outstanding == 0 || outcome.isDone()) {
+                                return;
+                            }
+                            hedged = true;
+                        }
+                        // A hedge adds load, so it is only sent if the concurrency limit allows it straight away
+                        final Permit hedgePermit = limiter == null ? null : limiter.tryAcquire();
+                        if (limiter != null && hedgePermit == null) {
+                            return;
+                        }
+                        hedges.incrementAndGet();
+                        send(true, hedgePermit);
+                    }
+                }, hedgeDelayMs, false);
+            }
+        }
+
+        /**
+         * Handle the failure of an attempt, retrying once every attempt of the current round has failed.
+         *
+         * @param response
+         *            The failed {@link Response}; {@code null} if no response was received.
+         * @param throwable
+         *            The {@link Throwable} that prevented a response; {@code null} if a response was received.
+         * @param retryAfterMs
+         *            The delay, in milliseconds, after which the server asked for the request to be sent again; {@code -1} if it did not.
+         */
+        private void attemptFailed(Response response, Throwable throwable, long retryAfterMs) {
+            final boolean retrying;
+            final long backoffMs;
+            synchronized (this) {
+                outstanding--;
+                if (outstanding > 0 || outcome.isDone()) {
+                    // Another attempt of this round may yet succeed
+                    if (response != null) {
+                        response.close();
+                    }
+                    return;
+                }
+                backoffMs = retry < maxRetries && !isOver(deadline) ? getRetryBackoffMs(retry, lastRoute, retryAfterMs) : -1;
+                // Do not retry if the deadline would expire before the next attempt
+                retrying = backoffMs >= 0 && (deadline == null || backoffMs < deadline.getRemainingMillis());
+                if (retrying) {
+                    retry++;
+                }
+            }
+
+            if (!retrying) {
+                if (isOver(deadline)) {
+                    if (response != null) {
+                        response.close();
+                    }
+                    failWithDeadline(outcome, deadline, RESPONSE);
+                } else if (response != null) {
+                    if (!outcome.set(response)) {
+                        response.close();
+                    }
+                } else {
+                    outcome.setException(throwable instanceof ProcessingException ? throwable : new ProcessingException(throwable));
+                }
+                return;
+            }
+
+            if (response != null) {
+                response.close();
+            }
+            retries.incrementAndGet();
+            schedule(new Runnable() {
+                @Override
+                public void run() {
+                    send();
+                }
+            }, backoffMs, true);
+        }
+
+        /**
+         * Finish the measurement of attempts that will not be read, as they are cancelled or their responses discarded.
+         *
+         * @param winner
+         *            The {@link Exchange} of the attempt whose response completed the call, which is finished when its response is read; {@code null} if no attempt completed the call.
+         */
+        private void abandonExchanges(Exchange winner) {
+            final List<Exchange> toAbandon;
+            synchronized (this) {
+                if (exchanges.isEmpty()) {
+                    return;
+                }
+                toAbandon = new ArrayList<Exchange>(exchanges);
+            }
+            for (Exchange exchange : toAbandon) {
+                if (exchange != winner) {
+                    exchange.failed(new CancellationException("Attempt was abandoned."));
+                }
+            }
+        }
+
+        /**
+         * Cancel the attempts that lost to the attempt that completed the call.
+         *
+         * @param winner
+         *            The {@link Exchange} of the attempt that completed the call; {@code null} if attempts are not measured.
+         */
+        private void cancelOthers(Exchange winner) {
+            final List<Future<Response>> toCancel;
+            synchronized (this) {
+                toCancel = new ArrayList<Future<Response>>(inFlight);
+            }
+            for (Future<Response> attempt : toCancel) {
+                if (!attempt.isDone()) {
+                    attempt.cancel(true);
+                }
+            }
+            abandonExchanges(winner);
+        }
+
+        /**
+         * Schedule a task.
+         *
+         * @param task
+         *            The {@link Runnable} to be scheduled.
+         * @param delayMs
+         *            The delay, in milliseconds, before the task is run.
+         * @param required
+         *            {@code true} if the call is to fail should the task not be scheduled because the invoker has been closed; {@code false} if the task is merely an optimization.
+         */
+        private void schedule(Runnable task, long delayMs, boolean required) {
+            try {
+                scheduler.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+                if (required) {
+                    outcome.setException(new CookbookRetrievalException("Client has been closed.", e));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.github.jrh3k5.chef.client.metrics.RequestMetrics.Operation;
+
+/**
+ * A {@link MetricsListener} that aggregates what it is told into latency histograms, counters and gauges, which can be read directly or, once {@link #registerMBean(String) registered}, over JMX.
+ * Recording takes no locks.
+ *
+ * @author Joshua Hyde
+ */
+
+public class AggregatingMetricsListener implements MetricsListener, MetricsMXBean {
+    /**
+     * The domain of the names under which listeners are registered with JMX.
+     */
+    public static final String OBJECT_NAME_DOMAIN = "com.github.jrh3k5.chef.client";
+    private final Map<Operation, OperationAggregate> operations = new EnumMap<Operation, OperationAggregate>(Operation.class);
+    private final ConcurrentMap<String, AtomicInteger> inFlight = new ConcurrentHashMap<String, AtomicInteger>();
+    private final ConcurrentMap<String, CacheAggregate> caches = new ConcurrentHashMap<String, CacheAggregate>();
+    private ObjectName objectName;
+
+    /**
+     * Create a listener.
+     */
+    public AggregatingMetricsListener() {
+        for (Operation operation : Operation.values()) {
+            operations.put(operation, new OperationAggregate());
+        }
+    }
+
+    @Override
+    public void cacheAccessed(String cache, boolean hit) {
+        CacheAggregate aggregate = caches.get(cache);
+        if (aggregate == null) {
+            final CacheAggregate created = new CacheAggregate();
+            aggregate = caches.putIfAbsent(cache, created);
+            if (aggregate == null) {
+                aggregate = created;
+            }
+        }
+        (hit ? aggregate.hits : aggregate.misses).incrementAndGet();
+    }
+
+    @Override
+    public Map<String, Double> getCacheHitRatios() {
+        final Map<String, Double> ratios = new TreeMap<String, Double>();
+        for (Entry<String, CacheAggregate> cache : caches.entrySet()) {
+            final long hits = cache.getValue().hits.get();
+            final long accesses = hits + cache.getValue().misses.get();
+            ratios.put(cache.getKey(), Double.valueOf(accesses == 0 ? 0 : (double) hits / accesses));
+        }
+        return ratios;
+    }
+
+    @Override
+    public Map<String, Integer> getInFlightRequests() {
+        final Map<String, Integer> gauges = new TreeMap<String, Integer>();
+        for (Entry<String, AtomicInteger> host : inFlight.entrySet()) {
+            gauges.put(host.getKey(), Integer.valueOf(host.getValue().get()));
+        }
+        return gauges;
+    }
+
+    /**
+     * Get a summary of the requests sent for an operation.
+     *
+     * @param operation
+     *            The {@link Operation} whose requests are to be summarized.
+     * @return An {@link OperationMetrics} object summarizing the requests finished so far.
+     */
+    public OperationMetrics getOperationMetrics(Operation operation) {
+        return operations.get(operation).snapshot();
+    }
+
+    @Override
+    public Map<String, OperationMetrics> getOperations() {
+        final Map<String, OperationMetrics> snapshots = new LinkedHashMap<String, OperationMetrics>();
+        for (Entry<Operation, OperationAggregate> operation : operations.entrySet()) {
+            snapshots.put(operation.getKey().name(), operation.getValue().snapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * Register this listener with the platform MBean server.
+     *
+     * @param name
+     *            The name that distinguishes this listener from others registered in the same JVM.
+     * @return The {@link ObjectName} under which this listener was registered.
+     * @throws JMException
+     *             If the listener cannot be registered.
+     * @throws IllegalStateException
+     *             If this listener is already registered.
+     */
+    public synchronized ObjectName registerMBean(String name) throws JMException {
+        if (objectName != null) {
+            throw new IllegalStateException("Listener is already registered as " + objectName);
+        }
+        final ObjectName toRegister = new ObjectName(OBJECT_NAME_DOMAIN + ":type=Metrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, toRegister);
+        objectName = toRegister;
+        return objectName;
+    }
+
+    @Override
+    public void requestCompleted(RequestMetrics metrics) {
+        inFlight(metrics.getHost()).decrementAndGet();
+        operations.get(metrics.getOperation()).record(metrics);
+    }
+
+    @Override
+    public void requestStarted(String host) {
+        inFlight(host).incrementAndGet();
+    }
+
+    /**
+     * Unregister this listener from the platform MBean server, if it is registered.
+     *
+     * @throws JMException
+     *             If the listener cannot be unregistered.
+     */
+    public synchronized void unregisterMBean() throws JMException {
+        if (objectName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            objectName = null;
+        }
+    }
+
+    /**
+     * Get the gauge of the requests in flight to a host.
+     *
+     * @param host
+     *            The host.
+     * @return An {@link AtomicInteger} counting the requests in flight to the host.
+     */
+    private AtomicInteger inFlight(String host) {
+        final AtomicInteger existing = inFlight.get(host);
+        if (existing != null) {
+            return existing;
+        }
+        final AtomicInteger created = new AtomicInteger();
+        final AtomicInteger concurrent = inFlight.putIfAbsent(host, created);
+        return concurrent == null ? created : concurrent;
+    }
+
+    /**
+     * The accesses counted for a cache.
+     *
+     * @author Joshua Hyde
+     */
+    private static class CacheAggregate {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+    }
+
+    /**
+     * The requests recorded for an operation.
+     *
+     * @author Joshua Hyde
+     */
+    private static class OperationAggregate {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong notFound = new AtomicLong();
+        private final AtomicLong responseBytes = new AtomicLong();
+        private final ConcurrentMap<Integer, AtomicLong> statusCounts = new ConcurrentHashMap<Integer, AtomicLong>();
+        private final LatencyHistogram connectTime = new LatencyHistogram();
+        private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+        private final LatencyHistogram parseTime = new LatencyHistogram();
+        private final LatencyHistogram totalTime = new LatencyHistogram();
+
+        /**
+         * Record a request.
+         *
+         * @param metrics
+         *            The {@link RequestMetrics} of the request.
+         */
+        public void record(RequestMetrics metrics) {
+            requests.incrementAndGet();
+            if (metrics.isFailed()) {
+                failures.incrementAndGet();
+            }
+            if (metrics.isNotFound()) {
+                notFound.incrementAndGet();
+            }
+            responseBytes.addAndGet(metrics.getResponseBytes());
+            if (metrics.getStatus() >= 0) {
+                final Integer status = Integer.valueOf(metrics.getStatus());
+                AtomicLong statusCount = statusCounts.get(status);
+                if (statusCount == null) {
+                    final AtomicLong created = new AtomicLong();
+                    statusCount = statusCounts.putIfAbsent(status, created);
+                    if (statusCount == null) {
+                        statusCount = created;
+                    }
+                }
+                statusCount.incrementAndGet();
+            }
+            if (metrics.getConnectNanos() > 0) {
+                connectTime.record(metrics.getConnectNanos());
+            }
+            timeToFirstByte.record(metrics.getTimeToFirstByteNanos());
+            if (!metrics.isFailed()) {
+                parseTime.record(metrics.getParseNanos());
+            }
+            totalTime.record(metrics.getTotalNanos());
+        }
+
+        /**
+         * Summarize the recorded requests.
+         *
+         * @return An {@link OperationMetrics} object summarizing the recorded requests.
+         */
+        public OperationMetrics snapshot() {
+            final Map<Integer, Long> statuses = new TreeMap<Integer, Long>();
+            for (Entry<Integer, AtomicLong> statusCount : statusCounts.entrySet()) {
+                statuses.put(statusCount.getKey(), Long.valueOf(statusCount.getValue().get()));
+            }
+            return new OperationMetrics(requests.get(), failures.get(), notFound.get(), responseBytes.get(), statuses, connectTime.snapshot(), timeToFirstByte.snapshot(), parseTime.snapshot(),
+                    totalTime.snapshot());
+        }
+    }
+}
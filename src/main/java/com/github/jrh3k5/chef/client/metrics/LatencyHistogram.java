@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations. Durations are kept in microseconds, in buckets that split each power of two into four, so a percentile is reported to within a quarter of its magnitude.
+ *
+ * @author Joshua Hyde
+ */
+
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = SUB_BUCKETS * (64 - SUB_BUCKET_BITS);
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Record a duration.
+     *
+     * @param nanos
+     *            The duration, in nanoseconds; negative durations are recorded as zero.
+     */
+    public void record(long nanos) {
+        final long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(indexOf(micros));
+        count.incrementAndGet();
+        sumMicros.addAndGet(micros);
+        long max = maxMicros.get();
+        while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+            max = maxMicros.get();
+        }
+    }
+
+    /**
+     * Take a snapshot of this histogram.
+     *
+     * @return A {@link LatencySnapshot} summarizing the durations recorded so far.
+     */
+    public LatencySnapshot snapshot() {
+        final long[] snapshotCounts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshotCounts[i] = counts.get(i);
+            total += snapshotCounts[i];
+        }
+        if (total == 0) {
+            return new LatencySnapshot(0, 0, 0, 0, 0, 0);
+        }
+
+        final long max = maxMicros.get();
+        return new LatencySnapshot(total, toMillis(sumMicros.get()) / count.get(), percentile(snapshotCounts, total, max, 0.5), percentile(snapshotCounts, total, max, 0.9), percentile(
+                snapshotCounts, total, max, 0.99), toMillis(max));
+    }
+
+    /**
+     * Find the bucket of a duration.
+     *
+     * @param micros
+     *            The duration, in microseconds.
+     * @return The index of the bucket counting the duration.
+     */
+    private static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        final int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS * (exponent - SUB_BUCKET_BITS + 1) + subBucket;
+    }
+
+    /**
+     * Get the largest duration counted by a bucket.
+     *
+     * @param index
+     *            The index of the bucket.
+     * @return The largest duration, in microseconds, counted by the bucket.
+     */
+    private static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        final long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    /**
+     * Estimate a percentile of the recorded durations.
+     *
+     * @param snapshotCounts
+     *            The counts of each bucket.
+     * @param total
+     *            The sum of the counts.
+     * @param max
+     *            The longest recorded duration, in microseconds.
+     * @param percentile
+     *            The percentile, between {@code 0} and {@code 1}.
+     * @return The estimated percentile, in milliseconds.
+     */
+    private static double percentile(long[] snapshotCounts, long total, long max, double percentile) {
+        final long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < snapshotCounts.length; i++) {
+            seen += snapshotCounts[i];
+            if (seen >= rank) {
+                return toMillis(Math.min(max, upperBoundOf(i)));
+            }
+        }
+        return toMillis(max);
+    }
+
+    /**
+     * Convert microseconds to milliseconds.
+     *
+     * @param micros
+     *            The number of microseconds.
+     * @return The number of milliseconds.
+     */
+    private static double toMillis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.metrics;
+
+import java.beans.ConstructorProperties;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * A summary of the durations recorded by a {@link LatencyHistogram}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class LatencySnapshot {
+    private final long count;
+    private final double meanMs;
+    private final double p50Ms;
+    private final double p90Ms;
+    private final double p99Ms;
+    private final double maxMs;
+
+    /**
+     * Create a snapshot.
+     *
+     * @param count
+     *            The number of durations recorded.
+     * @param meanMs
+     *            The mean duration, in milliseconds.
+     * @param p50Ms
+     *            The median duration, in milliseconds.
+     * @param p90Ms
+     *            The 90th percentile duration, in milliseconds.
+     * @param p99Ms
+     *            The 99th percentile duration, in milliseconds.
+     * @param maxMs
+     *            The longest duration, in milliseconds.
+     */
+    @ConstructorProperties({ "count", "meanMs", "p50Ms", "p90Ms", "p99Ms", "maxMs" })
+    public LatencySnapshot(long count, double meanMs, double p50Ms, double p90Ms, double p99Ms, double maxMs) {
+        this.count = count;
+        this.meanMs = meanMs;
+        this.p50Ms = p50Ms;
+        this.p90Ms = p90Ms;
+        this.p99Ms = p99Ms;
+        this.maxMs = maxMs;
+    }
+
+    /**
+     * Get the number of durations recorded.
+     *
+     * @return The number of durations recorded.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get the longest duration.
+     *
+     * @return The longest duration, in milliseconds.
+     */
+    public double getMaxMs() {
+        return maxMs;
+    }
+
+    /**
+     * Get the mean duration.
+     *
+     * @return The mean duration, in milliseconds.
+     */
+    public double getMeanMs() {
+        return meanMs;
+    }
+
+    /**
+     * Get the median duration.
+     *
+     * @return The median duration, in milliseconds.
+     */
+    public double getP50Ms() {
+        return p50Ms;
+    }
+
+    /**
+     * Get the 90th percentile duration.
+     *
+     * @return The 90th percentile duration, in milliseconds.
+     */
+    public double getP90Ms() {
+        return p90Ms;
+    }
+
+    /**
+     * Get the 99th percentile duration.
+     *
+     * @return The 99th percentile duration, in milliseconds.
+     */
+    public double getP99Ms() {
+        return p99Ms;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
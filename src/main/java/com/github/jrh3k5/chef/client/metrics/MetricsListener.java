@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.metrics;
+
+/**
+ * Definition of a listener that is told about the requests a client sends and the effectiveness of its caches. Listeners are invoked on the threads sending and reading requests, so they must be
+ * thread-safe and should return quickly; an exception thrown by a listener is logged and otherwise ignored.
+ *
+ * @author Joshua Hyde
+ */
+
+public interface MetricsListener {
+    /**
+     * The name of the cache of documents revalidated with conditional requests; a hit is a {@code 304 Not Modified} response.
+     */
+    String CONDITIONAL_CACHE = "conditional";
+    /**
+     * The name of the on-disk metadata store; a hit is a cookbook answered without contacting the server.
+     */
+    String METADATA_STORE = "metadata-store";
+
+    /**
+     * Invoked when a cache is consulted.
+     *
+     * @param cache
+     *            The name of the cache.
+     * @param hit
+     *            {@code true} if the cache could answer; {@code false} if it could not.
+     */
+    void cacheAccessed(String cache, boolean hit);
+
+    /**
+     * Invoked when a request has finished: its response has been read and closed, or it has failed. Every {@link #requestStarted(String) started} request finishes exactly once.
+     *
+     * @param metrics
+     *            A {@link RequestMetrics} object describing the request.
+     */
+    void requestCompleted(RequestMetrics metrics);
+
+    /**
+     * Invoked when a request is about to be sent.
+     *
+     * @param host
+     *            The host, and port if one was given, to which the request is being sent.
+     */
+    void requestStarted(String host);
+}
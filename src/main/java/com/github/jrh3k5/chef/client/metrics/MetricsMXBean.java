@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.metrics;
+
+import java.util.Map;
+
+/**
+ * The management interface through which the metrics gathered by an {@link AggregatingMetricsListener} are exposed over JMX.
+ *
+ * @author Joshua Hyde
+ */
+
+public interface MetricsMXBean {
+    /**
+     * Get the hit ratio of each cache.
+     *
+     * @return A {@link Map} of the names of caches to the fraction, between {@code 0} and {@code 1}, of their accesses that were hits.
+     */
+    Map<String, Double> getCacheHitRatios();
+
+    /**
+     * Get the number of requests in flight to each host.
+     *
+     * @return A {@link Map} of hosts to the number of requests to each that have started but not finished.
+     */
+    Map<String, Integer> getInFlightRequests();
+
+    /**
+     * Get a summary of the requests sent for each operation.
+     *
+     * @return A {@link Map} of the names of {@link RequestMetrics.Operation operations} to summaries of the requests sent for each.
+     */
+    Map<String, OperationMetrics> getOperations();
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.metrics;
+
+import java.beans.ConstructorProperties;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * A summary of the requests sent for an {@link RequestMetrics.Operation operation}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class OperationMetrics {
+    private final long requests;
+    private final long failures;
+    private final long notFound;
+    private final long responseBytes;
+    private final Map<Integer, Long> statusCounts;
+    private final LatencySnapshot connectTime;
+    private final LatencySnapshot timeToFirstByte;
+    private final LatencySnapshot parseTime;
+    private final LatencySnapshot totalTime;
+
+    /**
+     * Create a summary.
+     *
+     * @param requests
+     *            The number of requests finished.
+     * @param failures
+     *            The number of requests that failed before their responses could be read.
+     * @param notFound
+     *            The number of requests answered with {@code 404 Not Found}.
+     * @param responseBytes
+     *            The number of bytes read from the bodies of responses.
+     * @param statusCounts
+     *            A {@link Map} of the statuses of responses to the number of responses with each.
+     * @param connectTime
+     *            A {@link LatencySnapshot} of the time spent establishing new connections.
+     * @param timeToFirstByte
+     *            A {@link LatencySnapshot} of the time until responses started to arrive.
+     * @param parseTime
+     *            A {@link LatencySnapshot} of the time spent reading and decoding the bodies of responses.
+     * @param totalTime
+     *            A {@link LatencySnapshot} of the total time taken by requests.
+     */
+    @ConstructorProperties({ "requests", "failures", "notFound", "responseBytes", "statusCounts", "connectTime", "timeToFirstByte", "parseTime", "totalTime" })
+    public OperationMetrics(long requests, long failures, long notFound, long responseBytes, Map<Integer, Long> statusCounts, LatencySnapshot connectTime, LatencySnapshot timeToFirstByte,
+            LatencySnapshot parseTime, LatencySnapshot totalTime) {
+        this.requests = requests;
+        this.failures = failures;
+        this.notFound = notFound;
+        this.responseBytes = responseBytes;
+        this.statusCounts = Collections.unmodifiableMap(statusCounts);
+        this.connectTime = connectTime;
+        this.timeToFirstByte = timeToFirstByte;
+        this.parseTime = parseTime;
+        this.totalTime = totalTime;
+    }
+
+    /**
+     * Get the time spent establishing new connections. Requests sent over pooled connections are not counted.
+     *
+     * @return A {@link LatencySnapshot} of the time spent establishing new connections.
+     */
+    public LatencySnapshot getConnectTime() {
+        return connectTime;
+    }
+
+    /**
+     * Get the number of requests that failed before their responses could be read.
+     *
+     * @return The number of failed requests.
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Get the number of requests answered with {@code 404 Not Found}.
+     *
+     * @return The number of requests for documents that were not found.
+     */
+    public long getNotFound() {
+        return notFound;
+    }
+
+    /**
+     * Get the time spent reading and decoding the bodies of responses.
+     *
+     * @return A {@link LatencySnapshot} of the time spent reading and decoding the bodies of responses.
+     */
+    public LatencySnapshot getParseTime() {
+        return parseTime;
+    }
+
+    /**
+     * Get the number of requests finished.
+     *
+     * @return The number of requests finished.
+     */
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * Get the number of bytes read from the bodies of responses.
+     *
+     * @return The number of bytes read from the bodies of responses.
+     */
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    /**
+     * Get the number of responses with each status.
+     *
+     * @return A {@link Map} of the statuses of responses to the number of responses with each.
+     */
+    public Map<Integer, Long> getStatusCounts() {
+        return statusCounts;
+    }
+
+    /**
+     * Get the time until responses started to arrive.
+     *
+     * @return A {@link LatencySnapshot} of the time until responses started to arrive.
+     */
+    public LatencySnapshot getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    /**
+     * Get the total time taken by requests.
+     *
+     * @return A {@link LatencySnapshot} of the total time taken by requests.
+     */
+    public LatencySnapshot getTotalTime() {
+        return totalTime;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.metrics;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * The measurements of a single request. Every attempt made to complete a retried or hedged retrieval is measured as a request of its own.
+ *
+ * @author Joshua Hyde
+ */
+
+public class RequestMetrics {
+    private final Operation operation;
+    private final String host;
+    private final int status;
+    private final long connectNanos;
+    private final long timeToFirstByteNanos;
+    private final long parseNanos;
+    private final long responseBytes;
+    private final Throwable failure;
+
+    /**
+     * Create measurements.
+     *
+     * @param operation
+     *            The {@link Operation} the request was sent for.
+     * @param host
+     *            The host to which the request was sent.
+     * @param status
+     *            The status of the response; {@code -1} if no response was received.
+     * @param connectNanos
+     *            The time, in nanoseconds, spent establishing a connection; {@code 0} if a pooled connection was used.
+     * @param timeToFirstByteNanos
+     *            The time, in nanoseconds, from the sending of the request until the response's headers were received, or until it failed.
+     * @param parseNanos
+     *            The time, in nanoseconds, from the receipt of the response's headers until its body had been read and decoded.
+     * @param responseBytes
+     *            The number of bytes read from the body of the response.
+     * @param failure
+     *            The {@link Throwable} that failed the request; {@code null} if it did not fail.
+     */
+    public RequestMetrics(Operation operation, String host, int status, long connectNanos, long timeToFirstByteNanos, long parseNanos, long responseBytes, Throwable failure) {
+        this.operation = operation;
+        this.host = host;
+        this.status = status;
+        this.connectNanos = connectNanos;
+        this.timeToFirstByteNanos = timeToFirstByteNanos;
+        this.parseNanos = parseNanos;
+        this.responseBytes = responseBytes;
+        this.failure = failure;
+    }
+
+    /**
+     * Get the time spent establishing a connection.
+     *
+     * @return The time, in nanoseconds, spent establishing a connection, including any TLS handshake; {@code 0} if a pooled connection was used.
+     */
+    public long getConnectNanos() {
+        return connectNanos;
+    }
+
+    /**
+     * Get the failure of the request.
+     *
+     * @return The {@link Throwable} that failed the request; {@code null} if it did not fail.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Get the host to which the request was sent.
+     *
+     * @return The host, and port if one was given, to which the request was sent.
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Get the operation the request was sent for.
+     *
+     * @return The {@link Operation} the request was sent for.
+     */
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Get the time spent reading and decoding the body of the response.
+     *
+     * @return The time, in nanoseconds, from the receipt of the response's headers until its body had been read and decoded.
+     */
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    /**
+     * Get the size of the response.
+     *
+     * @return The number of bytes read from the body of the response.
+     */
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    /**
+     * Get the status of the response.
+     *
+     * @return The status of the response; {@code -1} if no response was received.
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Get the time until the response started to arrive.
+     *
+     * @return The time, in nanoseconds, from the sending of the request until the response's headers were received, or until it failed.
+     */
+    public long getTimeToFirstByteNanos() {
+        return timeToFirstByteNanos;
+    }
+
+    /**
+     * Get the total time taken by the request.
+     *
+     * @return The time, in nanoseconds, from the sending of the request until its response had been read and decoded, or until it failed.
+     */
+    public long getTotalNanos() {
+        return timeToFirstByteNanos + parseNanos;
+    }
+
+    /**
+     * Determine whether the request failed.
+     *
+     * @return {@code true} if the request failed before its response could be read; {@code false} otherwise.
+     */
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Determine whether the requested document was not found.
+     *
+     * @return {@code true} if the server answered with {@code 404 Not Found}; {@code false} otherwise.
+     */
+    public boolean isNotFound() {
+        return status == 404;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+
+    /**
+     * The operations for which requests are sent.
+     *
+     * @author Joshua Hyde
+     */
+    public static enum Operation {
+        /**
+         * The retrieval of a cookbook document.
+         */
+        COOKBOOK,
+        /**
+         * The retrieval of a version document.
+         */
+        VERSION,
+        /**
+         * The retrieval of a page of the catalog, or of a cookbook document to learn when it was updated during a catalog synchronization.
+         */
+        CATALOG
+    }
+}
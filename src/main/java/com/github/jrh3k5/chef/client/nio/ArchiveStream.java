@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.nio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import com.github.jrh3k5.chef.client.RetrievalCallback;
+
+/**
+ * A response body streamed to a reader on another thread, for archives too large to be held in memory. The I/O thread appends each part of the body as it arrives and the reader consumes it; once
+ * more than a high-water mark of unread bytes is buffered, reading from the connection is paused until the reader has drained the buffer below a low-water mark, so a slow reader holds back the
+ * server rather than filling the heap.
+ * <p />
+ * Closing the stream before the body has been read to its end aborts the request.
+ *
+ * @author Joshua Hyde
+ */
+
+final class ArchiveStream extends InputStream implements ResponseHandler<Void>, RetrievalCallback<Void> {
+    private static final int HIGH_WATER_BYTES = 1024 * 1024;
+    private static final int LOW_WATER_BYTES = 256 * 1024;
+    private final LinkedList<byte[]> chunks = new LinkedList<byte[]>();
+    private int chunkOffset;
+    private int buffered;
+    private int status;
+    private Map<String, String> headers;
+    private Exchange<Void> exchange;
+    private Future<Void> future;
+    private boolean paused;
+    private boolean ended;
+    private boolean closed;
+    private Throwable failure;
+
+    @Override
+    public synchronized int available() {
+        return buffered;
+    }
+
+    /**
+     * Wait for the status and headers of the response.
+     *
+     * @return The status of the response.
+     * @throws IOException
+     *             If the request failed before a response arrived, or the calling thread is interrupted while waiting.
+     */
+    synchronized int awaitStatus() throws IOException {
+        while (headers == null && failure == null) {
+            waitForChange();
+        }
+        if (headers == null) {
+            throw asIOException(failure);
+        }
+        return status;
+    }
+
+    /**
+     * Bind this stream to the future of its exchange, so that closing the stream early can abort it.
+     *
+     * @param exchangeFuture
+     *            The {@link Future} of the exchange.
+     */
+    synchronized void bind(Future<Void> exchangeFuture) {
+        this.future = exchangeFuture;
+        if (closed && !ended) {
+            exchangeFuture.cancel(true);
+        }
+    }
+
+    @Override
+    public void close() {
+        final Future<Void> toCancel;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            chunks.clear();
+            buffered = 0;
+            toCancel = ended ? null : future;
+            notifyAll();
+        }
+        if (toCancel != null) {
+            toCancel.cancel(true);
+        }
+    }
+
+    @Override
+    public void completed(Void result) {
+        // The end of the body was recorded by completed()
+    }
+
+    @Override
+    public synchronized Void completed() {
+        ended = true;
+        notifyAll();
+        return null;
+    }
+
+    @Override
+    public boolean content(ByteBuffer content) {
+        final byte[] chunk = new byte[content.remaining()];
+        content.get(chunk);
+        synchronized (this) {
+            if (closed) {
+                return true;
+            }
+            chunks.add(chunk);
+            buffered += chunk.length;
+            notifyAll();
+            paused = buffered >= HIGH_WATER_BYTES;
+            return !paused;
+        }
+    }
+
+    @Override
+    public synchronized void failed(Throwable throwable) {
+        if (failure == null) {
+            failure = throwable;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Get a header of the response. This must only be called once {@link #awaitStatus()} has returned.
+     *
+     * @param name
+     *            The name of the header, in lower case.
+     * @return {@code null} if the response has no such header; otherwise, its value.
+     */
+    synchronized String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    @Override
+    public synchronized void headers(int responseStatus, Map<String, String> responseHeaders, Exchange<Void> responseExchange) {
+        this.status = responseStatus;
+        this.headers = responseHeaders;
+        this.exchange = responseExchange;
+        notifyAll();
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] single = new byte[1];
+        final int read = read(single, 0, 1);
+        return read < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] destination, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        final Exchange<Void> toResume;
+        final int read;
+        synchronized (this) {
+            while (chunks.isEmpty() && !ended && failure == null && !closed) {
+                waitForChange();
+            }
+            if (closed) {
+                throw new IOException("The archive stream has been closed.");
+            }
+            if (chunks.isEmpty()) {
+                if (failure != null) {
+                    throw asIOException(failure);
+                }
+                return -1;
+            }
+
+            final byte[] chunk = chunks.getFirst();
+            read = Math.min(length, chunk.length - chunkOffset);
+            System.arraycopy(chunk, chunkOffset, destination, offset, read);
+            chunkOffset += read;
+            if (chunkOffset == chunk.length) {
+                chunks.removeFirst();
+                chunkOffset = 0;
+            }
+            buffered -= read;
+            if (paused && buffered < LOW_WATER_BYTES) {
+                paused = false;
+                toResume = exchange;
+            } else {
+                toResume = null;
+            }
+        }
+        if (toResume != null) {
+            toResume.resume();
+        }
+        return read;
+    }
+
+    /**
+     * Convert the failure of the request into an exception to be thrown to the reader.
+     *
+     * @param throwable
+     *            The {@link Throwable} with which the request failed.
+     * @return An {@link IOException} describing the failure.
+     */
+    private static IOException asIOException(Throwable throwable) {
+        if (throwable instanceof IOException) {
+            return (IOException) throwable;
+        }
+        return new IOException("Failed to read the archive.", throwable);
+    }
+
+    /**
+     * Wait for the state of this stream to change.
+     *
+     * @throws InterruptedIOException
+     *             If the calling thread is interrupted while waiting.
+     */
+    private void waitForChange() throws InterruptedIOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading the archive.");
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.nio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.github.jrh3k5.chef.client.ArchiveDownload;
+import com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException;
+
+/**
+ * Utilities for transferring cookbook archives through an {@link HttpEngine}.
+ * <p />
+ * The body of the archive is streamed from the I/O thread to the calling thread through an {@link ArchiveStream}, so the event loops never touch the disk and a slow disk pauses the connection
+ * rather than filling the heap. Downloads are written with {@link FileChannel#transferFrom(ReadableByteChannel, long, long)} and their SHA-256 digest is computed as the bytes pass through. A
+ * partial file is resumed with a {@code Range} request; a server that ignores the range restarts the download from the beginning.
+ *
+ * @author Joshua Hyde
+ */
+
+final class ArchiveTransfer {
+    private static final long TRANSFER_CHUNK_BYTES = 1024 * 1024;
+    private static final int DIGEST_BUFFER_BYTES = 64 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private ArchiveTransfer() {
+    }
+
+    /**
+     * Download an archive to a file.
+     *
+     * @param engine
+     *            The {@link HttpEngine} through which the archive is to be requested.
+     * @param location
+     *            The {@link URL} of the archive.
+     * @param destination
+     *            The {@link File} to which the archive is to be written.
+     * @param expectedSize
+     *            The size of the archive, if known in advance; otherwise, {@code -1}.
+     * @param expectedSha256
+     *            The expected hexadecimal SHA-256 digest of the archive; {@code null} if it is not to be verified.
+     * @return An {@link ArchiveDownload} describing the downloaded archive.
+     * @throws CookbookRetrievalException
+     *             If the archive could not be downloaded or does not match the expected digest.
+     */
+    static ArchiveDownload download(HttpEngine engine, URL location, File destination, long expectedSize, String expectedSha256) {
+        if (location == null) {
+            throw new CookbookRetrievalException("Version has no archive location");
+        }
+
+        final ArchiveDownload download;
+        try {
+            final RandomAccessFile file = new RandomAccessFile(destination, "rw");
+            try {
+                download = transfer(engine, location, destination, file.getChannel(), expectedSize);
+            } finally {
+                file.close();
+            }
+        } catch (IOException e) {
+            throw new CookbookRetrievalException("Failed to download archive: " + location, e);
+        }
+
+        if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(download.getSha256())) {
+            if (!destination.delete()) {
+                destination.deleteOnExit();
+            }
+            throw new CookbookRetrievalException(String.format("SHA-256 digest of archive %s was %s; expected %s", location, download.getSha256(), expectedSha256));
+        }
+        return download;
+    }
+
+    /**
+     * Open an archive for reading.
+     *
+     * @param engine
+     *            The {@link HttpEngine} through which the archive is to be requested.
+     * @param location
+     *            The {@link URL} of the archive.
+     * @return An {@link InputStream} over the archive; closing it before its end aborts the request.
+     * @throws CookbookRetrievalException
+     *             If the archive could not be requested.
+     */
+    static InputStream open(HttpEngine engine, URL location) {
+        if (location == null) {
+            throw new CookbookRetrievalException("Version has no archive location");
+        }
+
+        final ArchiveStream stream = request(engine, location, Collections.<String, String> emptyMap());
+        final int status;
+        try {
+            status = stream.awaitStatus();
+        } catch (IOException e) {
+            stream.close();
+            throw new CookbookRetrievalException("Failed to open archive: " + location, e);
+        }
+        if (status != 200) {
+            stream.close();
+            throw new CookbookRetrievalException(String.format("Unexpected response from server for archive %s: %d", location, status));
+        }
+        return stream;
+    }
+
+    /**
+     * Request an archive.
+     *
+     * @param engine
+     *            The {@link HttpEngine} through which the archive is to be requested.
+     * @param location
+     *            The {@link URL} of the archive.
+     * @param headers
+     *            A {@link Map} of additional headers to be sent with the request.
+     * @return An {@link ArchiveStream} over the response.
+     * @throws CookbookRetrievalException
+     *             If the location is not a valid URI.
+     */
+    private static ArchiveStream request(HttpEngine engine, URL location, Map<String, String> headers) {
+        final ArchiveStream stream = new ArchiveStream();
+        try {
+            stream.bind(engine.execute(location.toURI(), headers, stream, stream));
+        } catch (URISyntaxException e) {
+            throw new CookbookRetrievalException("Invalid archive location: " + location, e);
+        }
+        return stream;
+    }
+
+    /**
+     * Transfer an archive into a file, resuming from its current contents if possible.
+     *
+     * @param engine
+     *            The {@link HttpEngine} through which the archive is to be requested.
+     * @param location
+     *            The {@link URL} of the archive.
+     * @param destination
+     *            The {@link File} to which the archive is to be written.
+     * @param channel
+     *            The {@link FileChannel} of the destination file.
+     * @param expectedSize
+     *            The size of the archive, if known in advance; otherwise, {@code -1}.
+     * @return An {@link ArchiveDownload} describing the downloaded archive.
+     * @throws IOException
+     *             If the archive cannot be received or written.
+     * @throws CookbookRetrievalException
+     *             If the server does not return the archive or returns an archive of the wrong size.
+     */
+    private static ArchiveDownload transfer(HttpEngine engine, URL location, File destination, FileChannel channel, long expectedSize) throws IOException {
+        final MessageDigest digest = newDigest();
+        long existing = channel.size();
+        if (expectedSize >= 0 && existing > expectedSize) {
+            channel.truncate(0);
+            existing = 0;
+        }
+        if (existing > 0 && existing == expectedSize) {
+            digest(channel, existing, digest);
+            return new ArchiveDownload(destination, existing, existing, toHex(digest.digest()));
+        }
+
+        final Map<String, String> headers = new HashMap<String, String>();
+        if (existing > 0) {
+            headers.put("Range", "bytes=" + existing + "-");
+        }
+
+        final ArchiveStream stream = request(engine, location, headers);
+        try {
+            final int status = stream.awaitStatus();
+            final long offset;
+            if (existing > 0 && status == 206) {
+                offset = existing;
+                digest(channel, offset, digest);
+            } else if (status == 200) {
+                offset = 0;
+                channel.truncate(0);
+            } else if (existing > 0 && status == 416) {
+                // The file is no shorter than the archive, so it is either complete or not the archive at all
+                final long completeLength = getCompleteLength(stream.getHeader("content-range"));
+                stream.close();
+                if (existing == completeLength) {
+                    digest(channel, existing, digest);
+                    return new ArchiveDownload(destination, existing, existing, toHex(digest.digest()));
+                }
+                channel.truncate(0);
+                return transfer(engine, location, destination, channel, expectedSize);
+            } else {
+                throw new CookbookRetrievalException(String.format("Unexpected response from server for archive %s: %d", location, status));
+            }
+
+            final ReadableByteChannel source = Channels.newChannel(new DigestInputStream(stream, digest));
+            long position = offset;
+            long transferred;
+            while ((transferred = channel.transferFrom(source, position, TRANSFER_CHUNK_BYTES)) > 0) {
+                position += transferred;
+            }
+            channel.truncate(position);
+            channel.force(false);
+
+            if (expectedSize >= 0 && position != expectedSize) {
+                if (position > expectedSize) {
+                    channel.truncate(0);
+                }
+                throw new CookbookRetrievalException(String.format("Archive %s was %d bytes; expected %d", location, position, expectedSize));
+            }
+            return new ArchiveDownload(destination, position, offset, toHex(digest.digest()));
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Feed the beginning of a file into a digest.
+     *
+     * @param channel
+     *            The {@link FileChannel} of the file.
+     * @param length
+     *            The number of bytes to be digested.
+     * @param digest
+     *            The {@link MessageDigest} to be updated.
+     * @throws IOException
+     *             If the file cannot be read.
+     */
+    private static void digest(FileChannel channel, long length, MessageDigest digest) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(DIGEST_BUFFER_BYTES, Math.max(length, 1)));
+        long position = 0;
+        while (position < length) {
+            buffer.clear();
+            if (length - position < buffer.capacity()) {
+                buffer.limit((int) (length - position));
+            }
+            final int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("File ended before its expected length of " + length);
+            }
+            buffer.flip();
+            digest.update(buffer);
+            position += read;
+        }
+    }
+
+    /**
+     * Get the complete length of an archive from the {@code Content-Range} header of a {@code 416} response.
+     *
+     * @param contentRange
+     *            The value of the header; may be {@code null}.
+     * @return The complete length given by the header; {@code -1} if it gives none.
+     */
+    private static long getCompleteLength(String contentRange) {
+        if (contentRange == null || contentRange.indexOf('/') < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(contentRange.indexOf('/') + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Create a SHA-256 digest.
+     *
+     * @return A {@link MessageDigest} computing SHA-256.
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+        }
+    }
+
+    /**
+     * Encode bytes as hexadecimal.
+     *
+     * @param bytes
+     *            The bytes to be encoded.
+     * @return The lowercase hexadecimal encoding of the given bytes.
+     */
+    private static String toHex(byte[] bytes) {
+        final char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A response whose body is collected in memory, for the small JSON documents that describe cookbooks and versions. The handler produces itself as the result of its exchange.
+ *
+ * @author Joshua Hyde
+ */
+
+final class BufferedResponse implements ResponseHandler<BufferedResponse> {
+    private static final int MAX_BODY_BYTES = 16 * 1024 * 1024;
+    private int status;
+    private Map<String, String> headers;
+    private byte[] body = new byte[4096];
+    private int length;
+
+    @Override
+    public void headers(int responseStatus, Map<String, String> responseHeaders, Exchange<BufferedResponse> exchange) throws IOException {
+        this.status = responseStatus;
+        this.headers = responseHeaders;
+        final String contentLength = responseHeaders.get("content-length");
+        if (contentLength != null) {
+            try {
+                final long declaredLength = Long.parseLong(contentLength.trim());
+                if (declaredLength > MAX_BODY_BYTES) {
+                    throw new IOException("The response to " + exchange + " is " + declaredLength + " bytes; no more than " + MAX_BODY_BYTES + " are accepted.");
+                }
+                if (declaredLength > body.length) {
+                    body = new byte[(int) declaredLength];
+                }
+            } catch (NumberFormatException e) {
+                // The parser has already rejected an invalid length
+            }
+        }
+    }
+
+    @Override
+    public boolean content(ByteBuffer content) throws IOException {
+        final int required = length + content.remaining();
+        if (required > MAX_BODY_BYTES) {
+            throw new IOException("The response exceeds " + MAX_BODY_BYTES + " bytes.");
+        }
+        if (required > body.length) {
+            body = Arrays.copyOf(body, Math.min(MAX_BODY_BYTES, Math.max(required, body.length * 2)));
+        }
+        final int received = content.remaining();
+        content.get(body, length, received);
+        length += received;
+        return true;
+    }
+
+    @Override
+    public BufferedResponse completed() {
+        return this;
+    }
+
+    /**
+     * Get the body of the response.
+     *
+     * @return The bytes of the body.
+     */
+    byte[] getBody() {
+        return length == body.length ? body : Arrays.copyOf(body, length);
+    }
+
+    /**
+     * Get a header of the response.
+     *
+     * @param name
+     *            The name of the header, in lower case.
+     * @return {@code null} if the response has no such header; otherwise, its value.
+     */
+    String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    /**
+     * Get the status of the response.
+     *
+     * @return The status of the response.
+     */
+    int getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.nio;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.github.jrh3k5.chef.client.nio.NioCookbookClient.NioCookbook;
+import com.github.jrh3k5.chef.client.nio.NioCookbookClient.NioVersion;
+
+/**
+ * Decoders of the JSON documents returned by the cookbook API. Documents arrive whole in a {@link BufferedResponse}, and are decoded with Jackson's streaming parser straight into the client's
+ * model, without an intermediate tree or data-binding pass.
+ *
+ * @author Joshua Hyde
+ */
+
+final class DocumentDecoder {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private DocumentDecoder() {
+    }
+
+    /**
+     * Decode a cookbook document.
+     *
+     * @param body
+     *            The bytes of the document.
+     * @param owner
+     *            The {@link NioCookbookClient} through which the cookbook's versions are to be resolved.
+     * @return The decoded {@link NioCookbook}.
+     * @throws IOException
+     *             If the document is not a valid cookbook.
+     */
+    static NioCookbook decodeCookbook(byte[] body, NioCookbookClient owner) throws IOException {
+        final JsonParser parser = JSON_FACTORY.createParser(body);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException("Expected a cookbook object.", parser.getCurrentLocation());
+            }
+
+            String name = null;
+            String latestVersionUrl = null;
+            final List<String> versionUrls = new ArrayList<String>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String fieldName = parser.getCurrentName();
+                final JsonToken valueToken = parser.nextToken();
+                if ("name".equals(fieldName)) {
+                    name = valueToken == JsonToken.VALUE_NULL ? null : parser.getText();
+                } else if ("latest_version".equals(fieldName)) {
+                    latestVersionUrl = valueToken == JsonToken.VALUE_NULL ? null : parser.getText();
+                } else if ("versions".equals(fieldName) && valueToken == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.VALUE_STRING) {
+                        versionUrls.add(parser.getText());
+                    }
+                    if (parser.getCurrentToken() != JsonToken.END_ARRAY) {
+                        throw new JsonParseException("Expected a version URL.", parser.getCurrentLocation());
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+            if (latestVersionUrl == null) {
+                throw new JsonParseException("The cookbook has no latest version.", parser.getCurrentLocation());
+            }
+            return new NioCookbook(owner, name, latestVersionUrl, versionUrls);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Decode the error code of an error document.
+     *
+     * @param body
+     *            The bytes of the document.
+     * @return {@code null} if the document has no error code; otherwise, the error code.
+     * @throws IOException
+     *             If the document is not a valid JSON object.
+     */
+    static String decodeErrorCode(byte[] body) throws IOException {
+        final JsonParser parser = JSON_FACTORY.createParser(body);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException("Expected an error object.", parser.getCurrentLocation());
+            }
+
+            String errorCode = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String fieldName = parser.getCurrentName();
+                final JsonToken valueToken = parser.nextToken();
+                if ("error_code".equals(fieldName)) {
+                    errorCode = valueToken == JsonToken.VALUE_NULL ? null : parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return errorCode;
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Decode the URL of the latest version of a cookbook, reading the cookbook document only as far as its {@code latest_version} field.
+     *
+     * @param body
+     *            The bytes of the document.
+     * @return The URL of the cookbook's latest version.
+     * @throws IOException
+     *             If the document is not a valid cookbook or has no latest version.
+     */
+    static String decodeLatestVersionUrl(byte[] body) throws IOException {
+        final JsonParser parser = JSON_FACTORY.createParser(body);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException("Expected a cookbook object.", parser.getCurrentLocation());
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String fieldName = parser.getCurrentName();
+                final JsonToken valueToken = parser.nextToken();
+                if ("latest_version".equals(fieldName) && valueToken == JsonToken.VALUE_STRING) {
+                    return parser.getText();
+                }
+                parser.skipChildren();
+            }
+            throw new JsonParseException("The cookbook has no latest version.", parser.getCurrentLocation());
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Decode a version document.
+     *
+     * @param body
+     *            The bytes of the document.
+     * @param owner
+     *            The {@link NioCookbookClient} through which the version's archive is to be transferred.
+     * @return The decoded {@link NioVersion}.
+     * @throws IOException
+     *             If the document is not a valid version.
+     */
+    static NioVersion decodeVersion(byte[] body, NioCookbookClient owner) throws IOException {
+        final JsonParser parser = JSON_FACTORY.createParser(body);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException("Expected a version object.", parser.getCurrentLocation());
+            }
+
+            String version = null;
+            URL fileLocation = null;
+            long fileSize = -1;
+            final Map<String, String> dependencies = new LinkedHashMap<String, String>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String fieldName = parser.getCurrentName();
+                final JsonToken valueToken = parser.nextToken();
+                if (valueToken == JsonToken.VALUE_NULL) {
+                    continue;
+                }
+                if ("version".equals(fieldName)) {
+                    version = parser.getText();
+                } else if ("file".equals(fieldName)) {
+                    fileLocation = new URL(parser.getText());
+                } else if ("tarball_file_size".equals(fieldName)) {
+                    fileSize = parser.getValueAsLong(-1);
+                } else if ("dependencies".equals(fieldName) && valueToken == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        final String dependency = parser.getCurrentName();
+                        if (parser.nextToken().isScalarValue()) {
+                            dependencies.put(dependency, parser.getText());
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return new NioVersion(owner, version, fileLocation, fileSize, dependencies);
+        } finally {
+            parser.close();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.nio;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * A point-in-time snapshot of the state of the I/O engine used by a {@link NioCookbookClient}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class EngineStatistics {
+    private final int ioThreads;
+    private final int leased;
+    private final int pending;
+    private final int available;
+    private final long connectionsCreated;
+    private final long requestsSent;
+    private final long hostLookups;
+
+    /**
+     * Create a snapshot of engine statistics.
+     *
+     * @param ioThreads
+     *            The number of threads serving the engine's connections.
+     * @param leased
+     *            The number of connections currently opening or serving a request.
+     * @param pending
+     *            The number of requests waiting for a connection.
+     * @param available
+     *            The number of idle, kept-alive connections.
+     * @param connectionsCreated
+     *            The number of connections that have been opened over the lifetime of the engine.
+     * @param requestsSent
+     *            The number of requests that have been sent over the lifetime of the engine.
+     * @param hostLookups
+     *            The number of host names that have been resolved over the lifetime of the engine, not counting lookups answered from its cache.
+     */
+    public EngineStatistics(int ioThreads, int leased, int pending, int available, long connectionsCreated, long requestsSent, long hostLookups) {
+        this.ioThreads = ioThreads;
+        this.leased = leased;
+        this.pending = pending;
+        this.available = available;
+        this.connectionsCreated = connectionsCreated;
+        this.requestsSent = requestsSent;
+        this.hostLookups = hostLookups;
+    }
+
+    /**
+     * Get the number of idle connections.
+     *
+     * @return The number of idle, kept-alive connections.
+     */
+    public int getAvailable() {
+        return available;
+    }
+
+    /**
+     * Get the number of connections opened.
+     *
+     * @return The number of connections that have been opened over the lifetime of the engine.
+     */
+    public long getConnectionsCreated() {
+        return connectionsCreated;
+    }
+
+    /**
+     * Get the number of host name lookups.
+     *
+     * @return The number of host names that have been resolved over the lifetime of the engine, not counting lookups answered from its cache.
+     */
+    public long getHostLookups() {
+        return hostLookups;
+    }
+
+    /**
+     * Get the number of I/O threads.
+     *
+     * @return The number of threads serving the engine's connections.
+     */
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    /**
+     * Get the number of connections in use.
+     *
+     * @return The number of connections currently opening or serving a request.
+     */
+    public int getLeased() {
+        return leased;
+    }
+
+    /**
+     * Get the number of requests waiting for a connection.
+     *
+     * @return The number of requests waiting for a connection.
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    /**
+     * Get the number of requests sent.
+     *
+     * @return The number of requests that have been sent over the lifetime of the engine.
+     */
+    public long getRequestsSent() {
+        return requestsSent;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.nio;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single I/O thread multiplexing many {@link HttpConnection connections} over one {@link Selector}. Everything that touches a connection - readiness events, tasks handed over from other threads,
+ * timers and the periodic sweep for timed-out connections - runs on the loop's thread, so connections need no locking of their own.
+ *
+ * @author Joshua Hyde
+ */
+
+final class EventLoop implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventLoop.class);
+    private static final ThreadLocal<EventLoop> CURRENT = new ThreadLocal<EventLoop>();
+    private static final long SWEEP_INTERVAL_MS = 100;
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final PriorityQueue<Timer> timers = new PriorityQueue<Timer>();
+    private final Set<HttpConnection> connections = new LinkedHashSet<HttpConnection>();
+    private final AtomicLong timerSequence = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Create and start an event loop.
+     *
+     * @param name
+     *            The name of the loop's thread.
+     * @throws IOException
+     *             If the loop's selector cannot be opened.
+     */
+    EventLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Determine whether the calling thread is running an event loop.
+     *
+     * @return {@code true} if the calling thread is the thread of an event loop.
+     */
+    static boolean isEventLoopThread() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Stop this loop, closing every connection it serves, and wait briefly for its thread to finish.
+     */
+    void close() {
+        closed = true;
+        selector.wakeup();
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Run a task on this loop's thread. This may be called from any thread; tasks run in the order in which they were submitted. Tasks submitted once the loop has stopped are run on the
+     * submitting thread.
+     *
+     * @param task
+     *            The {@link Runnable} to be run.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (Thread.currentThread() != thread) {
+            selector.wakeup();
+            if (closed && !thread.isAlive()) {
+                // Nothing is left to run the task, which finds its connection closed and fails accordingly
+                runTasks();
+            }
+        }
+    }
+
+    /**
+     * Register a connection's channel with this loop. This must be called on the loop's thread.
+     *
+     * @param connection
+     *            The {@link HttpConnection} to be served by this loop.
+     * @param channel
+     *            The {@link SelectableChannel} of the connection.
+     * @param interestOps
+     *            The operations in which the connection is initially interested.
+     * @return The {@link SelectionKey} of the channel.
+     * @throws IOException
+     *             If the channel cannot be registered.
+     */
+    SelectionKey register(HttpConnection connection, SelectableChannel channel, int interestOps) throws IOException {
+        final SelectionKey key = channel.register(selector, interestOps, connection);
+        connections.add(connection);
+        return key;
+    }
+
+    /**
+     * Run a task on this loop's thread after a delay. This may be called from any thread.
+     *
+     * @param task
+     *            The {@link Runnable} to be run.
+     * @param delay
+     *            The delay after which the task is to be run.
+     * @param unit
+     *            The {@link TimeUnit} of the delay.
+     */
+    void schedule(Runnable task, long delay, TimeUnit unit) {
+        final Timer timer = new Timer(System.nanoTime() + unit.toNanos(delay), timerSequence.incrementAndGet(), task);
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                timers.add(timer);
+            }
+        });
+    }
+
+    /**
+     * Stop serving a connection that has closed. This must be called on the loop's thread.
+     *
+     * @param connection
+     *            The {@link HttpConnection} that has closed.
+     */
+    void unregister(HttpConnection connection) {
+        connections.remove(connection);
+    }
+
+    @Override
+    public void run() {
+        CURRENT.set(this);
+        long nextSweepNanos = System.nanoTime();
+        try {
+            while (!closed) {
+                final long selectMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(nextDeadline(nextSweepNanos) - System.nanoTime()));
+                selector.select(selectMillis);
+                final Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    final SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    if (key.isValid()) {
+                        ((HttpConnection) key.attachment()).handle(key.readyOps());
+                    }
+                }
+                runTasks();
+                runTimers();
+
+                final long now = System.nanoTime();
+                if (now - nextSweepNanos >= 0) {
+                    for (HttpConnection connection : new ArrayList<HttpConnection>(connections)) {
+                        connection.checkTimeouts(now);
+                    }
+                    nextSweepNanos = now + TimeUnit.MILLISECONDS.toNanos(SWEEP_INTERVAL_MS);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Event loop " + thread.getName() + " failed.", e);
+        } catch (ClosedSelectorException e) {
+            LOGGER.error("Event loop " + thread.getName() + " failed.", e);
+        } finally {
+            shutDown();
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Determine when the loop next has to wake up.
+     *
+     * @param nextSweepNanos
+     *            The time, as given by {@link System#nanoTime()}, of the next sweep for timed-out connections.
+     * @return The time, as given by {@link System#nanoTime()}, of the next sweep or timer, whichever is sooner.
+     */
+    private long nextDeadline(long nextSweepNanos) {
+        final Timer nextTimer = timers.peek();
+        return nextTimer != null && nextTimer.getDueNanos() - nextSweepNanos < 0 ? nextTimer.getDueNanos() : nextSweepNanos;
+    }
+
+    /**
+     * Run the tasks handed to this loop by other threads; tasks submitted while they run wait for the next pass.
+     */
+    private void runTasks() {
+        for (int remaining = tasks.size(); remaining > 0; remaining--) {
+            final Runnable task = tasks.poll();
+            if (task == null) {
+                return;
+            }
+            runSafely(task);
+        }
+    }
+
+    /**
+     * Run the timers that are due.
+     */
+    private void runTimers() {
+        final long now = System.nanoTime();
+        while (!timers.isEmpty() && timers.peek().getDueNanos() - now <= 0) {
+            runSafely(timers.poll().getTask());
+        }
+    }
+
+    /**
+     * Run a task, logging rather than propagating its failure so that one failing task cannot stop the loop.
+     *
+     * @param task
+     *            The {@link Runnable} to be run.
+     */
+    private void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            LOGGER.error("A task failed on event loop " + thread.getName(), e);
+        }
+    }
+
+    /**
+     * Close every connection this loop serves, then run the remaining tasks against the closed connections so that their exchanges fail rather than wait forever.
+     */
+    private void shutDown() {
+        final IOException failure = new IOException("The client has been closed.");
+        for (HttpConnection connection : new ArrayList<HttpConnection>(connections)) {
+            connection.close(failure);
+        }
+        connections.clear();
+        timers.clear();
+        runTasks();
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close the selector of event loop " + thread.getName(), e);
+        }
+    }
+
+    /**
+     * A task to be run once a given time has passed.
+     *
+     * @author Joshua Hyde
+     */
+    private static class Timer implements Comparable<Timer> {
+        private final long dueNanos;
+        private final long sequence;
+        private final Runnable task;
+
+        /**
+         * Create a timer.
+         *
+         * @param dueNanos
+         *            The time, as given by {@link System#nanoTime()}, at which the task is due.
+         * @param sequence
+         *            The order in which the timer was created, by which timers due at the same time are run.
+         * @param task
+         *            The {@link Runnable} to be run.
+         */
+        public Timer(long dueNanos, long sequence, Runnable task) {
+            this.dueNanos = dueNanos;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Timer other) {
+            final long difference = dueNanos - other.dueNanos;
+            if (difference != 0) {
+                return difference < 0 ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : sequence == other.sequence ? 0 : 1;
+        }
+
+        /**
+         * Get the time at which this timer is due.
+         *
+         * @return The time, as given by {@link System#nanoTime()}, at which this timer is due.
+         */
+        public long getDueNanos() {
+            return dueNanos;
+        }
+
+        /**
+         * Get the task of this timer.
+         *
+         * @return The {@link Runnable} to be run when this timer is due.
+         */
+        public Runnable getTask() {
+            return task;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.nio;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.github.jrh3k5.chef.client.RetrievalCallback;
+import com.github.jrh3k5.chef.client.concurrent.ResultFuture;
+
+/**
+ * A single {@code GET} request and its response, from the moment it is submitted to the {@link HttpEngine} until its result is produced. An exchange is served by at most one
+ * {@link HttpConnection} at a time; if it is cancelled while a connection is serving it, that connection is closed so that the remainder of the response is not read.
+ *
+ * @author Joshua Hyde
+ * @param <T>
+ *            The type of result produced from the response.
+ */
+
+final class Exchange<T> implements ResponseParser.Listener {
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private final HttpEngine engine;
+    private final RoutePool route;
+    private final URI uri;
+    private final Map<String, String> headers;
+    private final ResponseHandler<T> handler;
+    private final ExchangeFuture future;
+    private volatile HttpConnection connection;
+    private int attempts;
+
+    /**
+     * Create an exchange.
+     *
+     * @param engine
+     *            The {@link HttpEngine} executing the exchange.
+     * @param route
+     *            The {@link RoutePool} of the host to which the request is to be sent.
+     * @param uri
+     *            The {@link URI} to be requested.
+     * @param headers
+     *            A {@link Map} of additional headers to be sent with the request.
+     * @param handler
+     *            The {@link ResponseHandler} to be given the response.
+     * @param callback
+     *            A {@link RetrievalCallback} to be notified of the result; may be {@code null}.
+     */
+    Exchange(HttpEngine engine, RoutePool route, URI uri, Map<String, String> headers, ResponseHandler<T> handler, RetrievalCallback<? super T> callback) {
+        this.engine = engine;
+        this.route = route;
+        this.uri = uri;
+        this.headers = headers;
+        this.handler = handler;
+        this.future = new ExchangeFuture(callback);
+    }
+
+    @Override
+    public void headers(int status, Map<String, String> responseHeaders) throws IOException {
+        handler.headers(status, responseHeaders, this);
+    }
+
+    @Override
+    public boolean content(ByteBuffer content) throws IOException {
+        return handler.content(content);
+    }
+
+    /**
+     * Bind this exchange to the connection that is to serve it.
+     *
+     * @param servingConnection
+     *            The {@link HttpConnection} serving this exchange; {@code null} once it no longer does.
+     */
+    void attach(HttpConnection servingConnection) {
+        this.connection = servingConnection;
+        if (servingConnection != null) {
+            attempts++;
+        }
+    }
+
+    /**
+     * Produce the result of this exchange once its response has been received.
+     */
+    void complete() {
+        try {
+            future.set(handler.completed());
+        } catch (IOException e) {
+            future.setException(e);
+        } catch (RuntimeException e) {
+            future.setException(e);
+        }
+    }
+
+    /**
+     * Encode the request of this exchange.
+     *
+     * @return A {@link ByteBuffer}, ready to be read, holding the request line and headers.
+     */
+    ByteBuffer encodeRequest() {
+        final StringBuilder request = new StringBuilder(256);
+        final String path = uri.getRawPath();
+        request.append("GET ").append(path == null || path.length() == 0 ? "/" : path);
+        if (uri.getRawQuery() != null) {
+            request.append('?').append(uri.getRawQuery());
+        }
+        request.append(" HTTP/1.1\r\nHost: ").append(route.getHostHeader()).append("\r\nUser-Agent: ").append(HttpEngine.USER_AGENT).append("\r\n");
+        for (Entry<String, String> header : headers.entrySet()) {
+            request.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        request.append("\r\n");
+        return ByteBuffer.wrap(request.toString().getBytes(US_ASCII));
+    }
+
+    /**
+     * Fail this exchange.
+     *
+     * @param failure
+     *            The {@link Throwable} with which the exchange is to fail.
+     */
+    void fail(Throwable failure) {
+        future.setException(failure);
+    }
+
+    /**
+     * Get the number of connections that have served this exchange.
+     *
+     * @return The number of times this exchange has been sent.
+     */
+    int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Get the future representing the result of this exchange.
+     *
+     * @return A {@link ResultFuture} representing the result of this exchange; cancelling it aborts the exchange.
+     */
+    ResultFuture<T> getFuture() {
+        return future;
+    }
+
+    /**
+     * Get the route of this exchange.
+     *
+     * @return The {@link RoutePool} of the host to which the request is sent.
+     */
+    RoutePool getRoute() {
+        return route;
+    }
+
+    /**
+     * Get the requested URI.
+     *
+     * @return The {@link URI} requested by this exchange.
+     */
+    URI getUri() {
+        return uri;
+    }
+
+    /**
+     * Determine whether this exchange is finished.
+     *
+     * @return {@code true} if this exchange has produced its result, failed or been cancelled.
+     */
+    boolean isDone() {
+        return future.isDone();
+    }
+
+    /**
+     * Resume the reading of a response whose body was paused by the handler. This may be called from any thread.
+     */
+    void resume() {
+        final HttpConnection servingConnection = connection;
+        if (servingConnection != null) {
+            servingConnection.resume(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "GET " + uri;
+    }
+
+    /**
+     * The future of an {@link Exchange}, which aborts the exchange when it is cancelled.
+     *
+     * @author Joshua Hyde
+     */
+    private class ExchangeFuture extends ResultFuture<T> {
+        /**
+         * Create a future.
+         *
+         * @param callback
+         *            A {@link RetrievalCallback} to be notified of the result; may be {@code null}.
+         */
+        public ExchangeFuture(RetrievalCallback<? super T> callback) {
+            super(callback);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (!super.cancel(mayInterruptIfRunning)) {
+                return false;
+            }
+            engine.abort(Exchange.this, connection);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.nio;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.jrh3k5.chef.client.RetrievalCallback;
+import com.github.jrh3k5.chef.client.concurrent.ResultFuture;
+
+/**
+ * A resolver of host names that never blocks its callers. The JDK offers only a blocking lookup, so lookups are run on a small pool of dedicated threads, kept off the event loops, and their
+ * results are cached for a configured time. Concurrent requests to resolve the same host share a single lookup; failed lookups are not cached.
+ * <p />
+ * Instances of this class are safe to use across threads.
+ *
+ * @author Joshua Hyde
+ */
+
+final class HostResolver implements Closeable {
+    private final ConcurrentMap<String, Resolution> resolutions = new ConcurrentHashMap<String, Resolution>();
+    private final AtomicLong lookups = new AtomicLong();
+    private final ExecutorService executor;
+    private final long ttlMillis;
+
+    /**
+     * Create a resolver.
+     *
+     * @param threads
+     *            The number of threads on which lookups are to be run.
+     * @param ttlMillis
+     *            The amount of time, in milliseconds, for which a resolved address is to be reused.
+     */
+    HostResolver(int threads, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "chef-nio-resolver-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Get the number of lookups run.
+     *
+     * @return The number of host names that have been looked up, not counting requests answered from the cache or joined to a lookup in progress.
+     */
+    long getLookups() {
+        return lookups.get();
+    }
+
+    /**
+     * Resolve a host name.
+     *
+     * @param host
+     *            The host name to be resolved.
+     * @param callback
+     *            A {@link RetrievalCallback} to be given the {@link InetAddress} of the host; it is notified on the calling thread if the address is cached, otherwise on a resolver thread.
+     */
+    void resolve(String host, RetrievalCallback<? super InetAddress> callback) {
+        while (true) {
+            final Resolution existing = resolutions.get(host);
+            if (existing != null && !existing.isExpired()) {
+                existing.getFuture().addCallback(callback);
+                return;
+            }
+
+            final Resolution resolution = new Resolution();
+            if (existing == null ? resolutions.putIfAbsent(host, resolution) == null : resolutions.replace(host, existing, resolution)) {
+                resolution.getFuture().addCallback(callback);
+                lookup(host, resolution);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Look up a host name on a resolver thread.
+     *
+     * @param host
+     *            The host name to be looked up.
+     * @param resolution
+     *            The {@link Resolution} to be completed with the address.
+     */
+    private void lookup(final String host, final Resolution resolution) {
+        lookups.incrementAndGet();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        resolution.resolved(InetAddress.getByName(host));
+                    } catch (UnknownHostException e) {
+                        resolutions.remove(host, resolution);
+                        resolution.getFuture().setException(e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            resolutions.remove(host, resolution);
+            resolution.getFuture().setException(e);
+        }
+    }
+
+    /**
+     * A lookup of a host name, which is reused until it expires.
+     *
+     * @author Joshua Hyde
+     */
+    private class Resolution {
+        private final ResultFuture<InetAddress> future = new ResultFuture<InetAddress>();
+        private volatile long resolvedAtNanos;
+
+        /**
+         * Get the future of this lookup.
+         *
+         * @return A {@link ResultFuture} representing the result of this lookup.
+         */
+        public ResultFuture<InetAddress> getFuture() {
+            return future;
+        }
+
+        /**
+         * Determine whether this lookup has expired.
+         *
+         * @return {@code true} if this lookup completed longer ago than the resolver reuses addresses.
+         */
+        public boolean isExpired() {
+            return future.isDone() && System.nanoTime() - resolvedAtNanos > TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        }
+
+        /**
+         * Complete this lookup.
+         *
+         * @param address
+         *            The {@link InetAddress} to which the host resolved.
+         */
+        public void resolved(InetAddress address) {
+            resolvedAtNanos = System.nanoTime();
+            future.set(address);
+        }
+    }
+}
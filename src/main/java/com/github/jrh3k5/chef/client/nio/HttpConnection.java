@@ -0,0 +1,703 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.nio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+
+/**
+ * A non-blocking HTTP/1.1 connection to a route, served by a single {@link EventLoop}. A connection carries one {@link Exchange} at a time and moves through its states as its channel becomes ready:
+ * connecting, completing a TLS handshake for secure routes, sending a request, receiving the response and, once the response is complete and the server allows it, waiting idle for the next
+ * exchange.
+ * <p />
+ * Apart from {@link #dispatch(Exchange)}, {@link #resume(Exchange)} and {@link #abort(Exchange)}, which hand work to the loop, every method must be called on the loop's thread.
+ *
+ * @author Joshua Hyde
+ */
+
+final class HttpConnection {
+    private static final int PLAIN_BUFFER_BYTES = 32 * 1024;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private final HttpEngine engine;
+    private final EventLoop loop;
+    private final RoutePool route;
+    private final InetSocketAddress address;
+    private final ResponseParser parser = new ResponseParser();
+    private final ResponseParser.Listener listener = new ResponseParser.Listener() {
+        @Override
+        public void headers(int status, Map<String, String> headers) throws IOException {
+            exchange.headers(status, headers);
+        }
+
+        @Override
+        public boolean content(ByteBuffer content) throws IOException {
+            paused = !exchange.content(content);
+            return !paused;
+        }
+    };
+    private SocketChannel channel;
+    private SelectionKey key;
+    private SSLEngine ssl;
+    private ByteBuffer netIn;
+    private ByteBuffer netOut;
+    private ByteBuffer appIn;
+    private ByteBuffer appOut;
+    private State state = State.CONNECTING;
+    private Exchange<?> exchange;
+    private boolean reused;
+    private boolean paused;
+    private boolean inputClosed;
+    private long deadlineNanos;
+
+    /**
+     * Create a connection.
+     *
+     * @param engine
+     *            The {@link HttpEngine} to which the connection belongs.
+     * @param loop
+     *            The {@link EventLoop} that is to serve the connection.
+     * @param route
+     *            The {@link RoutePool} of the route to which the connection is made.
+     * @param address
+     *            The resolved {@link InetSocketAddress} to which the connection is made.
+     */
+    HttpConnection(HttpEngine engine, EventLoop loop, RoutePool route, InetSocketAddress address) {
+        this.engine = engine;
+        this.loop = loop;
+        this.route = route;
+        this.address = address;
+    }
+
+    /**
+     * Abort an exchange, if this connection is still serving it. This may be called from any thread.
+     *
+     * @param aborted
+     *            The {@link Exchange} to be aborted.
+     */
+    void abort(final Exchange<?> aborted) {
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (exchange == aborted) {
+                    // The rest of the response cannot be skipped without reading it, so the connection is given up
+                    close(new IOException("The request was aborted: " + aborted));
+                }
+            }
+        });
+    }
+
+    /**
+     * Check whether this connection has timed out, closing it if it has.
+     *
+     * @param nowNanos
+     *            The current time, as given by {@link System#nanoTime()}.
+     */
+    void checkTimeouts(long nowNanos) {
+        switch (state) {
+        case CONNECTING:
+        case HANDSHAKING:
+            if (nowNanos - deadlineNanos > 0) {
+                close(new SocketTimeoutException("Timed out connecting to " + route));
+            }
+            break;
+        case SENDING:
+        case RECEIVING:
+            // A paused response is waiting on its consumer, not on the server
+            if (!paused && nowNanos - deadlineNanos > 0) {
+                close(new SocketTimeoutException("Timed out waiting for a response from " + route));
+            }
+            break;
+        case IDLE:
+            if (nowNanos - deadlineNanos > 0 && route.removeIdle(this)) {
+                close(null);
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Close this connection. An exchange that it was serving is failed or, if the connection was kept alive from an earlier exchange and no part of the response arrived, submitted again, since the
+     * server may simply have closed the idle connection as the request was sent.
+     *
+     * @param cause
+     *            The {@link IOException} that closed the connection; {@code null} if it was closed deliberately.
+     */
+    void close(IOException cause) {
+        if (state == State.CLOSED) {
+            return;
+        }
+        final boolean established = state != State.CONNECTING && state != State.HANDSHAKING;
+        state = State.CLOSED;
+        loop.unregister(this);
+        if (key != null) {
+            key.cancel();
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing more can be done with the channel
+            }
+        }
+
+        final Exchange<?> failed = exchange;
+        exchange = null;
+        route.closed(this, established, cause);
+        if (failed != null) {
+            failed.attach(null);
+            // Only GETs are sent, so a request that drew no response can be sent again. A server may close a kept-alive connection just as it is reused, which costs the exchange no
+            // attempt, since every such failure retires a connection that has already served a response; a server whose backlog overflows resets new connections, which does. A
+            // request that timed out is not retried, since doing so would multiply the caller's wait.
+            if (!parser.hasStarted() && !(cause instanceof SocketTimeoutException) && (reused || failed.getAttempts() < MAX_ATTEMPTS) && !failed.isDone()) {
+                route.submit(failed);
+            } else {
+                failed.fail(cause == null ? new IOException("The connection was closed.") : cause);
+            }
+        }
+    }
+
+    /**
+     * Hand an exchange to this idle connection. This may be called from any thread.
+     *
+     * @param dispatched
+     *            The {@link Exchange} to be served.
+     */
+    void dispatch(final Exchange<?> dispatched) {
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                start(dispatched);
+            }
+        });
+    }
+
+    /**
+     * Handle the readiness of this connection's channel.
+     *
+     * @param readyOps
+     *            The operations for which the channel is ready.
+     */
+    void handle(int readyOps) {
+        try {
+            switch (state) {
+            case CONNECTING:
+                if ((readyOps & SelectionKey.OP_CONNECT) != 0 && channel.finishConnect()) {
+                    connected();
+                }
+                break;
+            case HANDSHAKING:
+                handshake();
+                break;
+            case SENDING:
+                send();
+                break;
+            case RECEIVING:
+                receive();
+                break;
+            case IDLE:
+                // The server has nothing to say between responses but that it is closing the connection
+                readInbound();
+                if (inputClosed || appIn.position() > 0) {
+                    route.removeIdle(this);
+                    close(null);
+                }
+                break;
+            default:
+                break;
+            }
+        } catch (IOException e) {
+            close(e);
+        } catch (RuntimeException e) {
+            close(new IOException("Failed to handle the connection to " + route, e));
+        }
+    }
+
+    /**
+     * Open this connection.
+     */
+    void open() {
+        deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(engine.getConnectTimeoutMs());
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            channel.socket().setKeepAlive(true);
+            final boolean connected = channel.connect(address);
+            key = loop.register(this, channel, connected ? 0 : SelectionKey.OP_CONNECT);
+            engine.connectionCreated();
+            if (connected) {
+                connected();
+            }
+        } catch (IOException e) {
+            close(e);
+        }
+    }
+
+    /**
+     * Resume reading a paused response. This may be called from any thread.
+     *
+     * @param resumed
+     *            The {@link Exchange} whose response is to be resumed.
+     */
+    void resume(final Exchange<?> resumed) {
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (exchange != resumed || !paused) {
+                    return;
+                }
+                paused = false;
+                deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(engine.getReadTimeoutMs());
+                try {
+                    receive();
+                } catch (IOException e) {
+                    close(e);
+                } catch (RuntimeException e) {
+                    close(new IOException("Failed to handle the connection to " + route, e));
+                }
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "HttpConnection[" + route + " via " + address + ", " + state + "]";
+    }
+
+    /**
+     * Finish the current exchange and hand this connection back to its route, or close it if the server will not keep it alive.
+     */
+    private void complete() {
+        final Exchange<?> completed = exchange;
+        exchange = null;
+        reused = true;
+        completed.attach(null);
+        if (parser.isKeepAlive() && !inputClosed && appIn.position() == 0 && (ssl == null || netIn.position() == 0)) {
+            release();
+        } else {
+            close(null);
+        }
+        completed.complete();
+    }
+
+    /**
+     * Continue once the TCP connection is established.
+     *
+     * @throws IOException
+     *             If the TLS handshake cannot be started.
+     */
+    private void connected() throws IOException {
+        if (route.isSecure()) {
+            ssl = engine.createSslEngine(route.getHost(), route.getPort());
+            netIn = ByteBuffer.allocate(ssl.getSession().getPacketBufferSize());
+            netOut = ByteBuffer.allocate(ssl.getSession().getPacketBufferSize());
+            appIn = ByteBuffer.allocate(ssl.getSession().getApplicationBufferSize());
+            state = State.HANDSHAKING;
+            ssl.beginHandshake();
+            handshake();
+        } else {
+            appIn = ByteBuffer.allocate(PLAIN_BUFFER_BYTES);
+            release();
+        }
+    }
+
+    /**
+     * Write as much of the pending request as the channel accepts.
+     *
+     * @return {@code true} if the whole request has been written.
+     * @throws IOException
+     *             If the request cannot be written.
+     */
+    private boolean flushOutbound() throws IOException {
+        if (ssl == null) {
+            channel.write(appOut);
+            return !appOut.hasRemaining();
+        }
+
+        while (true) {
+            if (!flushNet()) {
+                return false;
+            }
+            if (!appOut.hasRemaining()) {
+                return true;
+            }
+            final SSLEngineResult result = ssl.wrap(appOut, netOut);
+            runDelegatedTasks(result);
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                throw new SSLException("The TLS session was closed while sending a request to " + route);
+            }
+        }
+    }
+
+    /**
+     * Write as much of the pending TLS records as the channel accepts.
+     *
+     * @return {@code true} if every pending record has been written.
+     * @throws IOException
+     *             If the records cannot be written.
+     */
+    private boolean flushNet() throws IOException {
+        if (netOut.position() == 0) {
+            return true;
+        }
+        netOut.flip();
+        try {
+            channel.write(netOut);
+        } finally {
+            netOut.compact();
+        }
+        return netOut.position() == 0;
+    }
+
+    /**
+     * Advance the TLS handshake as far as the channel allows.
+     *
+     * @throws IOException
+     *             If the handshake fails.
+     */
+    private void handshake() throws IOException {
+        while (true) {
+            final HandshakeStatus status = ssl.getHandshakeStatus();
+            if (status == HandshakeStatus.NEED_TASK) {
+                Runnable task;
+                while ((task = ssl.getDelegatedTask()) != null) {
+                    task.run();
+                }
+            } else if (status == HandshakeStatus.NEED_WRAP) {
+                if (netOut.position() == 0) {
+                    final SSLEngineResult result = ssl.wrap(EMPTY, netOut);
+                    if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        throw new SSLException("The TLS session was closed during the handshake with " + route);
+                    }
+                }
+                if (!flushNet()) {
+                    interest(SelectionKey.OP_WRITE);
+                    return;
+                }
+            } else if (status == HandshakeStatus.FINISHED || status == HandshakeStatus.NOT_HANDSHAKING) {
+                if (!flushNet()) {
+                    interest(SelectionKey.OP_WRITE);
+                    return;
+                }
+                verifyHost();
+                release();
+                return;
+            } else {
+                // NEED_UNWRAP, or its variants on newer JVMs
+                netIn.flip();
+                final SSLEngineResult result;
+                try {
+                    result = ssl.unwrap(netIn, appIn);
+                } finally {
+                    netIn.compact();
+                }
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    throw new SSLException("The TLS session was closed during the handshake with " + route);
+                }
+                if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW || result.bytesConsumed() == 0 && result.getHandshakeStatus() == status) {
+                    final int read = channel.read(netIn);
+                    if (read < 0) {
+                        throw new EOFException("The connection was closed during the TLS handshake with " + route);
+                    }
+                    if (read == 0) {
+                        interest(SelectionKey.OP_READ);
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Set the operations in which this connection is interested.
+     *
+     * @param interestOps
+     *            The operations in which this connection is interested.
+     */
+    private void interest(int interestOps) {
+        if (key.interestOps() != interestOps) {
+            key.interestOps(interestOps);
+        }
+    }
+
+    /**
+     * Determine whether the server has closed this idle connection, as a read that does not wait reveals. Nothing is expected on an idle connection, so anything that has arrived is taken as a
+     * sign that the connection cannot be reused.
+     *
+     * @return {@code true} if the connection cannot be reused.
+     */
+    private boolean isStale() {
+        try {
+            return channel.read(ssl == null ? appIn : netIn) != 0;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Read whatever has arrived into {@link #appIn}, decrypting it on secure routes.
+     *
+     * @return {@code -1} if the server has closed the connection and nothing more is available; {@code 0} if nothing arrived; a positive number if anything arrived.
+     * @throws IOException
+     *             If the channel cannot be read or the TLS records cannot be decrypted.
+     */
+    private int readInbound() throws IOException {
+        if (ssl == null) {
+            final int read = channel.read(appIn);
+            if (read < 0) {
+                inputClosed = true;
+            }
+            return read;
+        }
+
+        // Records left over from an earlier read, when the response was paused or filled the buffer, come first
+        if (unwrap()) {
+            return 1;
+        }
+        final int read = channel.read(netIn);
+        if (read < 0) {
+            inputClosed = true;
+            return -1;
+        }
+        unwrap();
+        return read;
+    }
+
+    /**
+     * Start serving an exchange, or hand this connection back to its route if the exchange has been cancelled.
+     *
+     * @param started
+     *            The {@link Exchange} to be served.
+     */
+    private void start(Exchange<?> started) {
+        if (state == State.CLOSED) {
+            // The connection closed while the exchange was on its way
+            started.getRoute().submit(started);
+            return;
+        }
+
+        if (reused && isStale()) {
+            // The server closed the connection while it was idle; retire it before spending the exchange's request on it
+            close(null);
+            started.getRoute().submit(started);
+            return;
+        }
+
+        started.attach(this);
+        if (started.isDone()) {
+            started.attach(null);
+            release();
+            return;
+        }
+        exchange = started;
+        parser.reset();
+        paused = false;
+        appOut = started.encodeRequest();
+        state = State.SENDING;
+        deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(engine.getReadTimeoutMs());
+        engine.requestSent();
+        try {
+            send();
+        } catch (IOException e) {
+            close(e);
+        }
+    }
+
+    /**
+     * Read and parse as much of the response as has arrived.
+     *
+     * @throws IOException
+     *             If the response cannot be read or is invalid.
+     */
+    private void receive() throws IOException {
+        while (true) {
+            if (appIn.position() > 0) {
+                appIn.flip();
+                final boolean responseComplete;
+                try {
+                    responseComplete = parser.parse(appIn, listener);
+                } finally {
+                    appIn.compact();
+                }
+                if (responseComplete) {
+                    complete();
+                    return;
+                }
+                if (paused) {
+                    interest(0);
+                    return;
+                }
+            }
+
+            final int read = readInbound();
+            if (read < 0 || inputClosed && appIn.position() == 0) {
+                parser.endOfInput();
+                complete();
+                return;
+            }
+            if (read == 0 && appIn.position() == 0) {
+                interest(SelectionKey.OP_READ);
+                return;
+            }
+            deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(engine.getReadTimeoutMs());
+        }
+    }
+
+    /**
+     * Hand this connection back to its route, starting the next waiting exchange on it if there is one.
+     */
+    private void release() {
+        final Exchange<?> next = route.release(this);
+        if (next == null) {
+            state = State.IDLE;
+            deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(engine.getIdleTimeoutMs());
+            interest(SelectionKey.OP_READ);
+        } else {
+            state = State.IDLE;
+            start(next);
+        }
+    }
+
+    /**
+     * Run the tasks an {@link SSLEngine} has delegated, if it asked for them to be run.
+     *
+     * @param result
+     *            The {@link SSLEngineResult} of the latest operation of the engine.
+     */
+    private void runDelegatedTasks(SSLEngineResult result) {
+        if (result.getHandshakeStatus() == HandshakeStatus.NEED_TASK) {
+            Runnable task;
+            while ((task = ssl.getDelegatedTask()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    /**
+     * Send as much of the request as the channel accepts, moving on to receiving the response once it has been sent.
+     *
+     * @throws IOException
+     *             If the request cannot be sent.
+     */
+    private void send() throws IOException {
+        if (flushOutbound()) {
+            state = State.RECEIVING;
+            receive();
+        } else {
+            interest(SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Decrypt the buffered TLS records into {@link #appIn}.
+     *
+     * @return {@code true} if any application data was decrypted.
+     * @throws IOException
+     *             If the records cannot be decrypted.
+     */
+    private boolean unwrap() throws IOException {
+        boolean produced = false;
+        netIn.flip();
+        try {
+            while (netIn.hasRemaining()) {
+                final SSLEngineResult result = ssl.unwrap(netIn, appIn);
+                runDelegatedTasks(result);
+                produced |= result.bytesProduced() > 0;
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    inputClosed = true;
+                    break;
+                }
+                if (result.getStatus() != SSLEngineResult.Status.OK || result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+                    // More records are needed, or the decrypted data must be parsed before there is room for more
+                    break;
+                }
+            }
+        } finally {
+            netIn.compact();
+        }
+        return produced;
+    }
+
+    /**
+     * Verify that the certificate presented by the server names the host of this connection's route.
+     *
+     * @throws SSLPeerUnverifiedException
+     *             If the server did not present an X.509 certificate.
+     * @throws SSLException
+     *             If the certificate does not name the host.
+     */
+    private void verifyHost() throws SSLException {
+        final Certificate[] certificates = ssl.getSession().getPeerCertificates();
+        if (certificates.length == 0 || !(certificates[0] instanceof X509Certificate)) {
+            throw new SSLPeerUnverifiedException("The server did not present an X.509 certificate: " + route);
+        }
+        SSLConnectionSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER.verify(route.getHost(), (X509Certificate) certificates[0]);
+    }
+
+    /**
+     * The states of a connection.
+     *
+     * @author Joshua Hyde
+     */
+    private static enum State {
+        /**
+         * The TCP connection is being established.
+         */
+        CONNECTING,
+        /**
+         * The TLS handshake is in progress.
+         */
+        HANDSHAKING,
+        /**
+         * A request is being sent.
+         */
+        SENDING,
+        /**
+         * A response is being received.
+         */
+        RECEIVING,
+        /**
+         * The connection is waiting for an exchange.
+         */
+        IDLE,
+        /**
+         * The connection has been closed.
+         */
+        CLOSED
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.nio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+import com.github.jrh3k5.chef.client.RetrievalCallback;
+import com.github.jrh3k5.chef.client.concurrent.ResultFuture;
+
+/**
+ * A non-blocking HTTP/1.1 client engine. Requests are queued per route and sent over a bounded set of kept-alive connections, each of which is served by one of a small, fixed number of
+ * {@link EventLoop event loops}; no thread is ever blocked waiting on the network, so the number of requests in flight is limited only by memory and the servers' patience. Host names are resolved
+ * by a {@link HostResolver} off the event loops.
+ * <p />
+ * Instances of this class are safe to use across threads.
+ *
+ * @author Joshua Hyde
+ */
+
+final class HttpEngine implements Closeable {
+    /**
+     * The {@code User-Agent} sent with every request.
+     */
+    static final String USER_AGENT = "chef-cookbooks-client-java (nio)";
+    private final EventLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private final HostResolver resolver;
+    private final ConcurrentMap<String, RoutePool> routes = new ConcurrentHashMap<String, RoutePool>();
+    private final AtomicLong connectionsCreated = new AtomicLong();
+    private final AtomicLong requestsSent = new AtomicLong();
+    private final int maxConnectionsPerRoute;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final int idleTimeoutMs;
+    private volatile SSLContext sslContext;
+    private volatile boolean closed;
+
+    /**
+     * Create and start an engine.
+     *
+     * @param configuration
+     *            The {@link NioCookbookClientConfiguration} describing the engine's threads, connection limits and timeouts.
+     * @throws IOException
+     *             If the engine's event loops cannot be started.
+     */
+    HttpEngine(NioCookbookClientConfiguration configuration) throws IOException {
+        this.maxConnectionsPerRoute = configuration.getMaxConnectionsPerRoute();
+        this.connectTimeoutMs = configuration.getConnectTimeoutMs();
+        this.readTimeoutMs = configuration.getReadTimeoutMs();
+        this.idleTimeoutMs = configuration.getIdleTimeoutMs();
+        this.resolver = new HostResolver(configuration.getResolverThreads(), configuration.getDnsCacheTtlMs());
+        this.loops = new EventLoop[Math.max(1, configuration.getIoThreads())];
+        try {
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new EventLoop("chef-nio-io-" + (i + 1));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (RoutePool route : routes.values()) {
+            route.close();
+        }
+        for (EventLoop loop : loops) {
+            if (loop != null) {
+                loop.close();
+            }
+        }
+        resolver.close();
+    }
+
+    /**
+     * Send a {@code GET} request.
+     *
+     * @param uri
+     *            The absolute {@code http} or {@code https} {@link URI} to be requested.
+     * @param headers
+     *            A {@link Map} of additional headers to be sent with the request.
+     * @param handler
+     *            The {@link ResponseHandler} to be given the response, on an I/O thread.
+     * @param callback
+     *            A {@link RetrievalCallback} to be notified of the result, on an I/O thread; may be {@code null}.
+     * @return A {@link ResultFuture} representing the result produced by the handler; cancelling it aborts the request.
+     */
+    <T> ResultFuture<T> execute(URI uri, Map<String, String> headers, ResponseHandler<T> handler, RetrievalCallback<? super T> callback) {
+        final String scheme = uri.getScheme() == null ? "" : uri.getScheme().toLowerCase(Locale.ENGLISH);
+        if (!"http".equals(scheme) && !"https".equals(scheme) || uri.getHost() == null) {
+            throw new IllegalArgumentException("Not an absolute HTTP URI: " + uri);
+        }
+
+        final Exchange<T> exchange = new Exchange<T>(this, getRoute(scheme, uri.getHost(), uri.getPort()), uri, headers == null ? Collections.<String, String> emptyMap() : headers, handler,
+                callback);
+        if (closed) {
+            exchange.fail(new IOException("The client has been closed."));
+        } else {
+            exchange.getRoute().submit(exchange);
+        }
+        return exchange.getFuture();
+    }
+
+    /**
+     * Get the statistics of this engine.
+     *
+     * @return An {@link EngineStatistics} snapshot of this engine's connections and requests.
+     */
+    EngineStatistics getStatistics() {
+        final int[] tally = new int[3];
+        for (RoutePool route : routes.values()) {
+            route.tally(tally);
+        }
+        return new EngineStatistics(loops.length, tally[0], tally[1], tally[2], connectionsCreated.get(), requestsSent.get(), resolver.getLookups());
+    }
+
+    /**
+     * Run a task on an I/O thread after a delay.
+     *
+     * @param task
+     *            The {@link Runnable} to be run; it must not block.
+     * @param delay
+     *            The delay after which the task is to be run.
+     * @param unit
+     *            The {@link TimeUnit} of the delay.
+     */
+    void schedule(Runnable task, long delay, TimeUnit unit) {
+        nextLoop().schedule(task, delay, unit);
+    }
+
+    /**
+     * Abort an exchange, whether it is still waiting for a connection or being served by one.
+     *
+     * @param exchange
+     *            The {@link Exchange} to be aborted.
+     * @param connection
+     *            The {@link HttpConnection} serving the exchange; {@code null} if none is.
+     */
+    void abort(Exchange<?> exchange, HttpConnection connection) {
+        exchange.getRoute().cancel(exchange);
+        if (connection != null) {
+            connection.abort(exchange);
+        }
+    }
+
+    /**
+     * Open a connection to a resolved address of a route on the next event loop.
+     *
+     * @param route
+     *            The {@link RoutePool} for which the connection is opened.
+     * @param address
+     *            The {@link InetSocketAddress} to which the connection is to be made.
+     */
+    void connect(RoutePool route, InetSocketAddress address) {
+        final EventLoop loop = nextLoop();
+        final HttpConnection connection = new HttpConnection(this, loop, route, address);
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                connection.open();
+            }
+        });
+    }
+
+    /**
+     * Record that a connection has been opened.
+     */
+    void connectionCreated() {
+        connectionsCreated.incrementAndGet();
+    }
+
+    /**
+     * Create a TLS engine for a connection.
+     *
+     * @param host
+     *            The host to which the connection is made.
+     * @param port
+     *            The port to which the connection is made.
+     * @return A client-mode {@link SSLEngine} using the JVM's default trust settings.
+     * @throws IOException
+     *             If the JVM has no default TLS context.
+     */
+    SSLEngine createSslEngine(String host, int port) throws IOException {
+        SSLContext context = sslContext;
+        if (context == null) {
+            try {
+                context = SSLContext.getDefault();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException("TLS is not supported by this JVM.", e);
+            }
+            sslContext = context;
+        }
+        final SSLEngine engine = context.createSSLEngine(host, port);
+        engine.setUseClientMode(true);
+        return engine;
+    }
+
+    /**
+     * Get the connect timeout.
+     *
+     * @return The amount of time, in milliseconds, allowed for a connection to be established.
+     */
+    int getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    /**
+     * Get the idle timeout.
+     *
+     * @return The amount of time, in milliseconds, for which an idle connection is kept alive.
+     */
+    int getIdleTimeoutMs() {
+        return idleTimeoutMs;
+    }
+
+    /**
+     * Get the read timeout.
+     *
+     * @return The amount of time, in milliseconds, allowed to pass without any part of a response arriving.
+     */
+    int getReadTimeoutMs() {
+        return readTimeoutMs;
+    }
+
+    /**
+     * Get the resolver of this engine.
+     *
+     * @return The {@link HostResolver} through which host names are resolved.
+     */
+    HostResolver getResolver() {
+        return resolver;
+    }
+
+    /**
+     * Record that a request has been sent.
+     */
+    void requestSent() {
+        requestsSent.incrementAndGet();
+    }
+
+    /**
+     * Get the pool of a route, creating it if this is the first request to the route.
+     *
+     * @param scheme
+     *            The scheme, in lower case.
+     * @param host
+     *            The host.
+     * @param port
+     *            The port; {@code -1} for the scheme's default.
+     * @return The {@link RoutePool} of the route.
+     */
+    private RoutePool getRoute(String scheme, String host, int port) {
+        final boolean secure = "https".equals(scheme);
+        final int resolvedPort = port < 0 ? secure ? 443 : 80 : port;
+        final String routeKey = scheme + "://" + host.toLowerCase(Locale.ENGLISH) + ":" + resolvedPort;
+        final RoutePool existing = routes.get(routeKey);
+        if (existing != null) {
+            return existing;
+        }
+        final RoutePool route = new RoutePool(this, host, resolvedPort, secure, maxConnectionsPerRoute);
+        final RoutePool concurrentRoute = routes.putIfAbsent(routeKey, route);
+        return concurrentRoute == null ? route : concurrentRoute;
+    }
+
+    /**
+     * Choose the event loop for the next connection, spreading connections evenly across the loops.
+     *
+     * @return The next {@link EventLoop}.
+     */
+    private EventLoop nextLoop() {
+        return loops[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+    }
+}
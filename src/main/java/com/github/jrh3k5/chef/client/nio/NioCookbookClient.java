@@ -0,0 +1,871 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.nio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.github.jrh3k5.chef.client.AbstractCookbookClient;
+import com.github.jrh3k5.chef.client.ArchiveDownload;
+import com.github.jrh3k5.chef.client.Cookbook;
+import com.github.jrh3k5.chef.client.Deadline;
+import com.github.jrh3k5.chef.client.Deadline.DeadlineExceededException;
+import com.github.jrh3k5.chef.client.RetrievalCallback;
+import com.github.jrh3k5.chef.client.concurrent.ResultFuture;
+import com.github.jrh3k5.chef.client.version.VersionConstraint;
+import com.github.jrh3k5.chef.client.version.VersionIndex;
+
+/**
+ * A {@link com.github.jrh3k5.chef.client.CookbookClient} built on a non-blocking HTTP engine. Where the Jersey client holds a thread for every request in flight, this client serves all of its
+ * requests from a handful of event-loop threads over a bounded pool of kept-alive connections per host, so thousands of cookbook and version lookups can be in flight at once without thousands of
+ * threads.
+ * <p />
+ * The asynchronous methods never block. Their callbacks, and the completion of the futures they return, run on the client's I/O threads, so callbacks must be quick and must not block; in
+ * particular, they must not call the blocking methods of this client, which throw {@link IllegalStateException} on an I/O thread rather than deadlock it. Archives are streamed to the calling thread
+ * and written there, so the I/O threads never touch the disk.
+ * <p />
+ * Instances of this class are safe to share across threads.
+ *
+ * @author Joshua Hyde
+ */
+
+public class NioCookbookClient extends AbstractCookbookClient {
+    /**
+     * The v1 API URL for cookbooks.
+     */
+    public static final String V1_API_URL = "https://cookbooks.opscode.com/api/v1/";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Map<String, String> JSON_HEADERS = Collections.singletonMap("Accept", "application/json");
+    private final HttpEngine engine;
+    private final URI serviceUri;
+    private final int batchParallelism;
+
+    /**
+     * Create a non-blocking cookbook client pointing at the {@code v1} Chef cookbook API.
+     */
+    public NioCookbookClient() {
+        this(V1_API_URL);
+    }
+
+    /**
+     * Create a non-blocking cookbook client.
+     *
+     * @param serviceUrl
+     *            The URL identifying the server with which this client is to communicate for cookbook information.
+     */
+    public NioCookbookClient(String serviceUrl) {
+        this(serviceUrl, new NioCookbookClientConfiguration());
+    }
+
+    /**
+     * Create a non-blocking cookbook client.
+     *
+     * @param serviceUrl
+     *            The URL identifying the server with which this client is to communicate for cookbook information.
+     * @param configuration
+     *            A {@link NioCookbookClientConfiguration} object describing how the client is to communicate with the server.
+     * @throws IllegalStateException
+     *             If the client's I/O threads cannot be started.
+     */
+    public NioCookbookClient(String serviceUrl, NioCookbookClientConfiguration configuration) {
+        this.serviceUri = URI.create(serviceUrl.endsWith("/") ? serviceUrl : serviceUrl + "/");
+        this.batchParallelism = configuration.getBatchParallelism();
+        try {
+            this.engine = new HttpEngine(configuration);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to start the I/O threads of the client.", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        engine.close();
+    }
+
+    @Override
+    public Cookbook getCookbook(String name) {
+        return await(getCookbookAsync(name), "cookbook " + name);
+    }
+
+    @Override
+    public Future<Cookbook> getCookbookAsync(final String name, RetrievalCallback<? super Cookbook> callback) {
+        final ResultFuture<Cookbook> result = new ResultFuture<Cookbook>(callback);
+        result.setDelegate(engine.execute(toCookbookUri(name), JSON_HEADERS, new BufferedResponse(), new RetrievalCallback<BufferedResponse>() {
+            @Override
+            public void completed(BufferedResponse response) {
+                try {
+                    result.set(toCookbook(name, response));
+                } catch (CookbookRetrievalException e) {
+                    result.setException(e);
+                }
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                result.setException(new CookbookRetrievalException("Failed to retrieve cookbook: " + name, throwable));
+            }
+        }));
+        return result;
+    }
+
+    /**
+     * {@inheritDoc} The cookbook document is read only as far as its latest version, whose URL is then requested directly; the cookbook's other versions are never indexed.
+     */
+    @Override
+    public Cookbook.Version getLatestVersion(final String name) {
+        final ResultFuture<NioVersion> result = new ResultFuture<NioVersion>();
+        result.setDelegate(engine.execute(toCookbookUri(name), JSON_HEADERS, new BufferedResponse(), new RetrievalCallback<BufferedResponse>() {
+            @Override
+            public void completed(BufferedResponse response) {
+                final String latestVersionUrl;
+                try {
+                    latestVersionUrl = toLatestVersionUrl(name, response);
+                } catch (CookbookRetrievalException e) {
+                    result.setException(e);
+                    return;
+                }
+                if (latestVersionUrl == null) {
+                    result.set(null);
+                } else {
+                    fetchVersion(latestVersionUrl, result);
+                }
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                result.setException(new CookbookRetrievalException("Failed to retrieve cookbook: " + name, throwable));
+            }
+        }));
+        return await(result, "latest version of cookbook " + name);
+    }
+
+    /**
+     * Get the statistics of this client's I/O engine.
+     *
+     * @return An {@link EngineStatistics} snapshot of this client's connections and requests.
+     */
+    public EngineStatistics getEngineStatistics() {
+        return engine.getStatistics();
+    }
+
+    @Override
+    protected int getBatchParallelism() {
+        return batchParallelism;
+    }
+
+    /**
+     * Bound a retrieval by a deadline, failing it if the deadline expires or is cancelled before it completes.
+     *
+     * @param result
+     *            The {@link ResultFuture} representing the retrieval.
+     * @param deadline
+     *            The {@link Deadline} bounding the retrieval.
+     * @param description
+     *            A description of what is being retrieved, for error messages.
+     */
+    void bound(final ResultFuture<?> result, final Deadline deadline, final String description) {
+        final Deadline.Registration cancellation = deadline.onCancel(new Runnable() {
+            @Override
+            public void run() {
+                failWithDeadline(result, deadline, description);
+            }
+        });
+        if (result.isDone()) {
+            cancellation.remove();
+            return;
+        }
+
+        engine.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (!result.isDone()) {
+                    result.setException(new DeadlineExceededException("Deadline expired before retrieving " + description));
+                }
+            }
+        }, deadline.getRemainingMillis(), TimeUnit.MILLISECONDS);
+        result.addCallback(new RetrievalCallback<Object>() {
+            @Override
+            public void completed(Object ignored) {
+                cancellation.remove();
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                cancellation.remove();
+            }
+        });
+    }
+
+    /**
+     * Retrieve a version document.
+     *
+     * @param versionUrl
+     *            The URL of the version.
+     * @param resolution
+     *            The {@link ResultFuture} to be completed with the {@link NioVersion}.
+     */
+    void fetchVersion(final String versionUrl, final ResultFuture<NioVersion> resolution) {
+        final URI versionUri;
+        try {
+            versionUri = new URI(versionUrl);
+        } catch (URISyntaxException e) {
+            resolution.setException(new CookbookRetrievalException("Invalid version URL: " + versionUrl, e));
+            return;
+        }
+
+        engine.execute(versionUri, JSON_HEADERS, new BufferedResponse(), new RetrievalCallback<BufferedResponse>() {
+            @Override
+            public void completed(BufferedResponse response) {
+                try {
+                    resolution.set(toVersion(versionUrl, response));
+                } catch (CookbookRetrievalException e) {
+                    resolution.setException(e);
+                }
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                resolution.setException(new CookbookRetrievalException("Failed to retrieve version: " + versionUrl, throwable));
+            }
+        });
+    }
+
+    /**
+     * Get the engine of this client.
+     *
+     * @return The {@link HttpEngine} through which this client sends its requests.
+     */
+    HttpEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Wait for a retrieval on a thread that is allowed to block.
+     *
+     * @param retrieval
+     *            The {@link Future} representing the retrieval.
+     * @param description
+     *            A description of what is being retrieved, for error messages.
+     * @param deadline
+     *            The {@link Deadline} beyond which the calling thread is not to wait; {@code null} if it may wait indefinitely.
+     * @return The retrieved document.
+     * @throws IllegalStateException
+     *             If the retrieval is not complete and the calling thread is an I/O thread, which would never be free to complete it.
+     * @throws CookbookRetrievalException
+     *             If the retrieval failed or the calling thread was interrupted.
+     */
+    static <T> T await(Future<T> retrieval, String description, Deadline deadline) {
+        if (!retrieval.isDone() && EventLoop.isEventLoopThread()) {
+            throw new IllegalStateException("Cannot wait for " + description + " on an I/O thread of the client; use the asynchronous methods from callbacks.");
+        }
+        if (deadline != null) {
+            return deadline.await(retrieval, description);
+        }
+
+        try {
+            return retrieval.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CookbookRetrievalException("Interrupted while retrieving " + description, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CookbookRetrievalException) {
+                throw (CookbookRetrievalException) e.getCause();
+            }
+            throw new CookbookRetrievalException("Failed to retrieve " + description, e.getCause());
+        }
+    }
+
+    /**
+     * Wait, without a deadline, for a retrieval on a thread that is allowed to block.
+     *
+     * @param retrieval
+     *            The {@link Future} representing the retrieval.
+     * @param description
+     *            A description of what is being retrieved, for error messages.
+     * @return The retrieved document.
+     * @throws IllegalStateException
+     *             If the retrieval is not complete and the calling thread is an I/O thread.
+     * @throws CookbookRetrievalException
+     *             If the retrieval failed or the calling thread was interrupted.
+     */
+    private static <T> T await(Future<T> retrieval, String description) {
+        return await(retrieval, description, null);
+    }
+
+    /**
+     * Fail a retrieval because its deadline has expired or been cancelled.
+     *
+     * @param result
+     *            The {@link ResultFuture} representing the retrieval.
+     * @param deadline
+     *            The {@link Deadline} that has passed.
+     * @param description
+     *            A description of what is being retrieved, for error messages.
+     */
+    private static void failWithDeadline(ResultFuture<?> result, Deadline deadline, String description) {
+        try {
+            deadline.check(description);
+        } catch (CookbookRetrievalException e) {
+            result.setException(e);
+        }
+    }
+
+    /**
+     * Convert the response to a cookbook request into a cookbook.
+     *
+     * @param name
+     *            The name of the requested cookbook.
+     * @param response
+     *            The {@link BufferedResponse} to the request.
+     * @return {@code null} if the cookbook does not exist; otherwise, a {@link NioCookbook} representing the retrieved cookbook.
+     * @throws CookbookRetrievalException
+     *             If the response does not describe a cookbook.
+     */
+    private NioCookbook toCookbook(String name, BufferedResponse response) {
+        if (response.getStatus() == 200) {
+            try {
+                return DocumentDecoder.decodeCookbook(response.getBody(), this);
+            } catch (IOException e) {
+                throw new CookbookRetrievalException("Failed to parse JSON of cookbook: " + name, e);
+            }
+        } else if (response.getStatus() == 404) {
+            checkNotFound(response);
+            return null;
+        }
+        throw new CookbookRetrievalException(String.format("Unexpected response from cookbook server: %d", response.getStatus()));
+    }
+
+    /**
+     * Convert the response to a cookbook request into the URL of the cookbook's latest version.
+     *
+     * @param name
+     *            The name of the requested cookbook.
+     * @param response
+     *            The {@link BufferedResponse} to the request.
+     * @return {@code null} if the cookbook was not found; otherwise, the URL of the cookbook's latest version.
+     * @throws CookbookRetrievalException
+     *             If the response does not describe a cookbook.
+     */
+    private static String toLatestVersionUrl(String name, BufferedResponse response) {
+        if (response.getStatus() == 200) {
+            try {
+                return DocumentDecoder.decodeLatestVersionUrl(response.getBody());
+            } catch (IOException e) {
+                throw new CookbookRetrievalException("Failed to parse JSON of cookbook: " + name, e);
+            }
+        } else if (response.getStatus() == 404) {
+            checkNotFound(response);
+            return null;
+        }
+        throw new CookbookRetrievalException(String.format("Unexpected response from cookbook server: %d", response.getStatus()));
+    }
+
+    /**
+     * Verify that a {@code 404} response to a cookbook request means that the cookbook does not exist.
+     *
+     * @param response
+     *            The {@code 404} {@link BufferedResponse} to a cookbook request.
+     * @throws CookbookRetrievalException
+     *             If the response reports any error other than a missing cookbook.
+     */
+    private static void checkNotFound(BufferedResponse response) {
+        // The server answers 404, with an error document, for cookbooks that do not exist
+        final byte[] entity = response.getBody();
+        final String errorCode;
+        try {
+            errorCode = DocumentDecoder.decodeErrorCode(entity);
+        } catch (IOException e) {
+            throw new CookbookRetrievalException("Failed to parse JSON of response: " + new String(entity, UTF_8), e);
+        }
+        if (!"NOT_FOUND".equals(errorCode)) {
+            throw new CookbookRetrievalException("Invalid request; response was: " + new String(entity, UTF_8));
+        }
+    }
+
+    /**
+     * Build the URI of a cookbook.
+     *
+     * @param name
+     *            The name of the cookbook.
+     * @return The {@link URI} of the cookbook.
+     * @throws CookbookRetrievalException
+     *             If the name cannot be part of a URI.
+     */
+    private URI toCookbookUri(String name) {
+        try {
+            return serviceUri.resolve(new URI(null, null, "cookbooks/" + name, null));
+        } catch (URISyntaxException e) {
+            throw new CookbookRetrievalException("Invalid cookbook name: " + name, e);
+        }
+    }
+
+    /**
+     * Convert the response to a version request into a version.
+     *
+     * @param versionUrl
+     *            The URL of the requested version.
+     * @param response
+     *            The {@link BufferedResponse} to the request.
+     * @return A {@link NioVersion} representing the retrieved version.
+     * @throws CookbookRetrievalException
+     *             If the response does not describe a version.
+     */
+    private NioVersion toVersion(String versionUrl, BufferedResponse response) {
+        if (response.getStatus() == 200) {
+            try {
+                return DocumentDecoder.decodeVersion(response.getBody(), this);
+            } catch (IOException e) {
+                throw new CookbookRetrievalException("Failed to parse JSON of version: " + versionUrl, e);
+            }
+        }
+        throw new CookbookRetrievalException(String.format("Unexpected response from cookbook server for version %s: %d", versionUrl, response.getStatus()));
+    }
+
+    /**
+     * A cookbook retrieved by a {@link NioCookbookClient}. Concurrent requests for the same unresolved version share a single request to the server, and resolved versions are kept for the life of
+     * the cookbook; failed resolutions are forgotten so that they can be retried.
+     * <p />
+     * Instances of this class are safe to share across threads.
+     *
+     * @author Joshua Hyde
+     */
+    static class NioCookbook implements Cookbook {
+        private final NioCookbookClient owner;
+        private final String name;
+        private final VersionIndex versionIndex;
+        private final String latestVersion;
+        private final ConcurrentMap<String, ResultFuture<NioVersion>> versions = new ConcurrentHashMap<String, ResultFuture<NioVersion>>(4, 0.75f, 1);
+
+        /**
+         * Create a cookbook.
+         *
+         * @param owner
+         *            The {@link NioCookbookClient} through which the cookbook's versions are to be resolved.
+         * @param name
+         *            The name of the cookbook.
+         * @param latestVersionUrl
+         *            The URL of the latest version of the cookbook.
+         * @param versionUrls
+         *            A {@link Collection} of the URLs of every version of the cookbook.
+         */
+        NioCookbook(NioCookbookClient owner, String name, String latestVersionUrl, Collection<String> versionUrls) {
+            this.owner = owner;
+            this.name = name;
+            this.versionIndex = new VersionIndex(versionUrls);
+            this.latestVersion = versionIndex.getVersionNumber(latestVersionUrl);
+        }
+
+        @Override
+        public Version getBestVersion(VersionConstraint constraint) {
+            return resolveVersion(versionIndex.getBestVersionNumber(constraint), null);
+        }
+
+        @Override
+        public Version getLatestVersion() {
+            return resolveVersion(latestVersion, null);
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Version getVersion(String version) {
+            return resolveVersion(version, null);
+        }
+
+        @Override
+        public Future<Version> getVersionAsync(String version) {
+            return getVersionAsync(version, null);
+        }
+
+        @Override
+        public Future<Version> getVersionAsync(String version, RetrievalCallback<? super Version> callback) {
+            return getVersionAsync(version, callback, null);
+        }
+
+        @Override
+        public Set<String> getVersions() {
+            return versionIndex.getVersionNumbers();
+        }
+
+        @Override
+        public List<String> getVersions(VersionConstraint constraint) {
+            return versionIndex.getVersionNumbers(constraint);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p />
+         * Every version is requested at once; the client's limit on connections per host bounds how many of the requests are in flight.
+         */
+        @Override
+        public void prefetchVersions() {
+            await(prefetchVersionsAsync(null), "versions of cookbook " + name);
+        }
+
+        @Override
+        public Cookbook withDeadline(Deadline deadline) {
+            return new BoundedCookbook(this, deadline);
+        }
+
+        @Override
+        public String toString() {
+            return "NioCookbook[name=" + name + ", versions=" + versionIndex.size() + "]";
+        }
+
+        /**
+         * Describe a version of this cookbook for error messages.
+         *
+         * @param version
+         *            The version to be described.
+         * @return A description of the version.
+         */
+        private String describe(String version) {
+            return "version " + version + " of cookbook " + name;
+        }
+
+        /**
+         * Retrieve a version of this cookbook without blocking the calling thread.
+         *
+         * @param version
+         *            The version to be retrieved; may be {@code null}.
+         * @param callback
+         *            A {@link RetrievalCallback} to be notified when the retrieval completes; may be {@code null}.
+         * @param deadline
+         *            The {@link Deadline} within which the version is to be retrieved; {@code null} if the retrieval is not bounded.
+         * @return A {@link ResultFuture} that yields {@code null} if the version is not a known version of this cookbook; otherwise, the retrieved {@link Version}.
+         */
+        private ResultFuture<Version> getVersionAsync(String version, RetrievalCallback<? super Version> callback, Deadline deadline) {
+            final ResultFuture<NioVersion> resolution = version == null ? null : resolveVersionAsync(version);
+            if (resolution == null) {
+                return ResultFuture.<Version> completed(null, callback);
+            }
+
+            // Cancelling the returned future, or its deadline passing, must not fail a resolution shared with other callers
+            final ResultFuture<Version> result = new ResultFuture<Version>(callback);
+            resolution.addCallback(new RetrievalCallback<NioVersion>() {
+                @Override
+                public void completed(NioVersion resolvedVersion) {
+                    result.set(resolvedVersion);
+                }
+
+                @Override
+                public void failed(Throwable throwable) {
+                    result.setException(throwable);
+                }
+            });
+            if (deadline != null && !result.isDone()) {
+                owner.bound(result, deadline, describe(version));
+            }
+            return result;
+        }
+
+        /**
+         * Resolve every known version of this cookbook without blocking the calling thread.
+         *
+         * @param deadline
+         *            The {@link Deadline} within which the versions are to be resolved; {@code null} if the resolution is not bounded.
+         * @return A {@link ResultFuture} that completes once every version has been resolved or has failed to resolve; it fails with the first failure encountered, if any.
+         */
+        private ResultFuture<Void> prefetchVersionsAsync(Deadline deadline) {
+            final ResultFuture<Void> result = new ResultFuture<Void>();
+            final Set<String> versionNumbers = versionIndex.getVersionNumbers();
+            if (versionNumbers.isEmpty()) {
+                result.set(null);
+                return result;
+            }
+
+            final AtomicInteger outstanding = new AtomicInteger(versionNumbers.size());
+            final AtomicReference<Throwable> firstFailure = new AtomicReference<Throwable>();
+            final RetrievalCallback<Version> callback = new RetrievalCallback<Version>() {
+                @Override
+                public void completed(Version version) {
+                    finishOne();
+                }
+
+                @Override
+                public void failed(Throwable throwable) {
+                    firstFailure.compareAndSet(null, throwable);
+                    finishOne();
+                }
+
+                private void finishOne() {
+                    if (outstanding.decrementAndGet() == 0) {
+                        final Throwable failure = firstFailure.get();
+                        if (failure == null) {
+                            result.set(null);
+                        } else {
+                            result.setException(failure);
+                        }
+                    }
+                }
+            };
+            for (String versionNumber : versionNumbers) {
+                try {
+                    getVersionAsync(versionNumber, callback, deadline);
+                } catch (RuntimeException e) {
+                    callback.failed(e);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Resolve a version of this cookbook, blocking the calling thread until it is resolved.
+         *
+         * @param version
+         *            The version to be resolved; may be {@code null}.
+         * @param deadline
+         *            The {@link Deadline} within which the version is to be resolved; {@code null} if the resolution is not bounded.
+         * @return {@code null} if the version is not a known version of this cookbook; otherwise, the resolved {@link Version}.
+         */
+        private Version resolveVersion(String version, Deadline deadline) {
+            if (version == null) {
+                return null;
+            }
+            return await(getVersionAsync(version, null, null), describe(version), deadline);
+        }
+
+        /**
+         * Resolve a version of this cookbook without blocking the calling thread. If the version is already resolved or being resolved by another caller, that resolution is returned rather than
+         * issuing another request.
+         *
+         * @param version
+         *            The version to be resolved.
+         * @return {@code null} if the version is not a known version of this cookbook; otherwise, a {@link ResultFuture} representing the resolution of the version, which may be shared with other
+         *         callers.
+         */
+        private ResultFuture<NioVersion> resolveVersionAsync(final String version) {
+            final ResultFuture<NioVersion> existing = versions.get(version);
+            if (existing != null) {
+                return existing;
+            }
+
+            final String mappedUrl = versionIndex.getUrl(version);
+            if (mappedUrl == null) {
+                return null;
+            }
+
+            final ResultFuture<NioVersion> resolution = new ResultFuture<NioVersion>();
+            final ResultFuture<NioVersion> concurrentResolution = versions.putIfAbsent(version, resolution);
+            if (concurrentResolution != null) {
+                return concurrentResolution;
+            }
+
+            resolution.addCallback(new RetrievalCallback<NioVersion>() {
+                @Override
+                public void completed(NioVersion resolvedVersion) {
+                    // The resolution remains in the cache
+                }
+
+                @Override
+                public void failed(Throwable throwable) {
+                    // Forget failed resolutions so that they can be retried
+                    versions.remove(version, resolution);
+                }
+            });
+            owner.fetchVersion(mappedUrl, resolution);
+            return resolution;
+        }
+
+        /**
+         * A view of a {@link NioCookbook} whose version retrievals are bounded by a {@link Deadline}. Giving up on a version does not abort its request, which other callers may share; the
+         * version is kept once it arrives.
+         *
+         * @author Joshua Hyde
+         */
+        private static class BoundedCookbook implements Cookbook {
+            private final NioCookbook cookbook;
+            private final Deadline deadline;
+
+            /**
+             * Create a view.
+             *
+             * @param cookbook
+             *            The {@link NioCookbook} to be viewed.
+             * @param deadline
+             *            The {@link Deadline} within which versions are to be retrieved.
+             */
+            public BoundedCookbook(NioCookbook cookbook, Deadline deadline) {
+                this.cookbook = cookbook;
+                this.deadline = deadline;
+            }
+
+            @Override
+            public Version getBestVersion(VersionConstraint constraint) {
+                return cookbook.resolveVersion(cookbook.versionIndex.getBestVersionNumber(constraint), deadline);
+            }
+
+            @Override
+            public Version getLatestVersion() {
+                return cookbook.resolveVersion(cookbook.latestVersion, deadline);
+            }
+
+            @Override
+            public String getName() {
+                return cookbook.getName();
+            }
+
+            @Override
+            public Version getVersion(String version) {
+                return cookbook.resolveVersion(version, deadline);
+            }
+
+            @Override
+            public Future<Version> getVersionAsync(String version) {
+                return getVersionAsync(version, null);
+            }
+
+            @Override
+            public Future<Version> getVersionAsync(String version, RetrievalCallback<? super Version> callback) {
+                return cookbook.getVersionAsync(version, callback, deadline);
+            }
+
+            @Override
+            public Set<String> getVersions() {
+                return cookbook.getVersions();
+            }
+
+            @Override
+            public List<String> getVersions(VersionConstraint constraint) {
+                return cookbook.getVersions(constraint);
+            }
+
+            @Override
+            public void prefetchVersions() {
+                await(cookbook.prefetchVersionsAsync(deadline), "versions of cookbook " + cookbook.getName(), deadline);
+            }
+
+            @Override
+            public Cookbook withDeadline(Deadline otherDeadline) {
+                return cookbook.withDeadline(otherDeadline);
+            }
+
+            @Override
+            public String toString() {
+                return cookbook.getName() + " within " + deadline;
+            }
+        }
+    }
+
+    /**
+     * A version of a cookbook retrieved by a {@link NioCookbookClient}.
+     *
+     * @author Joshua Hyde
+     */
+    static class NioVersion implements Cookbook.Version {
+        private final NioCookbookClient owner;
+        private final String version;
+        private final URL fileLocation;
+        private final long fileSize;
+        private final Map<String, String> dependencies;
+
+        /**
+         * Create a version.
+         *
+         * @param owner
+         *            The {@link NioCookbookClient} through which the version's archive is to be transferred.
+         * @param version
+         *            The version number.
+         * @param fileLocation
+         *            The {@link URL} of the version's archive; may be {@code null}.
+         * @param fileSize
+         *            The size of the archive, if known; otherwise, {@code -1}.
+         * @param dependencies
+         *            A {@link Map} of the names of the cookbooks on which the version depends to the constraints on their versions.
+         */
+        NioVersion(NioCookbookClient owner, String version, URL fileLocation, long fileSize, Map<String, String> dependencies) {
+            this.owner = owner;
+            this.version = version;
+            this.fileLocation = fileLocation;
+            this.fileSize = fileSize;
+            this.dependencies = dependencies.isEmpty() ? Collections.<String, String> emptyMap() : Collections.unmodifiableMap(new LinkedHashMap<String, String>(dependencies));
+        }
+
+        @Override
+        public ArchiveDownload downloadTo(File destination) {
+            return downloadTo(destination, null);
+        }
+
+        @Override
+        public ArchiveDownload downloadTo(File destination, String expectedSha256) {
+            requireBlockingThread("the archive of version " + version);
+            return ArchiveTransfer.download(owner.getEngine(), fileLocation, destination, fileSize, expectedSha256);
+        }
+
+        @Override
+        public Map<String, String> getDependencies() {
+            return dependencies;
+        }
+
+        @Override
+        public URL getFileLocation() {
+            return fileLocation;
+        }
+
+        @Override
+        public String getVersion() {
+            return version;
+        }
+
+        @Override
+        public InputStream openArchive() {
+            requireBlockingThread("the archive of version " + version);
+            return ArchiveTransfer.open(owner.getEngine(), fileLocation);
+        }
+
+        @Override
+        public String toString() {
+            return "NioVersion[version=" + version + ", fileLocation=" + fileLocation + "]";
+        }
+
+        /**
+         * Verify that the calling thread may block on a transfer.
+         *
+         * @param description
+         *            A description of what is to be transferred, for error messages.
+         * @throws IllegalStateException
+         *             If the calling thread is an I/O thread.
+         */
+        private static void requireBlockingThread(String description) {
+            if (EventLoop.isEventLoopThread()) {
+                throw new IllegalStateException("Cannot transfer " + description + " on an I/O thread of the client.");
+            }
+        }
+    }
+}
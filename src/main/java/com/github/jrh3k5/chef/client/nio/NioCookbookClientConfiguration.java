@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.nio;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+import com.github.jrh3k5.chef.client.AbstractCookbookClient;
+
+/**
+ * Configuration of a {@link NioCookbookClient}. The values of this object are read when the client is created; changing them afterwards has no effect on clients that have already been created.
+ *
+ * @author Joshua Hyde
+ */
+
+public class NioCookbookClientConfiguration {
+    /**
+     * The default connect and read timeout, in milliseconds.
+     */
+    public static final int DEFAULT_TIMEOUT_MS = 30000;
+    /**
+     * The default number of threads running the event loops on which all connections are served.
+     */
+    public static final int DEFAULT_IO_THREADS = 2;
+    /**
+     * The default maximum number of connections kept per route (host).
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 64;
+    /**
+     * The default amount of time, in milliseconds, for which an idle connection is kept alive.
+     */
+    public static final int DEFAULT_IDLE_TIMEOUT_MS = 30000;
+    /**
+     * The default amount of time, in milliseconds, for which a resolved host address is reused.
+     */
+    public static final long DEFAULT_DNS_CACHE_TTL_MS = 60000;
+    /**
+     * The default number of threads on which host names are resolved.
+     */
+    public static final int DEFAULT_RESOLVER_THREADS = 2;
+    private int batchParallelism = AbstractCookbookClient.DEFAULT_BATCH_PARALLELISM;
+    private int ioThreads = DEFAULT_IO_THREADS;
+    private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+    private int connectTimeoutMs = DEFAULT_TIMEOUT_MS;
+    private int readTimeoutMs = DEFAULT_TIMEOUT_MS;
+    private int idleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+    private long dnsCacheTtlMs = DEFAULT_DNS_CACHE_TTL_MS;
+    private int resolverThreads = DEFAULT_RESOLVER_THREADS;
+
+    /**
+     * Get the maximum number of cookbooks retrieved concurrently by a batch retrieval.
+     *
+     * @return The maximum number of cookbooks retrieved concurrently by a batch retrieval.
+     */
+    public int getBatchParallelism() {
+        return batchParallelism;
+    }
+
+    /**
+     * Get the connect timeout.
+     *
+     * @return The amount of time, in milliseconds, allowed for a connection to be established, including its TLS handshake.
+     */
+    public int getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    /**
+     * Get the time for which resolved host addresses are reused.
+     *
+     * @return The amount of time, in milliseconds, for which a resolved host address is reused before the host name is resolved again.
+     */
+    public long getDnsCacheTtlMs() {
+        return dnsCacheTtlMs;
+    }
+
+    /**
+     * Get the idle timeout.
+     *
+     * @return The amount of time, in milliseconds, for which a connection with no request in flight is kept alive.
+     */
+    public int getIdleTimeoutMs() {
+        return idleTimeoutMs;
+    }
+
+    /**
+     * Get the number of I/O threads.
+     *
+     * @return The number of threads running the event loops on which all connections are served.
+     */
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    /**
+     * Get the maximum number of connections kept per route.
+     *
+     * @return The maximum number of connections kept per route (host); requests beyond it wait for a connection to be freed.
+     */
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    /**
+     * Get the read timeout.
+     *
+     * @return The amount of time, in milliseconds, allowed to pass without any part of a response arriving.
+     */
+    public int getReadTimeoutMs() {
+        return readTimeoutMs;
+    }
+
+    /**
+     * Get the number of resolver threads.
+     *
+     * @return The number of threads on which host names are resolved.
+     */
+    public int getResolverThreads() {
+        return resolverThreads;
+    }
+
+    /**
+     * Set the maximum number of cookbooks retrieved concurrently by a batch retrieval.
+     *
+     * @param batchParallelism
+     *            The maximum number of cookbooks retrieved concurrently by a batch retrieval.
+     */
+    public void setBatchParallelism(int batchParallelism) {
+        this.batchParallelism = batchParallelism;
+    }
+
+    /**
+     * Set the connect timeout.
+     *
+     * @param connectTimeoutMs
+     *            The amount of time, in milliseconds, allowed for a connection to be established, including its TLS handshake.
+     */
+    public void setConnectTimeoutMs(int connectTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+    }
+
+    /**
+     * Set the time for which resolved host addresses are reused.
+     *
+     * @param dnsCacheTtlMs
+     *            The amount of time, in milliseconds, for which a resolved host address is reused before the host name is resolved again.
+     */
+    public void setDnsCacheTtlMs(long dnsCacheTtlMs) {
+        this.dnsCacheTtlMs = dnsCacheTtlMs;
+    }
+
+    /**
+     * Set the idle timeout.
+     *
+     * @param idleTimeoutMs
+     *            The amount of time, in milliseconds, for which a connection with no request in flight is kept alive.
+     */
+    public void setIdleTimeoutMs(int idleTimeoutMs) {
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * Set the number of I/O threads.
+     *
+     * @param ioThreads
+     *            The number of threads running the event loops on which all connections are served.
+     */
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
+    /**
+     * Set the maximum number of connections kept per route.
+     *
+     * @param maxConnectionsPerRoute
+     *            The maximum number of connections kept per route (host); requests beyond it wait for a connection to be freed.
+     */
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    /**
+     * Set the read timeout.
+     *
+     * @param readTimeoutMs
+     *            The amount of time, in milliseconds, allowed to pass without any part of a response arriving.
+     */
+    public void setReadTimeoutMs(int readTimeoutMs) {
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    /**
+     * Set the number of resolver threads.
+     *
+     * @param resolverThreads
+     *            The number of threads on which host names are resolved.
+     */
+    public void setResolverThreads(int resolverThreads) {
+        this.resolverThreads = resolverThreads;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
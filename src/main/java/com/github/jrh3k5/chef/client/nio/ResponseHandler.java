@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * The consumer of a response received by the {@link HttpEngine}. Every method is called on the I/O thread serving the response's connection, so implementations must not block.
+ *
+ * @author Joshua Hyde
+ * @param <T>
+ *            The type of result produced from the response.
+ */
+
+interface ResponseHandler<T> {
+    /**
+     * Receive the status and headers of the response.
+     *
+     * @param status
+     *            The status of the response.
+     * @param headers
+     *            A {@link Map} of the headers of the response, by name in lower case.
+     * @param exchange
+     *            The {@link Exchange} to which the response belongs, through which a handler that has paused the body can {@link Exchange#resume() resume} it.
+     * @throws IOException
+     *             If the response cannot be handled.
+     */
+    void headers(int status, Map<String, String> headers, Exchange<T> exchange) throws IOException;
+
+    /**
+     * Receive part of the body of the response.
+     *
+     * @param content
+     *            A {@link ByteBuffer} holding the part; it is only valid for the duration of the call.
+     * @return {@code true} if the handler is ready for more of the body; {@code false} if no more is to be read from the connection until the handler resumes the exchange.
+     * @throws IOException
+     *             If the part cannot be handled.
+     */
+    boolean content(ByteBuffer content) throws IOException;
+
+    /**
+     * Produce the result once the whole response has been received.
+     *
+     * @return The result of the exchange.
+     * @throws IOException
+     *             If the response cannot be converted into a result.
+     */
+    T completed() throws IOException;
+}
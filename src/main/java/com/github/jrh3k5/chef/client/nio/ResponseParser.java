@@ -0,0 +1,439 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.nio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An incremental parser of HTTP/1.1 responses to {@code GET} requests. The parser is fed whatever bytes have arrived on a connection and reports the response to a {@link Listener} as it is
+ * recognized: the headers once they are complete, then the body a slice at a time. Bodies delimited by {@code Content-Length}, by chunked transfer coding and by the closing of the connection are
+ * understood; interim {@code 1xx} responses are skipped.
+ * <p />
+ * A parser is reused for every response received on its connection, and is not safe for use by more than one thread.
+ *
+ * @author Joshua Hyde
+ */
+
+final class ResponseParser {
+    private static final int MAX_LINE_LENGTH = 8 * 1024;
+    private static final int MAX_HEADER_BYTES = 64 * 1024;
+    private final StringBuilder line = new StringBuilder();
+    private boolean lineComplete;
+    private State state = State.STATUS_LINE;
+    private int status;
+    private boolean http11;
+    private Map<String, String> headers;
+    private String lastHeaderName;
+    private int headerBytes;
+    private long remaining;
+    private boolean keepAlive;
+    private boolean started;
+
+    /**
+     * Prepare the parser for the next response on its connection.
+     */
+    void reset() {
+        line.setLength(0);
+        lineComplete = false;
+        state = State.STATUS_LINE;
+        status = 0;
+        headers = null;
+        lastHeaderName = null;
+        headerBytes = 0;
+        remaining = 0;
+        keepAlive = false;
+        started = false;
+    }
+
+    /**
+     * Parse as much of a response as has arrived. Parsing stops early if the listener asks for no more of the body, leaving the unparsed bytes in the buffer.
+     *
+     * @param buffer
+     *            The {@link ByteBuffer} holding the bytes that have arrived, ready to be read; the bytes that are parsed are consumed from it.
+     * @param listener
+     *            The {@link Listener} to be told about the response.
+     * @return {@code true} if the response is complete; {@code false} if more of it is expected.
+     * @throws IOException
+     *             If the bytes are not a valid response, or if the listener fails.
+     */
+    boolean parse(ByteBuffer buffer, Listener listener) throws IOException {
+        while (buffer.hasRemaining() || state == State.COMPLETE) {
+            started = true;
+            switch (state) {
+            case STATUS_LINE:
+                if (readLine(buffer)) {
+                    parseStatusLine();
+                }
+                break;
+            case HEADERS:
+                if (readLine(buffer)) {
+                    if (line.length() == 0) {
+                        headersComplete(listener);
+                    } else {
+                        parseHeader();
+                    }
+                }
+                break;
+            case FIXED_BODY:
+                if (!deliver(buffer, listener)) {
+                    return false;
+                }
+                if (remaining == 0) {
+                    state = State.COMPLETE;
+                }
+                break;
+            case CHUNK_SIZE:
+                if (readLine(buffer)) {
+                    remaining = parseChunkSize();
+                    state = remaining == 0 ? State.TRAILERS : State.CHUNK_DATA;
+                }
+                break;
+            case CHUNK_DATA:
+                if (!deliver(buffer, listener)) {
+                    return false;
+                }
+                if (remaining == 0) {
+                    state = State.CHUNK_END;
+                }
+                break;
+            case CHUNK_END:
+                if (readLine(buffer)) {
+                    if (line.length() != 0) {
+                        throw new IOException("Expected the end of a chunk but found: " + line);
+                    }
+                    state = State.CHUNK_SIZE;
+                }
+                break;
+            case TRAILERS:
+                if (readLine(buffer) && line.length() == 0) {
+                    state = State.COMPLETE;
+                }
+                break;
+            case UNTIL_CLOSE:
+                remaining = buffer.remaining();
+                if (!deliver(buffer, listener)) {
+                    return false;
+                }
+                break;
+            case COMPLETE:
+                return true;
+            default:
+                throw new IllegalStateException("Unknown parser state: " + state);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tell the parser that the connection has been closed by the server.
+     *
+     * @return {@code true} if the closing of the connection completed the response.
+     * @throws IOException
+     *             If the connection was closed before the response was complete.
+     */
+    boolean endOfInput() throws IOException {
+        if (state == State.UNTIL_CLOSE || state == State.COMPLETE) {
+            state = State.COMPLETE;
+            return true;
+        }
+        if (!started) {
+            throw new EOFException("The connection was closed before a response was received.");
+        }
+        throw new EOFException("The connection was closed before the response was complete.");
+    }
+
+    /**
+     * Determine whether any part of the current response has arrived.
+     *
+     * @return {@code true} if any bytes of the response have been parsed.
+     */
+    boolean hasStarted() {
+        return started;
+    }
+
+    /**
+     * Determine whether the connection can be used for another request once the current response is complete.
+     *
+     * @return {@code true} if the server has indicated that the connection will be kept alive.
+     */
+    boolean isKeepAlive() {
+        return keepAlive && state == State.COMPLETE;
+    }
+
+    /**
+     * Deliver as much of the body as is available to the listener.
+     *
+     * @param buffer
+     *            The {@link ByteBuffer} holding the body.
+     * @param listener
+     *            The {@link Listener} to which the body is to be delivered.
+     * @return {@code false} if the listener asked for no more of the body for now.
+     * @throws IOException
+     *             If the listener fails.
+     */
+    private boolean deliver(ByteBuffer buffer, Listener listener) throws IOException {
+        final int length = (int) Math.min(remaining, buffer.remaining());
+        if (length == 0) {
+            return true;
+        }
+        final ByteBuffer slice = buffer.duplicate();
+        slice.limit(slice.position() + length);
+        buffer.position(buffer.position() + length);
+        if (state != State.UNTIL_CLOSE) {
+            remaining -= length;
+        }
+        return listener.content(slice);
+    }
+
+    /**
+     * Finish the headers of a response and decide how its body is delimited.
+     *
+     * @param listener
+     *            The {@link Listener} to be given the headers.
+     * @throws IOException
+     *             If the headers do not describe a body that can be read, or if the listener fails.
+     */
+    private void headersComplete(Listener listener) throws IOException {
+        if (status >= 100 && status < 200) {
+            // An interim response; the final response follows it
+            final boolean wasStarted = started;
+            reset();
+            started = wasStarted;
+            return;
+        }
+
+        final String connection = lower(headers.get("connection"));
+        keepAlive = http11 ? connection == null || !connection.contains("close") : connection != null && connection.contains("keep-alive");
+        final String transferEncoding = lower(headers.get("transfer-encoding"));
+        final String contentLength = headers.get("content-length");
+        if (status == 204 || status == 304) {
+            state = State.COMPLETE;
+        } else if (transferEncoding != null && transferEncoding.contains("chunked")) {
+            state = State.CHUNK_SIZE;
+        } else if (contentLength != null) {
+            try {
+                remaining = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid Content-Length: " + contentLength);
+            }
+            if (remaining < 0) {
+                throw new IOException("Invalid Content-Length: " + contentLength);
+            }
+            state = remaining == 0 ? State.COMPLETE : State.FIXED_BODY;
+        } else {
+            keepAlive = false;
+            state = State.UNTIL_CLOSE;
+        }
+        listener.headers(status, headers);
+    }
+
+    /**
+     * Parse the size of a chunk from the current line.
+     *
+     * @return The size of the chunk.
+     * @throws IOException
+     *             If the line is not a valid chunk size.
+     */
+    private long parseChunkSize() throws IOException {
+        final int extension = line.indexOf(";");
+        final String size = (extension < 0 ? line.toString() : line.substring(0, extension)).trim();
+        try {
+            final long parsed = Long.parseLong(size, 16);
+            if (parsed < 0) {
+                throw new IOException("Invalid chunk size: " + size);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid chunk size: " + size);
+        }
+    }
+
+    /**
+     * Parse a header from the current line.
+     *
+     * @throws IOException
+     *             If the line is not a valid header.
+     */
+    private void parseHeader() throws IOException {
+        final char first = line.charAt(0);
+        if ((first == ' ' || first == '\t') && lastHeaderName != null) {
+            // A folded continuation of the previous header
+            headers.put(lastHeaderName, headers.get(lastHeaderName) + " " + line.toString().trim());
+            return;
+        }
+        final int colon = line.indexOf(":");
+        if (colon <= 0) {
+            throw new IOException("Invalid header: " + line);
+        }
+        final String name = line.substring(0, colon).trim().toLowerCase(Locale.ENGLISH);
+        final String value = line.substring(colon + 1).trim();
+        final String existing = headers.get(name);
+        headers.put(name, existing == null ? value : existing + ", " + value);
+        lastHeaderName = name;
+    }
+
+    /**
+     * Parse the status line of a response from the current line.
+     *
+     * @throws IOException
+     *             If the line is not a valid status line.
+     */
+    private void parseStatusLine() throws IOException {
+        if (line.length() == 0) {
+            // Tolerate blank lines between responses
+            return;
+        }
+        final int firstSpace = line.indexOf(" ");
+        if (firstSpace < 0 || !line.substring(0, firstSpace).startsWith("HTTP/") || line.length() < firstSpace + 4) {
+            throw new IOException("Invalid status line: " + line);
+        }
+        http11 = !"HTTP/1.0".equals(line.substring(0, firstSpace));
+        try {
+            status = Integer.parseInt(line.substring(firstSpace + 1, firstSpace + 4));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid status line: " + line);
+        }
+        headers = new LinkedHashMap<String, String>();
+        state = State.HEADERS;
+    }
+
+    /**
+     * Read a line, terminated by a line feed and optionally a carriage return, into {@link #line}.
+     *
+     * @param buffer
+     *            The {@link ByteBuffer} from which the line is to be read.
+     * @return {@code true} if a complete line was read; {@code false} if the buffer ended first.
+     * @throws IOException
+     *             If the line, or the headers it belongs to, are too long.
+     */
+    private boolean readLine(ByteBuffer buffer) throws IOException {
+        if (lineComplete) {
+            line.setLength(0);
+            lineComplete = false;
+        }
+        while (buffer.hasRemaining()) {
+            final char read = (char) (buffer.get() & 0xff);
+            if (state == State.HEADERS && ++headerBytes > MAX_HEADER_BYTES) {
+                throw new IOException("The headers of the response exceed " + MAX_HEADER_BYTES + " bytes.");
+            }
+            if (read == '\n') {
+                final int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                lineComplete = true;
+                return true;
+            }
+            if (line.length() >= MAX_LINE_LENGTH) {
+                throw new IOException("A line of the response exceeds " + MAX_LINE_LENGTH + " characters.");
+            }
+            line.append(read);
+        }
+        return false;
+    }
+
+    /**
+     * Convert a header value to lower case.
+     *
+     * @param value
+     *            The value; may be {@code null}.
+     * @return {@code null} if the value is {@code null}; otherwise, the value in lower case.
+     */
+    private static String lower(String value) {
+        return value == null ? null : value.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * The receiver of a response as it is parsed.
+     *
+     * @author Joshua Hyde
+     */
+    interface Listener {
+        /**
+         * Receive the status and headers of a response.
+         *
+         * @param status
+         *            The status of the response.
+         * @param headers
+         *            A {@link Map} of the headers of the response, by name in lower case; the values of repeated headers are joined with commas.
+         * @throws IOException
+         *             If the response cannot be handled.
+         */
+        void headers(int status, Map<String, String> headers) throws IOException;
+
+        /**
+         * Receive part of the body of a response.
+         *
+         * @param content
+         *            A {@link ByteBuffer} holding the part; it is only valid for the duration of the call.
+         * @return {@code true} if the listener is ready for more of the body; {@code false} if parsing is to stop until the listener asks for more.
+         * @throws IOException
+         *             If the part cannot be handled.
+         */
+        boolean content(ByteBuffer content) throws IOException;
+    }
+
+    /**
+     * The states of the parser.
+     *
+     * @author Joshua Hyde
+     */
+    private static enum State {
+        /**
+         * Reading the status line.
+         */
+        STATUS_LINE,
+        /**
+         * Reading the headers.
+         */
+        HEADERS,
+        /**
+         * Reading a body delimited by {@code Content-Length}.
+         */
+        FIXED_BODY,
+        /**
+         * Reading the size of the next chunk.
+         */
+        CHUNK_SIZE,
+        /**
+         * Reading the data of a chunk.
+         */
+        CHUNK_DATA,
+        /**
+         * Reading the line break that ends the data of a chunk.
+         */
+        CHUNK_END,
+        /**
+         * Reading the trailers that follow the last chunk.
+         */
+        TRAILERS,
+        /**
+         * Reading a body delimited by the closing of the connection.
+         */
+        UNTIL_CLOSE,
+        /**
+         * The response is complete.
+         */
+        COMPLETE
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.nio;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+import com.github.jrh3k5.chef.client.RetrievalCallback;
+
+/**
+ * The connections kept to a single route - a scheme, host and port - and the exchanges waiting for one of them. Any number of exchanges can be submitted; at most a configured number of connections
+ * are opened, and each carries one exchange at a time, so exchanges beyond that number wait in submission order for a connection to finish its current response. Connections are kept alive between
+ * exchanges and the most recently used idle connection is reused first, so that a quiet route lets its surplus connections time out.
+ * <p />
+ * Instances of this class are safe to use across threads.
+ *
+ * @author Joshua Hyde
+ */
+
+final class RoutePool {
+    private final HttpEngine engine;
+    private final String host;
+    private final int port;
+    private final boolean secure;
+    private final String hostHeader;
+    private final int maxConnections;
+    private final Deque<HttpConnection> idle = new LinkedList<HttpConnection>();
+    private final Queue<Exchange<?>> pending = new LinkedList<Exchange<?>>();
+    private int connections;
+    private boolean closed;
+
+    /**
+     * Create a pool.
+     *
+     * @param engine
+     *            The {@link HttpEngine} to which the pool belongs.
+     * @param host
+     *            The host of the route.
+     * @param port
+     *            The port of the route.
+     * @param secure
+     *            {@code true} if connections to the route are to be secured with TLS.
+     * @param maxConnections
+     *            The maximum number of connections to be opened to the route at once.
+     */
+    RoutePool(HttpEngine engine, String host, int port, boolean secure, int maxConnections) {
+        this.engine = engine;
+        this.host = host;
+        this.port = port;
+        this.secure = secure;
+        this.hostHeader = port == (secure ? 443 : 80) ? host : host + ":" + port;
+        this.maxConnections = Math.max(1, maxConnections);
+    }
+
+    /**
+     * Remove an exchange that has not yet been given a connection.
+     *
+     * @param exchange
+     *            The {@link Exchange} to be removed.
+     */
+    synchronized void cancel(Exchange<?> exchange) {
+        pending.remove(exchange);
+    }
+
+    /**
+     * Close this pool, failing the exchanges waiting for a connection. The connections themselves are closed by the event loops serving them.
+     */
+    void close() {
+        final List<Exchange<?>> abandoned;
+        synchronized (this) {
+            closed = true;
+            abandoned = new ArrayList<Exchange<?>>(pending);
+            pending.clear();
+            idle.clear();
+        }
+        for (Exchange<?> exchange : abandoned) {
+            exchange.fail(new IOException("The client has been closed."));
+        }
+    }
+
+    /**
+     * Record that a connection has closed, opening another in its place if exchanges are waiting. If the connection never became usable and no other connection remains to serve the waiting
+     * exchanges, they are failed with the cause, so that an unreachable route fails its requests rather than retrying indefinitely.
+     *
+     * @param connection
+     *            The {@link HttpConnection} that has closed.
+     * @param established
+     *            {@code true} if the connection was established before it closed.
+     * @param cause
+     *            The {@link IOException} that closed the connection; {@code null} if it was closed deliberately.
+     */
+    void closed(HttpConnection connection, boolean established, IOException cause) {
+        List<Exchange<?>> unreachable = null;
+        boolean open = false;
+        synchronized (this) {
+            idle.remove(connection);
+            connections--;
+            if (!established && connections == 0 && !pending.isEmpty()) {
+                unreachable = new ArrayList<Exchange<?>>(pending);
+                pending.clear();
+            } else if (!closed && !pending.isEmpty() && connections < maxConnections) {
+                connections++;
+                open = true;
+            }
+        }
+        if (unreachable != null) {
+            final IOException failure = cause == null ? new IOException("Unable to connect to " + host + ":" + port) : cause;
+            for (Exchange<?> exchange : unreachable) {
+                exchange.fail(failure);
+            }
+        }
+        if (open) {
+            open();
+        }
+    }
+
+    /**
+     * Get the value of the {@code Host} header sent to this route.
+     *
+     * @return The host, followed by the port if it is not the default for the scheme.
+     */
+    String getHostHeader() {
+        return hostHeader;
+    }
+
+    /**
+     * Get the host of this route.
+     *
+     * @return The host of this route.
+     */
+    String getHost() {
+        return host;
+    }
+
+    /**
+     * Get the port of this route.
+     *
+     * @return The port of this route.
+     */
+    int getPort() {
+        return port;
+    }
+
+    /**
+     * Determine whether this route is secured with TLS.
+     *
+     * @return {@code true} if connections to this route are secured with TLS.
+     */
+    boolean isSecure() {
+        return secure;
+    }
+
+    /**
+     * Hand a connection that is ready for another exchange back to this pool.
+     *
+     * @param connection
+     *            The {@link HttpConnection} that is ready.
+     * @return The {@link Exchange} the connection is to serve next; {@code null} if none is waiting, in which case the connection is kept as idle.
+     */
+    synchronized Exchange<?> release(HttpConnection connection) {
+        final Exchange<?> next = pending.poll();
+        if (next == null && !closed) {
+            idle.addFirst(connection);
+        }
+        return next;
+    }
+
+    /**
+     * Remove an idle connection from this pool so that it can be closed.
+     *
+     * @param connection
+     *            The {@link HttpConnection} to be removed.
+     * @return {@code true} if the connection was idle and has been removed; {@code false} if it has already been handed an exchange.
+     */
+    synchronized boolean removeIdle(HttpConnection connection) {
+        return idle.remove(connection);
+    }
+
+    /**
+     * Add this pool's connections and waiting exchanges to a tally.
+     *
+     * @param tally
+     *            An array of the numbers of leased connections, waiting exchanges and idle connections, in that order, to which this pool's are to be added.
+     */
+    synchronized void tally(int[] tally) {
+        tally[0] += connections - idle.size();
+        tally[1] += pending.size();
+        tally[2] += idle.size();
+    }
+
+    /**
+     * Submit an exchange to be sent on an idle connection, on a new connection if none is idle, or once a connection is freed if the route is at its limit.
+     *
+     * @param exchange
+     *            The {@link Exchange} to be sent.
+     */
+    void submit(Exchange<?> exchange) {
+        final HttpConnection connection;
+        boolean open = false;
+        synchronized (this) {
+            if (closed) {
+                connection = null;
+            } else {
+                connection = idle.pollFirst();
+                if (connection == null) {
+                    pending.add(exchange);
+                    if (connections < maxConnections) {
+                        connections++;
+                        open = true;
+                    }
+                }
+            }
+        }
+
+        if (connection != null) {
+            connection.dispatch(exchange);
+        } else if (open) {
+            open();
+        } else if (isClosed()) {
+            exchange.fail(new IOException("The client has been closed."));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return (secure ? "https://" : "http://") + hostHeader;
+    }
+
+    /**
+     * Determine whether this pool has been closed.
+     *
+     * @return {@code true} if this pool has been closed.
+     */
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Open a connection, for which a slot has already been counted, once the host has been resolved.
+     */
+    private void open() {
+        engine.getResolver().resolve(host, new RetrievalCallback<InetAddress>() {
+            @Override
+            public void completed(InetAddress address) {
+                engine.connect(RoutePool.this, new InetSocketAddress(address, port));
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                closed(null, false, throwable instanceof IOException ? (IOException) throwable : new IOException("Failed to resolve host: " + host, throwable));
+            }
+        });
+    }
+}
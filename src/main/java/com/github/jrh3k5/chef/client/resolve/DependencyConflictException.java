@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.resolve;
+
+import com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException;
+
+/**
+ * An exception that indicates that no set of cookbook versions satisfies the constraints of a run list and of the dependencies of its cookbooks.
+ *
+ * @author Joshua Hyde
+ */
+
+public class DependencyConflictException extends CookbookRetrievalException {
+    private static final long serialVersionUID = -3620945722270931875L;
+
+    /**
+     * Create an exception.
+     *
+     * @param message
+     *            The message associated with the exception.
+     */
+    public DependencyConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.resolve;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.github.jrh3k5.chef.client.Cookbook;
+import com.github.jrh3k5.chef.client.Cookbook.Version;
+import com.github.jrh3k5.chef.client.CookbookClient;
+import com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException;
+import com.github.jrh3k5.chef.client.version.VersionConstraint;
+
+/**
+ * A resolver that selects a version of every cookbook needed by a run list, including the cookbooks on which they transitively depend.
+ * <p />
+ * Before any version is selected, the dependency graph is expanded one layer at a time, retrieving the best version of every cookbook in a layer in parallel through the client's asynchronous
+ * methods. The versions are then selected highest-first, backtracking to a lower version of a cookbook when its dependencies conflict with the selections made so far. Every cookbook and version
+ * document is retrieved at most once per resolution, however often the selection revisits it.
+ *
+ * @author Joshua Hyde
+ */
+
+public class DependencyResolver {
+    private final CookbookClient client;
+
+    /**
+     * Create a resolver.
+     *
+     * @param client
+     *            The {@link CookbookClient} through which cookbooks are to be retrieved.
+     */
+    public DependencyResolver(CookbookClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Resolve the versions of a run list of cookbooks, accepting any version of the cookbooks named in it.
+     *
+     * @param names
+     *            The names of the cookbooks in the run list.
+     * @return A {@link Map} of the names of all of the cookbooks needed by the run list to their selected {@link Version}s.
+     * @throws DependencyConflictException
+     *             If no set of versions satisfies the constraints.
+     * @throws CookbookRetrievalException
+     *             If a cookbook or version could not be retrieved.
+     * @see #resolve(Map)
+     */
+    public Map<String, Version> resolve(Collection<String> names) {
+        final Map<String, VersionConstraint> runList = new LinkedHashMap<String, VersionConstraint>();
+        for (String name : names) {
+            runList.put(name, VersionConstraint.ANY);
+        }
+        return resolve(runList);
+    }
+
+    /**
+     * Resolve the versions of a run list of cookbooks.
+     *
+     * @param runList
+     *            A {@link Map} of the names of the cookbooks in the run list to the constraints on their versions.
+     * @return A {@link Map} of the names of all of the cookbooks needed by the run list to their selected {@link Version}s, in the order in which they were selected.
+     * @throws DependencyConflictException
+     *             If no set of versions satisfies the constraints.
+     * @throws CookbookRetrievalException
+     *             If a cookbook or version could not be retrieved, or if the calling thread is interrupted.
+     */
+    public Map<String, Version> resolve(Map<String, VersionConstraint> runList) {
+        final Resolution resolution = new Resolution(new DocumentMemo(client));
+        resolution.expand(runList);
+
+        final Map<String, String> selected = resolution.select(new LinkedHashMap<String, VersionConstraint>(runList), new LinkedHashMap<String, String>(), new LinkedList<String>(
+                runList.keySet()));
+        if (selected == null) {
+            throw new DependencyConflictException(resolution.conflict);
+        }
+
+        final Map<String, Version> versions = new LinkedHashMap<String, Version>(selected.size());
+        for (Entry<String, String> entry : selected.entrySet()) {
+            versions.put(entry.getKey(), resolution.memo.getVersion(entry.getKey(), entry.getValue()));
+        }
+        return versions;
+    }
+
+    /**
+     * The state of a single resolution.
+     *
+     * @author Joshua Hyde
+     */
+    private static class Resolution {
+        private final DocumentMemo memo;
+        private String conflict;
+
+        /**
+         * Create a resolution.
+         *
+         * @param memo
+         *            The {@link DocumentMemo} through which documents are to be retrieved.
+         */
+        public Resolution(DocumentMemo memo) {
+            this.memo = memo;
+        }
+
+        /**
+         * Retrieve, in parallel, the documents likely to be needed to resolve the given cookbooks.
+         *
+         * @param roots
+         *            A {@link Map} of the names of cookbooks to the constraints on their versions.
+         * @throws CookbookRetrievalException
+         *             If the calling thread is interrupted.
+         */
+        public void expand(Map<String, VersionConstraint> roots) {
+            if (roots.isEmpty()) {
+                return;
+            }
+            try {
+                memo.expand(roots);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CookbookRetrievalException("Interrupted while retrieving dependencies", e);
+            }
+        }
+
+        /**
+         * Select the versions of the cookbooks remaining to be resolved.
+         *
+         * @param constraints
+         *            A {@link Map} of the names of all cookbooks encountered so far to the combined constraints on their versions.
+         * @param selected
+         *            A {@link Map} of the names of the cookbooks whose versions have been selected to the selected version numbers.
+         * @param pending
+         *            The names of the cookbooks whose versions remain to be selected.
+         * @return {@code null} if no versions satisfy the constraints; otherwise, a {@link Map} of the names of all cookbooks to their selected version numbers.
+         */
+        public Map<String, String> select(Map<String, VersionConstraint> constraints, Map<String, String> selected, LinkedList<String> pending) {
+            if (pending.isEmpty()) {
+                return selected;
+            }
+
+            final LinkedList<String> remaining = new LinkedList<String>(pending);
+            final String name = remaining.removeFirst();
+            final Cookbook cookbook = memo.getCookbook(name);
+            if (cookbook == null) {
+                conflict = "Cookbook does not exist: " + name;
+                return null;
+            }
+
+            final List<String> candidates = cookbook.getVersions(constraints.get(name));
+            if (candidates.isEmpty()) {
+                conflict = String.format("No version of cookbook %s satisfies %s", name, constraints.get(name));
+                return null;
+            }
+
+            for (int i = candidates.size() - 1; i >= 0; i--) {
+                final String candidate = candidates.get(i);
+                final Version version = memo.getVersion(name, candidate);
+                if (version == null) {
+                    conflict = String.format("Version %s of cookbook %s could not be found", candidate, name);
+                    continue;
+                }
+
+                final Map<String, VersionConstraint> candidateConstraints = new LinkedHashMap<String, VersionConstraint>(constraints);
+                final Map<String, String> candidateSelected = new LinkedHashMap<String, String>(selected);
+                candidateSelected.put(name, candidate);
+                final LinkedList<String> candidatePending = new LinkedList<String>(remaining);
+                final Map<String, VersionConstraint> discovered = new LinkedHashMap<String, VersionConstraint>();
+                if (!constrain(name, version, candidateConstraints, candidateSelected, candidatePending, discovered)) {
+                    continue;
+                }
+
+                expand(discovered);
+                final Map<String, String> solution = select(candidateConstraints, candidateSelected, candidatePending);
+                if (solution != null) {
+                    return solution;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Apply the dependencies of a candidate version to the constraints of a resolution.
+         *
+         * @param name
+         *            The name of the cookbook of which the candidate is a version.
+         * @param version
+         *            The candidate {@link Version}.
+         * @param constraints
+         *            A {@link Map} of the names of cookbooks to the constraints on their versions, to which the constraints of the dependencies are to be added.
+         * @param selected
+         *            A {@link Map} of the names of the cookbooks whose versions have been selected to the selected version numbers.
+         * @param pending
+         *            The names of the cookbooks whose versions remain to be selected, to which newly encountered dependencies are to be added.
+         * @param discovered
+         *            A {@link Map} to which newly encountered dependencies are to be added.
+         * @return {@code true} if the dependencies are consistent with the constraints and selections; {@code false} if they conflict.
+         */
+        private boolean constrain(String name, Version version, Map<String, VersionConstraint> constraints, Map<String, String> selected, LinkedList<String> pending,
+                Map<String, VersionConstraint> discovered) {
+            for (Entry<String, String> dependency : version.getDependencies().entrySet()) {
+                final String dependencyName = dependency.getKey();
+                final VersionConstraint constraint;
+                try {
+                    constraint = VersionConstraint.parse(dependency.getValue());
+                } catch (IllegalArgumentException e) {
+                    conflict = String.format("Version %s of cookbook %s has an invalid constraint on %s: %s", version.getVersion(), name, dependencyName, dependency.getValue());
+                    return false;
+                }
+
+                final VersionConstraint existing = constraints.get(dependencyName);
+                final VersionConstraint combined = existing == null ? constraint : existing.intersect(constraint);
+                if (!combined.isSatisfiable()) {
+                    conflict = String.format("Version %s of cookbook %s requires %s %s, which conflicts with %s", version.getVersion(), name, dependencyName, constraint, existing);
+                    return false;
+                }
+                final String selectedVersion = selected.get(dependencyName);
+                if (selectedVersion != null && !combined.matches(selectedVersion)) {
+                    conflict = String.format("Version %s of cookbook %s requires %s %s, but version %s was selected", version.getVersion(), name, dependencyName, constraint, selectedVersion);
+                    return false;
+                }
+
+                constraints.put(dependencyName, combined);
+                if (existing == null) {
+                    pending.add(dependencyName);
+                    discovered.put(dependencyName, constraint);
+                }
+            }
+            return true;
+        }
+    }
+}
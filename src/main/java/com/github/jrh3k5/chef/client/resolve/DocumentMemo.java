@@ -0,0 +1,297 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.resolve;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.github.jrh3k5.chef.client.Cookbook;
+import com.github.jrh3k5.chef.client.Cookbook.Version;
+import com.github.jrh3k5.chef.client.CookbookClient;
+import com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException;
+import com.github.jrh3k5.chef.client.RetrievalCallback;
+import com.github.jrh3k5.chef.client.concurrent.ResultFuture;
+import com.github.jrh3k5.chef.client.version.VersionConstraint;
+
+/**
+ * The cookbook and version documents retrieved during a single dependency resolution. Each document is requested at most once, no matter how often the resolution returns to it.
+ *
+ * @author Joshua Hyde
+ */
+
+class DocumentMemo {
+    private final CookbookClient client;
+    private final ConcurrentMap<String, ResultFuture<Cookbook>> cookbooks = new ConcurrentHashMap<String, ResultFuture<Cookbook>>();
+    private final ConcurrentMap<String, ResultFuture<Version>> versions = new ConcurrentHashMap<String, ResultFuture<Version>>();
+
+    /**
+     * Create a memo.
+     *
+     * @param client
+     *            The {@link CookbookClient} through which documents are to be retrieved.
+     */
+    DocumentMemo(CookbookClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Get a cookbook, waiting for it to be retrieved if necessary.
+     *
+     * @param name
+     *            The name of the cookbook.
+     * @return {@code null} if the cookbook does not exist; otherwise, the {@link Cookbook}.
+     * @throws CookbookRetrievalException
+     *             If the cookbook could not be retrieved.
+     */
+    Cookbook getCookbook(String name) {
+        return await(getCookbookAsync(name), "cookbook " + name);
+    }
+
+    /**
+     * Get a version of a cookbook, waiting for it to be retrieved if necessary.
+     *
+     * @param name
+     *            The name of the cookbook.
+     * @param versionNumber
+     *            The version number.
+     * @return {@code null} if the cookbook or version does not exist; otherwise, the {@link Version}.
+     * @throws CookbookRetrievalException
+     *             If the cookbook or version could not be retrieved.
+     */
+    Version getVersion(String name, String versionNumber) {
+        return await(getVersionAsync(name, versionNumber), "version " + versionNumber + " of cookbook " + name);
+    }
+
+    /**
+     * Retrieve, in parallel, the best version of each of a set of cookbooks, then the best versions of the cookbooks on which those depend, and so on, one layer of the dependency graph at a time.
+     * The "best" version is the highest that satisfies the constraints known when it is chosen; documents that fail to be retrieved are left for the resolution to report.
+     *
+     * @param roots
+     *            A {@link Map} of the names of the cookbooks from which the expansion is to start to the constraints on their versions.
+     * @throws InterruptedException
+     *             If the calling thread is interrupted while waiting for a layer to be retrieved.
+     */
+    void expand(Map<String, VersionConstraint> roots) throws InterruptedException {
+        final Set<String> seen = new HashSet<String>(roots.keySet());
+        Map<String, VersionConstraint> layer = roots;
+        while (!layer.isEmpty()) {
+            final Map<String, Future<Version>> picks = new LinkedHashMap<String, Future<Version>>();
+            for (Entry<String, VersionConstraint> entry : layer.entrySet()) {
+                picks.put(entry.getKey(), getBestVersionAsync(entry.getKey(), entry.getValue()));
+            }
+
+            final Map<String, VersionConstraint> nextLayer = new LinkedHashMap<String, VersionConstraint>();
+            for (Future<Version> pick : picks.values()) {
+                final Version version;
+                try {
+                    version = pick.get();
+                } catch (ExecutionException e) {
+                    continue;
+                }
+                if (version == null) {
+                    continue;
+                }
+                for (Entry<String, String> dependency : version.getDependencies().entrySet()) {
+                    if (seen.add(dependency.getKey())) {
+                        try {
+                            nextLayer.put(dependency.getKey(), VersionConstraint.parse(dependency.getValue()));
+                        } catch (IllegalArgumentException e) {
+                            // The resolution reports invalid constraints
+                        }
+                    }
+                }
+            }
+            layer = nextLayer;
+        }
+    }
+
+    /**
+     * Retrieve the highest version of a cookbook that satisfies a constraint.
+     *
+     * @param name
+     *            The name of the cookbook.
+     * @param constraint
+     *            The {@link VersionConstraint} to be satisfied.
+     * @return A {@link ResultFuture} that yields {@code null} if the cookbook does not exist or no version satisfies the constraint; otherwise, the selected {@link Version}.
+     */
+    private ResultFuture<Version> getBestVersionAsync(final String name, final VersionConstraint constraint) {
+        final ResultFuture<Version> result = new ResultFuture<Version>();
+        getCookbookAsync(name).addCallback(new RetrievalCallback<Cookbook>() {
+            @Override
+            public void completed(Cookbook cookbook) {
+                final List<String> candidates = cookbook == null ? null : cookbook.getVersions(constraint);
+                if (candidates == null || candidates.isEmpty()) {
+                    result.set(null);
+                    return;
+                }
+                forward(getVersionAsync(name, candidates.get(candidates.size() - 1)), result);
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                result.setException(throwable);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Retrieve a cookbook, unless it has already been requested.
+     *
+     * @param name
+     *            The name of the cookbook.
+     * @return A {@link ResultFuture} representing the retrieval of the cookbook.
+     */
+    private ResultFuture<Cookbook> getCookbookAsync(String name) {
+        final ResultFuture<Cookbook> existing = cookbooks.get(name);
+        if (existing != null) {
+            return existing;
+        }
+
+        final ResultFuture<Cookbook> retrieval = new ResultFuture<Cookbook>();
+        final ResultFuture<Cookbook> concurrentRetrieval = cookbooks.putIfAbsent(name, retrieval);
+        if (concurrentRetrieval != null) {
+            return concurrentRetrieval;
+        }
+        try {
+            client.getCookbookAsync(name, new ForwardingCallback<Cookbook>(retrieval));
+        } catch (RuntimeException e) {
+            retrieval.setException(e);
+        }
+        return retrieval;
+    }
+
+    /**
+     * Retrieve a version of a cookbook, unless it has already been requested.
+     *
+     * @param name
+     *            The name of the cookbook.
+     * @param versionNumber
+     *            The version number.
+     * @return A {@link ResultFuture} representing the retrieval of the version.
+     */
+    private ResultFuture<Version> getVersionAsync(String name, final String versionNumber) {
+        final String key = name + '@' + versionNumber;
+        final ResultFuture<Version> existing = versions.get(key);
+        if (existing != null) {
+            return existing;
+        }
+
+        final ResultFuture<Version> retrieval = new ResultFuture<Version>();
+        final ResultFuture<Version> concurrentRetrieval = versions.putIfAbsent(key, retrieval);
+        if (concurrentRetrieval != null) {
+            return concurrentRetrieval;
+        }
+        getCookbookAsync(name).addCallback(new RetrievalCallback<Cookbook>() {
+            @Override
+            public void completed(Cookbook cookbook) {
+                if (cookbook == null) {
+                    retrieval.set(null);
+                    return;
+                }
+                try {
+                    cookbook.getVersionAsync(versionNumber, new ForwardingCallback<Version>(retrieval));
+                } catch (RuntimeException e) {
+                    retrieval.setException(e);
+                }
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                retrieval.setException(throwable);
+            }
+        });
+        return retrieval;
+    }
+
+    /**
+     * Wait for a retrieval.
+     *
+     * @param retrieval
+     *            The {@link Future} representing the retrieval.
+     * @param description
+     *            A description of what is being retrieved, for error messages.
+     * @return The retrieved document.
+     * @throws CookbookRetrievalException
+     *             If the retrieval failed or the calling thread was interrupted.
+     */
+    private static <T> T await(Future<T> retrieval, String description) {
+        try {
+            return retrieval.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CookbookRetrievalException("Interrupted while retrieving " + description, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CookbookRetrievalException) {
+                throw (CookbookRetrievalException) e.getCause();
+            }
+            throw new CookbookRetrievalException("Failed to retrieve " + description, e.getCause());
+        }
+    }
+
+    /**
+     * Complete one future with the outcome of another.
+     *
+     * @param source
+     *            The {@link ResultFuture} whose outcome is to be forwarded.
+     * @param target
+     *            The {@link ResultFuture} to be completed.
+     */
+    private static <T> void forward(ResultFuture<T> source, ResultFuture<T> target) {
+        source.addCallback(new ForwardingCallback<T>(target));
+    }
+
+    /**
+     * A callback that completes a {@link ResultFuture} with the outcome it is given.
+     *
+     * @author Joshua Hyde
+     * @param <T>
+     *            The type of result.
+     */
+    private static class ForwardingCallback<T> implements RetrievalCallback<T> {
+        private final ResultFuture<T> target;
+
+        /**
+         * Create a callback.
+         *
+         * @param target
+         *            The {@link ResultFuture} to be completed.
+         */
+        public ForwardingCallback(ResultFuture<T> target) {
+            this.target = target;
+        }
+
+        @Override
+        public void completed(T result) {
+            target.set(result);
+        }
+
+        @Override
+        public void failed(Throwable throwable) {
+            target.setException(throwable);
+        }
+    }
+}
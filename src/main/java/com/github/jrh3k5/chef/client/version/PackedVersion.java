@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.version;
+
+/**
+ * Utilities for version numbers of one to three numeric components (e.g., {@code 1}, {@code 1.2} or {@code 1.2.3}) packed into a single {@code long}.
+ * <p />
+ * Each component occupies 20 bits - the major version in the highest bits - and the lowest two bits hold the number of components that were written, so that {@code 1.2} and {@code 1.2.0} are packed
+ * differently but adjacently. Packed versions therefore sort in version order when compared as {@code long}s.
+ *
+ * @author Joshua Hyde
+ */
+
+public final class PackedVersion {
+    /**
+     * The value returned when a version number cannot be packed.
+     */
+    public static final long INVALID = -1L;
+    /**
+     * The largest value that can be held by a component of a packed version.
+     */
+    public static final int MAX_COMPONENT = (1 << 20) - 1;
+    private static final int COMPONENT_BITS = 20;
+    private static final int COUNT_BITS = 2;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private PackedVersion() {
+    }
+
+    /**
+     * Get the number of components that were written in a packed version.
+     *
+     * @param packedVersion
+     *            The packed version.
+     * @return The number of components, between {@code 1} and {@code 3}.
+     */
+    public static int getComponentCount(long packedVersion) {
+        return (int) (packedVersion & COUNT_MASK);
+    }
+
+    /**
+     * Get the major component of a packed version.
+     *
+     * @param packedVersion
+     *            The packed version.
+     * @return The major component.
+     */
+    public static int getMajor(long packedVersion) {
+        return getComponent(packedVersion, 0);
+    }
+
+    /**
+     * Get the minor component of a packed version.
+     *
+     * @param packedVersion
+     *            The packed version.
+     * @return The minor component; {@code 0} if it was not written.
+     */
+    public static int getMinor(long packedVersion) {
+        return getComponent(packedVersion, 1);
+    }
+
+    /**
+     * Get the patch component of a packed version.
+     *
+     * @param packedVersion
+     *            The packed version.
+     * @return The patch component; {@code 0} if it was not written.
+     */
+    public static int getPatch(long packedVersion) {
+        return getComponent(packedVersion, 2);
+    }
+
+    /**
+     * Pack a version.
+     *
+     * @param major
+     *            The major component.
+     * @param minor
+     *            The minor component.
+     * @param patch
+     *            The patch component.
+     * @param componentCount
+     *            The number of components written, between {@code 1} and {@code 3}.
+     * @return The packed version.
+     * @throws IllegalArgumentException
+     *             If any component is out of range.
+     */
+    public static long pack(int major, int minor, int patch, int componentCount) {
+        if (major < 0 || major > MAX_COMPONENT || minor < 0 || minor > MAX_COMPONENT || patch < 0 || patch > MAX_COMPONENT || componentCount < 1 || componentCount > 3) {
+            throw new IllegalArgumentException(String.format("Version cannot be packed: %d.%d.%d (%d components)", major, minor, patch, componentCount));
+        }
+        return ((long) major << (COUNT_BITS + 2 * COMPONENT_BITS)) | ((long) minor << (COUNT_BITS + COMPONENT_BITS)) | ((long) patch << COUNT_BITS) | componentCount;
+    }
+
+    /**
+     * Parse and pack a version number.
+     *
+     * @param text
+     *            The text containing the version number.
+     * @param start
+     *            The index within the text at which the version number starts; the version number continues to the end of the text.
+     * @param separator
+     *            The character separating the components of the version number.
+     * @return {@link #INVALID} if the text is not a version number of one to three components, each a number without leading zeros no larger than {@link #MAX_COMPONENT}; otherwise, the packed
+     *         version.
+     */
+    public static long parse(CharSequence text, int start, char separator) {
+        final int[] components = new int[3];
+        int componentCount = 0;
+        int digits = 0;
+        int value = 0;
+        for (int i = start; i <= text.length(); i++) {
+            final char c = i == text.length() ? separator : text.charAt(i);
+            if (c == separator) {
+                if (digits == 0 || componentCount == 3) {
+                    return INVALID;
+                }
+                components[componentCount++] = value;
+                digits = 0;
+                value = 0;
+            } else if (c >= '0' && c <= '9') {
+                if (digits == 1 && value == 0) {
+                    // Leading zeros would not survive being packed
+                    return INVALID;
+                }
+                value = value * 10 + (c - '0');
+                if (value > MAX_COMPONENT) {
+                    return INVALID;
+                }
+                digits++;
+            } else {
+                return INVALID;
+            }
+        }
+        return pack(components[0], components[1], components[2], componentCount);
+    }
+
+    /**
+     * Compare two packed versions, ignoring the number of components written; {@code 1.2} and {@code 1.2.0} are equal.
+     *
+     * @param left
+     *            The first packed version.
+     * @param right
+     *            The second packed version.
+     * @return A negative number, zero or a positive number if the first version is lower than, equal to or higher than the second.
+     */
+    public static int compare(long left, long right) {
+        final long leftValue = toOrdinal(left);
+        final long rightValue = toOrdinal(right);
+        return leftValue < rightValue ? -1 : (leftValue == rightValue ? 0 : 1);
+    }
+
+    /**
+     * Append a packed version to a builder.
+     *
+     * @param builder
+     *            The {@link StringBuilder} to which the version is to be appended.
+     * @param packedVersion
+     *            The packed version.
+     * @param separator
+     *            The character with which the components are to be separated.
+     * @return The given builder.
+     */
+    public static StringBuilder append(StringBuilder builder, long packedVersion, char separator) {
+        final int componentCount = getComponentCount(packedVersion);
+        for (int i = 0; i < componentCount; i++) {
+            if (i > 0) {
+                builder.append(separator);
+            }
+            builder.append(getComponent(packedVersion, i));
+        }
+        return builder;
+    }
+
+    /**
+     * Format a packed version.
+     *
+     * @param packedVersion
+     *            The packed version.
+     * @return The version number, with its components separated by periods.
+     */
+    public static String toString(long packedVersion) {
+        return append(new StringBuilder(12), packedVersion, '.').toString();
+    }
+
+    /**
+     * Convert a packed version into an ordinal that ignores the number of components written, such that {@code 1.2} and {@code 1.2.0} have the same ordinal. Ordinals are ordered as their versions
+     * are.
+     *
+     * @param packedVersion
+     *            The packed version.
+     * @return The ordinal of the version.
+     */
+    static long toOrdinal(long packedVersion) {
+        return packedVersion >>> COUNT_BITS;
+    }
+
+    /**
+     * Get a component of a packed version.
+     *
+     * @param packedVersion
+     *            The packed version.
+     * @param index
+     *            The index of the component, where {@code 0} is the major component.
+     * @return The component.
+     */
+    private static int getComponent(long packedVersion, int index) {
+        return (int) ((packedVersion >>> (COUNT_BITS + (2 - index) * COMPONENT_BITS)) & MAX_COMPONENT);
+    }
+}
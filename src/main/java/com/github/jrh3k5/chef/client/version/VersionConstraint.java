@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.version;
+
+/**
+ * A constraint on the version of a cookbook, following the semantics of Chef version constraints.
+ * <p />
+ * A constraint is one or more comma-separated clauses, all of which a version must satisfy. Each clause is an operator - {@code =}, {@code >}, {@code >=}, {@code <}, {@code <=} or {@code ~>} - followed
+ * by a version of one to three numeric components; a clause without an operator is an exact match. Omitted components are treated as zero, so {@code = 1.2} matches {@code 1.2.0}. The pessimistic
+ * operator {@code ~>} allows the last given component to increase: {@code ~> 1.2} matches {@code >= 1.2, < 2.0} and {@code ~> 1.2.3} matches {@code >= 1.2.3, < 1.3.0}.
+ * <p />
+ * Every constraint reduces to a single inclusive range of versions, so it can be evaluated against a sorted list of versions by binary search.
+ *
+ * @author Joshua Hyde
+ */
+
+public class VersionConstraint {
+    /**
+     * A constraint matched by every numeric version.
+     */
+    public static final VersionConstraint ANY = new VersionConstraint(">= 0", 0, Long.MAX_VALUE);
+    private final String text;
+    private final long lowestOrdinal;
+    private final long highestOrdinal;
+
+    /**
+     * Create a constraint.
+     *
+     * @param text
+     *            The text of the constraint.
+     * @param lowestOrdinal
+     *            The {@link PackedVersion#toOrdinal(long) ordinal} of the lowest matching version.
+     * @param highestOrdinal
+     *            The ordinal of the highest matching version.
+     */
+    private VersionConstraint(String text, long lowestOrdinal, long highestOrdinal) {
+        this.text = text;
+        this.lowestOrdinal = lowestOrdinal;
+        this.highestOrdinal = highestOrdinal;
+    }
+
+    /**
+     * Parse a constraint.
+     *
+     * @param constraint
+     *            The text of the constraint (e.g., {@code "~> 1.2"} or {@code ">= 2.0, < 3.0"}).
+     * @return A {@link VersionConstraint} representing the given text.
+     * @throws IllegalArgumentException
+     *             If the given text is not a valid constraint.
+     */
+    public static VersionConstraint parse(String constraint) {
+        if (constraint == null || constraint.trim().length() == 0) {
+            throw new IllegalArgumentException("A version constraint must have at least one clause.");
+        }
+
+        long lowest = 0;
+        long highest = Long.MAX_VALUE;
+        for (String clause : constraint.split(",")) {
+            final String trimmed = clause.trim();
+            int versionStart = 0;
+            while (versionStart < trimmed.length() && "=<>~".indexOf(trimmed.charAt(versionStart)) >= 0) {
+                versionStart++;
+            }
+            final String operator = trimmed.substring(0, versionStart);
+            final String versionText = trimmed.substring(versionStart).trim();
+            final long version = PackedVersion.parse(versionText, 0, '.');
+            if (version == PackedVersion.INVALID) {
+                throw new IllegalArgumentException("Invalid version in constraint: " + clause);
+            }
+
+            final long ordinal = PackedVersion.toOrdinal(version);
+            long clauseLowest = 0;
+            long clauseHighest = Long.MAX_VALUE;
+            if (operator.length() == 0 || "=".equals(operator)) {
+                clauseLowest = ordinal;
+                clauseHighest = ordinal;
+            } else if (">".equals(operator)) {
+                clauseLowest = ordinal + 1;
+            } else if (">=".equals(operator)) {
+                clauseLowest = ordinal;
+            } else if ("<".equals(operator)) {
+                clauseHighest = ordinal - 1;
+            } else if ("<=".equals(operator)) {
+                clauseHighest = ordinal;
+            } else if ("~>".equals(operator)) {
+                clauseLowest = ordinal;
+                clauseHighest = getPessimisticLimit(version) - 1;
+            } else {
+                throw new IllegalArgumentException("Invalid operator in constraint: " + clause);
+            }
+            lowest = Math.max(lowest, clauseLowest);
+            highest = Math.min(highest, clauseHighest);
+        }
+        return new VersionConstraint(constraint.trim(), lowest, highest);
+    }
+
+    /**
+     * Combine this constraint with another.
+     *
+     * @param other
+     *            The {@link VersionConstraint} to be combined with this one.
+     * @return A {@link VersionConstraint} satisfied only by versions that satisfy both this constraint and the given constraint.
+     */
+    public VersionConstraint intersect(VersionConstraint other) {
+        return new VersionConstraint(text + ", " + other.text, Math.max(lowestOrdinal, other.lowestOrdinal), Math.min(highestOrdinal, other.highestOrdinal));
+    }
+
+    /**
+     * Determine whether any version can satisfy this constraint.
+     *
+     * @return {@code true} if at least one version could satisfy this constraint; {@code false} if its clauses contradict each other.
+     */
+    public boolean isSatisfiable() {
+        return lowestOrdinal <= highestOrdinal;
+    }
+
+    /**
+     * Determine whether a version satisfies this constraint.
+     *
+     * @param version
+     *            The version number.
+     * @return {@code true} if the given version is numeric and satisfies this constraint; {@code false} if not.
+     */
+    public boolean matches(String version) {
+        final long packed = PackedVersion.parse(version, 0, '.');
+        return packed != PackedVersion.INVALID && matches(packed);
+    }
+
+    /**
+     * Determine whether a packed version satisfies this constraint.
+     *
+     * @param packedVersion
+     *            The {@link PackedVersion packed} version.
+     * @return {@code true} if the given version satisfies this constraint; {@code false} if not.
+     */
+    public boolean matches(long packedVersion) {
+        final long ordinal = PackedVersion.toOrdinal(packedVersion);
+        return ordinal >= lowestOrdinal && ordinal <= highestOrdinal;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof VersionConstraint)) {
+            return false;
+        }
+        final VersionConstraint other = (VersionConstraint) o;
+        return lowestOrdinal == other.lowestOrdinal && highestOrdinal == other.highestOrdinal;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (lowestOrdinal ^ (lowestOrdinal >>> 32)) * 31 + (int) (highestOrdinal ^ (highestOrdinal >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    /**
+     * Find the first of a sorted array of packed versions that satisfies this constraint.
+     *
+     * @param packedVersions
+     *            A sorted array of {@link PackedVersion packed} versions.
+     * @return The index of the first matching version; if none match, the index of the first version higher than all matching versions, which may be the length of the array.
+     */
+    int firstMatch(long[] packedVersions) {
+        return lowerBound(packedVersions, lowestOrdinal);
+    }
+
+    /**
+     * Find the end of the matching versions in a sorted array of packed versions.
+     *
+     * @param packedVersions
+     *            A sorted array of {@link PackedVersion packed} versions.
+     * @return The index following the last matching version.
+     */
+    int endOfMatches(long[] packedVersions) {
+        return highestOrdinal == Long.MAX_VALUE ? packedVersions.length : lowerBound(packedVersions, highestOrdinal + 1);
+    }
+
+    /**
+     * Find the first version in a sorted array whose ordinal is at least the given ordinal.
+     *
+     * @param packedVersions
+     *            A sorted array of {@link PackedVersion packed} versions.
+     * @param ordinal
+     *            The ordinal to be sought.
+     * @return The index of the first version whose ordinal is at least the given ordinal; the length of the array if there is none.
+     */
+    private static int lowerBound(long[] packedVersions, long ordinal) {
+        int low = 0;
+        int high = packedVersions.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (PackedVersion.toOrdinal(packedVersions[middle]) < ordinal) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Determine the exclusive upper limit of a pessimistic ({@code ~>}) constraint.
+     *
+     * @param version
+     *            The {@link PackedVersion packed} version of the constraint.
+     * @return The ordinal of the lowest version not matched by the constraint.
+     */
+    private static long getPessimisticLimit(long version) {
+        final int major = PackedVersion.getMajor(version);
+        if (PackedVersion.getComponentCount(version) < 3) {
+            return major == PackedVersion.MAX_COMPONENT ? Long.MAX_VALUE : PackedVersion.toOrdinal(PackedVersion.pack(major + 1, 0, 0, 1));
+        }
+        final int minor = PackedVersion.getMinor(version);
+        return minor == PackedVersion.MAX_COMPONENT ? PackedVersion.toOrdinal(PackedVersion.pack(major, minor, PackedVersion.MAX_COMPONENT, 3)) + 1 : PackedVersion.toOrdinal(PackedVersion.pack(major, minor + 1, 0, 2));
+    }
+}
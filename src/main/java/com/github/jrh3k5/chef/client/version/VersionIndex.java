@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.version;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An immutable, compact index of the versions of a cookbook and the URLs at which they are described.
+ * <p />
+ * The URL of a version is expected to be a prefix shared by all versions of the cookbook followed by the version number, with underscores in place of periods (e.g.,
+ * {@code .../cookbooks/apache/versions/1_2_3}). Version numbers of up to three numeric components are held as {@link PackedVersion packed} {@code long}s in a sorted array, and their URLs are rebuilt
+ * from the shared prefix when requested; any version that does not fit that form is held as-is.
+ *
+ * @author Joshua Hyde
+ */
+
+public class VersionIndex {
+    private static final long[] NO_PACKED = new long[0];
+    private static final String[] NO_STRINGS = new String[0];
+    private final String prefix;
+    private final long[] packed;
+    private final String[] irregularNumbers;
+    private final String[] irregularUrls;
+    private final Set<String> versionNumbers = new VersionNumbers();
+
+    /**
+     * Create an index.
+     *
+     * @param versionUrls
+     *            The URLs of the versions to be indexed. If more than one URL describes the same version number, only one of them is indexed.
+     */
+    public VersionIndex(Collection<String> versionUrls) {
+        this.prefix = versionUrls.isEmpty() ? "" : getPrefix(versionUrls.iterator().next());
+
+        long[] packedVersions = new long[versionUrls.size()];
+        int packedCount = 0;
+        final TreeMap<String, String> irregular = new TreeMap<String, String>();
+        for (String versionUrl : versionUrls) {
+            final long packedVersion = versionUrl.startsWith(prefix) ? PackedVersion.parse(versionUrl, prefix.length(), '_') : PackedVersion.INVALID;
+            if (packedVersion == PackedVersion.INVALID) {
+                irregular.put(toVersionNumber(versionUrl), versionUrl);
+            } else {
+                packedVersions[packedCount++] = packedVersion;
+            }
+        }
+
+        Arrays.sort(packedVersions, 0, packedCount);
+        int uniqueCount = 0;
+        for (int i = 0; i < packedCount; i++) {
+            if (uniqueCount == 0 || packedVersions[uniqueCount - 1] != packedVersions[i]) {
+                packedVersions[uniqueCount++] = packedVersions[i];
+            }
+        }
+        if (uniqueCount != packedVersions.length) {
+            packedVersions = uniqueCount == 0 ? NO_PACKED : Arrays.copyOf(packedVersions, uniqueCount);
+        }
+        this.packed = packedVersions;
+
+        for (Iterator<String> numbers = irregular.keySet().iterator(); numbers.hasNext();) {
+            final long packedVersion = PackedVersion.parse(numbers.next(), 0, '.');
+            if (packedVersion != PackedVersion.INVALID && Arrays.binarySearch(packed, packedVersion) >= 0) {
+                numbers.remove();
+            }
+        }
+        if (irregular.isEmpty()) {
+            this.irregularNumbers = NO_STRINGS;
+            this.irregularUrls = NO_STRINGS;
+        } else {
+            this.irregularNumbers = irregular.keySet().toArray(new String[irregular.size()]);
+            this.irregularUrls = irregular.values().toArray(new String[irregular.size()]);
+        }
+    }
+
+    /**
+     * Determine the version number described by a version URL.
+     *
+     * @param versionUrl
+     *            The URL of a version.
+     * @return The version number, which is the last segment of the URL with underscores replaced by periods.
+     */
+    public static String toVersionNumber(String versionUrl) {
+        return versionUrl.substring(versionUrl.lastIndexOf('/') + 1).replace('_', '.');
+    }
+
+    /**
+     * Get the highest version that satisfies a constraint. The versions are searched by binary search.
+     *
+     * @param constraint
+     *            The {@link VersionConstraint} to be satisfied.
+     * @return {@code null} if no version satisfies the given constraint; otherwise, the highest version number that does.
+     */
+    public String getBestVersionNumber(VersionConstraint constraint) {
+        final int end = constraint.endOfMatches(packed);
+        return end > constraint.firstMatch(packed) ? PackedVersion.toString(packed[end - 1]) : null;
+    }
+
+    /**
+     * Get the URL of a version.
+     *
+     * @param versionNumber
+     *            The version number.
+     * @return {@code null} if the given version is not in this index; otherwise, the URL of the version.
+     */
+    public String getUrl(String versionNumber) {
+        final long packedVersion = PackedVersion.parse(versionNumber, 0, '.');
+        if (packedVersion != PackedVersion.INVALID && Arrays.binarySearch(packed, packedVersion) >= 0) {
+            return toUrl(packedVersion);
+        }
+        final int index = Arrays.binarySearch(irregularNumbers, versionNumber);
+        return index < 0 ? null : irregularUrls[index];
+    }
+
+    /**
+     * Get the URLs of all versions in this index.
+     *
+     * @return A {@link List} of the URLs of all versions, in the order of {@link #getVersionNumbers()}.
+     */
+    public List<String> getUrls() {
+        final List<String> urls = new ArrayList<String>(size());
+        for (long packedVersion : packed) {
+            urls.add(toUrl(packedVersion));
+        }
+        urls.addAll(Arrays.asList(irregularUrls));
+        return urls;
+    }
+
+    /**
+     * Get the version number described by a URL in this index.
+     *
+     * @param versionUrl
+     *            The URL of a version.
+     * @return {@code null} if the given URL is not in this index; otherwise, the version number it describes.
+     */
+    public String getVersionNumber(String versionUrl) {
+        final String versionNumber = toVersionNumber(versionUrl);
+        return versionUrl.equals(getUrl(versionNumber)) ? versionNumber : null;
+    }
+
+    /**
+     * Get the version numbers in this index.
+     *
+     * @return An unmodifiable {@link Set} view of the version numbers in this index; numeric versions are ordered from lowest to highest and followed by any others.
+     */
+    public Set<String> getVersionNumbers() {
+        return versionNumbers;
+    }
+
+    /**
+     * Get the versions that satisfy a constraint. The versions are searched by binary search.
+     *
+     * @param constraint
+     *            The {@link VersionConstraint} to be satisfied.
+     * @return A {@link List} of the version numbers that satisfy the given constraint, ordered from lowest to highest; versions that are not numeric never satisfy a constraint.
+     */
+    public List<String> getVersionNumbers(VersionConstraint constraint) {
+        final int first = constraint.firstMatch(packed);
+        final int end = constraint.endOfMatches(packed);
+        if (end <= first) {
+            return Collections.emptyList();
+        }
+        final List<String> matches = new ArrayList<String>(end - first);
+        for (int i = first; i < end; i++) {
+            matches.add(PackedVersion.toString(packed[i]));
+        }
+        return matches;
+    }
+
+    /**
+     * Get the number of versions in this index.
+     *
+     * @return The number of versions in this index.
+     */
+    public int size() {
+        return packed.length + irregularNumbers.length;
+    }
+
+    /**
+     * Get the prefix shared by the URLs of a cookbook's versions.
+     *
+     * @param versionUrl
+     *            The URL of one of the versions.
+     * @return The given URL up to and including its last {@code /}.
+     */
+    private static String getPrefix(String versionUrl) {
+        return versionUrl.substring(0, versionUrl.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Rebuild the URL of a packed version.
+     *
+     * @param packedVersion
+     *            The packed version.
+     * @return The URL of the version.
+     */
+    private String toUrl(long packedVersion) {
+        final StringBuilder builder = new StringBuilder(prefix.length() + 12).append(prefix);
+        return PackedVersion.append(builder, packedVersion, '_').toString();
+    }
+
+    /**
+     * A read-only view of the version numbers in the index that decodes each number as it is iterated.
+     *
+     * @author Joshua Hyde
+     */
+    private class VersionNumbers extends AbstractSet<String> {
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof String && getUrl((String) o) != null;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private int position;
+
+                @Override
+                public boolean hasNext() {
+                    return position < size();
+                }
+
+                @Override
+                public String next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    final int current = position++;
+                    if (current < packed.length) {
+                        return PackedVersion.toString(packed[current]);
+                    }
+                    return irregularNumbers[current - packed.length];
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("The versions of a cookbook cannot be modified.");
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return VersionIndex.this.size();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.cache;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.github.jrh3k5.chef.client.ArchiveDownload;
+import com.github.jrh3k5.chef.client.Cookbook.Version;
+
+/**
+ * Unit tests for {@link ArtifactCache}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class ArtifactCacheTest {
+    /**
+     * A temporary directory in which archives are cached.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private final ArtifactCacheConfiguration configuration = new ArtifactCacheConfiguration();
+
+    /**
+     * Configure the cache to be tested.
+     */
+    @Before
+    public void setUp() {
+        configuration.setDirectory(temporaryFolder.getRoot());
+    }
+
+    /**
+     * A cached archive should be returned without being downloaded again, including by another cache sharing the directory.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetHit() throws Exception {
+        final Version version = version("1.0.0", "apache 1.0.0");
+
+        final File archive = new ArtifactCache(configuration).get("apache", version);
+        assertThat(archive).exists();
+        assertThat(new ArtifactCache(configuration).get("apache", version)).isEqualTo(archive);
+        assertThat(new ArtifactCache(configuration).getIfPresent("apache", "1.0.0")).isEqualTo(archive);
+        assertThat(new ArtifactCache(configuration).getIfPresent("apache", "2.0.0")).isNull();
+        verify(version, times(1)).downloadTo(any(File.class));
+    }
+
+    /**
+     * Identical archives should be stored once.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetDeduplicates() throws Exception {
+        final ArtifactCache cache = new ArtifactCache(configuration);
+        final File first = cache.get("apache", version("1.0.0", "same contents"));
+        final File second = cache.get("apache2", version("1.0.0", "same contents"));
+        assertThat(second).isEqualTo(first);
+        assertThat(cache.getBySha256(sha256("same contents"))).isEqualTo(first);
+    }
+
+    /**
+     * The least recently used archives should be evicted once the cache exceeds its maximum size.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetEvicts() throws Exception {
+        configuration.setMaximumBytes(30);
+        final ArtifactCache cache = new ArtifactCache(configuration);
+        final File first = cache.get("apache", version("1.0.0", "first archive"));
+        final File second = cache.get("apache", version("2.0.0", "second archive"));
+        assertThat(first).exists();
+        first.setLastModified(System.currentTimeMillis() - 60000);
+        second.setLastModified(System.currentTimeMillis() - 30000);
+        cache.get("apache", version("3.0.0", "third"));
+
+        assertThat(first).doesNotExist();
+        assertThat(second).exists();
+        assertThat(cache.getIfPresent("apache", "1.0.0")).isNull();
+    }
+
+    /**
+     * Concurrent requests for the same archive should share a single download.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetConcurrent() throws Exception {
+        final Version version = version("1.0.0", "apache 1.0.0");
+        final ArtifactCache cache = new ArtifactCache(configuration);
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<File>> results = new ArrayList<Future<File>>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<File>() {
+                    @Override
+                    public File call() throws Exception {
+                        start.await();
+                        return cache.get("apache", version);
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<File> result : results) {
+                assertThat(result.get()).exists();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        verify(version, times(1)).downloadTo(any(File.class));
+        verify(version, never()).downloadTo(any(File.class), any(String.class));
+    }
+
+    /**
+     * Mock a version whose archive is downloaded by writing the given contents.
+     *
+     * @param versionNumber
+     *            The version number.
+     * @param contents
+     *            The contents of the archive.
+     * @return A mocked {@link Version}.
+     */
+    private Version version(String versionNumber, final String contents) {
+        final Version version = mock(Version.class);
+        when(version.getVersion()).thenReturn(versionNumber);
+        when(version.downloadTo(any(File.class))).thenAnswer(new Answer<ArchiveDownload>() {
+            @Override
+            public ArchiveDownload answer(InvocationOnMock invocation) throws Throwable {
+                final File destination = (File) invocation.getArguments()[0];
+                final OutputStream outputStream = new FileOutputStream(destination);
+                try {
+                    outputStream.write(contents.getBytes("UTF-8"));
+                } finally {
+                    outputStream.close();
+                }
+                return new ArchiveDownload(destination, destination.length(), 0, sha256(contents));
+            }
+        });
+        return version;
+    }
+
+    /**
+     * Digest a string.
+     *
+     * @param contents
+     *            The string to be digested.
+     * @return The lowercase hexadecimal SHA-256 digest of the string's UTF-8 bytes.
+     * @throws Exception
+     *             If the string cannot be digested.
+     */
+    private static String sha256(String contents) throws Exception {
+        final StringBuilder builder = new StringBuilder(64);
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(contents.getBytes("UTF-8"))) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+}
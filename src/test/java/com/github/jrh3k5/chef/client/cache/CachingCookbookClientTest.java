@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.cache;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.github.jrh3k5.chef.client.Cookbook;
+import com.github.jrh3k5.chef.client.CookbookBatchResult;
+import com.github.jrh3k5.chef.client.CookbookClient;
+import com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException;
+import com.github.jrh3k5.chef.client.RetrievalCallback;
+
+/**
+ * Unit tests for {@link CachingCookbookClient}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class CachingCookbookClientTest {
+    private final CookbookClient delegate = mock(CookbookClient.class);
+    private final CachingCookbookClientConfiguration configuration = new CachingCookbookClientConfiguration();
+
+    /**
+     * Set up the delegate to answer asynchronous retrievals with its synchronous answers.
+     */
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setUp() {
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                final String name = (String) invocation.getArguments()[0];
+                ((RetrievalCallback<Cookbook>) invocation.getArguments()[1]).completed(delegate.getCookbook(name));
+                return null;
+            }
+        }).when(delegate).getCookbookAsync(anyString(), any(RetrievalCallback.class));
+    }
+
+    /**
+     * A cookbook that has been retrieved should be answered from the cache.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetCookbookHit() throws Exception {
+        final Cookbook cookbook = mock(Cookbook.class);
+        when(delegate.getCookbook("apache")).thenReturn(cookbook);
+
+        final CachingCookbookClient client = new CachingCookbookClient(delegate, configuration);
+        assertThat(client.getCookbook("apache")).isSameAs(cookbook);
+        assertThat(client.getCookbook("apache")).isSameAs(cookbook);
+        assertThat(client.getCookbookAsync("apache").get()).isSameAs(cookbook);
+        verify(delegate, times(1)).getCookbook("apache");
+
+        final CacheStatistics statistics = client.getStatistics();
+        assertThat(statistics.getHits()).isEqualTo(2);
+        assertThat(statistics.getMisses()).isEqualTo(1);
+    }
+
+    /**
+     * The latest version of a cached cookbook should be asked of the cookbook; otherwise, it should be retrieved through the underlying client's own fast path, without caching anything.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetLatestVersion() throws Exception {
+        final Cookbook.Version cachedVersion = mock(Cookbook.Version.class);
+        final Cookbook cookbook = mock(Cookbook.class);
+        when(cookbook.getLatestVersion()).thenReturn(cachedVersion);
+        when(delegate.getCookbook("apache")).thenReturn(cookbook);
+        final Cookbook.Version uncachedVersion = mock(Cookbook.Version.class);
+        when(delegate.getLatestVersion("nginx")).thenReturn(uncachedVersion);
+
+        final CachingCookbookClient client = new CachingCookbookClient(delegate, configuration);
+        client.getCookbook("apache");
+        client.getCookbook("missing");
+        assertThat(client.getLatestVersion("apache")).isSameAs(cachedVersion);
+        assertThat(client.getLatestVersion("missing")).isNull();
+        assertThat(client.getLatestVersion("nginx")).isSameAs(uncachedVersion);
+        assertThat(client.getLatestVersion("nginx")).isSameAs(uncachedVersion);
+        verify(delegate, never()).getLatestVersion("apache");
+        verify(delegate, never()).getLatestVersion("missing");
+        verify(delegate, never()).getCookbook("nginx");
+        assertThat(client.getStatistics().getSize()).isEqualTo(2);
+    }
+
+    /**
+     * An expired cookbook should be retrieved again.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetCookbookExpired() throws Exception {
+        final Cookbook cookbook = mock(Cookbook.class);
+        when(delegate.getCookbook("apache")).thenReturn(cookbook);
+        configuration.setTimeToLiveMs(1);
+
+        final CachingCookbookClient client = new CachingCookbookClient(delegate, configuration);
+        client.getCookbook("apache");
+        Thread.sleep(5);
+        client.getCookbook("apache");
+        verify(delegate, times(2)).getCookbook("apache");
+    }
+
+    /**
+     * The absence of a cookbook should be remembered, unless negative caching is disabled.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetCookbookNotFound() throws Exception {
+        final CachingCookbookClient client = new CachingCookbookClient(delegate, configuration);
+        assertThat(client.getCookbook("missing")).isNull();
+        assertThat(client.getCookbook("missing")).isNull();
+        verify(delegate, times(1)).getCookbook("missing");
+
+        configuration.setNegativeTimeToLiveMs(0);
+        final CachingCookbookClient noNegativeClient = new CachingCookbookClient(delegate, configuration);
+        noNegativeClient.getCookbook("missing");
+        noNegativeClient.getCookbook("missing");
+        verify(delegate, times(3)).getCookbook("missing");
+    }
+
+    /**
+     * The least recently used cookbook should be evicted when the cache is full.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testEviction() throws Exception {
+        when(delegate.getCookbook(anyString())).thenReturn(mock(Cookbook.class));
+        configuration.setMaximumSize(2);
+
+        final CachingCookbookClient client = new CachingCookbookClient(delegate, configuration);
+        client.getCookbook("a");
+        client.getCookbook("b");
+        client.getCookbook("a");
+        client.getCookbook("c");
+        // "b" was the least recently used
+        client.getCookbook("a");
+        client.getCookbook("b");
+
+        verify(delegate, times(1)).getCookbook("a");
+        verify(delegate, times(2)).getCookbook("b");
+        assertThat(client.getStatistics().getEvictions()).isEqualTo(2);
+        assertThat(client.getStatistics().getSize()).isEqualTo(2);
+    }
+
+    /**
+     * In stale-while-revalidate mode, an expired cookbook should be served while a fresh copy is retrieved.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testStaleWhileRevalidate() throws Exception {
+        final Cookbook stale = mock(Cookbook.class);
+        final Cookbook fresh = mock(Cookbook.class);
+        when(delegate.getCookbook("apache")).thenReturn(stale, fresh);
+        configuration.setTimeToLiveMs(1);
+        configuration.setStaleWhileRevalidate(true);
+
+        final CachingCookbookClient client = new CachingCookbookClient(delegate, configuration);
+        assertThat(client.getCookbook("apache")).isSameAs(stale);
+        Thread.sleep(5);
+        assertThat(client.getCookbook("apache")).isSameAs(stale);
+        verify(delegate).getCookbookAsync(eq("apache"), Matchers.<RetrievalCallback<Cookbook>> any());
+        assertThat(client.getStatistics().getStaleHits()).isEqualTo(1);
+
+        // The background refresh has replaced the stale cookbook
+        assertThat(client.getCookbook("apache")).isSameAs(fresh);
+    }
+
+    /**
+     * Batch retrieval should only forward uncached cookbooks to the underlying client.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetCookbooks() throws Exception {
+        final Cookbook apache = mock(Cookbook.class);
+        final Cookbook mysql = mock(Cookbook.class);
+        when(delegate.getCookbook("apache")).thenReturn(apache);
+        when(delegate.getCookbooks(Arrays.asList("mysql", "missing"))).thenReturn(
+                new CookbookBatchResult(Collections.singletonMap("mysql", mysql), Collections.<String, CookbookRetrievalException> emptyMap()));
+
+        final CachingCookbookClient client = new CachingCookbookClient(delegate, configuration);
+        client.getCookbook("apache");
+        final CookbookBatchResult result = client.getCookbooks(Arrays.asList("apache", "mysql", "missing"));
+        assertThat(result.getCookbooks()).hasSize(2);
+        assertThat(result.getCookbooks().get("apache")).isSameAs(apache);
+        assertThat(result.getCookbooks().get("mysql")).isSameAs(mysql);
+
+        // Both the found and the missing cookbook are now cached
+        assertThat(client.getCookbook("mysql")).isSameAs(mysql);
+        assertThat(client.getCookbook("missing")).isNull();
+        verify(delegate, never()).getCookbook("mysql");
+        verify(delegate, never()).getCookbook("missing");
+    }
+}
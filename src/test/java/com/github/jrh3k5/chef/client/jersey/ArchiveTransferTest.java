@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.jrh3k5.chef.client.ArchiveDownload;
+import com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit tests for {@link ArchiveTransfer}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class ArchiveTransferTest {
+    private static final byte[] ARCHIVE = new byte[200 * 1024];
+    /**
+     * A temporary directory to which archives are downloaded.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private final AtomicInteger unavailable = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private HttpServer server;
+    private Client client;
+    private ResilientInvoker invoker;
+    private URL location;
+    private String sha256;
+
+    static {
+        new Random(42).nextBytes(ARCHIVE);
+    }
+
+    /**
+     * Start a server that serves a single archive and honors range requests.
+     *
+     * @throws Exception
+     *             If any errors occur during the setup.
+     */
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/archive.tgz", new RangeHandler());
+        server.start();
+        client = ClientBuilder.newClient();
+        final ResilienceConfiguration configuration = new ResilienceConfiguration();
+        configuration.setMaxRetries(2);
+        configuration.setRetryBackoffMs(1);
+        invoker = new ResilientInvoker(configuration);
+        location = new URL("http://localhost:" + server.getAddress().getPort() + "/archive.tgz");
+        sha256 = ArchiveTransfer.toHex(MessageDigest.getInstance("SHA-256").digest(ARCHIVE));
+    }
+
+    /**
+     * Stop the server.
+     */
+    @After
+    public void tearDown() {
+        invoker.close();
+        client.close();
+        server.stop(0);
+    }
+
+    /**
+     * An archive should be downloaded in full and its digest computed.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testDownload() throws Exception {
+        final File destination = temporaryFolder.newFile("archive.tgz");
+        final ArchiveDownload download = ArchiveTransfer.download(invoker, client, location, destination, ARCHIVE.length, sha256);
+        assertThat(download.getSize()).isEqualTo(ARCHIVE.length);
+        assertThat(download.getResumedFrom()).isZero();
+        assertThat(download.getSha256()).isEqualTo(sha256);
+        assertThat(read(destination)).isEqualTo(ARCHIVE);
+    }
+
+    /**
+     * A partial file should be completed with a range request and digested in full.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testDownloadResume() throws Exception {
+        final File destination = write(temporaryFolder.newFile("archive.tgz"), 1000);
+        final ArchiveDownload download = ArchiveTransfer.download(invoker, client, location, destination, -1, null);
+        assertThat(download.getResumedFrom()).isEqualTo(1000);
+        assertThat(download.getTransferredBytes()).isEqualTo(ARCHIVE.length - 1000);
+        assertThat(download.getSha256()).isEqualTo(sha256);
+        assertThat(read(destination)).isEqualTo(ARCHIVE);
+
+        // A file that is already complete should be recognized as such
+        final ArchiveDownload again = ArchiveTransfer.download(invoker, client, location, destination, -1, sha256);
+        assertThat(again.getTransferredBytes()).isZero();
+        assertThat(again.getSha256()).isEqualTo(sha256);
+    }
+
+    /**
+     * An archive that does not match the expected digest should be deleted.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testDownloadDigestMismatch() throws Exception {
+        final File destination = temporaryFolder.newFile("archive.tgz");
+        try {
+            ArchiveTransfer.download(invoker, client, location, destination, -1, "00");
+            fail("A mismatched digest should fail the download.");
+        } catch (CookbookRetrievalException e) {
+            assertThat(destination).doesNotExist();
+        }
+    }
+
+    /**
+     * Archive requests that fail should be retried like any other request, whether the archive is downloaded or opened.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testRetry() throws Exception {
+        unavailable.set(2);
+        final File destination = temporaryFolder.newFile("archive.tgz");
+        assertThat(ArchiveTransfer.download(invoker, client, location, destination, ARCHIVE.length, sha256).getSha256()).isEqualTo(sha256);
+        assertThat(requests.get()).isEqualTo(3);
+
+        unavailable.set(2);
+        final InputStream archive = ArchiveTransfer.open(invoker, client, location);
+        try {
+            final byte[] contents = new byte[ARCHIVE.length];
+            int read = 0;
+            for (int count; read < contents.length && (count = archive.read(contents, read, contents.length - read)) >= 0;) {
+                read += count;
+            }
+            assertThat(contents).isEqualTo(ARCHIVE);
+        } finally {
+            archive.close();
+        }
+        assertThat(requests.get()).isEqualTo(6);
+        assertThat(invoker.getStatistics().getRetries()).isEqualTo(4);
+    }
+
+    /**
+     * Read a file.
+     *
+     * @param file
+     *            The file to be read.
+     * @return The contents of the file.
+     * @throws IOException
+     *             If the file cannot be read.
+     */
+    private byte[] read(File file) throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            final byte[] contents = new byte[(int) randomAccessFile.length()];
+            randomAccessFile.readFully(contents);
+            return contents;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Write the beginning of the archive to a file.
+     *
+     * @param file
+     *            The file to be written.
+     * @param length
+     *            The number of bytes of the archive to be written.
+     * @return The given file.
+     * @throws IOException
+     *             If the file cannot be written.
+     */
+    private File write(File file, int length) throws IOException {
+        final OutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(ARCHIVE, 0, length);
+        } finally {
+            outputStream.close();
+        }
+        return file;
+    }
+
+    /**
+     * A handler that serves the archive, honoring open-ended range requests, once it has answered as many requests as it is to be unavailable for with a {@code 503}.
+     *
+     * @author Joshua Hyde
+     */
+    private class RangeHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            final InputStream requestBody = exchange.getRequestBody();
+            requestBody.close();
+            requests.incrementAndGet();
+            if (unavailable.get() > 0 && unavailable.getAndDecrement() > 0) {
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+                return;
+            }
+
+            final String range = exchange.getRequestHeaders().getFirst("Range");
+            int start = 0;
+            if (range != null) {
+                start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+                if (start >= ARCHIVE.length) {
+                    exchange.getResponseHeaders().set("Content-Range", "bytes */" + ARCHIVE.length);
+                    exchange.sendResponseHeaders(416, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.getResponseHeaders().set("Content-Range", String.format("bytes %d-%d/%d", start, ARCHIVE.length - 1, ARCHIVE.length));
+            }
+
+            exchange.sendResponseHeaders(range == null ? 200 : 206, ARCHIVE.length - start);
+            final OutputStream responseBody = exchange.getResponseBody();
+            try {
+                responseBody.write(Arrays.copyOfRange(ARCHIVE, start, ARCHIVE.length));
+            } finally {
+                responseBody.close();
+            }
+        }
+    }
+}
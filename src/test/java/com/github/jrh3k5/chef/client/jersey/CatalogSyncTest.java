@@ -0,0 +1,312 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.jrh3k5.chef.client.CatalogCallback;
+import com.github.jrh3k5.chef.client.CatalogEntry;
+import com.github.jrh3k5.chef.client.CatalogSyncResult;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit tests for {@link CatalogSync}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class CatalogSyncTest {
+    private static final int CATALOG_SIZE = 25;
+    private final JerseyCookbookClientConfiguration configuration = new JerseyCookbookClientConfiguration();
+    private final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+    private final CatalogHandler handler = new CatalogHandler();
+    private HttpServer server;
+    private JerseyCookbookClient client;
+
+    /**
+     * Start the server.
+     *
+     * @throws Exception
+     *             If any errors occur during the setup.
+     */
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(serverExecutor);
+        server.createContext("/api/v1/cookbooks", handler);
+        server.start();
+        configuration.setCatalogPageSize(10);
+        configuration.getResilienceConfiguration().setMaxRetries(0);
+    }
+
+    /**
+     * Stop the server.
+     *
+     * @throws Exception
+     *             If any errors occur during the teardown.
+     */
+    @After
+    public void tearDown() throws Exception {
+        if (client != null) {
+            client.close();
+        }
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    /**
+     * A full synchronization should deliver every cookbook in the catalog once and return the update time of the most recently updated cookbook as its watermark.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testSyncAll() throws Exception {
+        final RecordingCallback callback = new RecordingCallback();
+        final CatalogSyncResult result = newClient().syncCatalog(callback);
+
+        assertThat(result.hasFailures()).isFalse();
+        assertThat(result.getDelivered()).isEqualTo(CATALOG_SIZE);
+        assertThat(result.getWatermark()).isEqualTo(updatedAt(CATALOG_SIZE - 1));
+        assertThat(new HashSet<String>(callback.getNames())).hasSize(CATALOG_SIZE);
+        assertThat(callback.getEntries().get(0).getDescription()).isEqualTo("Cookbook " + callback.getNames().get(0));
+        assertThat(callback.getEntries().get(0).getUpdatedAt()).isNull();
+        // One page to find the most recently updated cookbook, then three pages of ten
+        assertThat(handler.getPageRequests()).isEqualTo(4);
+    }
+
+    /**
+     * An incremental synchronization should deliver the cookbooks updated since the watermark, most recent first, reading no further pages than needed.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testSyncSince() throws Exception {
+        configuration.setCatalogPageSize(3);
+        final RecordingCallback callback = new RecordingCallback();
+        final CatalogSyncResult result = newClient().syncCatalog(updatedAt(19), callback);
+
+        assertThat(result.hasFailures()).isFalse();
+        assertThat(callback.getNames()).containsExactly(name(24), name(23), name(22), name(21), name(20));
+        assertThat(callback.getEntries().get(0).getUpdatedAt()).isEqualTo(updatedAt(24));
+        assertThat(result.getWatermark()).isEqualTo(updatedAt(24));
+        assertThat(handler.getPageRequests()).isEqualTo(2);
+
+        final CatalogSyncResult unchanged = client.syncCatalog(result.getWatermark(), new RecordingCallback());
+        assertThat(unchanged.getDelivered()).isZero();
+        assertThat(unchanged.getWatermark()).isEqualTo(updatedAt(24));
+    }
+
+    /**
+     * A page that cannot be retrieved should be reported without failing the other pages, and should leave no watermark to synchronize from.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testSyncAllWithFailedPage() throws Exception {
+        handler.failPage(10);
+        final CatalogSyncResult result = newClient().syncCatalog(new RecordingCallback());
+
+        assertThat(result.hasFailures()).isTrue();
+        assertThat(result.getFailures()).hasSize(1);
+        assertThat(result.getDelivered()).isEqualTo(CATALOG_SIZE - 10);
+        assertThat(result.getWatermark()).isNull();
+    }
+
+    /**
+     * Create the client to be tested.
+     *
+     * @return A {@link JerseyCookbookClient} pointing at the server.
+     */
+    private JerseyCookbookClient newClient() {
+        client = new JerseyCookbookClient("http://localhost:" + server.getAddress().getPort() + "/api/v1/", configuration);
+        return client;
+    }
+
+    /**
+     * Get the name of a cookbook in the catalog.
+     *
+     * @param index
+     *            The index of the cookbook; cookbooks with higher indices were updated more recently.
+     * @return The name of the cookbook.
+     */
+    private static String name(int index) {
+        return String.format("cookbook%02d", index);
+    }
+
+    /**
+     * Get the time at which a cookbook in the catalog was last updated.
+     *
+     * @param index
+     *            The index of the cookbook.
+     * @return The time at which the cookbook was last updated.
+     */
+    private static String updatedAt(int index) {
+        return String.format("2014-01-01T00:00:%02d.000Z", index);
+    }
+
+    /**
+     * A {@link CatalogCallback} that records the entries it is given.
+     *
+     * @author Joshua Hyde
+     */
+    private static class RecordingCallback implements CatalogCallback {
+        private final List<CatalogEntry> entries = new ArrayList<CatalogEntry>();
+
+        @Override
+        public void entry(CatalogEntry entry) {
+            entries.add(entry);
+        }
+
+        /**
+         * Get the recorded entries.
+         *
+         * @return A {@link List} of the recorded {@link CatalogEntry} objects.
+         */
+        public List<CatalogEntry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * Get the names of the cookbooks of the recorded entries.
+         *
+         * @return A {@link List} of the names, in the order in which they were recorded.
+         */
+        public List<String> getNames() {
+            final List<String> names = new ArrayList<String>(entries.size());
+            for (CatalogEntry entry : entries) {
+                names.add(entry.getName());
+            }
+            return names;
+        }
+    }
+
+    /**
+     * A handler serving a catalog of {@value #CATALOG_SIZE} cookbooks and their documents.
+     *
+     * @author Joshua Hyde
+     */
+    private static class CatalogHandler implements HttpHandler {
+        private final AtomicInteger pageRequests = new AtomicInteger();
+        private final Set<Integer> failedPages = new HashSet<Integer>();
+
+        /**
+         * Make the page at a position fail.
+         *
+         * @param start
+         *            The position of the page.
+         */
+        public synchronized void failPage(int start) {
+            failedPages.add(Integer.valueOf(start));
+        }
+
+        /**
+         * Get the number of pages requested.
+         *
+         * @return The number of pages requested.
+         */
+        public int getPageRequests() {
+            return pageRequests.get();
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            exchange.getRequestBody().close();
+            final String path = exchange.getRequestURI().getPath();
+            final String cookbookPrefix = "/api/v1/cookbooks/";
+            if (path.startsWith(cookbookPrefix)) {
+                final int index = Integer.parseInt(path.substring(cookbookPrefix.length() + "cookbook".length()));
+                respond(exchange, 200, "{\"name\":\"" + name(index) + "\",\"updated_at\":\"" + updatedAt(index) + "\",\"versions\":[]}");
+                return;
+            }
+
+            pageRequests.incrementAndGet();
+            final Map<String, String> query = new HashMap<String, String>();
+            for (String parameter : exchange.getRequestURI().getQuery().split("&")) {
+                final String[] pair = parameter.split("=", 2);
+                query.put(pair[0], pair[1]);
+            }
+            final int start = Integer.parseInt(query.get("start"));
+            final int items = Integer.parseInt(query.get("items"));
+            synchronized (this) {
+                if (failedPages.contains(Integer.valueOf(start))) {
+                    respond(exchange, 500, "{}");
+                    return;
+                }
+            }
+
+            final boolean recentlyUpdated = "recently_updated".equals(query.get("order"));
+            final StringBuilder body = new StringBuilder("{\"start\":").append(start).append(",\"total\":").append(CATALOG_SIZE).append(",\"items\":[");
+            for (int position = start; position < Math.min(start + items, CATALOG_SIZE); position++) {
+                final int index = recentlyUpdated ? CATALOG_SIZE - 1 - position : position;
+                if (position > start) {
+                    body.append(',');
+                }
+                body.append("{\"cookbook_name\":\"").append(name(index)).append("\",\"cookbook_description\":\"Cookbook ").append(name(index));
+                body.append("\",\"cookbook\":\"http://localhost:").append(exchange.getLocalAddress().getPort()).append(cookbookPrefix).append(name(index));
+                body.append("\",\"cookbook_maintainer\":\"maintainer\"}");
+            }
+            respond(exchange, 200, body.append("]}").toString());
+        }
+
+        /**
+         * Send a response.
+         *
+         * @param exchange
+         *            The {@link HttpExchange} to which the response is to be sent.
+         * @param status
+         *            The status of the response.
+         * @param body
+         *            The body of the response.
+         * @throws IOException
+         *             If the response cannot be sent.
+         */
+        private void respond(HttpExchange exchange, int status, String body) throws IOException {
+            final byte[] bytes = body.getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            final OutputStream responseBody = exchange.getResponseBody();
+            try {
+                responseBody.write(bytes);
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+}
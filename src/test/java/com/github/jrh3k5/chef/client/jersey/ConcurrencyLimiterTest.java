@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException;
+import com.github.jrh3k5.chef.client.concurrent.ResultFuture;
+import com.github.jrh3k5.chef.client.jersey.ConcurrencyLimiter.Permit;
+
+/**
+ * Unit tests for {@link ConcurrencyLimiter}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class ConcurrencyLimiterTest {
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * Shut down the scheduler.
+     */
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * The limit should rise by one for each limit's worth of answers and halve on a failure, but only once for failures of attempts sent under the same limit; attempts beyond the limit should
+     * wait for a permit to be released.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testAdditiveIncreaseMultiplicativeDecrease() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 10, 10, scheduler);
+        final Permit[] permits = new Permit[4];
+        for (int i = 0; i < permits.length; i++) {
+            permits[i] = limiter.acquire().get();
+        }
+        final ResultFuture<Permit> waiting = limiter.acquire();
+        assertThat(waiting.isDone()).isFalse();
+        assertThat(limiter.getQueued()).isEqualTo(1);
+
+        limiter.onSuccess(permits[0], 5);
+        assertThat(waiting.isDone()).isTrue();
+        for (int i = 1; i < permits.length; i++) {
+            limiter.onSuccess(permits[i], 5);
+        }
+        limiter.onSuccess(limiter.acquire().get(), 5);
+        assertThat(limiter.getLimit()).isEqualTo(5);
+
+        final Permit other = limiter.acquire().get();
+        limiter.onDropped(waiting.get());
+        assertThat(limiter.getLimit()).isEqualTo(2);
+        limiter.onDropped(other);
+        assertThat(limiter.getLimit()).isEqualTo(2);
+
+        // Answers much slower than the fastest recent answers shrink the limit slightly
+        for (int i = 0; i < 3; i++) {
+            limiter.onSuccess(limiter.acquire().get(), 500);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(1);
+        limiter.onIgnored(limiter.acquire().get());
+        assertThat(limiter.getLimit()).isEqualTo(1);
+    }
+
+    /**
+     * Attempts beyond the bound of the queue should be rejected, and an attempt that gives up its place should free it.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testQueueBound() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, scheduler);
+        final Permit permit = limiter.acquire().get();
+        final ResultFuture<Permit> queued = limiter.acquire();
+        try {
+            limiter.acquire().get();
+            fail("An attempt beyond the bound of the queue should be rejected.");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(CookbookRetrievalException.class);
+        }
+        assertThat(limiter.getQueueRejections()).isEqualTo(1);
+
+        queued.cancel(false);
+        assertThat(limiter.getQueued()).isZero();
+        final ResultFuture<Permit> next = limiter.acquire();
+        limiter.onSuccess(permit, 5);
+        assertThat(next.get(1, TimeUnit.SECONDS)).isNotNull();
+    }
+
+    /**
+     * While paused, no permits should be granted; waiting attempts should be let through once the pause is over.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testPause() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 10, 10, scheduler);
+        limiter.pause(300);
+        assertThat(limiter.tryAcquire()).isNull();
+
+        final long startedAt = System.nanoTime();
+        final ResultFuture<Permit> waiting = limiter.acquire();
+        assertThat(waiting.get(5, TimeUnit.SECONDS)).isNotNull();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt)).isGreaterThanOrEqualTo(250L);
+        assertThat(limiter.tryAcquire()).isNotNull();
+    }
+}
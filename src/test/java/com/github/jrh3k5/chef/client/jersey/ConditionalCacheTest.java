@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.jrh3k5.chef.client.Cookbook;
+import com.github.jrh3k5.chef.client.Cookbook.Version;
+import com.github.jrh3k5.chef.client.jersey.ConditionalCache.Validated;
+import com.github.jrh3k5.chef.client.stub.StubSupermarket;
+import com.github.jrh3k5.chef.client.stub.SyntheticCatalog;
+
+/**
+ * Unit tests for {@link ConditionalCache}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class ConditionalCacheTest {
+    private StubSupermarket server;
+
+    /**
+     * Start the server against which documents are revalidated.
+     *
+     * @throws Exception
+     *             If any errors occur during the setup.
+     */
+    @Before
+    public void setUp() throws Exception {
+        server = new StubSupermarket(new SyntheticCatalog(10, 3));
+        server.start();
+    }
+
+    /**
+     * Stop the server.
+     *
+     * @throws Exception
+     *             If any errors occur during the teardown.
+     */
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    /**
+     * A cookbook retrieved again should be revalidated and, when the server answers {@code 304 Not Modified}, the previously-parsed cookbook should be returned.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testCookbookNotModified() throws Exception {
+        final JerseyCookbookClient client = newClient(JerseyCookbookClientConfiguration.DEFAULT_VALIDATOR_CACHE_SIZE);
+        try {
+            final Cookbook cookbook = client.getCookbook("cookbook3");
+            assertThat(server.getNotModifiedCount()).isZero();
+
+            // The stub only answers 304 to a request carrying the entity tag it sent with the cookbook
+            assertThat(client.getCookbook("cookbook3")).isSameAs(cookbook);
+            assertThat(client.getCookbookAsync("cookbook3").get()).isSameAs(cookbook);
+            assertThat(server.getNotModifiedCount()).isEqualTo(2);
+            assertThat(server.getRequestCount()).isEqualTo(3);
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * A version requested again by a newly-retrieved cookbook should be revalidated and the previously-parsed version reused.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testVersionNotModified() throws Exception {
+        final JerseyCookbookClient client = newClient(1);
+        try {
+            final Version version = client.getCookbook("cookbook3").getVersion("1.0.1");
+            // Retrieving another cookbook evicts the first from the single-entry cache, so it is parsed anew and does not hold the version
+            client.getCookbook("cookbook4");
+            final Cookbook reparsed = client.getCookbook("cookbook3");
+            assertThat(server.getNotModifiedCount()).isZero();
+
+            assertThat(reparsed.getVersion("1.0.1")).isSameAs(version);
+            assertThat(server.getNotModifiedCount()).isEqualTo(1);
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * Once full, the cache should evict the document that was least recently used.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testLeastRecentlyUsedEvicted() throws Exception {
+        final JerseyCookbookClient client = newClient(2);
+        try {
+            final Cookbook first = client.getCookbook("cookbook1");
+            final Cookbook second = client.getCookbook("cookbook2");
+            // Revalidating the first cookbook makes the second the least recently used
+            assertThat(client.getCookbook("cookbook1")).isSameAs(first);
+            client.getCookbook("cookbook3");
+            assertThat(server.getNotModifiedCount()).isEqualTo(1);
+
+            assertThat(client.getCookbook("cookbook2")).isNotSameAs(second);
+            assertThat(server.getNotModifiedCount()).isEqualTo(1);
+            assertThat(client.getCookbook("cookbook3")).isNotNull();
+            assertThat(server.getNotModifiedCount()).isEqualTo(2);
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * A cache without room for any documents should leave every request unconditional.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testDisabled() throws Exception {
+        final JerseyCookbookClient client = newClient(0);
+        try {
+            final Cookbook cookbook = client.getCookbook("cookbook3");
+            assertThat(client.getCookbook("cookbook3")).isNotSameAs(cookbook);
+            assertThat(server.getNotModifiedCount()).isZero();
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * Both validators sent with a document should be sent back on the request that revalidates it.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testCondition() throws Exception {
+        final ConditionalCache<String> cache = new ConditionalCache<String>(1);
+        final Response response = mock(Response.class);
+        when(response.getHeaderString(HttpHeaders.ETAG)).thenReturn("\"1\"");
+        when(response.getHeaderString(HttpHeaders.LAST_MODIFIED)).thenReturn("Mon, 13 Jan 2014 22:03:20 GMT");
+        cache.store("http://localhost/a", response, "a");
+
+        final Validated<String> validated = cache.get("http://localhost/a");
+        assertThat(validated.getDocument()).isEqualTo("a");
+        final Invocation.Builder request = mock(Invocation.Builder.class);
+        cache.condition(request, validated);
+        verify(request).header(HttpHeaders.IF_NONE_MATCH, "\"1\"");
+        verify(request).header(HttpHeaders.IF_MODIFIED_SINCE, "Mon, 13 Jan 2014 22:03:20 GMT");
+
+        final Invocation.Builder unconditional = mock(Invocation.Builder.class);
+        cache.condition(unconditional, cache.get("http://localhost/b"));
+        verifyZeroInteractions(unconditional);
+
+        // A document sent without validators cannot be revalidated, so it is not cached
+        cache.store("http://localhost/b", mock(Response.class), "b");
+        assertThat(cache.get("http://localhost/b")).isNull();
+        assertThat(cache.get("http://localhost/a")).isSameAs(validated);
+    }
+
+    /**
+     * Create a client of the server.
+     *
+     * @param validatorCacheSize
+     *            The number of cookbooks, and of versions, whose validators the client is to keep.
+     * @return A {@link JerseyCookbookClient}.
+     */
+    private JerseyCookbookClient newClient(int validatorCacheSize) {
+        final JerseyCookbookClientConfiguration configuration = new JerseyCookbookClientConfiguration();
+        configuration.setValidatorCacheSize(validatorCacheSize);
+        configuration.getResilienceConfiguration().setMaxRetries(0);
+        return new JerseyCookbookClient(server.getServiceUrl(), configuration);
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.core.Response;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.jrh3k5.chef.client.ArchiveDownload;
+import com.github.jrh3k5.chef.client.Cookbook;
+import com.github.jrh3k5.chef.client.stub.StubSupermarket;
+import com.github.jrh3k5.chef.client.stub.SyntheticCatalog;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit tests for {@link ContentDecoding}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class ContentDecodingTest {
+    private static final byte[] ARCHIVE = new byte[64 * 1024];
+    /**
+     * A temporary directory to which archives are downloaded.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private final List<String> acceptedEncodings = new CopyOnWriteArrayList<String>();
+    private StubSupermarket supermarket;
+    private HttpServer server;
+    private String serverUrl;
+    private JerseyCookbookClientConfiguration configuration;
+
+    static {
+        for (int i = 0; i < ARCHIVE.length; i++) {
+            ARCHIVE[i] = (byte) ('a' + (i % 7));
+        }
+    }
+
+    /**
+     * Start a cookbook server that compresses its documents and a server that serves encoded bodies and an archive.
+     *
+     * @throws Exception
+     *             If any errors occur during the setup.
+     */
+    @Before
+    public void setUp() throws Exception {
+        supermarket = new StubSupermarket(new SyntheticCatalog(10, 50));
+        supermarket.setCompressionEnabled(true);
+        supermarket.start();
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/zlib", new EncodingHandler(false));
+        server.createContext("/raw-deflate", new EncodingHandler(true));
+        server.createContext("/archive.tgz", new ArchiveHandler());
+        server.start();
+        serverUrl = "http://localhost:" + server.getAddress().getPort();
+
+        configuration = new JerseyCookbookClientConfiguration();
+        configuration.setCompressionEnabled(true);
+    }
+
+    /**
+     * Stop the servers.
+     */
+    @After
+    public void tearDown() {
+        server.stop(0);
+        supermarket.close();
+    }
+
+    /**
+     * Cookbook and version documents should be requested compressed, decoded as they are read, and counted on both sides of the decoder, without costing the connection its reuse.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testCookbookDocuments() throws Exception {
+        final JerseyCookbookClient client = new JerseyCookbookClient(supermarket.getServiceUrl(), configuration);
+        try {
+            final Cookbook cookbook = client.getCookbook("cookbook1");
+            assertThat(cookbook.getVersions()).hasSize(50);
+            assertThat(cookbook.getVersion("1.0.0").getVersion()).isEqualTo("1.0.0");
+
+            assertThat(supermarket.getCompressedCount()).isEqualTo(2);
+            final CompressionStatistics statistics = client.getCompressionStatistics();
+            assertThat(statistics.getEncodedResponses()).isEqualTo(2);
+            assertThat(statistics.getCompressedBytes()).isGreaterThan(0L);
+            assertThat(statistics.getUncompressedBytes()).isGreaterThan(statistics.getCompressedBytes());
+            assertThat(statistics.getSavedBytes()).isGreaterThan(0L);
+            assertThat(statistics.getCompressionRatio()).isLessThan(1.0);
+            assertThat(client.getPoolStatistics().getConnectionsCreated()).isEqualTo(1);
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * Without compression enabled, no responses should be counted.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testDisabled() throws Exception {
+        final JerseyCookbookClient client = new JerseyCookbookClient(supermarket.getServiceUrl());
+        try {
+            assertThat(client.getCookbook("cookbook1").getVersions()).hasSize(50);
+            assertThat(client.getCompressionStatistics().getEncodedResponses()).isZero();
+            assertThat(client.getCompressionStatistics().getCompressionRatio()).isEqualTo(1.0);
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * Deflated bodies should be decoded whether or not the server wraps them in a zlib header, and the encodings the client accepts should be advertised.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testDeflate() throws Exception {
+        final PooledTransport transport = new PooledTransport(configuration, null);
+        try {
+            for (String path : Arrays.asList("/zlib", "/raw-deflate")) {
+                final Response response = transport.getClient().target(serverUrl + path).request().get();
+                assertThat(response.getHeaderString("Content-Encoding")).isNull();
+                assertThat(response.readEntity(byte[].class)).isEqualTo(ARCHIVE);
+            }
+            assertThat(acceptedEncodings).containsOnly("gzip, deflate");
+            assertThat(transport.getCompressionStatistics().getEncodedResponses()).isEqualTo(2);
+            assertThat(transport.getCompressionStatistics().getUncompressedBytes()).isEqualTo(2L * ARCHIVE.length);
+        } finally {
+            transport.close();
+        }
+    }
+
+    /**
+     * An archive should be downloaded through the decoder, but a resumed download should be requested unencoded so that its range lines up with the partial file.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testArchive() throws Exception {
+        final PooledTransport transport = new PooledTransport(configuration, null);
+        final ResilientInvoker invoker = new ResilientInvoker(configuration.getResilienceConfiguration());
+        try {
+            final URL location = new URL(serverUrl + "/archive.tgz");
+            final File destination = temporaryFolder.newFile("archive.tgz");
+            final ArchiveDownload download = ArchiveTransfer.download(invoker, transport.getClient(), location, destination, ARCHIVE.length, null);
+            assertThat(download.getSize()).isEqualTo(ARCHIVE.length);
+            assertThat(read(destination)).isEqualTo(ARCHIVE);
+            assertThat(transport.getCompressionStatistics().getEncodedResponses()).isEqualTo(1);
+
+            final File partial = temporaryFolder.newFile("partial.tgz");
+            final OutputStream out = new FileOutputStream(partial);
+            try {
+                out.write(ARCHIVE, 0, 1000);
+            } finally {
+                out.close();
+            }
+            final ArchiveDownload resumed = ArchiveTransfer.download(invoker, transport.getClient(), location, partial, ARCHIVE.length, download.getSha256());
+            assertThat(resumed.getResumedFrom()).isEqualTo(1000);
+            assertThat(read(partial)).isEqualTo(ARCHIVE);
+            assertThat(acceptedEncodings).containsExactly("gzip, deflate", "identity");
+            assertThat(transport.getCompressionStatistics().getEncodedResponses()).isEqualTo(1);
+        } finally {
+            invoker.close();
+            transport.close();
+        }
+    }
+
+    /**
+     * Read a file.
+     *
+     * @param file
+     *            The {@link File} to be read.
+     * @return The contents of the file.
+     * @throws IOException
+     *             If the file cannot be read.
+     */
+    private static byte[] read(File file) throws IOException {
+        final ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        final InputStream in = new FileInputStream(file);
+        try {
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                contents.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return contents.toByteArray();
+    }
+
+    /**
+     * Send a response and end the exchange.
+     *
+     * @param exchange
+     *            The {@link HttpExchange} to which the response is to be sent.
+     * @param status
+     *            The status of the response.
+     * @param body
+     *            The body of the response.
+     * @throws IOException
+     *             If the response cannot be sent.
+     */
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length);
+        final OutputStream responseBody = exchange.getResponseBody();
+        try {
+            responseBody.write(body);
+        } finally {
+            responseBody.close();
+        }
+    }
+
+    /**
+     * A handler that serves the archive deflated, with or without a zlib header.
+     *
+     * @author Joshua Hyde
+     */
+    private class EncodingHandler implements HttpHandler {
+        private final boolean nowrap;
+
+        /**
+         * Create a handler.
+         *
+         * @param nowrap
+         *            {@code true} if the body is to be sent as raw deflate data; {@code false} if it is to be sent in the zlib format.
+         */
+        public EncodingHandler(boolean nowrap) {
+            this.nowrap = nowrap;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                acceptedEncodings.add(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+                final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap);
+                final DeflaterOutputStream deflated = new DeflaterOutputStream(buffer, deflater);
+                deflated.write(ARCHIVE);
+                deflated.close();
+                deflater.end();
+                exchange.getResponseHeaders().set("Content-Encoding", "deflate");
+                respond(exchange, 200, buffer.toByteArray());
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     * A handler that serves the archive gzipped to clients that accept it, and honors range requests only for unencoded bodies.
+     *
+     * @author Joshua Hyde
+     */
+    private class ArchiveHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                final String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                acceptedEncodings.add(acceptEncoding);
+                final String range = exchange.getRequestHeaders().getFirst("Range");
+                if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                    final GZIPOutputStream gzip = new GZIPOutputStream(buffer);
+                    gzip.write(ARCHIVE);
+                    gzip.close();
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                    respond(exchange, 200, buffer.toByteArray());
+                } else if (range != null) {
+                    final int start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+                    exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + (ARCHIVE.length - 1) + "/" + ARCHIVE.length);
+                    respond(exchange, 206, Arrays.copyOfRange(ARCHIVE, start, ARCHIVE.length));
+                } else {
+                    respond(exchange, 200, ARCHIVE);
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+}
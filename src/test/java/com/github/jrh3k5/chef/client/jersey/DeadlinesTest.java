@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.jrh3k5.chef.client.Cookbook;
+import com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException;
+import com.github.jrh3k5.chef.client.Deadline;
+import com.github.jrh3k5.chef.client.Deadline.DeadlineExceededException;
+import com.github.jrh3k5.chef.client.stub.FaultProfile;
+import com.github.jrh3k5.chef.client.stub.StubSupermarket;
+import com.github.jrh3k5.chef.client.stub.SyntheticCatalog;
+
+/**
+ * Unit tests for {@link Deadlines}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class DeadlinesTest {
+    private static final FaultProfile SLOW = new FaultProfile(5000, 0, 0, 0);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private StubSupermarket server;
+    private JerseyCookbookClient client;
+
+    /**
+     * Start the server and create the client to be used against it.
+     *
+     * @throws Exception
+     *             If any errors occur during the setup.
+     */
+    @Before
+    public void setUp() throws Exception {
+        server = new StubSupermarket(new SyntheticCatalog(10, 4));
+        server.start();
+        client = new JerseyCookbookClient(server.getServiceUrl());
+    }
+
+    /**
+     * Close the client and stop the server.
+     *
+     * @throws Exception
+     *             If any errors occur during the teardown.
+     */
+    @After
+    public void tearDown() throws Exception {
+        scheduler.shutdownNow();
+        client.close();
+        server.close();
+    }
+
+    /**
+     * A retrieval that outlasts its deadline should be aborted when the deadline expires, releasing its connection.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testExpiry() throws Exception {
+        server.setFaultProfile(SLOW);
+        final long startedAt = System.nanoTime();
+        try {
+            client.getCookbook("cookbook1", new Deadline(300, TimeUnit.MILLISECONDS));
+            fail("The retrieval should not have outlasted its deadline.");
+        } catch (DeadlineExceededException e) {
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt)).isGreaterThanOrEqualTo(300L).isLessThan(2500L);
+        }
+        assertThat(client.getPoolStatistics().getLeased()).isZero();
+
+        try {
+            client.getCookbook("cookbook1", new Deadline(0, TimeUnit.MILLISECONDS));
+            fail("An expired deadline should not have allowed a retrieval.");
+        } catch (DeadlineExceededException e) {
+            assertThat(server.getRequestCount()).isEqualTo(1);
+        }
+    }
+
+    /**
+     * Cancelling a deadline should abort the retrieval in flight, releasing its connection.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testCancel() throws Exception {
+        server.setFaultProfile(SLOW);
+        final Deadline deadline = new Deadline(1, TimeUnit.MINUTES);
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                deadline.cancel();
+            }
+        }, 200, TimeUnit.MILLISECONDS);
+
+        final long startedAt = System.nanoTime();
+        try {
+            client.getCookbook("cookbook2", deadline);
+            fail("The retrieval should have been cancelled.");
+        } catch (CookbookRetrievalException e) {
+            assertThat(e instanceof DeadlineExceededException).isFalse();
+            assertThat(e.getCause()).isInstanceOf(CancellationException.class);
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt)).isLessThan(2500L);
+        }
+        assertThat(client.getPoolStatistics().getLeased()).isZero();
+    }
+
+    /**
+     * The versions retrieved through a cookbook retrieved within a deadline should be bounded by the same deadline, whether they are retrieved on the calling thread or not.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testVersionsShareDeadline() throws Exception {
+        final Deadline deadline = new Deadline(1000, TimeUnit.MILLISECONDS);
+        final Cookbook cookbook = client.getCookbook("cookbook3", deadline);
+        assertThat(cookbook.getVersion("1.0.0").getVersion()).isEqualTo("1.0.0");
+
+        server.setFaultProfile(SLOW);
+        final long startedAt = System.nanoTime();
+        try {
+            cookbook.getLatestVersion();
+            fail("The version should not have outlasted the deadline of its cookbook.");
+        } catch (DeadlineExceededException e) {
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt)).isLessThan(2500L);
+        }
+
+        try {
+            cookbook.getVersionAsync("1.0.1").get(5, TimeUnit.SECONDS);
+            fail("The version should not have been retrieved once the deadline expired.");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(DeadlineExceededException.class);
+        }
+        assertThat(client.getPoolStatistics().getLeased()).isZero();
+
+        // Versions already retrieved remain available, and an unbounded view is not held to the deadline
+        assertThat(cookbook.getVersion("1.0.0").getVersion()).isEqualTo("1.0.0");
+        server.setFaultProfile(FaultProfile.NONE);
+        assertThat(cookbook.withDeadline(new Deadline(5, TimeUnit.SECONDS)).getLatestVersion().getVersion()).isEqualTo("1.0.3");
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.Invocation;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.jrh3k5.chef.client.Cookbook;
+import com.github.jrh3k5.chef.client.jersey.EndpointRouter.Route;
+import com.github.jrh3k5.chef.client.stub.FaultProfile;
+import com.github.jrh3k5.chef.client.stub.StubSupermarket;
+import com.github.jrh3k5.chef.client.stub.SyntheticCatalog;
+
+/**
+ * Unit tests for {@link EndpointRouter}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class EndpointRouterTest {
+    private StubSupermarket primary;
+    private StubSupermarket mirror;
+    private JerseyCookbookClient client;
+
+    /**
+     * Start the servers and create the client to be used against them.
+     *
+     * @throws Exception
+     *             If any errors occur during the setup.
+     */
+    @Before
+    public void setUp() throws Exception {
+        primary = new StubSupermarket(new SyntheticCatalog(10, 4));
+        primary.start();
+        mirror = new StubSupermarket(new SyntheticCatalog(10, 4));
+        mirror.start();
+        client = new JerseyCookbookClient(Arrays.asList(primary.getServiceUrl(), mirror.getServiceUrl()), new JerseyCookbookClientConfiguration());
+    }
+
+    /**
+     * Close the client and stop the servers.
+     *
+     * @throws Exception
+     *             If any errors occur during the teardown.
+     */
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        primary.close();
+        mirror.close();
+    }
+
+    /**
+     * URLs served by any of the servers should be rewritten to the first server's URL, whether or not the servers' URLs end in a slash.
+     */
+    @Test
+    public void testCanonicalize() {
+        final EndpointRouter router = new EndpointRouter(Arrays.asList("http://primary/api/v1", "http://mirror/api/v1/"), 1000);
+        assertThat(router.canonicalize("http://mirror/api/v1/cookbooks/apache/versions/1_0_0")).isEqualTo("http://primary/api/v1/cookbooks/apache/versions/1_0_0");
+        assertThat(router.canonicalize("http://primary/api/v1/cookbooks/apache")).isEqualTo("http://primary/api/v1/cookbooks/apache");
+        assertThat(router.canonicalize("http://elsewhere/api/v1/cookbooks/apache")).isEqualTo("http://elsewhere/api/v1/cookbooks/apache");
+    }
+
+    /**
+     * A failing server should be failed over, without backing off, and passed over until it has cooled down; the versions described by the server that answered should be retrieved through the
+     * router, too.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testFailover() throws Exception {
+        primary.setFaultProfile(new FaultProfile(0, 0, 1.0, 0));
+
+        final Cookbook cookbook = client.getCookbook("cookbook1");
+        assertThat(cookbook.getName()).isEqualTo("cookbook1");
+        assertThat(cookbook.getVersion("1.0.0").getVersion()).isEqualTo("1.0.0");
+        assertThat(cookbook.getLatestVersion().getVersion()).isEqualTo("1.0.3");
+
+        assertThat(primary.getRequestCount()).isEqualTo(1);
+        assertThat(mirror.getRequestCount()).isEqualTo(3);
+        assertThat(client.getResilienceStatistics().getRetries()).isEqualTo(1);
+
+        final List<EndpointStatistics> statistics = client.getEndpointStatistics();
+        assertThat(statistics).hasSize(2);
+        assertThat(statistics.get(0).getServiceUrl()).isEqualTo(primary.getServiceUrl());
+        assertThat(statistics.get(0).getFailures()).isEqualTo(1);
+        assertThat(statistics.get(0).isAvailable()).isFalse();
+        assertThat(statistics.get(1).getRequests()).isEqualTo(3);
+        assertThat(statistics.get(1).getFailures()).isZero();
+        assertThat(statistics.get(1).isAvailable()).isTrue();
+    }
+
+    /**
+     * Once every server has been measured, requests should be routed to the server that answers fastest.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testLatencyRouting() throws Exception {
+        primary.setFaultProfile(new FaultProfile(100, 0, 0, 0));
+        for (int i = 0; i < 10; i++) {
+            assertThat(client.getCookbook("cookbook" + i)).isNotNull();
+        }
+
+        // Each server is measured once before the faster one takes every request
+        assertThat(primary.getRequestCount()).isEqualTo(1);
+        assertThat(mirror.getRequestCount()).isEqualTo(9);
+        final List<EndpointStatistics> statistics = client.getEndpointStatistics();
+        assertThat(statistics.get(0).getAverageLatencyMs()).isGreaterThan(statistics.get(1).getAverageLatencyMs());
+    }
+
+    /**
+     * A server that has not answered should be sent one probe at a time, rather than every attempt until it answers.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testProbes() throws Exception {
+        final EndpointRouter router = new EndpointRouter(Arrays.asList("http://primary/api/v1/", "http://mirror/api/v1/"), 60000);
+        final Route primaryProbe = send(router, null);
+        final Route mirrorProbe = send(router, null);
+        // Neither server has answered, so the attempts that are not probes are spread between them
+        send(router, null);
+        send(router, null);
+        assertRequests(router, 2, 2);
+
+        router.recordSuccess(mirrorProbe, 10);
+        for (int i = 0; i < 3; i++) {
+            send(router, null);
+        }
+        assertRequests(router, 2, 5);
+
+        // A slower answer from the other server does not draw any attempts away from the faster one
+        router.recordSuccess(primaryProbe, 50);
+        send(router, null);
+        assertRequests(router, 2, 6);
+    }
+
+    /**
+     * A server that failed should count the failure against its average latency, so that it is not preferred again as soon as it has cooled down.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testFailurePenalty() throws Exception {
+        final EndpointRouter router = new EndpointRouter(Arrays.asList("http://primary/api/v1/", "http://mirror/api/v1/"), 100);
+        router.recordSuccess(send(router, null), 20);
+        router.recordSuccess(send(router, null), 10);
+        final Route failed = send(router, null);
+        assertRequests(router, 1, 2);
+        router.recordFailure(failed);
+        assertThat(router.getStatistics().get(1).getAverageLatencyMs()).isEqualTo(0.2 * 100 + 0.8 * 10);
+        router.recordSuccess(send(router, null), 20);
+        assertRequests(router, 2, 2);
+
+        Thread.sleep(150);
+        // Neither server has answered within the cooldown, so each is probed once before the faster of them takes the attempts
+        send(router, null);
+        send(router, null);
+        assertRequests(router, 3, 3);
+        send(router, null);
+        send(router, null);
+        assertRequests(router, 5, 3);
+    }
+
+    /**
+     * Send an attempt through a router.
+     *
+     * @param router
+     *            The {@link EndpointRouter} through which the attempt is to be sent.
+     * @param previous
+     *            The {@link Route} of the attempt that this attempt retries; {@code null} if it is the first attempt.
+     * @return The {@link Route} of the attempt.
+     * @throws Exception
+     *             If the attempt cannot be routed.
+     */
+    private Route send(EndpointRouter router, Route previous) throws Exception {
+        final Route route = router.route(mock(Invocation.Builder.class), previous);
+        final ClientRequestContext requestContext = mock(ClientRequestContext.class);
+        when(requestContext.getProperty(anyString())).thenReturn(route);
+        when(requestContext.getUri()).thenReturn(URI.create("http://primary/api/v1/cookbooks/apache"));
+        ((ClientRequestFilter) router.getFilter()).filter(requestContext);
+        return route;
+    }
+
+    /**
+     * Assert the number of attempts routed to each of two servers.
+     *
+     * @param router
+     *            The {@link EndpointRouter} that routed the attempts.
+     * @param primaryRequests
+     *            The number of attempts expected to have been routed to the first server.
+     * @param mirrorRequests
+     *            The number of attempts expected to have been routed to the second server.
+     */
+    private void assertRequests(EndpointRouter router, long primaryRequests, long mirrorRequests) {
+        final List<EndpointStatistics> statistics = router.getStatistics();
+        assertThat(statistics.get(0).getRequests()).isEqualTo(primaryRequests);
+        assertThat(statistics.get(1).getRequests()).isEqualTo(mirrorRequests);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.jrh3k5.chef.client.metrics.AggregatingMetricsListener;
+import com.github.jrh3k5.chef.client.metrics.MetricsListener;
+import com.github.jrh3k5.chef.client.metrics.OperationMetrics;
+import com.github.jrh3k5.chef.client.metrics.RequestMetrics.Operation;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit tests for {@link Instrumentation}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class InstrumentationTest {
+    private static final String COOKBOOK = "{\"name\":\"apache\",\"latest_version\":\"%1$s/versions/1_0_0\",\"versions\":[\"%1$s/versions/1_0_0\"]}";
+    private static final String NOT_FOUND = "{\"error_messages\":[\"Resource not found\"],\"error_code\":\"NOT_FOUND\"}";
+    private final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+    private final AggregatingMetricsListener listener = new AggregatingMetricsListener();
+    private HttpServer server;
+    private JerseyCookbookClient client;
+
+    /**
+     * Start the server and create the client to be tested.
+     *
+     * @throws Exception
+     *             If any errors occur during the setup.
+     */
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(serverExecutor);
+        server.createContext("/api/v1/cookbooks/", new CookbookHandler());
+        server.start();
+
+        final JerseyCookbookClientConfiguration configuration = new JerseyCookbookClientConfiguration();
+        configuration.setMetricsListener(listener);
+        client = new JerseyCookbookClient("http://localhost:" + server.getAddress().getPort() + "/api/v1/", configuration);
+    }
+
+    /**
+     * Stop the server.
+     *
+     * @throws Exception
+     *             If any errors occur during the teardown.
+     */
+    @After
+    public void tearDown() throws Exception {
+        listener.unregisterMBean();
+        client.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    /**
+     * Found and missing cookbooks, retrieved both on the calling thread and asynchronously, should be measured once each and leave nothing in flight.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testRequestsMeasured() throws Exception {
+        assertThat(client.getCookbook("apache")).isNotNull();
+        assertThat(client.getCookbookAsync("apache").get()).isNotNull();
+        assertThat(client.getCookbook("missing")).isNull();
+
+        final OperationMetrics metrics = listener.getOperationMetrics(Operation.COOKBOOK);
+        assertThat(metrics.getRequests()).isEqualTo(3);
+        assertThat(metrics.getNotFound()).isEqualTo(1);
+        assertThat(metrics.getFailures()).isZero();
+        assertThat(metrics.getStatusCounts().get(Integer.valueOf(200))).isEqualTo(2L);
+        assertThat(metrics.getStatusCounts().get(Integer.valueOf(404))).isEqualTo(1L);
+        assertThat(metrics.getResponseBytes()).isGreaterThan(NOT_FOUND.length());
+        assertThat(metrics.getTimeToFirstByte().getCount()).isEqualTo(3);
+        assertThat(metrics.getParseTime().getCount()).isEqualTo(3);
+        // The first request opened the connection that the others reused
+        assertThat(metrics.getConnectTime().getCount()).isGreaterThanOrEqualTo(1);
+        assertThat(listener.getInFlightRequests().get("localhost:" + server.getAddress().getPort())).isZero();
+        assertThat(listener.getOperationMetrics(Operation.VERSION).getRequests()).isZero();
+    }
+
+    /**
+     * A failed request should be measured as a failure.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testFailureMeasured() throws Exception {
+        final JerseyCookbookClientConfiguration configuration = new JerseyCookbookClientConfiguration();
+        configuration.setMetricsListener(listener);
+        configuration.getResilienceConfiguration().setMaxRetries(0);
+        final int port = server.getAddress().getPort();
+        server.stop(0);
+        final JerseyCookbookClient unreachable = new JerseyCookbookClient("http://localhost:" + port + "/api/v1/", configuration);
+        try {
+            unreachable.getCookbook("apache");
+        } catch (RuntimeException e) {
+            // Expected
+        } finally {
+            unreachable.close();
+        }
+
+        assertThat(listener.getOperationMetrics(Operation.COOKBOOK).getFailures()).isEqualTo(1);
+        assertThat(listener.getInFlightRequests().get("localhost:" + port)).isZero();
+    }
+
+    /**
+     * The metrics should be readable over JMX, along with the hit ratios of caches.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testJmx() throws Exception {
+        client.getCookbook("apache");
+        listener.cacheAccessed(MetricsListener.CONDITIONAL_CACHE, true);
+        listener.cacheAccessed(MetricsListener.CONDITIONAL_CACHE, false);
+
+        final ObjectName objectName = listener.registerMBean(getClass().getSimpleName());
+        final TabularData operations = (TabularData) ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "Operations");
+        final CompositeData cookbooks = (CompositeData) operations.get(new Object[] { Operation.COOKBOOK.name() }).get("value");
+        assertThat(cookbooks.get("requests")).isEqualTo(1L);
+
+        final TabularData ratios = (TabularData) ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "CacheHitRatios");
+        assertThat(ratios.get(new Object[] { MetricsListener.CONDITIONAL_CACHE }).get("value")).isEqualTo(0.5);
+    }
+
+    /**
+     * A handler serving the {@code apache} cookbook; every other cookbook is not found.
+     *
+     * @author Joshua Hyde
+     */
+    private static class CookbookHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            exchange.getRequestBody().close();
+            final String path = exchange.getRequestURI().getPath();
+            final byte[] body;
+            final int status;
+            if (path.endsWith("/apache")) {
+                status = 200;
+                body = String.format(COOKBOOK, "http://localhost:" + exchange.getLocalAddress().getPort() + path).getBytes("UTF-8");
+            } else {
+                status = 404;
+                body = NOT_FOUND.getBytes("UTF-8");
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            final OutputStream responseBody = exchange.getResponseBody();
+            try {
+                responseBody.write(body);
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+}
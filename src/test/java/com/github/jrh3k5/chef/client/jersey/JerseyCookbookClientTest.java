@@ -0,0 +1,605 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.jrh3k5.chef.client.Cookbook;
+import com.github.jrh3k5.chef.client.Cookbook.Version;
+import com.github.jrh3k5.chef.client.CookbookBatchResult;
+import com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException;
+import com.github.jrh3k5.chef.client.RetrievalCallback;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit tests for {@link JerseyCookbookClient}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class JerseyCookbookClientTest {
+    private static final int VERSION_COUNT = 12;
+    private static final String FAILING = "failing";
+    private static final String NOT_FOUND = "{\"error_messages\":[\"Resource not found\"],\"error_code\":\"NOT_FOUND\"}";
+
+    static {
+        // Without TCP_NODELAY, the JDK's server holds back small responses until the previous one is acknowledged, which adds tens of milliseconds to every keep-alive request
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    /**
+     * A temporary directory in which cookbook metadata is stored.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private volatile long latencyMs;
+    private volatile int versionCount = VERSION_COUNT;
+    private HttpServer server;
+    private JerseyCookbookClient client;
+
+    /**
+     * Start the server and create the client to be tested.
+     *
+     * @throws Exception
+     *             If any errors occur during the setup.
+     */
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(serverExecutor);
+        server.createContext("/api/v1/cookbooks/", new CookbookHandler());
+        server.start();
+        client = newClient(new JerseyCookbookClientConfiguration());
+    }
+
+    /**
+     * Close the client and stop the server.
+     *
+     * @throws Exception
+     *             If any errors occur during the teardown.
+     */
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    /**
+     * Resolving the versions of a cookbook one after another should reuse the connection over which the cookbook was retrieved.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testConnectionReuse() throws Exception {
+        final Cookbook cookbook = client.getCookbook("cookbook1");
+        for (String version : cookbook.getVersions()) {
+            assertThat(cookbook.getVersion(version).getVersion()).isEqualTo(version);
+        }
+
+        assertThat(requests.get()).isEqualTo(VERSION_COUNT + 1);
+        final PoolStatistics statistics = client.getPoolStatistics();
+        assertThat(statistics.getRequestsSent()).isEqualTo(VERSION_COUNT + 1);
+        assertThat(statistics.getConnectionsCreated()).isEqualTo(1);
+        assertThat(statistics.getReuseRate()).isEqualTo((double) VERSION_COUNT / (VERSION_COUNT + 1));
+        assertThat(statistics.getLeased()).isZero();
+        assertThat(statistics.getAvailable()).isEqualTo(1);
+        assertThat(statistics.getMax()).isEqualTo(JerseyCookbookClientConfiguration.DEFAULT_MAX_CONNECTIONS_TOTAL);
+    }
+
+    /**
+     * Requests made while all of the connections allowed to a server are in use should wait for one of them rather than open another.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testMaxConnectionsPerRoute() throws Exception {
+        final JerseyCookbookClientConfiguration configuration = new JerseyCookbookClientConfiguration();
+        configuration.setMaxConnectionsPerRoute(2);
+        final JerseyCookbookClient limited = newClient(configuration);
+        // Slow responses keep each connection in use while the other requests wait for it
+        latencyMs = 50;
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Cookbook>> futures = new ArrayList<Future<Cookbook>>();
+            for (int i = 0; i < 8; i++) {
+                final String name = "cookbook" + i;
+                futures.add(executor.submit(new Callable<Cookbook>() {
+                    @Override
+                    public Cookbook call() throws Exception {
+                        return limited.getCookbook(name);
+                    }
+                }));
+            }
+            for (Future<Cookbook> future : futures) {
+                assertThat(future.get(5, TimeUnit.SECONDS)).isNotNull();
+            }
+
+            assertThat(peakInFlight.get()).isEqualTo(2);
+            final PoolStatistics statistics = limited.getPoolStatistics();
+            assertThat(statistics.getConnectionsCreated()).isEqualTo(2);
+            assertThat(statistics.getRequestsSent()).isEqualTo(8);
+            assertThat(statistics.getLeased()).isZero();
+            assertThat(statistics.getPending()).isZero();
+        } finally {
+            executor.shutdown();
+            limited.close();
+        }
+    }
+
+    /**
+     * A cookbook and its versions should be retrieved asynchronously, completing both the returned futures and the given callbacks.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetCookbookAsync() throws Exception {
+        // The latency keeps the retrieval outstanding after the calling thread has returned
+        latencyMs = 50;
+        final RecordingCallback<Cookbook> callback = new RecordingCallback<Cookbook>();
+        final Future<Cookbook> future = client.getCookbookAsync("cookbook3", callback);
+        assertThat(future.isDone()).isFalse();
+
+        final Cookbook cookbook = future.get(5, TimeUnit.SECONDS);
+        assertThat(cookbook.getName()).isEqualTo("cookbook3");
+        assertThat(callback.await()).isSameAs(cookbook);
+        assertThat(future.isDone()).isTrue();
+
+        final RecordingCallback<Version> versionCallback = new RecordingCallback<Version>();
+        final Version version = cookbook.getVersionAsync("1.0.1", versionCallback).get(5, TimeUnit.SECONDS);
+        assertThat(version.getVersion()).isEqualTo("1.0.1");
+        assertThat(versionCallback.await()).isSameAs(version);
+        assertThat(cookbook.getVersionAsync("9.9.9").get(5, TimeUnit.SECONDS)).isNull();
+
+        assertThat(client.getCookbookAsync("missing").get(5, TimeUnit.SECONDS)).isNull();
+    }
+
+    /**
+     * The failure of an asynchronous retrieval should be thrown from the future and passed to the callback.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetCookbookAsyncFailure() throws Exception {
+        final RecordingCallback<Cookbook> callback = new RecordingCallback<Cookbook>();
+        final Future<Cookbook> future = client.getCookbookAsync(FAILING, callback);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("A cookbook that the server fails to serve should not be retrieved.");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(CookbookRetrievalException.class);
+            assertThat(e.getCause().getMessage()).contains("500");
+            callback.await();
+            assertThat(callback.failure.get()).isSameAs(e.getCause());
+        }
+    }
+
+    /**
+     * Closing the client should stop the threads on which its asynchronous retrievals were completed.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testCloseStopsThreads() throws Exception {
+        final Set<Thread> existing = new HashSet<Thread>(Thread.getAllStackTraces().keySet());
+        final JerseyCookbookClient closed = newClient(new JerseyCookbookClientConfiguration());
+        assertThat(closed.getCookbookAsync("cookbook3").get(5, TimeUnit.SECONDS).getVersionAsync("1.0.1").get(5, TimeUnit.SECONDS)).isNotNull();
+
+        final Set<Thread> started = new HashSet<Thread>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            // The threads of the server's cached pool are not the client's
+            if (!existing.contains(thread) && !thread.getName().startsWith("pool-")) {
+                started.add(thread);
+            }
+        }
+        assertThat(started).isNotEmpty();
+
+        closed.close();
+        for (Thread thread : started) {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+            assertThat(thread.isAlive()).as(thread.getName()).isFalse();
+        }
+    }
+
+    /**
+     * A batch should retrieve every distinct cookbook once, without more requests in flight than the configured parallelism allows.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetCookbooks() throws Exception {
+        final JerseyCookbookClientConfiguration configuration = new JerseyCookbookClientConfiguration();
+        configuration.setBatchParallelism(3);
+        final JerseyCookbookClient batching = newClient(configuration);
+        // Slow responses keep each wave in flight long enough for the next to queue behind it
+        latencyMs = 50;
+        try {
+            final List<String> names = new ArrayList<String>();
+            for (int i = 0; i < 12; i++) {
+                names.add("cookbook" + i);
+            }
+            names.add("cookbook0");
+
+            final CookbookBatchResult result = batching.getCookbooks(names);
+            assertThat(result.hasFailures()).isFalse();
+            assertThat(result.getCookbooks()).hasSize(12);
+            assertThat(result.getCookbooks().get("cookbook7").getName()).isEqualTo("cookbook7");
+            assertThat(requests.get()).isEqualTo(12);
+            assertThat(peakInFlight.get()).isEqualTo(3);
+        } finally {
+            batching.close();
+        }
+    }
+
+    /**
+     * Cookbooks that do not exist should be left out of a batch, and a cookbook that cannot be retrieved should be reported without failing the rest of the batch.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetCookbooksPartialFailure() throws Exception {
+        final CookbookBatchResult result = client.getCookbooks(Arrays.asList("cookbook1", FAILING, "missing", "cookbook3"));
+        assertThat(result.getCookbooks().keySet()).containsOnly("cookbook1", "cookbook3");
+        assertThat(result.hasFailures()).isTrue();
+        assertThat(result.getFailures().keySet()).containsOnly(FAILING);
+        assertThat(result.getFailures().get(FAILING).getMessage()).contains("500");
+    }
+
+    /**
+     * Prefetching the versions of a cookbook should resolve all of them, no more than the batch parallelism at a time, so that none of them need to be requested again.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testPrefetchVersions() throws Exception {
+        final JerseyCookbookClientConfiguration configuration = new JerseyCookbookClientConfiguration();
+        configuration.setBatchParallelism(3);
+        final JerseyCookbookClient prefetching = newClient(configuration);
+        try {
+            final Cookbook cookbook = prefetching.getCookbook("cookbook3");
+            // Slow responses keep each version request in flight long enough for the next ones to be sent alongside it
+            latencyMs = 50;
+            cookbook.prefetchVersions();
+            assertThat(requests.get()).isEqualTo(1 + VERSION_COUNT);
+            assertThat(peakInFlight.get()).isEqualTo(3);
+
+            for (String version : cookbook.getVersions()) {
+                assertThat(cookbook.getVersion(version).getVersion()).isEqualTo(version);
+            }
+            assertThat(requests.get()).isEqualTo(1 + VERSION_COUNT);
+        } finally {
+            prefetching.close();
+        }
+    }
+
+    /**
+     * Prefetching a cookbook whose versions have all been resolved already should complete without requesting any of them again, however many versions the cookbook has.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testPrefetchResolvedVersions() throws Exception {
+        versionCount = 500;
+        final JerseyCookbookClientConfiguration configuration = new JerseyCookbookClientConfiguration();
+        configuration.setBatchParallelism(1);
+        final JerseyCookbookClient prefetching = newClient(configuration);
+        try {
+            final Cookbook cookbook = prefetching.getCookbook("cookbook3");
+            final List<Future<Version>> resolving = new ArrayList<Future<Version>>();
+            for (String version : cookbook.getVersions()) {
+                resolving.add(cookbook.getVersionAsync(version));
+            }
+            for (Future<Version> version : resolving) {
+                assertThat(version.get(5, TimeUnit.SECONDS)).isNotNull();
+            }
+            assertThat(requests.get()).isEqualTo(1 + versionCount);
+
+            // Every version now completes as soon as it is requested, so a small stack shows whether each one is requested from within the completion of the one before
+            final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            final Thread prefetcher = new Thread(null, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        cookbook.prefetchVersions();
+                    } catch (Throwable t) {
+                        failure.set(t);
+                    }
+                }
+            }, "prefetcher", 128 * 1024);
+            prefetcher.start();
+            prefetcher.join(TimeUnit.SECONDS.toMillis(10));
+            assertThat(prefetcher.isAlive()).isFalse();
+            assertThat(failure.get()).isNull();
+            assertThat(requests.get()).isEqualTo(1 + versionCount);
+        } finally {
+            prefetching.close();
+        }
+    }
+
+    /**
+     * A client that resolves versions eagerly should hand out cookbooks whose versions have all been resolved, whether they are retrieved on the calling thread or asynchronously.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testEagerVersions() throws Exception {
+        final JerseyCookbookClientConfiguration configuration = new JerseyCookbookClientConfiguration();
+        configuration.setEagerVersions(true);
+        final JerseyCookbookClient eager = newClient(configuration);
+        try {
+            final Cookbook cookbook = eager.getCookbook("cookbook3");
+            assertThat(requests.get()).isEqualTo(1 + VERSION_COUNT);
+            final Cookbook asynchronous = eager.getCookbookAsync("cookbook4").get(5, TimeUnit.SECONDS);
+            assertThat(requests.get()).isEqualTo(2 * (1 + VERSION_COUNT));
+
+            assertThat(cookbook.getLatestVersion().getVersion()).isEqualTo("1.0." + (VERSION_COUNT - 1));
+            assertThat(asynchronous.getVersion("1.0.4").getVersion()).isEqualTo("1.0.4");
+            assertThat(requests.get()).isEqualTo(2 * (1 + VERSION_COUNT));
+            assertThat(eager.getCookbook("missing")).isNull();
+        } finally {
+            eager.close();
+        }
+    }
+
+    /**
+     * Threads sharing a cookbook should each resolve every version, with concurrent lookups of the same version joining a single request for it.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testConcurrentVersionResolution() throws Exception {
+        final Cookbook cookbook = client.getCookbook("cookbook3");
+        final List<String> versions = new ArrayList<String>(cookbook.getVersions());
+        // Slow responses keep each version request in flight while the other threads look the version up
+        latencyMs = 50;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Future<List<Version>>> futures = new ArrayList<Future<List<Version>>>();
+            for (int thread = 0; thread < 8; thread++) {
+                final boolean asynchronous = thread % 2 == 0;
+                futures.add(executor.submit(new Callable<List<Version>>() {
+                    @Override
+                    public List<Version> call() throws Exception {
+                        start.await();
+                        final List<Version> resolved = new ArrayList<Version>(versions.size());
+                        for (String version : versions) {
+                            resolved.add(asynchronous ? cookbook.getVersionAsync(version).get(5, TimeUnit.SECONDS) : cookbook.getVersion(version));
+                        }
+                        return resolved;
+                    }
+                }));
+            }
+            start.countDown();
+
+            final List<Version> first = futures.get(0).get(10, TimeUnit.SECONDS);
+            for (int i = 0; i < versions.size(); i++) {
+                assertThat(first.get(i).getVersion()).isEqualTo(versions.get(i));
+            }
+            for (Future<List<Version>> future : futures) {
+                final List<Version> resolved = future.get(10, TimeUnit.SECONDS);
+                for (int i = 0; i < versions.size(); i++) {
+                    assertThat(resolved.get(i)).isSameAs(first.get(i));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(requests.get()).isEqualTo(1 + versions.size());
+    }
+
+    /**
+     * A version resolved through a stored cookbook should be written to the metadata store shortly afterwards, rather than when the client is closed, so that another client sharing the store
+     * can use it without a request.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testMetadataStoreVersions() throws Exception {
+        final JerseyCookbookClientConfiguration configuration = new JerseyCookbookClientConfiguration();
+        configuration.setMetadataStoreDirectory(temporaryFolder.getRoot());
+        final JerseyCookbookClient writer = newClient(configuration);
+        final JerseyCookbookClient reader = newClient(configuration);
+        try {
+            assertThat(writer.getCookbook("cookbook3").getVersion("1.0.1")).isNotNull();
+            assertThat(requests.get()).isEqualTo(2);
+
+            final MetadataStore store = new MetadataStore(temporaryFolder.getRoot(), configuration.getMetadataStoreMaxAgeMs());
+            final String serviceUrl = "http://localhost:" + server.getAddress().getPort() + "/api/v1/";
+            final long giveUpAt = System.currentTimeMillis() + 5000;
+            while (store.read(serviceUrl, "cookbook3").getResolvedVersions().isEmpty()) {
+                assertThat(System.currentTimeMillis()).as("Time by which the version is written").isLessThan(giveUpAt);
+                Thread.sleep(JerseyCookbookClient.STORE_DELAY_MS / 5);
+            }
+
+            assertThat(reader.getCookbook("cookbook3").getVersion("1.0.1").getVersion()).isEqualTo("1.0.1");
+            assertThat(requests.get()).isEqualTo(2);
+        } finally {
+            reader.close();
+            writer.close();
+        }
+    }
+
+    /**
+     * Create a client of the server.
+     *
+     * @param configuration
+     *            The {@link JerseyCookbookClientConfiguration} of the client.
+     * @return A {@link JerseyCookbookClient}.
+     */
+    private JerseyCookbookClient newClient(JerseyCookbookClientConfiguration configuration) {
+        return new JerseyCookbookClient("http://localhost:" + server.getAddress().getPort() + "/api/v1/", configuration);
+    }
+
+    /**
+     * A handler serving cookbooks named {@code cookbook<i>}, each with {@value #VERSION_COUNT} versions; every other cookbook is not found. Every response is delayed by the current latency, and
+     * the largest number of requests served at once is recorded.
+     *
+     * @author Joshua Hyde
+     */
+    private class CookbookHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            final int concurrentRequests = inFlight.incrementAndGet();
+            int peak;
+            while (concurrentRequests > (peak = peakInFlight.get()) && !peakInFlight.compareAndSet(peak, concurrentRequests)) {
+                // Another request raised the peak in the meantime
+            }
+            try {
+                exchange.getRequestBody().close();
+                requests.incrementAndGet();
+                if (latencyMs > 0) {
+                    try {
+                        Thread.sleep(latencyMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+
+                final String path = exchange.getRequestURI().getPath();
+                final String cookbookUrl = "http://localhost:" + exchange.getLocalAddress().getPort() + path.replaceFirst("/versions/.*$", "");
+                final String name = cookbookUrl.substring(cookbookUrl.lastIndexOf('/') + 1);
+                if (FAILING.equals(name)) {
+                    respond(exchange, 500, "{}");
+                } else if (!name.matches("cookbook\\d+")) {
+                    respond(exchange, 404, NOT_FOUND);
+                } else if (path.contains("/versions/")) {
+                    final String version = path.substring(path.lastIndexOf('/') + 1).replace('_', '.');
+                    respond(exchange, 200, "{\"version\":\"" + version + "\",\"file\":\"" + cookbookUrl + "/versions/" + version.replace('.', '_') + "/download\"}");
+                } else {
+                    final StringBuilder versions = new StringBuilder();
+                    for (int i = 0; i < versionCount; i++) {
+                        versions.append(i == 0 ? "" : ",").append('"').append(cookbookUrl).append("/versions/1_0_").append(i).append('"');
+                    }
+                    respond(exchange, 200, "{\"name\":\"" + name + "\",\"latest_version\":\"" + cookbookUrl + "/versions/1_0_" + (versionCount - 1) + "\",\"versions\":[" + versions + "]}");
+                }
+            } finally {
+                inFlight.decrementAndGet();
+                exchange.close();
+            }
+        }
+
+        /**
+         * Send a JSON response.
+         *
+         * @param exchange
+         *            The {@link HttpExchange} to which the response is to be sent.
+         * @param status
+         *            The status of the response.
+         * @param json
+         *            The body of the response.
+         * @throws IOException
+         *             If the response cannot be sent.
+         */
+        private void respond(HttpExchange exchange, int status, String json) throws IOException {
+            final byte[] body = json.getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            final OutputStream responseBody = exchange.getResponseBody();
+            try {
+                responseBody.write(body);
+            } finally {
+                responseBody.close();
+            }
+        }
+    }
+
+    /**
+     * A {@link RetrievalCallback} that records how the retrieval it was given to ended.
+     *
+     * @author Joshua Hyde
+     * @param <T>
+     *            The type of the retrieved object.
+     */
+    private static class RecordingCallback<T> implements RetrievalCallback<T> {
+        private final CountDownLatch ended = new CountDownLatch(1);
+        private final AtomicReference<T> result = new AtomicReference<T>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        @Override
+        public void completed(T completed) {
+            result.set(completed);
+            ended.countDown();
+        }
+
+        @Override
+        public void failed(Throwable throwable) {
+            failure.set(throwable);
+            ended.countDown();
+        }
+
+        /**
+         * Wait for the retrieval to end.
+         *
+         * @return The retrieved object; {@code null} if the retrieval failed or found nothing.
+         * @throws InterruptedException
+         *             If the calling thread is interrupted while waiting.
+         */
+        T await() throws InterruptedException {
+            assertThat(ended.await(5, TimeUnit.SECONDS)).isTrue();
+            return result.get();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.github.jrh3k5.chef.client.jersey.JerseyCookbookClient.JsonCookbook;
+import com.github.jrh3k5.chef.client.jersey.JerseyCookbookClient.JsonCookbook.JsonVersion;
+
+/**
+ * Unit tests for {@link JsonDecoder}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class JsonDecoderTest {
+    private static final String VERSIONS_URL = "http://localhost/api/v1/cookbooks/apache/versions/";
+
+    /**
+     * A cookbook should be decoded with its versions mapped, regardless of the order of its fields.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testDecodeCookbook() throws Exception {
+        final String latestLast = "{\"name\":\"apache\",\"description\":{\"nested\":[1,2]},\"versions\":[\"" + VERSIONS_URL + "1_0_0\",\"" + VERSIONS_URL + "1_1_0\"],\"latest_version\":\""
+                + VERSIONS_URL + "1_1_0\"}";
+        final JsonCookbook cookbook = JsonDecoder.decodeCookbook(toStream(latestLast));
+        cookbook.attach(mock(JerseyCookbookClient.class));
+        assertThat(cookbook.getName()).isEqualTo("apache");
+        assertThat(cookbook.getVersions()).containsOnly("1.0.0", "1.1.0");
+        assertThat(cookbook.getLatestVersionUrl().toExternalForm()).isEqualTo(VERSIONS_URL + "1_1_0");
+
+        final String latestFirst = "{\"latest_version\":\"" + VERSIONS_URL + "1_0_0\",\"versions\":[\"" + VERSIONS_URL + "1_0_0\"],\"name\":\"apache\"}";
+        final JsonCookbook other = JsonDecoder.decodeCookbook(toStream(latestFirst));
+        // A cookbook decoded outside of any client, such as in a benchmark, has no owner whose servers its versions map to
+        other.attach(null);
+        assertThat(other.getVersions()).containsOnly("1.0.0");
+    }
+
+    /**
+     * A cookbook that is not attached to a client should say so, rather than fail with a {@link NullPointerException}, when a version must be requested.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testDetachedCookbook() throws Exception {
+        final JsonCookbook cookbook = JsonDecoder.decodeCookbook(toStream("{\"name\":\"apache\",\"versions\":[\"" + VERSIONS_URL + "1_0_0\"],\"latest_version\":\"" + VERSIONS_URL
+                + "1_0_0\"}"));
+        cookbook.attach(null);
+        assertThat(cookbook.getVersion("2.0.0")).isNull();
+        try {
+            cookbook.getVersion("1.0.0");
+            fail("A detached cookbook should not resolve versions.");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).contains("not attached");
+        }
+        try {
+            cookbook.getVersionAsync("1.0.0");
+            fail("A detached cookbook should not resolve versions asynchronously.");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).contains("not attached");
+        }
+        try {
+            cookbook.prefetchVersions();
+            fail("A detached cookbook should not prefetch versions.");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).contains("not attached");
+        }
+
+        final JsonVersion version = JsonDecoder.decodeVersion(toStream("{\"version\":\"1.0.0\",\"file\":\"" + VERSIONS_URL + "1_0_0/download\"}"));
+        version.attach(null);
+        try {
+            version.openArchive();
+            fail("A detached version should not open its archive.");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).contains("not attached");
+        }
+    }
+
+    /**
+     * A document that is not a cookbook should fail to decode.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test(expected = IOException.class)
+    public void testDecodeCookbookInvalid() throws Exception {
+        JsonDecoder.decodeCookbook(toStream("{\"name\":\"apache\",\"versions\":[1]}"));
+    }
+
+    /**
+     * An error response should be decoded.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testDecodeError() throws Exception {
+        assertThat(JsonDecoder.decodeError("{\"error_messages\":[\"Resource not found\"],\"error_code\":\"NOT_FOUND\"}".getBytes("UTF-8")).getErrorCode()).isEqualTo("NOT_FOUND");
+    }
+
+    /**
+     * The URL of a cookbook's latest version should be read without reading the rest of the document.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testDecodeLatestVersionUrl() throws Exception {
+        final String latestLast = "{\"name\":\"apache\",\"description\":{\"latest_version\":1},\"versions\":[\"" + VERSIONS_URL + "1_0_0\"],\"latest_version\":\"" + VERSIONS_URL + "1_0_0\"}";
+        assertThat(JsonDecoder.decodeLatestVersionUrl(toStream(latestLast))).isEqualTo(VERSIONS_URL + "1_0_0");
+
+        // Whatever follows the latest version is not read, so even a truncated document yields it
+        final String truncated = "{\"latest_version\":\"" + VERSIONS_URL + "1_1_0\",\"versions\":[\"" + VERSIONS_URL + "1_0_0\",";
+        assertThat(JsonDecoder.decodeLatestVersionUrl(toStream(truncated))).isEqualTo(VERSIONS_URL + "1_1_0");
+
+        try {
+            JsonDecoder.decodeLatestVersionUrl(toStream("{\"name\":\"apache\",\"versions\":[]}"));
+            fail("A cookbook without a latest version should fail to decode.");
+        } catch (IOException e) {
+            assertThat(e.getMessage()).contains("no latest version");
+        }
+    }
+
+    /**
+     * A version should be decoded.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testDecodeVersion() throws Exception {
+        final JsonVersion version = JsonDecoder.decodeVersion(toStream("{\"version\":\"1.1.0\",\"file\":\"http://localhost/apache-1.1.0.tgz\",\"license\":\"Apache 2.0\",\"dependencies\":{\"apt\":\">= 1.0\"}}"));
+        assertThat(version.getVersion()).isEqualTo("1.1.0");
+        assertThat(version.getFileLocation().toExternalForm()).isEqualTo("http://localhost/apache-1.1.0.tgz");
+        assertThat(version.getDependencies()).isEqualTo(Collections.singletonMap("apt", ">= 1.0"));
+    }
+
+    /**
+     * Convert a string into a stream.
+     *
+     * @param json
+     *            The string to be converted.
+     * @return An {@link InputStream} containing the given string.
+     * @throws IOException
+     *             If the string cannot be encoded.
+     */
+    private InputStream toStream(String json) throws IOException {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+}
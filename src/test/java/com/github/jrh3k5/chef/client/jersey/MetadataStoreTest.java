@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.jrh3k5.chef.client.jersey.MetadataStore.StoredCookbook;
+import com.github.jrh3k5.chef.client.jersey.MetadataStore.StoredVersion;
+
+/**
+ * Unit tests for {@link MetadataStore}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class MetadataStoreTest {
+    private static final String SERVICE_URL = "http://localhost/api/v1/";
+    /**
+     * A temporary directory in which metadata is stored.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private MetadataStore store;
+
+    /**
+     * Create the store to be tested.
+     */
+    @Before
+    public void setUp() {
+        store = new MetadataStore(temporaryFolder.getRoot(), 60000);
+    }
+
+    /**
+     * Stored metadata should be read back as it was written.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        store.write(SERVICE_URL, apache(System.currentTimeMillis()));
+
+        final StoredCookbook read = store.read(SERVICE_URL, "apache");
+        assertThat(read).isNotNull();
+        assertThat(read.getName()).isEqualTo("apache");
+        assertThat(read.getLatestVersionUrl()).isEqualTo(SERVICE_URL + "cookbooks/apache/versions/1_1_0");
+        assertThat(read.getVersionUrls()).hasSize(2);
+        assertThat(read.getEntityTag()).isEqualTo("\"abc\"");
+        assertThat(read.getLastModified()).isNull();
+        assertThat(read.getResolvedVersions()).hasSize(1);
+        assertThat(read.getResolvedVersions().get(0).getVersionNumber()).isEqualTo("1.1.0");
+        assertThat(read.getResolvedVersions().get(0).getFileLocation()).isEqualTo("http://localhost/apache-1.1.0.tgz");
+        assertThat(read.getResolvedVersions().get(0).getFileSize()).isEqualTo(2048);
+        assertThat(read.getResolvedVersions().get(0).getDependencies()).isEqualTo(Collections.singletonMap("apt", ">= 1.0"));
+        assertThat(store.isFresh(read)).isTrue();
+
+        assertThat(store.read(SERVICE_URL, "mysql")).isNull();
+        assertThat(store.read("http://elsewhere/api/v1/", "apache")).isNull();
+    }
+
+    /**
+     * The URLs of a cookbook's versions should be written once their shared prefix is removed, so that a cookbook with many versions is stored compactly.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testCompact() throws Exception {
+        final List<String> versionUrls = new ArrayList<String>();
+        final List<StoredVersion> resolvedVersions = new ArrayList<StoredVersion>();
+        for (int i = 0; i < 200; i++) {
+            final String versionUrl = SERVICE_URL + "cookbooks/apache/versions/1_" + i + "_0";
+            versionUrls.add(versionUrl);
+            resolvedVersions.add(new StoredVersion("1." + i + ".0", versionUrl + "/download", 1024 + i, "1." + i + ".0", Collections.<String, String> emptyMap()));
+        }
+        final String latestVersionUrl = versionUrls.get(versionUrls.size() - 1);
+        store.write(SERVICE_URL, new StoredCookbook("apache", latestVersionUrl, versionUrls, resolvedVersions, null, null, System.currentTimeMillis()));
+
+        // Each version costs its suffix, its number, its archive's suffix and its size, rather than its URLs in full
+        assertThat(findStoredFile(temporaryFolder.getRoot()).length()).isLessThan(200L * 64);
+
+        final StoredCookbook read = store.read(SERVICE_URL, "apache");
+        assertThat(read.getLatestVersionUrl()).isEqualTo(latestVersionUrl);
+        assertThat(read.getVersionUrls()).isEqualTo(versionUrls);
+        assertThat(read.getResolvedVersions()).hasSize(200);
+        final StoredVersion last = read.getResolvedVersions().get(199);
+        assertThat(last.getVersionNumber()).isEqualTo("1.199.0");
+        assertThat(last.getVersion()).isEqualTo("1.199.0");
+        assertThat(last.getFileLocation()).isEqualTo(latestVersionUrl + "/download");
+        assertThat(last.getFileSize()).isEqualTo(1223);
+    }
+
+    /**
+     * Metadata older than the maximum age should not be fresh.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testStale() throws Exception {
+        store.write(SERVICE_URL, apache(System.currentTimeMillis() - 120000));
+        assertThat(store.isFresh(store.read(SERVICE_URL, "apache"))).isFalse();
+    }
+
+    /**
+     * A truncated or corrupted file should be treated as absent.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testCorrupted() throws Exception {
+        store.write(SERVICE_URL, apache(System.currentTimeMillis()));
+        final File file = findStoredFile(temporaryFolder.getRoot());
+
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.seek(20);
+            randomAccessFile.write(0x7f);
+        } finally {
+            randomAccessFile.close();
+        }
+        assertThat(store.read(SERVICE_URL, "apache")).isNull();
+
+        final RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+        try {
+            truncated.setLength(10);
+        } finally {
+            truncated.close();
+        }
+        assertThat(store.read(SERVICE_URL, "apache")).isNull();
+    }
+
+    /**
+     * Build the metadata of a cookbook.
+     *
+     * @param writtenAtMillis
+     *            The time at which the metadata is to be considered written.
+     * @return A {@link StoredCookbook}.
+     */
+    private StoredCookbook apache(long writtenAtMillis) {
+        final StoredVersion resolved = new StoredVersion("1.1.0", "http://localhost/apache-1.1.0.tgz", 2048, "1.1.0", Collections.singletonMap("apt", ">= 1.0"));
+        return new StoredCookbook("apache", SERVICE_URL + "cookbooks/apache/versions/1_1_0", Arrays.asList(SERVICE_URL + "cookbooks/apache/versions/1_0_0", SERVICE_URL
+                + "cookbooks/apache/versions/1_1_0"), Collections.singletonList(resolved), "\"abc\"", null, writtenAtMillis);
+    }
+
+    /**
+     * Find the single file written by the store.
+     *
+     * @param directory
+     *            The directory to be searched.
+     * @return The {@link File} written by the store; {@code null} if none is found.
+     */
+    private File findStoredFile(File directory) {
+        for (File child : directory.listFiles()) {
+            if (child.isDirectory()) {
+                final File found = findStoredFile(child);
+                if (found != null) {
+                    return found;
+                }
+            } else if (child.getName().endsWith(".cookbook")) {
+                return child;
+            }
+        }
+        return null;
+    }
+}
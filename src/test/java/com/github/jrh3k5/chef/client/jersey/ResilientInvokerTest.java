@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.jersey;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.Response;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException;
+import com.github.jrh3k5.chef.client.jersey.ResilienceStatistics.CircuitState;
+import com.github.jrh3k5.chef.client.jersey.ResilientInvoker.RequestSource;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit tests for {@link ResilientInvoker}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class ResilientInvokerTest {
+    private final ResilienceConfiguration configuration = new ResilienceConfiguration();
+    private final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+    private HttpServer server;
+    private Client client;
+    private ResilientInvoker invoker;
+
+    /**
+     * Start the server.
+     *
+     * @throws Exception
+     *             If any errors occur during the setup.
+     */
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(serverExecutor);
+        server.start();
+        client = ClientBuilder.newClient();
+        configuration.setRetryBackoffMs(1);
+    }
+
+    /**
+     * Stop the server.
+     */
+    @After
+    public void tearDown() {
+        if (invoker != null) {
+            invoker.close();
+        }
+        client.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    /**
+     * Failed requests should be retried, both on the calling thread and asynchronously.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testRetry() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        server.createContext("/flaky", new StatusHandler(requests, 2, 0));
+        server.createContext("/down", new StatusHandler(new AtomicInteger(), Integer.MAX_VALUE, 0));
+        invoker = new ResilientInvoker(configuration);
+
+        assertThat(invoker.get(source("/flaky")).getStatus()).isEqualTo(200);
+        assertThat(requests.get()).isEqualTo(3);
+
+        requests.set(0);
+        assertThat(invoker.getAsync(source("/flaky"), null).get().getStatus()).isEqualTo(200);
+        assertThat(requests.get()).isEqualTo(3);
+        assertThat(invoker.getStatistics().getRetries()).isEqualTo(4);
+        assertThat(invoker.getStatistics().getRetryRate()).isEqualTo(2.0);
+
+        // Once the retries are exhausted, the last response is returned
+        assertThat(invoker.get(source("/down")).getStatus()).isEqualTo(503);
+    }
+
+    /**
+     * An open circuit breaker should fail requests without contacting the server until a trial request succeeds.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testCircuitBreaker() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        server.createContext("/down", new StatusHandler(requests, 2, 0));
+        configuration.setMaxRetries(0);
+        configuration.setCircuitBreakerFailureThreshold(2);
+        configuration.setCircuitBreakerOpenMs(200);
+        invoker = new ResilientInvoker(configuration);
+
+        invoker.get(source("/down")).close();
+        invoker.get(source("/down")).close();
+        assertThat(invoker.getStatistics().getCircuitState()).isEqualTo(CircuitState.OPEN);
+        try {
+            invoker.get(source("/down"));
+            fail("An open circuit breaker should reject requests.");
+        } catch (CookbookRetrievalException e) {
+            assertThat(requests.get()).isEqualTo(2);
+        }
+
+        Thread.sleep(250);
+        assertThat(invoker.get(source("/down")).getStatus()).isEqualTo(200);
+        assertThat(invoker.getStatistics().getCircuitState()).isEqualTo(CircuitState.CLOSED);
+        assertThat(invoker.getStatistics().getRejections()).isEqualTo(1);
+        assertThat(invoker.getStatistics().getCircuitOpenings()).isEqualTo(1);
+    }
+
+    /**
+     * A request slower than the configured percentile should be hedged, and the faster response used.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testHedge() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        server.createContext("/fast", new StatusHandler(new AtomicInteger(), 0, 0));
+        server.createContext("/slow", new StatusHandler(requests, 0, 1));
+        configuration.setHedgePercentile(0.9);
+        invoker = new ResilientInvoker(configuration);
+
+        for (int i = 0; i < LatencyTracker.MINIMUM_SAMPLES; i++) {
+            invoker.get(source("/fast")).close();
+        }
+        final long startedAt = System.currentTimeMillis();
+        assertThat(invoker.get(source("/slow")).getStatus()).isEqualTo(200);
+        assertThat(System.currentTimeMillis() - startedAt).isLessThan(StatusHandler.SLOW_MS);
+        assertThat(requests.get()).isEqualTo(2);
+        assertThat(invoker.getStatistics().getHedges()).isEqualTo(1);
+        assertThat(invoker.getStatistics().getHedgeWins()).isEqualTo(1);
+    }
+
+    /**
+     * A server's {@code Retry-After} should be honoured before retrying, both on the calling thread and asynchronously, and its refusal should shrink the concurrency limit.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testRetryAfter() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        server.createContext("/throttled", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getRequestBody().close();
+                if (requests.incrementAndGet() == 1) {
+                    exchange.getResponseHeaders().add("Retry-After", "1");
+                    exchange.sendResponseHeaders(429, -1);
+                } else {
+                    exchange.sendResponseHeaders(Response.Status.OK.getStatusCode(), -1);
+                }
+                exchange.close();
+            }
+        });
+        configuration.setConcurrencyLimitEnabled(true);
+        configuration.setInitialConcurrencyLimit(4);
+        invoker = new ResilientInvoker(configuration);
+
+        long startedAt = System.currentTimeMillis();
+        assertThat(invoker.get(source("/throttled")).getStatus()).isEqualTo(200);
+        assertThat(System.currentTimeMillis() - startedAt).isGreaterThanOrEqualTo(1000L);
+        assertThat(requests.get()).isEqualTo(2);
+        assertThat(invoker.getStatistics().getConcurrencyLimit()).isEqualTo(2);
+
+        requests.set(0);
+        startedAt = System.currentTimeMillis();
+        assertThat(invoker.getAsync(source("/throttled"), null).get().getStatus()).isEqualTo(200);
+        assertThat(System.currentTimeMillis() - startedAt).isGreaterThanOrEqualTo(1000L);
+        assertThat(requests.get()).isEqualTo(2);
+        // Halved again, then raised by the answer to the retry
+        assertThat(invoker.getStatistics().getConcurrencyLimit()).isEqualTo(2);
+        assertThat(invoker.getStatistics().getQueuedRequests()).isZero();
+    }
+
+    /**
+     * Build a source of requests.
+     *
+     * @param path
+     *            The path to be requested.
+     * @return A {@link RequestSource}.
+     */
+    private RequestSource source(final String path) {
+        final String url = "http://localhost:" + server.getAddress().getPort() + path;
+        return new RequestSource() {
+            @Override
+            public Invocation.Builder newRequest() {
+                return client.target(url).request();
+            }
+        };
+    }
+
+    /**
+     * A handler that fails or delays its first requests.
+     *
+     * @author Joshua Hyde
+     */
+    private static class StatusHandler implements HttpHandler {
+        /**
+         * The time, in milliseconds, for which a slow request is delayed.
+         */
+        static final long SLOW_MS = 3000;
+        private final AtomicInteger requests;
+        private final int failures;
+        private final int slow;
+
+        /**
+         * Create a handler.
+         *
+         * @param requests
+         *            An {@link AtomicInteger} counting the requests handled.
+         * @param failures
+         *            The number of requests answered with {@code 503} before requests succeed.
+         * @param slow
+         *            The number of requests delayed before requests are answered promptly.
+         */
+        public StatusHandler(AtomicInteger requests, int failures, int slow) {
+            this.requests = requests;
+            this.failures = failures;
+            this.slow = slow;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            final int request = requests.incrementAndGet();
+            if (request <= slow) {
+                try {
+                    Thread.sleep(SLOW_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            exchange.getRequestBody().close();
+            exchange.sendResponseHeaders(request <= failures ? Response.Status.SERVICE_UNAVAILABLE.getStatusCode() : Response.Status.OK.getStatusCode(), -1);
+            exchange.close();
+        }
+    }
+}
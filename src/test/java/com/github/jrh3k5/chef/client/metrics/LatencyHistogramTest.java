@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.metrics;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Delta.delta;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link LatencyHistogram}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class LatencyHistogramTest {
+    /**
+     * Percentiles should be reported to within a quarter of their magnitude, and never above the longest duration.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testSnapshot() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        final LatencySnapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount()).isEqualTo(100);
+        assertThat(snapshot.getMeanMs()).isEqualTo(50.5, delta(0.001));
+        assertThat(snapshot.getMaxMs()).isEqualTo(100.0, delta(0.001));
+        assertThat(snapshot.getP50Ms()).isGreaterThanOrEqualTo(50.0).isLessThanOrEqualTo(50.0 * 1.25);
+        assertThat(snapshot.getP90Ms()).isGreaterThanOrEqualTo(90.0).isLessThanOrEqualTo(90.0 * 1.25);
+        assertThat(snapshot.getP99Ms()).isGreaterThanOrEqualTo(99.0).isLessThanOrEqualTo(100.0);
+    }
+
+    /**
+     * An empty histogram should report nothing.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testEmpty() throws Exception {
+        final LatencySnapshot snapshot = new LatencyHistogram().snapshot();
+        assertThat(snapshot.getCount()).isZero();
+        assertThat(snapshot.getP99Ms()).isZero();
+    }
+}
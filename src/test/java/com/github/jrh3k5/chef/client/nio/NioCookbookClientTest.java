@@ -0,0 +1,367 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.nio;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.jrh3k5.chef.client.ArchiveDownload;
+import com.github.jrh3k5.chef.client.Cookbook;
+import com.github.jrh3k5.chef.client.Cookbook.Version;
+import com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException;
+import com.github.jrh3k5.chef.client.Deadline;
+import com.github.jrh3k5.chef.client.Deadline.DeadlineExceededException;
+import com.github.jrh3k5.chef.client.RetrievalCallback;
+import com.github.jrh3k5.chef.client.stub.FaultProfile;
+import com.github.jrh3k5.chef.client.stub.StubSupermarket;
+import com.github.jrh3k5.chef.client.stub.SyntheticCatalog;
+
+/**
+ * Unit tests for {@link NioCookbookClient}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class NioCookbookClientTest {
+    /**
+     * A temporary directory to which archives are downloaded.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private final SyntheticCatalog catalog = new SyntheticCatalog(100, 4);
+    private StubSupermarket server;
+    private NioCookbookClient client;
+
+    /**
+     * Start the server and create the client to be used against it.
+     *
+     * @throws Exception
+     *             If any errors occur during the setup.
+     */
+    @Before
+    public void setUp() throws Exception {
+        server = new StubSupermarket(catalog);
+        server.start();
+        final NioCookbookClientConfiguration configuration = new NioCookbookClientConfiguration();
+        configuration.setMaxConnectionsPerRoute(16);
+        client = new NioCookbookClient(server.getServiceUrl(), configuration);
+    }
+
+    /**
+     * Close the client and stop the server.
+     *
+     * @throws Exception
+     *             If any errors occur during the teardown.
+     */
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    /**
+     * A cookbook and its versions should be retrieved over a single kept-alive connection.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetCookbook() throws Exception {
+        final Cookbook cookbook = client.getCookbook("cookbook7");
+        assertThat(cookbook.getName()).isEqualTo("cookbook7");
+        assertThat(cookbook.getVersions()).containsOnly("1.0.0", "1.0.1", "1.0.2", "1.0.3");
+
+        final Version latest = cookbook.getLatestVersion();
+        assertThat(latest.getVersion()).isEqualTo("1.0.3");
+        assertThat(latest.getDependencies().keySet()).isEqualTo(new HashSet<String>(catalog.getDependencies(7)));
+        assertThat(latest.getFileLocation().toString()).endsWith("/cookbooks/cookbook7/versions/1_0_3/download");
+        assertThat(cookbook.getVersion("9.9.9")).isNull();
+
+        final EngineStatistics statistics = client.getEngineStatistics();
+        assertThat(statistics.getConnectionsCreated()).isEqualTo(1L);
+        assertThat(statistics.getRequestsSent()).isEqualTo(2L);
+        assertThat(statistics.getHostLookups()).isEqualTo(1L);
+        assertThat(statistics.getLeased()).isZero();
+        assertThat(statistics.getAvailable()).isEqualTo(1);
+    }
+
+    /**
+     * A cookbook that does not exist should be retrieved as {@code null}.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetCookbookNotFound() throws Exception {
+        assertThat(client.getCookbook("no-such-cookbook")).isNull();
+        assertThat(client.getCookbookAsync("no-such-cookbook").get(5, TimeUnit.SECONDS)).isNull();
+    }
+
+    /**
+     * The latest version of a cookbook should be retrieved directly, with one request for the cookbook and one for the version.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetLatestVersion() throws Exception {
+        final Version latest = client.getLatestVersion("cookbook11");
+        assertThat(latest.getVersion()).isEqualTo("1.0.3");
+        assertThat(latest.getFileLocation().toString()).endsWith("/cookbooks/cookbook11/versions/1_0_3/download");
+        assertThat(server.getRequestCount()).isEqualTo(2);
+
+        assertThat(client.getLatestVersion("no-such-cookbook")).isNull();
+        assertThat(server.getRequestCount()).isEqualTo(3);
+
+        server.setFaultProfile(new FaultProfile(0, 0, 1.0, 0));
+        try {
+            client.getLatestVersion("cookbook11");
+            fail("A server error should fail the retrieval.");
+        } catch (CookbookRetrievalException e) {
+            assertThat(e.getMessage()).contains("503");
+        }
+    }
+
+    /**
+     * A server error should fail the retrieval and leave the connection reusable.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testServerError() throws Exception {
+        server.setFaultProfile(new FaultProfile(0, 0, 1.0, 0));
+        try {
+            client.getCookbook("cookbook1");
+            fail("A server error should fail the retrieval.");
+        } catch (CookbookRetrievalException e) {
+            assertThat(e.getMessage()).contains("503");
+        }
+
+        server.setFaultProfile(FaultProfile.NONE);
+        assertThat(client.getCookbook("cookbook1").getName()).isEqualTo("cookbook1");
+        assertThat(client.getEngineStatistics().getConnectionsCreated()).isEqualTo(1L);
+    }
+
+    /**
+     * Thousands of concurrent lookups should be served by the client's I/O threads over no more than its limit of connections.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testConcurrentLookups() throws Exception {
+        server.setFaultProfile(new FaultProfile(20, 0, 0, 0));
+        final int lookups = 2000;
+        final CountDownLatch latch = new CountDownLatch(lookups);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        for (int lookup = 0; lookup < lookups; lookup++) {
+            client.getCookbookAsync(catalog.getName(lookup % catalog.getCookbookCount()), new RetrievalCallback<Cookbook>() {
+                @Override
+                public void completed(Cookbook cookbook) {
+                    if (cookbook == null) {
+                        failure.compareAndSet(null, new AssertionError("A cookbook was not found."));
+                    }
+                    latch.countDown();
+                }
+
+                @Override
+                public void failed(Throwable throwable) {
+                    failure.compareAndSet(null, throwable);
+                    latch.countDown();
+                }
+            });
+        }
+        assertThat(client.getEngineStatistics().getPending()).isGreaterThan(0);
+        assertThat(latch.await(30, TimeUnit.SECONDS)).isTrue();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        final EngineStatistics statistics = client.getEngineStatistics();
+        assertThat(statistics.getRequestsSent()).isEqualTo((long) lookups);
+        assertThat(statistics.getConnectionsCreated()).isLessThanOrEqualTo(16L);
+        assertThat(statistics.getHostLookups()).isEqualTo(1L);
+        assertThat(statistics.getPending()).isZero();
+    }
+
+    /**
+     * Concurrent requests for the same version should share a single request to the server.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testVersionCoalescing() throws Exception {
+        final Cookbook cookbook = client.getCookbook("cookbook3");
+        server.setFaultProfile(new FaultProfile(100, 0, 0, 0));
+        final List<Future<Version>> versions = new ArrayList<Future<Version>>();
+        for (int request = 0; request < 50; request++) {
+            versions.add(cookbook.getVersionAsync("1.0.2"));
+        }
+        for (Future<Version> version : versions) {
+            assertThat(version.get(5, TimeUnit.SECONDS).getVersion()).isEqualTo("1.0.2");
+        }
+        assertThat(server.getRequestCount()).isEqualTo(2);
+
+        // Cancelling one caller's future does not fail the resolution shared with the others
+        final Future<Version> cancelled = cookbook.getVersionAsync("1.0.1");
+        final Future<Version> kept = cookbook.getVersionAsync("1.0.1");
+        cancelled.cancel(true);
+        assertThat(kept.get(5, TimeUnit.SECONDS).getVersion()).isEqualTo("1.0.1");
+    }
+
+    /**
+     * A retrieval that outlasts its deadline should be aborted, and its connection discarded.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testDeadline() throws Exception {
+        server.setFaultProfile(new FaultProfile(5000, 0, 0, 0));
+        final long startedAt = System.nanoTime();
+        try {
+            client.getCookbook("cookbook1", new Deadline(300, TimeUnit.MILLISECONDS));
+            fail("The retrieval should not have outlasted its deadline.");
+        } catch (DeadlineExceededException e) {
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt)).isGreaterThanOrEqualTo(300L).isLessThan(2500L);
+        }
+        awaitLeased(0);
+
+        server.setFaultProfile(FaultProfile.NONE);
+        final Cookbook cookbook = client.getCookbook("cookbook1", new Deadline(5, TimeUnit.SECONDS));
+        assertThat(cookbook.getLatestVersion().getVersion()).isEqualTo("1.0.3");
+    }
+
+    /**
+     * The archive of a version should be downloadable and streamable.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testArchive() throws Exception {
+        final Version version = client.getCookbook("cookbook5").getVersion("1.0.1");
+        final ArchiveDownload download = version.downloadTo(temporaryFolder.newFile("cookbook5.tgz"));
+        assertThat(download.getSize()).isEqualTo(1024L);
+        assertThat(download.getFile().length()).isEqualTo(1024L);
+
+        final ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        final InputStream archive = version.openArchive();
+        try {
+            final byte[] buffer = new byte[100];
+            int read;
+            while ((read = archive.read(buffer)) != -1) {
+                streamed.write(buffer, 0, read);
+            }
+        } finally {
+            archive.close();
+        }
+        assertThat(streamed.toByteArray()).isEqualTo(read(download.getFile()));
+    }
+
+    /**
+     * Blocking on a retrieval from one of the client's I/O threads would stall the thread it waits on; it should be refused.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testBlockingOnIoThread() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        client.getCookbookAsync("cookbook2", new RetrievalCallback<Cookbook>() {
+            @Override
+            public void completed(Cookbook cookbook) {
+                try {
+                    cookbook.getLatestVersion();
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+                latch.countDown();
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                failure.set(throwable);
+                latch.countDown();
+            }
+        });
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(failure.get()).isInstanceOf(IllegalStateException.class);
+    }
+
+    /**
+     * Wait for the number of leased connections to settle, since connections are discarded on the I/O threads.
+     *
+     * @param expected
+     *            The expected number of leased connections.
+     * @throws InterruptedException
+     *             If the thread is interrupted while waiting.
+     */
+    private void awaitLeased(int expected) throws InterruptedException {
+        final long giveUpAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (client.getEngineStatistics().getLeased() != expected && System.nanoTime() < giveUpAt) {
+            Thread.sleep(10);
+        }
+        assertThat(client.getEngineStatistics().getLeased()).isEqualTo(expected);
+    }
+
+    /**
+     * Read a file.
+     *
+     * @param file
+     *            The file to be read.
+     * @return The contents of the file.
+     * @throws Exception
+     *             If the file cannot be read.
+     */
+    private static byte[] read(File file) throws Exception {
+        final ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        final InputStream input = new FileInputStream(file);
+        try {
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                contents.write(buffer, 0, read);
+            }
+        } finally {
+            input.close();
+        }
+        return contents.toByteArray();
+    }
+}
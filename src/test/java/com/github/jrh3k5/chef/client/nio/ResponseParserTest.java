@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.nio;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ResponseParser}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class ResponseParserTest {
+    private final ResponseParser parser = new ResponseParser();
+    private final RecordingListener listener = new RecordingListener();
+
+    /**
+     * A response delimited by {@code Content-Length} should be parsed however its bytes are split, and leave the connection reusable.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testContentLength() throws Exception {
+        final byte[] response = ascii("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: 11\r\n\r\n{\"a\":\"bcd\"}");
+        for (int split = 1; split < response.length; split++) {
+            parser.reset();
+            listener.clear();
+            assertThat(parser.parse(ByteBuffer.wrap(response, 0, split), listener)).isFalse();
+            final ByteBuffer rest = ByteBuffer.wrap(response, split, response.length - split);
+            assertThat(parser.parse(rest, listener)).isTrue();
+            assertThat(rest.hasRemaining()).isFalse();
+            assertThat(listener.status).isEqualTo(200);
+            assertThat(listener.headers.get("content-type")).isEqualTo("application/json");
+            assertThat(listener.getBody()).isEqualTo("{\"a\":\"bcd\"}");
+            assertThat(parser.isKeepAlive()).isTrue();
+        }
+    }
+
+    /**
+     * A chunked response should be reassembled, with its chunk extensions and trailers ignored, after any interim response.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testChunked() throws Exception {
+        final String response = "HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 404 Not Found\r\nTransfer-Encoding: chunked\r\n\r\n5;ext=1\r\nhello\r\n7\r\n, world\r\n0\r\nX-Trailer: yes\r\n\r\n";
+        assertThat(parser.parse(ByteBuffer.wrap(ascii(response)), listener)).isTrue();
+        assertThat(listener.status).isEqualTo(404);
+        assertThat(listener.getBody()).isEqualTo("hello, world");
+        assertThat(parser.isKeepAlive()).isTrue();
+    }
+
+    /**
+     * A response with no length should be read until the connection closes, and the connection should not be reused; a connection closed before a response is complete should fail.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testUntilClose() throws Exception {
+        assertThat(parser.parse(ByteBuffer.wrap(ascii("HTTP/1.0 200 OK\r\n\r\nsome bytes")), listener)).isFalse();
+        assertThat(parser.endOfInput()).isTrue();
+        assertThat(listener.getBody()).isEqualTo("some bytes");
+        assertThat(parser.isKeepAlive()).isFalse();
+
+        parser.reset();
+        assertThat(parser.parse(ByteBuffer.wrap(ascii("HTTP/1.1 200 OK\r\nContent-Length: 20\r\n\r\nshort")), listener)).isFalse();
+        try {
+            parser.endOfInput();
+            throw new AssertionError("A truncated response should not be complete.");
+        } catch (EOFException e) {
+            assertThat(e.getMessage()).contains("before the response was complete");
+        }
+    }
+
+    /**
+     * A listener that asks for no more of the body should stop the parser, which should resume from where it stopped.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testPause() throws Exception {
+        listener.pause = true;
+        final ByteBuffer buffer = ByteBuffer.wrap(ascii("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\nConnection: close\r\n\r\n3\r\nabc\r\n3\r\ndef\r\n0\r\n\r\n"));
+        assertThat(parser.parse(buffer, listener)).isFalse();
+        assertThat(listener.getBody()).isEqualTo("abc");
+        assertThat(buffer.hasRemaining()).isTrue();
+
+        listener.pause = false;
+        assertThat(parser.parse(buffer, listener)).isTrue();
+        assertThat(listener.getBody()).isEqualTo("abcdef");
+        assertThat(parser.isKeepAlive()).isFalse();
+    }
+
+    /**
+     * Malformed responses should be rejected.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testMalformed() throws Exception {
+        final String[] malformed = { "SMTP 220 ready\r\n", "HTTP/1.1 2x0 OK\r\n", "HTTP/1.1 200 OK\r\nno colon\r\n", "HTTP/1.1 200 OK\r\nContent-Length: -1\r\n\r\n",
+                "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\n" };
+        for (String response : malformed) {
+            parser.reset();
+            try {
+                parser.parse(ByteBuffer.wrap(ascii(response)), listener);
+                throw new AssertionError("The response should have been rejected: " + response);
+            } catch (IOException e) {
+                assertThat(e instanceof EOFException).isFalse();
+            }
+        }
+    }
+
+    /**
+     * Encode a string as ASCII.
+     *
+     * @param text
+     *            The string to be encoded.
+     * @return The bytes of the string.
+     * @throws IOException
+     *             If the encoding is not supported.
+     */
+    private static byte[] ascii(String text) throws IOException {
+        return text.getBytes("US-ASCII");
+    }
+
+    /**
+     * A listener that records the response it is given.
+     *
+     * @author Joshua Hyde
+     */
+    private static class RecordingListener implements ResponseParser.Listener {
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private int status;
+        private Map<String, String> headers;
+        private boolean pause;
+
+        @Override
+        public void headers(int responseStatus, Map<String, String> responseHeaders) {
+            this.status = responseStatus;
+            this.headers = responseHeaders;
+        }
+
+        @Override
+        public boolean content(ByteBuffer content) {
+            while (content.hasRemaining()) {
+                body.write(content.get());
+            }
+            return !pause;
+        }
+
+        /**
+         * Forget the recorded response.
+         */
+        public void clear() {
+            body.reset();
+            status = 0;
+            headers = null;
+        }
+
+        /**
+         * Get the recorded body.
+         *
+         * @return The recorded body, decoded as ASCII.
+         * @throws IOException
+         *             If the encoding is not supported.
+         */
+        public String getBody() throws IOException {
+            return body.toString("US-ASCII");
+        }
+    }
+}
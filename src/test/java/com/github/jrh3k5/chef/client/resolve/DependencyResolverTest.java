@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.resolve;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.github.jrh3k5.chef.client.Cookbook;
+import com.github.jrh3k5.chef.client.Cookbook.Version;
+import com.github.jrh3k5.chef.client.CookbookClient;
+import com.github.jrh3k5.chef.client.RetrievalCallback;
+import com.github.jrh3k5.chef.client.version.VersionConstraint;
+
+/**
+ * Unit tests for {@link DependencyResolver}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class DependencyResolverTest {
+    private final CookbookClient client = mock(CookbookClient.class);
+    private final Map<String, Cookbook> cookbooks = new HashMap<String, Cookbook>();
+
+    /**
+     * Set up the client to answer asynchronous retrievals with the cookbooks registered by each test.
+     */
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setUp() {
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                ((RetrievalCallback<Cookbook>) invocation.getArguments()[1]).completed(cookbooks.get(invocation.getArguments()[0]));
+                return null;
+            }
+        }).when(client).getCookbookAsync(anyString(), any(RetrievalCallback.class));
+    }
+
+    /**
+     * A version whose dependencies conflict with an earlier selection should cause the earlier selection to be revisited, without any document being retrieved twice.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testResolveBacktracks() throws Exception {
+        final Cookbook app = cookbook("app", "1.0");
+        final Cookbook database = cookbook("database", "1.0", "2.0");
+        final Cookbook web = cookbook("web", "2.0");
+        version(app, "1.0", "database", ">= 1.0", "web", ">= 0");
+        version(database, "1.0");
+        version(database, "2.0");
+        version(web, "2.0", "database", "< 2.0");
+
+        final Map<String, Version> resolved = new DependencyResolver(client).resolve(Collections.singleton("app"));
+        assertThat(resolved.keySet()).containsOnly("app", "database", "web");
+        assertThat(resolved.get("app").getVersion()).isEqualTo("1.0");
+        assertThat(resolved.get("database").getVersion()).isEqualTo("1.0");
+        assertThat(resolved.get("web").getVersion()).isEqualTo("2.0");
+
+        verify(client, times(1)).getCookbookAsync(eq("database"), any(RetrievalCallback.class));
+        verify(database, times(1)).getVersionAsync(eq("1.0"), any(RetrievalCallback.class));
+        verify(database, times(1)).getVersionAsync(eq("2.0"), any(RetrievalCallback.class));
+    }
+
+    /**
+     * Constraints that no version satisfies should be reported as a conflict.
+     */
+    @Test(expected = DependencyConflictException.class)
+    public void testResolveConflict() {
+        final Cookbook app = cookbook("app", "1.0");
+        final Cookbook database = cookbook("database", "1.0", "2.0");
+        version(app, "1.0", "database", ">= 3.0");
+        version(database, "1.0");
+        version(database, "2.0");
+
+        new DependencyResolver(client).resolve(Collections.singletonMap("app", VersionConstraint.parse("~> 1.0")));
+    }
+
+    /**
+     * A dependency on a cookbook that does not exist should be reported as a conflict.
+     */
+    @Test(expected = DependencyConflictException.class)
+    public void testResolveMissingDependency() {
+        version(cookbook("app", "1.0"), "1.0", "missing", ">= 0");
+
+        new DependencyResolver(client).resolve(Collections.singleton("app"));
+    }
+
+    /**
+     * Register a cookbook.
+     *
+     * @param name
+     *            The name of the cookbook.
+     * @param versionNumbers
+     *            The version numbers of the cookbook, from lowest to highest.
+     * @return A mocked {@link Cookbook}.
+     */
+    private Cookbook cookbook(String name, final String... versionNumbers) {
+        final Cookbook cookbook = mock(Cookbook.class);
+        when(cookbook.getName()).thenReturn(name);
+        when(cookbook.getVersions(any(VersionConstraint.class))).thenAnswer(new Answer<List<String>>() {
+            @Override
+            public List<String> answer(InvocationOnMock invocation) throws Throwable {
+                final VersionConstraint constraint = (VersionConstraint) invocation.getArguments()[0];
+                final List<String> matches = new ArrayList<String>();
+                for (String versionNumber : versionNumbers) {
+                    if (constraint.matches(versionNumber)) {
+                        matches.add(versionNumber);
+                    }
+                }
+                return matches;
+            }
+        });
+        cookbooks.put(name, cookbook);
+        return cookbook;
+    }
+
+    /**
+     * Register a version of a cookbook.
+     *
+     * @param cookbook
+     *            The {@link Cookbook} to which the version belongs.
+     * @param versionNumber
+     *            The version number.
+     * @param dependencies
+     *            Pairs of the names of the cookbooks on which the version depends and the constraints on their versions.
+     */
+    @SuppressWarnings("unchecked")
+    private void version(Cookbook cookbook, String versionNumber, String... dependencies) {
+        final Map<String, String> dependencyMap = new HashMap<String, String>();
+        for (int i = 0; i < dependencies.length; i += 2) {
+            dependencyMap.put(dependencies[i], dependencies[i + 1]);
+        }
+
+        final Version version = mock(Version.class);
+        when(version.getVersion()).thenReturn(versionNumber);
+        when(version.getDependencies()).thenReturn(dependencyMap);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                ((RetrievalCallback<Version>) invocation.getArguments()[1]).completed(version);
+                return null;
+            }
+        }).when(cookbook).getVersionAsync(eq(versionNumber), any(RetrievalCallback.class));
+    }
+}
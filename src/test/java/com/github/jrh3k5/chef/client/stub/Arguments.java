@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.stub;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The {@code --name value} options given to the command line of a {@link StubSupermarket} or {@link LoadHarness}.
+ *
+ * @author Joshua Hyde
+ */
+
+class Arguments {
+    private final Map<String, String> options = new HashMap<String, String>();
+
+    /**
+     * Parse the arguments of a command line.
+     *
+     * @param args
+     *            The arguments of the command line.
+     * @throws IllegalArgumentException
+     *             If an argument is not an option name followed by its value.
+     */
+    Arguments(String[] args) {
+        for (int position = 0; position < args.length; position += 2) {
+            if (!args[position].startsWith("--") || position + 1 == args.length) {
+                throw new IllegalArgumentException("Expected an option name followed by its value: " + args[position]);
+            }
+            options.put(args[position].substring(2), args[position + 1]);
+        }
+    }
+
+    /**
+     * Get the value of a decimal option.
+     *
+     * @param name
+     *            The name of the option, without its leading dashes.
+     * @param defaultValue
+     *            The value to be used if the option was not given.
+     * @return The value of the option.
+     * @throws NumberFormatException
+     *             If the value of the option is not a number.
+     */
+    double getDouble(String name, double defaultValue) {
+        final String value = options.get(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    /**
+     * Get the fault profile described by the {@code --latency-ms}, {@code --jitter-ms}, {@code --error-rate} and {@code --not-found-rate} options.
+     *
+     * @return A {@link FaultProfile}; the options not given inject nothing.
+     */
+    FaultProfile getFaultProfile() {
+        return new FaultProfile(getInt("latency-ms", 0), getInt("jitter-ms", 0), getDouble("error-rate", 0), getDouble("not-found-rate", 0));
+    }
+
+    /**
+     * Get the value of an integer option.
+     *
+     * @param name
+     *            The name of the option, without its leading dashes.
+     * @param defaultValue
+     *            The value to be used if the option was not given.
+     * @return The value of the option.
+     * @throws NumberFormatException
+     *             If the value of the option is not an integer.
+     */
+    int getInt(String name, int defaultValue) {
+        final String value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * Get the value of an option.
+     *
+     * @param name
+     *            The name of the option, without its leading dashes.
+     * @return The value of the option; {@code null} if it was not given.
+     */
+    String getString(String name) {
+        return options.get(name);
+    }
+}
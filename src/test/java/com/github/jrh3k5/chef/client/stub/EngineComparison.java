@@ -0,0 +1,497 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.stub;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+import com.github.jrh3k5.chef.client.Cookbook;
+import com.github.jrh3k5.chef.client.Cookbook.Version;
+import com.github.jrh3k5.chef.client.CookbookClient;
+import com.github.jrh3k5.chef.client.RetrievalCallback;
+import com.github.jrh3k5.chef.client.jersey.JerseyCookbookClient;
+import com.github.jrh3k5.chef.client.jersey.JerseyCookbookClientConfiguration;
+import com.github.jrh3k5.chef.client.metrics.LatencyHistogram;
+import com.github.jrh3k5.chef.client.metrics.LatencySnapshot;
+import com.github.jrh3k5.chef.client.nio.NioCookbookClient;
+import com.github.jrh3k5.chef.client.nio.NioCookbookClientConfiguration;
+
+/**
+ * A comparison of the throughput of the client engines. A single client of each engine keeps a fixed number of asynchronous lookups in flight against a server holding a
+ * {@link SyntheticCatalog}; a lookup is the retrieval of a cookbook followed by the retrieval of its latest version. Each engine is given as many connections as lookups in flight, and the Jersey
+ * engine as many threads, which is what it needs to keep that many requests outstanding.
+ * <p />
+ * Run on its own, the comparison starts a {@link StubSupermarket} whose latency stands in for the distance to a real server:
+ *
+ * <pre>
+ * java com.github.jrh3k5.chef.client.stub.EngineComparison --concurrency 1000 --lookups 20000 --latency-ms 50 --cookbooks 10000
+ * </pre>
+ *
+ * @author Joshua Hyde
+ */
+
+public class EngineComparison {
+    private final String serviceUrl;
+    private final SyntheticCatalog catalog;
+
+    /**
+     * Create a comparison.
+     *
+     * @param serviceUrl
+     *            The URL of the API to be driven.
+     * @param catalog
+     *            The {@link SyntheticCatalog} held by the server, from which cookbooks are to be chosen.
+     */
+    public EngineComparison(String serviceUrl, SyntheticCatalog catalog) {
+        this.serviceUrl = serviceUrl;
+        this.catalog = catalog;
+    }
+
+    /**
+     * Run the comparison from the command line and print its results.
+     *
+     * @param args
+     *            The options of the run: {@code --concurrency}, {@code --lookups}, {@code --cookbooks} and {@code --versions}, as well as the fault options of {@link StubSupermarket#main(String[])}.
+     * @throws Exception
+     *             If the run fails.
+     */
+    public static void main(String[] args) throws Exception {
+        final Arguments arguments = new Arguments(args);
+        final SyntheticCatalog catalog = new SyntheticCatalog(arguments.getInt("cookbooks", 1000), arguments.getInt("versions", 10));
+        final int concurrency = arguments.getInt("concurrency", 500);
+        final int lookups = arguments.getInt("lookups", 10000);
+        final FaultProfile faultProfile = arguments.getInt("latency-ms", -1) < 0 ? new FaultProfile(50, 0, 0, 0) : arguments.getFaultProfile();
+
+        final StubSupermarket server = new StubSupermarket(catalog);
+        server.setFaultProfile(faultProfile);
+        server.start();
+        try {
+            System.out.println("Driving " + server.getServiceUrl() + " with " + concurrency + " lookups in flight and " + faultProfile);
+            final EngineComparison comparison = new EngineComparison(server.getServiceUrl(), catalog);
+            for (Engine engine : Engine.values()) {
+                // A short run first, so that neither engine is measured while its classes are loaded and compiled
+                comparison.run(engine, Math.min(concurrency, 50), Math.min(lookups, 500));
+                System.out.print(comparison.run(engine, concurrency, lookups).format());
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    /**
+     * Drive the server with one engine.
+     *
+     * @param engine
+     *            The {@link Engine} to be driven.
+     * @param concurrency
+     *            The number of lookups to be kept in flight.
+     * @param lookups
+     *            The total number of lookups to be made.
+     * @return A {@link Result} describing the run.
+     * @throws InterruptedException
+     *             If the calling thread is interrupted while waiting for the lookups to finish.
+     * @throws IllegalArgumentException
+     *             If the concurrency or number of lookups is less than 1.
+     */
+    public Result run(Engine engine, int concurrency, int lookups) throws InterruptedException {
+        if (concurrency < 1 || lookups < 1) {
+            throw new IllegalArgumentException("At least one lookup must be made and in flight: " + lookups + ", " + concurrency);
+        }
+
+        final Set<Thread> existingThreads = new HashSet<Thread>(Thread.getAllStackTraces().keySet());
+        final ThreadSampler sampler = new ThreadSampler(existingThreads);
+        final CookbookClient client = engine.create(serviceUrl, concurrency);
+        final Measurements measurements = new Measurements(lookups);
+        final Semaphore inFlight = new Semaphore(concurrency);
+        final String latestVersion = catalog.getVersionNumber(catalog.getVersionsPerCookbook() - 1);
+        final Thread samplerThread = new Thread(sampler, "engine-comparison-sampler");
+        samplerThread.setDaemon(true);
+        samplerThread.start();
+        final long startedAt = System.nanoTime();
+        try {
+            for (int lookup = 0; lookup < lookups; lookup++) {
+                inFlight.acquire();
+                lookup(client, catalog.getName(lookup % catalog.getCookbookCount()), latestVersion, new Measurement(measurements, inFlight));
+            }
+            measurements.finished.await();
+        } finally {
+            sampler.stop();
+            samplerThread.join();
+            try {
+                client.close();
+            } catch (IOException e) {
+                // Nothing more can be done with the client
+            }
+        }
+        return new Result(engine, concurrency, lookups, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt), measurements.notFound.get(), measurements.errors.get(),
+                sampler.peakThreads.get(), measurements.latency.snapshot());
+    }
+
+    /**
+     * Start a lookup of a cookbook and its latest version.
+     *
+     * @param client
+     *            The {@link CookbookClient} with which the lookup is to be made.
+     * @param name
+     *            The name of the cookbook.
+     * @param version
+     *            The latest version of the cookbook.
+     * @param measurement
+     *            The {@link Measurement} in which the lookup is to be recorded.
+     */
+    private static void lookup(CookbookClient client, String name, final String version, final Measurement measurement) {
+        try {
+            client.getCookbookAsync(name, new RetrievalCallback<Cookbook>() {
+                @Override
+                public void completed(Cookbook cookbook) {
+                    if (cookbook == null) {
+                        measurement.finish(measurement.measurements.notFound);
+                        return;
+                    }
+                    try {
+                        cookbook.getVersionAsync(version, new RetrievalCallback<Version>() {
+                            @Override
+                            public void completed(Version retrieved) {
+                                measurement.finish(retrieved == null ? measurement.measurements.notFound : null);
+                            }
+
+                            @Override
+                            public void failed(Throwable throwable) {
+                                measurement.finish(measurement.measurements.errors);
+                            }
+                        });
+                    } catch (RuntimeException e) {
+                        measurement.finish(measurement.measurements.errors);
+                    }
+                }
+
+                @Override
+                public void failed(Throwable throwable) {
+                    measurement.finish(measurement.measurements.errors);
+                }
+            });
+        } catch (RuntimeException e) {
+            measurement.finish(measurement.measurements.errors);
+        }
+    }
+
+    /**
+     * The engines that can be compared.
+     *
+     * @author Joshua Hyde
+     */
+    public static enum Engine {
+        /**
+         * The {@link JerseyCookbookClient}, whose asynchronous retrievals each occupy a thread of its pool.
+         */
+        JERSEY {
+            @Override
+            CookbookClient create(String serviceUrl, int concurrency) {
+                final JerseyCookbookClientConfiguration configuration = new JerseyCookbookClientConfiguration();
+                configuration.setAsyncThreadPoolSize(concurrency);
+                configuration.setMaxConnectionsPerRoute(concurrency);
+                configuration.setMaxConnectionsTotal(concurrency);
+                // Revalidated cookbooks would carry their resolved versions, sparing this engine requests that the other must make
+                configuration.setValidatorCacheSize(0);
+                return new JerseyCookbookClient(serviceUrl, configuration);
+            }
+        },
+        /**
+         * The {@link NioCookbookClient}, whose retrievals are multiplexed over a handful of I/O threads.
+         */
+        NIO {
+            @Override
+            CookbookClient create(String serviceUrl, int concurrency) {
+                final NioCookbookClientConfiguration configuration = new NioCookbookClientConfiguration();
+                configuration.setMaxConnectionsPerRoute(concurrency);
+                return new NioCookbookClient(serviceUrl, configuration);
+            }
+        };
+
+        /**
+         * Create a client of this engine.
+         *
+         * @param serviceUrl
+         *            The URL of the API to be driven.
+         * @param concurrency
+         *            The number of lookups the client is to keep in flight.
+         * @return A {@link CookbookClient} sized for the given concurrency.
+         */
+        abstract CookbookClient create(String serviceUrl, int concurrency);
+    }
+
+    /**
+     * The outcome of driving the server with one engine.
+     *
+     * @author Joshua Hyde
+     */
+    public static class Result {
+        private final Engine engine;
+        private final int concurrency;
+        private final long lookups;
+        private final long durationMs;
+        private final long notFound;
+        private final long errors;
+        private final int peakThreads;
+        private final LatencySnapshot latency;
+
+        /**
+         * Create a result.
+         *
+         * @param engine
+         *            The {@link Engine} that was driven.
+         * @param concurrency
+         *            The number of lookups that were kept in flight.
+         * @param lookups
+         *            The number of lookups that were made.
+         * @param durationMs
+         *            The number of milliseconds the lookups took.
+         * @param notFound
+         *            The number of lookups that found no cookbook or version.
+         * @param errors
+         *            The number of lookups that failed.
+         * @param peakThreads
+         *            The greatest number of threads started by the client at any one time.
+         * @param latency
+         *            A {@link LatencySnapshot} of the latency of the lookups.
+         */
+        public Result(Engine engine, int concurrency, long lookups, long durationMs, long notFound, long errors, int peakThreads, LatencySnapshot latency) {
+            this.engine = engine;
+            this.concurrency = concurrency;
+            this.lookups = lookups;
+            this.durationMs = durationMs;
+            this.notFound = notFound;
+            this.errors = errors;
+            this.peakThreads = peakThreads;
+            this.latency = latency;
+        }
+
+        /**
+         * Get the number of lookups that were kept in flight.
+         *
+         * @return The number of lookups that were kept in flight.
+         */
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        /**
+         * Get the number of milliseconds the lookups took.
+         *
+         * @return The number of milliseconds the lookups took.
+         */
+        public long getDurationMs() {
+            return durationMs;
+        }
+
+        /**
+         * Get the engine that was driven.
+         *
+         * @return The {@link Engine} that was driven.
+         */
+        public Engine getEngine() {
+            return engine;
+        }
+
+        /**
+         * Get the number of lookups that failed.
+         *
+         * @return The number of lookups that failed.
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * Get the latency of the lookups.
+         *
+         * @return A {@link LatencySnapshot} of the latency of the lookups, from the request for the cookbook to the retrieval of its version.
+         */
+        public LatencySnapshot getLatency() {
+            return latency;
+        }
+
+        /**
+         * Get the number of lookups that were made.
+         *
+         * @return The number of lookups that were made.
+         */
+        public long getLookups() {
+            return lookups;
+        }
+
+        /**
+         * Get the number of lookups that found no cookbook or version.
+         *
+         * @return The number of lookups that found no cookbook or version.
+         */
+        public long getNotFound() {
+            return notFound;
+        }
+
+        /**
+         * Get the greatest number of threads started by the client at any one time.
+         *
+         * @return The greatest number of threads, other than those of the server, that were running during the run but not before it.
+         */
+        public int getPeakThreads() {
+            return peakThreads;
+        }
+
+        /**
+         * Get the throughput of the run.
+         *
+         * @return The number of lookups completed per second.
+         */
+        public double getThroughput() {
+            return durationMs == 0 ? 0 : lookups * 1000.0 / durationMs;
+        }
+
+        /**
+         * Format the result for display.
+         *
+         * @return A line summarizing the result.
+         */
+        public String format() {
+            return String.format("%-6s %5d in flight: %d lookups in %.1f s (%.0f/s), %d not found, %d errors, p50 %.1f ms, p99 %.1f ms, %d client threads%n", engine, concurrency, lookups,
+                    durationMs / 1000.0, getThroughput(), notFound, errors, latency.getP50Ms(), latency.getP99Ms(), peakThreads);
+        }
+
+        @Override
+        public String toString() {
+            return ToStringBuilder.reflectionToString(this);
+        }
+    }
+
+    /**
+     * The measurements of a run.
+     *
+     * @author Joshua Hyde
+     */
+    private static class Measurements {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong notFound = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final CountDownLatch finished;
+
+        /**
+         * Create measurements.
+         *
+         * @param lookups
+         *            The number of lookups to be made.
+         */
+        public Measurements(int lookups) {
+            this.finished = new CountDownLatch(lookups);
+        }
+    }
+
+    /**
+     * The measurement of a single lookup.
+     *
+     * @author Joshua Hyde
+     */
+    private static class Measurement {
+        private final Measurements measurements;
+        private final Semaphore inFlight;
+        private final long startedAt = System.nanoTime();
+
+        /**
+         * Create a measurement, starting its clock.
+         *
+         * @param measurements
+         *            The {@link Measurements} of the run.
+         * @param inFlight
+         *            The {@link Semaphore} whose permit the lookup holds.
+         */
+        public Measurement(Measurements measurements, Semaphore inFlight) {
+            this.measurements = measurements;
+            this.inFlight = inFlight;
+        }
+
+        /**
+         * Record the end of the lookup and release its permit.
+         *
+         * @param outcome
+         *            The counter to be incremented for the lookup; {@code null} if the lookup succeeded.
+         */
+        public void finish(AtomicLong outcome) {
+            measurements.latency.record(System.nanoTime() - startedAt);
+            if (outcome != null) {
+                outcome.incrementAndGet();
+            }
+            inFlight.release();
+            measurements.finished.countDown();
+        }
+    }
+
+    /**
+     * A task that samples the number of threads started since a run began, other than those of the server.
+     *
+     * @author Joshua Hyde
+     */
+    private static class ThreadSampler implements Runnable {
+        private final Set<Thread> existingThreads;
+        private final AtomicInteger peakThreads = new AtomicInteger();
+        private volatile boolean stopped;
+
+        /**
+         * Create a sampler.
+         *
+         * @param existingThreads
+         *            The threads that were running before the run began.
+         */
+        public ThreadSampler(Set<Thread> existingThreads) {
+            this.existingThreads = existingThreads;
+        }
+
+        @Override
+        public void run() {
+            do {
+                int threads = 0;
+                for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                    if (thread != Thread.currentThread() && !existingThreads.contains(thread) && !thread.getName().startsWith(StubSupermarket.THREAD_NAME_PREFIX)) {
+                        threads++;
+                    }
+                }
+                if (threads > peakThreads.get()) {
+                    peakThreads.set(threads);
+                }
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            } while (!stopped);
+        }
+
+        /**
+         * Stop sampling.
+         */
+        public void stop() {
+            stopped = true;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.stub;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.jrh3k5.chef.client.nio.NioCookbookClientConfiguration;
+import com.github.jrh3k5.chef.client.stub.EngineComparison.Engine;
+import com.github.jrh3k5.chef.client.stub.EngineComparison.Result;
+
+/**
+ * Unit tests for {@link EngineComparison}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class EngineComparisonTest {
+    private final SyntheticCatalog catalog = new SyntheticCatalog(100, 5);
+    private StubSupermarket server;
+
+    /**
+     * Start the server to be driven.
+     *
+     * @throws Exception
+     *             If any errors occur during the setup.
+     */
+    @Before
+    public void setUp() throws Exception {
+        server = new StubSupermarket(catalog);
+        server.setFaultProfile(new FaultProfile(20, 0, 0, 0));
+        server.start();
+    }
+
+    /**
+     * Stop the server.
+     *
+     * @throws Exception
+     *             If any errors occur during the teardown.
+     */
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    /**
+     * Both engines should complete every lookup, the NIO engine on its fixed set of threads and the Jersey engine on a thread per lookup in flight.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testRun() throws Exception {
+        final EngineComparison comparison = new EngineComparison(server.getServiceUrl(), catalog);
+        final Result jersey = comparison.run(Engine.JERSEY, 20, 200);
+        final Result nio = comparison.run(Engine.NIO, 20, 200);
+        for (Result result : new Result[] { jersey, nio }) {
+            assertThat(result.getLookups()).isEqualTo(200L);
+            assertThat(result.getErrors()).isZero();
+            assertThat(result.getNotFound()).isZero();
+            assertThat(result.getLatency().getCount()).isEqualTo(200L);
+            assertThat(result.getLatency().getP50Ms()).isGreaterThanOrEqualTo(40.0);
+            assertThat(result.format()).contains(result.getEngine().name()).contains("200 lookups");
+        }
+
+        assertThat(nio.getPeakThreads()).isLessThanOrEqualTo(NioCookbookClientConfiguration.DEFAULT_IO_THREADS + NioCookbookClientConfiguration.DEFAULT_RESOLVER_THREADS);
+        assertThat(jersey.getPeakThreads()).isGreaterThan(nio.getPeakThreads());
+    }
+}
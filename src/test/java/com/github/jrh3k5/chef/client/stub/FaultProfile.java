@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.stub;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * The latency and failures a {@link StubSupermarket} injects into the responses it serves.
+ *
+ * @author Joshua Hyde
+ */
+
+public class FaultProfile {
+    /**
+     * A profile that injects nothing.
+     */
+    public static final FaultProfile NONE = new FaultProfile(0, 0, 0, 0);
+    private final long latencyMs;
+    private final long latencyJitterMs;
+    private final double errorRate;
+    private final double notFoundRate;
+
+    /**
+     * Create a profile.
+     *
+     * @param latencyMs
+     *            The number of milliseconds by which every response is to be delayed.
+     * @param latencyJitterMs
+     *            The maximum number of milliseconds, chosen uniformly at random per response, by which every response is to be delayed in addition to the fixed latency.
+     * @param errorRate
+     *            The fraction, between 0 and 1, of requests to be answered with {@code 503 Service Unavailable}.
+     * @param notFoundRate
+     *            The fraction, between 0 and 1, of the remaining requests to be answered with {@code 404 Not Found}, as if the requested document did not exist.
+     * @throws IllegalArgumentException
+     *             If either latency is negative or either rate is outside of [0, 1].
+     */
+    public FaultProfile(long latencyMs, long latencyJitterMs, double errorRate, double notFoundRate) {
+        if (latencyMs < 0 || latencyJitterMs < 0) {
+            throw new IllegalArgumentException("Latency cannot be negative: " + latencyMs + " ms, jitter " + latencyJitterMs + " ms");
+        }
+        if (!(errorRate >= 0 && errorRate <= 1) || !(notFoundRate >= 0 && notFoundRate <= 1)) {
+            throw new IllegalArgumentException("Rates must be between 0 and 1: error rate " + errorRate + ", not-found rate " + notFoundRate);
+        }
+        this.latencyMs = latencyMs;
+        this.latencyJitterMs = latencyJitterMs;
+        this.errorRate = errorRate;
+        this.notFoundRate = notFoundRate;
+    }
+
+    /**
+     * Get the fraction of requests answered with an error.
+     *
+     * @return The fraction, between 0 and 1, of requests answered with {@code 503 Service Unavailable}.
+     */
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    /**
+     * Get the maximum random delay added to every response.
+     *
+     * @return The maximum random delay, in milliseconds.
+     */
+    public long getLatencyJitterMs() {
+        return latencyJitterMs;
+    }
+
+    /**
+     * Get the fixed delay of every response.
+     *
+     * @return The fixed delay, in milliseconds.
+     */
+    public long getLatencyMs() {
+        return latencyMs;
+    }
+
+    /**
+     * Get the fraction of requests answered as if the requested document did not exist.
+     *
+     * @return The fraction, between 0 and 1, of requests that did not fail with an error that are answered with {@code 404 Not Found}.
+     */
+    public double getNotFoundRate() {
+        return notFoundRate;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.stub;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.jrh3k5.chef.client.Cookbook;
+import com.github.jrh3k5.chef.client.jersey.JerseyCookbookClient;
+import com.github.jrh3k5.chef.client.jersey.JerseyCookbookClientConfiguration;
+import com.github.jrh3k5.chef.client.metrics.LatencyHistogram;
+
+/**
+ * A load generator that drives concurrent {@link JerseyCookbookClient} instances, each on its own thread, against a server holding a {@link SyntheticCatalog}. Every client repeatedly looks up a
+ * cookbook chosen uniformly at random and then its latest version; neither the first lookup of each client, which is made before the run starts, nor the lookups made during the warm-up are
+ * measured.
+ * <p />
+ * Run on its own, the harness starts a {@link StubSupermarket} unless it is given the URL of a server to drive:
+ *
+ * <pre>
+ * java com.github.jrh3k5.chef.client.stub.LoadHarness --clients 32 --warmup-s 5 --duration-s 30 --cookbooks 10000 --latency-ms 20 --jitter-ms 10
+ * java com.github.jrh3k5.chef.client.stub.LoadHarness --url http://stub-host:8080/api/v1/ --cookbooks 10000 --clients 64
+ * </pre>
+ *
+ * @author Joshua Hyde
+ */
+
+public class LoadHarness {
+    private final String serviceUrl;
+    private final SyntheticCatalog catalog;
+    private final JerseyCookbookClientConfiguration configuration;
+
+    /**
+     * Create a harness.
+     *
+     * @param serviceUrl
+     *            The URL of the API to be driven.
+     * @param catalog
+     *            The {@link SyntheticCatalog} held by the server, from which cookbooks are to be chosen.
+     * @param configuration
+     *            The {@link JerseyCookbookClientConfiguration} with which each client is to be created.
+     */
+    public LoadHarness(String serviceUrl, SyntheticCatalog catalog, JerseyCookbookClientConfiguration configuration) {
+        this.serviceUrl = serviceUrl;
+        this.catalog = catalog;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Run the harness from the command line and print its report.
+     *
+     * @param args
+     *            The options of the run: {@code --url}, {@code --clients}, {@code --warmup-s}, {@code --duration-s}, {@code --cookbooks} and {@code --versions}, as well as the fault options of
+     *            {@link StubSupermarket#main(String[])} when no URL is given.
+     * @throws Exception
+     *             If the run fails.
+     */
+    public static void main(String[] args) throws Exception {
+        final Arguments arguments = new Arguments(args);
+        final SyntheticCatalog catalog = new SyntheticCatalog(arguments.getInt("cookbooks", 1000), arguments.getInt("versions", 10));
+        final int clients = arguments.getInt("clients", 16);
+        final JerseyCookbookClientConfiguration configuration = new JerseyCookbookClientConfiguration();
+
+        StubSupermarket server = null;
+        String serviceUrl = arguments.getString("url");
+        if (serviceUrl == null) {
+            server = new StubSupermarket(catalog);
+            server.setFaultProfile(arguments.getFaultProfile());
+            server.start();
+            serviceUrl = server.getServiceUrl();
+        }
+        try {
+            System.out.println("Driving " + serviceUrl + " with " + clients + " clients");
+            final LoadReport report = new LoadHarness(serviceUrl, catalog, configuration).run(clients, TimeUnit.SECONDS.toMillis(arguments.getInt("warmup-s", 5)),
+                    TimeUnit.SECONDS.toMillis(arguments.getInt("duration-s", 30)));
+            System.out.print(report.format());
+            if (server != null) {
+                System.out.println("Server: " + server.getRequestCount() + " requests, " + server.getNotModifiedCount() + " not modified, " + server.getInjectedErrorCount() + " injected errors, "
+                        + server.getInjectedNotFoundCount() + " injected not found");
+            }
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    /**
+     * Drive the server.
+     *
+     * @param clients
+     *            The number of concurrent clients.
+     * @param warmupMs
+     *            The number of milliseconds for which the clients are to run before their lookups are measured.
+     * @param durationMs
+     *            The number of milliseconds for which the lookups of the clients are to be measured.
+     * @return A {@link LoadReport} of the measured lookups.
+     * @throws InterruptedException
+     *             If the calling thread is interrupted while waiting for the clients to finish.
+     * @throws IllegalArgumentException
+     *             If the number of clients is less than 1.
+     */
+    public LoadReport run(int clients, long warmupMs, long durationMs) throws InterruptedException {
+        if (clients < 1) {
+            throw new IllegalArgumentException("At least one client is required: " + clients);
+        }
+
+        final Measurements measurements = new Measurements();
+        final CountDownLatch ready = new CountDownLatch(clients);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<Thread>(clients);
+        final List<JerseyCookbookClient> cookbookClients = new ArrayList<JerseyCookbookClient>(clients);
+        final long[] window = new long[2];
+        try {
+            for (int clientIndex = 0; clientIndex < clients; clientIndex++) {
+                final JerseyCookbookClient client = new JerseyCookbookClient(serviceUrl, configuration);
+                cookbookClients.add(client);
+                final Random random = new Random(clientIndex);
+                final Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Bootstrapping a client takes far longer than a lookup, so each client makes its first lookup before the clock starts
+                        lookup(client, catalog.getName(random.nextInt(catalog.getCookbookCount())), null);
+                        ready.countDown();
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        final long measureFrom = window[0];
+                        final long measureUntil = window[1];
+                        long now;
+                        while ((now = System.nanoTime()) < measureUntil && !Thread.currentThread().isInterrupted()) {
+                            lookup(client, catalog.getName(random.nextInt(catalog.getCookbookCount())), now >= measureFrom ? measurements : null);
+                        }
+                    }
+                }, "load-client-" + clientIndex);
+                threads.add(thread);
+                thread.start();
+            }
+
+            ready.await();
+            window[0] = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(warmupMs);
+            window[1] = window[0] + TimeUnit.MILLISECONDS.toNanos(durationMs);
+            // Counting down the latch publishes the window to the clients
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } finally {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            for (JerseyCookbookClient client : cookbookClients) {
+                try {
+                    client.close();
+                } catch (IOException e) {
+                    // Nothing more can be done with the client
+                }
+            }
+        }
+        return new LoadReport(clients, durationMs, measurements.lookups.get(), measurements.notFound.get(), measurements.errors.get(), measurements.cookbookLatency.snapshot(),
+                measurements.versionLatency.snapshot());
+    }
+
+    /**
+     * Look up a cookbook and its latest version.
+     *
+     * @param client
+     *            The {@link JerseyCookbookClient} with which the lookup is to be made.
+     * @param name
+     *            The name of the cookbook.
+     * @param measurements
+     *            The {@link Measurements} in which the lookup is to be recorded; {@code null} if it is not to be measured.
+     */
+    private static void lookup(JerseyCookbookClient client, String name, Measurements measurements) {
+        try {
+            final long startedAt = System.nanoTime();
+            final Cookbook cookbook = client.getCookbook(name);
+            final long cookbookRetrievedAt = System.nanoTime();
+            if (cookbook != null) {
+                cookbook.getLatestVersion();
+            }
+            if (measurements == null) {
+                return;
+            }
+            measurements.cookbookLatency.record(cookbookRetrievedAt - startedAt);
+            if (cookbook == null) {
+                measurements.notFound.incrementAndGet();
+            } else {
+                measurements.versionLatency.record(System.nanoTime() - cookbookRetrievedAt);
+            }
+            measurements.lookups.incrementAndGet();
+        } catch (RuntimeException e) {
+            if (measurements != null) {
+                measurements.errors.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * The measurements shared by the clients of a run.
+     *
+     * @author Joshua Hyde
+     */
+    private static class Measurements {
+        private final LatencyHistogram cookbookLatency = new LatencyHistogram();
+        private final LatencyHistogram versionLatency = new LatencyHistogram();
+        private final AtomicLong lookups = new AtomicLong();
+        private final AtomicLong notFound = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.stub;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.jrh3k5.chef.client.jersey.JerseyCookbookClientConfiguration;
+
+/**
+ * Unit tests for {@link LoadHarness}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class LoadHarnessTest {
+    private final SyntheticCatalog catalog = new SyntheticCatalog(100, 5);
+    private StubSupermarket server;
+
+    /**
+     * Start the server to be driven.
+     *
+     * @throws Exception
+     *             If any errors occur during the setup.
+     */
+    @Before
+    public void setUp() throws Exception {
+        server = new StubSupermarket(catalog);
+        server.start();
+    }
+
+    /**
+     * Stop the server.
+     *
+     * @throws Exception
+     *             If any errors occur during the teardown.
+     */
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    /**
+     * A run should report the lookups made after the warm-up, separating missing cookbooks and failures from their latencies.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testRun() throws Exception {
+        server.setFaultProfile(new FaultProfile(1, 1, 0.1, 0.1));
+        final JerseyCookbookClientConfiguration configuration = new JerseyCookbookClientConfiguration();
+        configuration.getResilienceConfiguration().setMaxRetries(0);
+
+        final LoadReport report = new LoadHarness(server.getServiceUrl(), catalog, configuration).run(4, 100, 500);
+        assertThat(report.getClients()).isEqualTo(4);
+        assertThat(report.getLookups()).isGreaterThan(0);
+        assertThat(report.getNotFound()).isGreaterThan(0).isLessThan(report.getLookups());
+        assertThat(report.getErrors()).isGreaterThan(0);
+        assertThat(report.getCookbookLatency().getCount()).isEqualTo(report.getLookups());
+        assertThat(report.getVersionLatency().getCount()).isEqualTo(report.getLookups() - report.getNotFound());
+        assertThat(report.getCookbookLatency().getP50Ms()).isGreaterThanOrEqualTo(1.0);
+        assertThat(report.getThroughput()).isEqualTo(report.getLookups() * 2.0);
+        assertThat(report.format()).contains("4 clients").contains("cookbook").contains("version");
+    }
+}
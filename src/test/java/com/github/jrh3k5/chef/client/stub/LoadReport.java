@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.stub;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+import com.github.jrh3k5.chef.client.metrics.LatencySnapshot;
+
+/**
+ * The outcome of a run of a {@link LoadHarness}. A lookup is the retrieval of a cookbook followed, if the cookbook was found, by the retrieval of its latest version.
+ *
+ * @author Joshua Hyde
+ */
+
+public class LoadReport {
+    private final int clients;
+    private final long durationMs;
+    private final long lookups;
+    private final long notFound;
+    private final long errors;
+    private final LatencySnapshot cookbookLatency;
+    private final LatencySnapshot versionLatency;
+
+    /**
+     * Create a report.
+     *
+     * @param clients
+     *            The number of concurrent clients.
+     * @param durationMs
+     *            The length, in milliseconds, of the measured part of the run.
+     * @param lookups
+     *            The number of lookups completed, including those of cookbooks that were not found.
+     * @param notFound
+     *            The number of lookups of cookbooks that were not found.
+     * @param errors
+     *            The number of lookups that failed.
+     * @param cookbookLatency
+     *            A {@link LatencySnapshot} of the time taken to retrieve cookbooks.
+     * @param versionLatency
+     *            A {@link LatencySnapshot} of the time taken to retrieve the latest versions of cookbooks.
+     */
+    public LoadReport(int clients, long durationMs, long lookups, long notFound, long errors, LatencySnapshot cookbookLatency, LatencySnapshot versionLatency) {
+        this.clients = clients;
+        this.durationMs = durationMs;
+        this.lookups = lookups;
+        this.notFound = notFound;
+        this.errors = errors;
+        this.cookbookLatency = cookbookLatency;
+        this.versionLatency = versionLatency;
+    }
+
+    /**
+     * Get the number of concurrent clients.
+     *
+     * @return The number of concurrent clients.
+     */
+    public int getClients() {
+        return clients;
+    }
+
+    /**
+     * Get the time taken to retrieve cookbooks.
+     *
+     * @return A {@link LatencySnapshot} of the time taken to retrieve cookbooks, found or not.
+     */
+    public LatencySnapshot getCookbookLatency() {
+        return cookbookLatency;
+    }
+
+    /**
+     * Get the length of the measured part of the run.
+     *
+     * @return The length of the measured part of the run, in milliseconds.
+     */
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    /**
+     * Get the number of lookups that failed.
+     *
+     * @return The number of lookups that failed.
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Get the number of lookups completed.
+     *
+     * @return The number of lookups completed, including those of cookbooks that were not found.
+     */
+    public long getLookups() {
+        return lookups;
+    }
+
+    /**
+     * Get the number of lookups of cookbooks that were not found.
+     *
+     * @return The number of lookups of cookbooks that were not found.
+     */
+    public long getNotFound() {
+        return notFound;
+    }
+
+    /**
+     * Get the rate at which lookups were completed.
+     *
+     * @return The number of lookups completed per second.
+     */
+    public double getThroughput() {
+        return durationMs == 0 ? 0 : lookups * 1000.0 / durationMs;
+    }
+
+    /**
+     * Get the time taken to retrieve the latest versions of cookbooks.
+     *
+     * @return A {@link LatencySnapshot} of the time taken to retrieve the latest versions of cookbooks.
+     */
+    public LatencySnapshot getVersionLatency() {
+        return versionLatency;
+    }
+
+    /**
+     * Format the report for reading.
+     *
+     * @return A multi-line summary of the report.
+     */
+    public String format() {
+        final StringBuilder summary = new StringBuilder();
+        summary.append(String.format("%d clients, %.1f s: %d lookups (%.1f/s), %d not found, %d errors%n", clients, durationMs / 1000.0, lookups, getThroughput(), notFound, errors));
+        summary.append(String.format("%-10s %10s %10s %10s %10s %10s %10s%n", "", "count", "mean ms", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        appendLatency(summary, "cookbook", cookbookLatency);
+        appendLatency(summary, "version", versionLatency);
+        return summary.toString();
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+
+    /**
+     * Append a row of latencies to a summary.
+     *
+     * @param summary
+     *            The {@link StringBuilder} to which the row is to be appended.
+     * @param label
+     *            The label of the row.
+     * @param latency
+     *            The {@link LatencySnapshot} to be appended.
+     */
+    private static void appendLatency(StringBuilder summary, String label, LatencySnapshot latency) {
+        summary.append(String.format("%-10s %10d %10.2f %10.2f %10.2f %10.2f %10.2f%n", label, latency.getCount(), latency.getMeanMs(), latency.getP50Ms(), latency.getP90Ms(), latency.getP99Ms(),
+                latency.getMaxMs()));
+    }
+}
@@ -0,0 +1,479 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.stub;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An embeddable stand-in for a Chef cookbook server. It serves the cookbook, version, download and listing endpoints of the v1 API for a {@link SyntheticCatalog}, honors {@code If-None-Match},
+ * and injects latency, errors and missing documents according to a {@link FaultProfile} that can be changed while it runs. It can also be told to gzip its JSON documents for clients that
+ * accept them.
+ * <p />
+ * The server can also be run on its own, to be driven by a {@link LoadHarness} or any other client:
+ *
+ * <pre>
+ * java com.github.jrh3k5.chef.client.stub.StubSupermarket --port 8080 --cookbooks 10000 --versions 20 --latency-ms 20 --error-rate 0.01
+ * </pre>
+ *
+ * @author Joshua Hyde
+ */
+
+public class StubSupermarket implements Closeable {
+    /**
+     * The size, in bytes, of every cookbook archive served.
+     */
+    static final int ARCHIVE_SIZE = 1024;
+    /**
+     * The prefix of the names of the threads on which requests are served.
+     */
+    static final String THREAD_NAME_PREFIX = "stub-supermarket-";
+    private static final String API_PATH = "/api/v1/";
+    private static final String NOT_FOUND_BODY = "{\"error_messages\":[\"Resource not found\"],\"error_code\":\"NOT_FOUND\"}";
+    private static final ThreadLocal<Random> RANDOM = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+
+    static {
+        // Without TCP_NODELAY, the JDK's server holds back small responses until the previous one is acknowledged, which adds tens of milliseconds to every keep-alive request
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final SyntheticCatalog catalog;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            // Named so that the threads of the server can be told apart from those of the clients driving it
+            final Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong injectedNotFound = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong compressed = new AtomicLong();
+    private volatile FaultProfile faultProfile = FaultProfile.NONE;
+    private volatile boolean compressionEnabled;
+
+    /**
+     * Create a server listening on an ephemeral port of the loopback interface.
+     *
+     * @param catalog
+     *            The {@link SyntheticCatalog} to be served.
+     * @throws IOException
+     *             If the server cannot be bound.
+     */
+    public StubSupermarket(SyntheticCatalog catalog) throws IOException {
+        this(catalog, new InetSocketAddress(InetAddress.getByName("localhost"), 0));
+    }
+
+    /**
+     * Create a server.
+     *
+     * @param catalog
+     *            The {@link SyntheticCatalog} to be served.
+     * @param address
+     *            The {@link InetSocketAddress} on which the server is to listen.
+     * @throws IOException
+     *             If the server cannot be bound.
+     */
+    public StubSupermarket(SyntheticCatalog catalog, InetSocketAddress address) throws IOException {
+        this.catalog = catalog;
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext(API_PATH, new ApiHandler());
+    }
+
+    /**
+     * Run a server until the process is killed.
+     *
+     * @param args
+     *            The options of the server: {@code --port}, {@code --cookbooks}, {@code --versions}, {@code --latency-ms}, {@code --jitter-ms}, {@code --error-rate} and {@code --not-found-rate}.
+     * @throws Exception
+     *             If the server cannot be started.
+     */
+    public static void main(String[] args) throws Exception {
+        final Arguments arguments = new Arguments(args);
+        final SyntheticCatalog catalog = new SyntheticCatalog(arguments.getInt("cookbooks", 1000), arguments.getInt("versions", 10));
+        final StubSupermarket server = new StubSupermarket(catalog, new InetSocketAddress(arguments.getInt("port", 8080)));
+        server.setFaultProfile(arguments.getFaultProfile());
+        server.start();
+        System.out.println("Serving " + catalog.getCookbookCount() + " cookbooks at " + server.getServiceUrl() + " with " + server.getFaultProfile());
+    }
+
+    /**
+     * Start serving requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stop serving requests, abandoning any that are in progress.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Get the catalog being served.
+     *
+     * @return The {@link SyntheticCatalog} being served.
+     */
+    public SyntheticCatalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * Get the number of responses sent gzipped.
+     *
+     * @return The number of responses whose body was sent with gzip content encoding.
+     */
+    public long getCompressedCount() {
+        return compressed.get();
+    }
+
+    /**
+     * Get the faults being injected.
+     *
+     * @return The {@link FaultProfile} applied to every request.
+     */
+    public FaultProfile getFaultProfile() {
+        return faultProfile;
+    }
+
+    /**
+     * Get the number of requests answered with an injected error.
+     *
+     * @return The number of requests answered with an injected error.
+     */
+    public long getInjectedErrorCount() {
+        return injectedErrors.get();
+    }
+
+    /**
+     * Get the number of requests answered as if the requested document did not exist even though it did.
+     *
+     * @return The number of requests answered with an injected {@code 404 Not Found}.
+     */
+    public long getInjectedNotFoundCount() {
+        return injectedNotFound.get();
+    }
+
+    /**
+     * Get the number of requests answered with {@code 304 Not Modified}.
+     *
+     * @return The number of requests answered with {@code 304 Not Modified}.
+     */
+    public long getNotModifiedCount() {
+        return notModified.get();
+    }
+
+    /**
+     * Get the number of requests received.
+     *
+     * @return The number of requests received.
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Get the URL of the API served, as it is to be given to a client.
+     *
+     * @return The URL of the API, ending in a slash.
+     */
+    public String getServiceUrl() {
+        final InetSocketAddress address = server.getAddress();
+        final InetAddress host = address.getAddress();
+        final String hostName;
+        if (host.isAnyLocalAddress() || host.isLoopbackAddress()) {
+            hostName = "localhost";
+        } else if (host instanceof Inet6Address) {
+            hostName = "[" + host.getHostAddress() + "]";
+        } else {
+            hostName = host.getHostAddress();
+        }
+        return "http://" + hostName + ":" + address.getPort() + API_PATH;
+    }
+
+    /**
+     * Set whether JSON documents are to be gzipped for clients that accept gzip content encoding. Archives, being gzipped already, are never compressed again.
+     *
+     * @param compressionEnabled
+     *            {@code true} if JSON documents are to be gzipped when the client accepts it; {@code false} if they are always to be sent as they are.
+     */
+    public void setCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    /**
+     * Set the faults to be injected. The profile applies to every request received after it is set.
+     *
+     * @param faultProfile
+     *            The {@link FaultProfile} to be applied.
+     */
+    public void setFaultProfile(FaultProfile faultProfile) {
+        this.faultProfile = faultProfile;
+    }
+
+    /**
+     * Delay a response by the latency of a fault profile.
+     *
+     * @param profile
+     *            The {@link FaultProfile} whose latency is to be applied.
+     * @return {@code false} if the calling thread was interrupted while waiting.
+     */
+    private static boolean delay(FaultProfile profile) {
+        long delayMs = profile.getLatencyMs();
+        if (profile.getLatencyJitterMs() > 0) {
+            delayMs += (long) (RANDOM.get().nextDouble() * (profile.getLatencyJitterMs() + 1));
+        }
+        if (delayMs == 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(delayMs);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Parse the query of a request.
+     *
+     * @param query
+     *            The raw query of the request; may be {@code null}.
+     * @return A {@link Map} of the names of the query parameters to their values.
+     */
+    private static Map<String, String> parseQuery(String query) {
+        final Map<String, String> parameters = new HashMap<String, String>();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                final int separator = parameter.indexOf('=');
+                if (separator > 0) {
+                    parameters.put(parameter.substring(0, separator), parameter.substring(separator + 1));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Parse a non-negative integer query parameter.
+     *
+     * @param parameters
+     *            A {@link Map} of the query parameters.
+     * @param name
+     *            The name of the parameter.
+     * @param defaultValue
+     *            The value to be used if the parameter is absent or invalid.
+     * @return The value of the parameter.
+     */
+    private static int parseInt(Map<String, String> parameters, String name, int defaultValue) {
+        final String value = parameters.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            final int parsed = Integer.parseInt(value);
+            return parsed < 0 ? defaultValue : parsed;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Send a response and end the exchange.
+     *
+     * @param exchange
+     *            The {@link HttpExchange} to which the response is to be sent.
+     * @param status
+     *            The status of the response.
+     * @param contentType
+     *            The type of the body.
+     * @param body
+     *            The body of the response.
+     * @throws IOException
+     *             If the response cannot be sent.
+     */
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        final OutputStream responseBody = exchange.getResponseBody();
+        try {
+            responseBody.write(body);
+        } finally {
+            responseBody.close();
+        }
+    }
+
+    /**
+     * Send a JSON response, gzipped if {@link #setCompressionEnabled(boolean) enabled} and accepted by the client, and end the exchange.
+     *
+     * @param exchange
+     *            The {@link HttpExchange} to which the response is to be sent.
+     * @param status
+     *            The status of the response.
+     * @param json
+     *            The body of the response.
+     * @throws IOException
+     *             If the response cannot be sent.
+     */
+    private void respondJson(HttpExchange exchange, int status, String json) throws IOException {
+        final byte[] body = json.getBytes("UTF-8");
+        final String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (!compressionEnabled || acceptEncoding == null || !acceptEncoding.contains("gzip")) {
+            respond(exchange, status, "application/json", body);
+            return;
+        }
+
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(body.length / 4);
+        final GZIPOutputStream gzip = new GZIPOutputStream(buffer);
+        gzip.write(body);
+        gzip.close();
+        compressed.incrementAndGet();
+        exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        respond(exchange, status, "application/json", buffer.toByteArray());
+    }
+
+    /**
+     * The handler of every request made to the API.
+     *
+     * @author Joshua Hyde
+     */
+    private class ApiHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                exchange.getRequestBody().close();
+                requests.incrementAndGet();
+                final FaultProfile profile = faultProfile;
+                if (!delay(profile)) {
+                    return;
+                }
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    exchange.getResponseHeaders().set("Allow", "GET");
+                    respondJson(exchange, 405, "{}");
+                    return;
+                }
+                if (profile.getErrorRate() > 0 && RANDOM.get().nextDouble() < profile.getErrorRate()) {
+                    injectedErrors.incrementAndGet();
+                    respondJson(exchange, 503, "{}");
+                    return;
+                }
+
+                final String[] segments = exchange.getRequestURI().getPath().substring(API_PATH.length()).split("/");
+                if (segments.length == 1 && "cookbooks".equals(segments[0])) {
+                    final Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+                    respondJson(exchange, 200, catalog.renderPage(getServiceUrl(exchange), parseInt(query, "start", 0), parseInt(query, "items", 10), "recently_updated".equals(query.get("order"))));
+                    return;
+                }
+
+                final int index = segments.length >= 2 && "cookbooks".equals(segments[0]) ? catalog.getIndex(segments[1]) : -1;
+                final int versionIndex = segments.length >= 4 && "versions".equals(segments[2]) ? catalog.getVersionIndex(segments[3].replace('_', '.')) : -1;
+                final boolean found;
+                switch (segments.length) {
+                case 2:
+                    found = index >= 0;
+                    break;
+                case 4:
+                    found = index >= 0 && versionIndex >= 0;
+                    break;
+                case 5:
+                    found = index >= 0 && versionIndex >= 0 && "download".equals(segments[4]);
+                    break;
+                default:
+                    found = false;
+                }
+                if (!found) {
+                    respondJson(exchange, 404, NOT_FOUND_BODY);
+                    return;
+                }
+                if (profile.getNotFoundRate() > 0 && RANDOM.get().nextDouble() < profile.getNotFoundRate()) {
+                    injectedNotFound.incrementAndGet();
+                    respondJson(exchange, 404, NOT_FOUND_BODY);
+                    return;
+                }
+
+                if (segments.length == 5) {
+                    final byte[] archive = new byte[ARCHIVE_SIZE];
+                    new Random(((long) index << 32) | versionIndex).nextBytes(archive);
+                    respond(exchange, 200, "application/x-gzip", archive);
+                    return;
+                }
+
+                final String entityTag = "\"" + index + (segments.length == 4 ? "-" + versionIndex : "") + "-" + catalog.getVersionsPerCookbook() + "\"";
+                exchange.getResponseHeaders().set("ETag", entityTag);
+                if (entityTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    notModified.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                    return;
+                }
+                final String serviceUrl = getServiceUrl(exchange);
+                respondJson(exchange, 200, segments.length == 2 ? catalog.renderCookbook(serviceUrl, index) : catalog.renderVersion(serviceUrl, index, versionIndex));
+            } finally {
+                exchange.close();
+            }
+        }
+
+        /**
+         * Get the URL of the API as the client of an exchange addressed it, so that the URLs in documents can be followed from wherever the client is.
+         *
+         * @param exchange
+         *            The {@link HttpExchange} being answered.
+         * @return The URL of the API, ending in a slash.
+         */
+        private String getServiceUrl(HttpExchange exchange) {
+            final String host = exchange.getRequestHeaders().getFirst("Host");
+            return host == null ? StubSupermarket.this.getServiceUrl() : "http://" + host + API_PATH;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.stub;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.jrh3k5.chef.client.CatalogCallback;
+import com.github.jrh3k5.chef.client.CatalogEntry;
+import com.github.jrh3k5.chef.client.CatalogSyncResult;
+import com.github.jrh3k5.chef.client.Cookbook;
+import com.github.jrh3k5.chef.client.Cookbook.Version;
+import com.github.jrh3k5.chef.client.CookbookClient.CookbookRetrievalException;
+import com.github.jrh3k5.chef.client.jersey.JerseyCookbookClient;
+import com.github.jrh3k5.chef.client.jersey.JerseyCookbookClientConfiguration;
+
+/**
+ * Unit tests for {@link StubSupermarket}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class StubSupermarketTest {
+    private final SyntheticCatalog catalog = new SyntheticCatalog(40, 12);
+    private final JerseyCookbookClientConfiguration configuration = new JerseyCookbookClientConfiguration();
+    private StubSupermarket server;
+    private JerseyCookbookClient client;
+
+    /**
+     * Start the server and create the client to be used against it.
+     *
+     * @throws Exception
+     *             If any errors occur during the setup.
+     */
+    @Before
+    public void setUp() throws Exception {
+        server = new StubSupermarket(catalog);
+        server.start();
+        configuration.setCatalogPageSize(15);
+        configuration.getResilienceConfiguration().setMaxRetries(0);
+        client = new JerseyCookbookClient(server.getServiceUrl(), configuration);
+    }
+
+    /**
+     * Close the client and stop the server.
+     *
+     * @throws Exception
+     *             If any errors occur during the teardown.
+     */
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    /**
+     * The documents of a cookbook and its versions should be served as the client expects them.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetCookbook() throws Exception {
+        final Cookbook cookbook = client.getCookbook("cookbook23");
+        assertThat(cookbook).isNotNull();
+        assertThat(cookbook.getName()).isEqualTo("cookbook23");
+        assertThat(cookbook.getVersions()).hasSize(12).contains("1.0.0", "1.1.1");
+
+        final Version latest = cookbook.getLatestVersion();
+        assertThat(latest.getVersion()).isEqualTo("1.1.1");
+        final Map<String, String> dependencies = new HashMap<String, String>();
+        dependencies.put("cookbook11", ">= 1.0.0");
+        dependencies.put("cookbook7", ">= 1.0.0");
+        assertThat(latest.getDependencies()).isEqualTo(dependencies);
+        assertThat(latest.getFileLocation().toExternalForm()).isEqualTo(server.getServiceUrl() + "cookbooks/cookbook23/versions/1_1_1/download");
+        assertThat(cookbook.getVersion("1.0.4").getVersion()).isEqualTo("1.0.4");
+        assertThat(cookbook.getVersion("9.9.9")).isNull();
+
+        assertThat(client.getCookbook("cookbook40")).isNull();
+        assertThat(client.getCookbook("apache")).isNull();
+    }
+
+    /**
+     * Injected failures should be seen by the client as errors and missing cookbooks, and should stop once the profile is cleared.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testFaultInjection() throws Exception {
+        server.setFaultProfile(new FaultProfile(0, 0, 0, 1));
+        assertThat(client.getCookbook("cookbook1")).isNull();
+        assertThat(server.getInjectedNotFoundCount()).isEqualTo(1);
+
+        server.setFaultProfile(new FaultProfile(0, 0, 1, 0));
+        try {
+            client.getCookbook("cookbook2");
+            fail("An injected error should have failed the retrieval.");
+        } catch (CookbookRetrievalException e) {
+            assertThat(server.getInjectedErrorCount()).isEqualTo(1);
+        }
+
+        server.setFaultProfile(new FaultProfile(50, 0, 0, 0));
+        final long startedAt = System.nanoTime();
+        assertThat(client.getCookbook("cookbook3")).isNotNull();
+        assertThat(System.nanoTime() - startedAt).isGreaterThanOrEqualTo(50000000L);
+        assertThat(server.getRequestCount()).isEqualTo(3);
+    }
+
+    /**
+     * The listing should support full and incremental synchronization of the catalog.
+     *
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testSyncCatalog() throws Exception {
+        final Set<String> names = new HashSet<String>();
+        final CatalogSyncResult result = client.syncCatalog(new CatalogCallback() {
+            @Override
+            public void entry(CatalogEntry entry) {
+                synchronized (names) {
+                    names.add(entry.getName());
+                }
+            }
+        });
+        assertThat(result.hasFailures()).isFalse();
+        assertThat(names).hasSize(catalog.getCookbookCount());
+        assertThat(result.getWatermark()).isEqualTo(catalog.getUpdatedAt(catalog.getCookbookCount() - 1));
+
+        final CatalogSyncResult incremental = client.syncCatalog(catalog.getUpdatedAt(36), new CatalogCallback() {
+            @Override
+            public void entry(CatalogEntry entry) {
+                assertThat(catalog.getIndex(entry.getName())).isGreaterThan(36);
+            }
+        });
+        assertThat(incremental.getDelivered()).isEqualTo(3);
+    }
+}
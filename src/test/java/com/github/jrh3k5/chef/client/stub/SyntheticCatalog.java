@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.stub;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * A deterministic catalog of synthetic cookbooks served by a {@link StubSupermarket}. Cookbook {@code i} is named {@code cookbook<i>}, was updated {@code i} minutes after the start of 2014, and
+ * has the same number of versions as every other cookbook; each of its versions depends on cookbooks {@code i / 2} and {@code i / 3}, so that dependency graphs are shallow but shared.
+ *
+ * @author Joshua Hyde
+ */
+
+public class SyntheticCatalog {
+    private static final long EPOCH_MILLIS = 1388534400000L;
+    private static final String NAME_PREFIX = "cookbook";
+    private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            return format;
+        }
+    };
+    private final int cookbookCount;
+    private final int versionsPerCookbook;
+
+    /**
+     * Create a catalog.
+     *
+     * @param cookbookCount
+     *            The number of cookbooks in the catalog.
+     * @param versionsPerCookbook
+     *            The number of versions of each cookbook.
+     * @throws IllegalArgumentException
+     *             If either count is less than 1.
+     */
+    public SyntheticCatalog(int cookbookCount, int versionsPerCookbook) {
+        if (cookbookCount < 1 || versionsPerCookbook < 1) {
+            throw new IllegalArgumentException("A catalog must have at least one cookbook with at least one version: " + cookbookCount + " cookbooks, " + versionsPerCookbook + " versions");
+        }
+        this.cookbookCount = cookbookCount;
+        this.versionsPerCookbook = versionsPerCookbook;
+    }
+
+    /**
+     * Get the number of cookbooks in the catalog.
+     *
+     * @return The number of cookbooks in the catalog.
+     */
+    public int getCookbookCount() {
+        return cookbookCount;
+    }
+
+    /**
+     * Get the number of versions of each cookbook.
+     *
+     * @return The number of versions of each cookbook.
+     */
+    public int getVersionsPerCookbook() {
+        return versionsPerCookbook;
+    }
+
+    /**
+     * Get the names of the cookbooks on which every version of a cookbook depends.
+     *
+     * @param index
+     *            The index of the cookbook.
+     * @return A {@link List} of the names of the dependencies; empty for the first cookbook.
+     */
+    public List<String> getDependencies(int index) {
+        final List<String> dependencies = new ArrayList<String>(2);
+        if (index > 0) {
+            dependencies.add(getName(index / 2));
+            if (index / 3 != index / 2) {
+                dependencies.add(getName(index / 3));
+            }
+        }
+        return dependencies;
+    }
+
+    /**
+     * Get the index of a cookbook.
+     *
+     * @param name
+     *            The name of the cookbook.
+     * @return The index of the cookbook; -1 if it is not in the catalog.
+     */
+    public int getIndex(String name) {
+        if (!name.startsWith(NAME_PREFIX) || name.length() == NAME_PREFIX.length() || name.length() > NAME_PREFIX.length() + 9) {
+            return -1;
+        }
+        final String digits = name.substring(NAME_PREFIX.length());
+        if ((digits.length() > 1 && digits.charAt(0) == '0') || !isDigits(digits)) {
+            return -1;
+        }
+        final int index = Integer.parseInt(digits);
+        return index < cookbookCount ? index : -1;
+    }
+
+    /**
+     * Get the index of a version of a cookbook.
+     *
+     * @param versionNumber
+     *            The version number.
+     * @return The index of the version; -1 if no cookbook in the catalog has the version.
+     */
+    public int getVersionIndex(String versionNumber) {
+        final String[] parts = versionNumber.split("\\.", -1);
+        if (parts.length != 3) {
+            return -1;
+        }
+        for (String part : parts) {
+            if (part.length() == 0 || part.length() > 4 || !isDigits(part)) {
+                return -1;
+            }
+        }
+        final int index = (Integer.parseInt(parts[0]) - 1) * 100 + Integer.parseInt(parts[1]) * 10 + Integer.parseInt(parts[2]);
+        return index >= 0 && index < versionsPerCookbook && getVersionNumber(index).equals(versionNumber) ? index : -1;
+    }
+
+    /**
+     * Get the name of a cookbook.
+     *
+     * @param index
+     *            The index of the cookbook.
+     * @return The name of the cookbook.
+     */
+    public String getName(int index) {
+        return NAME_PREFIX + index;
+    }
+
+    /**
+     * Get the time at which a cookbook was last updated.
+     *
+     * @param index
+     *            The index of the cookbook.
+     * @return The time at which the cookbook was last updated, as the cookbook server formats it.
+     */
+    public String getUpdatedAt(int index) {
+        return DATE_FORMAT.get().format(new Date(EPOCH_MILLIS + index * 60000L));
+    }
+
+    /**
+     * Get the number of a version. Versions are numbered {@code 1.0.0}, {@code 1.0.1} and so on, rolling over into the minor and then the major version every ten versions.
+     *
+     * @param index
+     *            The index of the version; the highest index is the latest version.
+     * @return The version number.
+     */
+    public String getVersionNumber(int index) {
+        return (1 + index / 100) + "." + (index / 10 % 10) + "." + (index % 10);
+    }
+
+    /**
+     * Render the document describing a cookbook.
+     *
+     * @param serviceUrl
+     *            The URL of the API, ending in a slash, against which the URLs in the document are to be built.
+     * @param index
+     *            The index of the cookbook.
+     * @return The document, as JSON.
+     */
+    String renderCookbook(String serviceUrl, int index) {
+        final String versionsUrl = serviceUrl + "cookbooks/" + getName(index) + "/versions/";
+        final StringBuilder json = new StringBuilder(128 + versionsPerCookbook * (versionsUrl.length() + 10));
+        json.append("{\"name\":\"").append(getName(index)).append("\",\"maintainer\":\"maintainer").append(index % 10);
+        json.append("\",\"description\":\"Synthetic cookbook ").append(index).append("\",\"category\":\"Other\",\"external_url\":null");
+        json.append(",\"latest_version\":\"").append(versionsUrl).append(getVersionNumber(versionsPerCookbook - 1).replace('.', '_'));
+        json.append("\",\"versions\":[");
+        for (int version = versionsPerCookbook - 1; version >= 0; version--) {
+            if (version < versionsPerCookbook - 1) {
+                json.append(',');
+            }
+            json.append('"').append(versionsUrl).append(getVersionNumber(version).replace('.', '_')).append('"');
+        }
+        json.append("],\"average_rating\":null,\"created_at\":\"").append(getUpdatedAt(0)).append("\",\"updated_at\":\"").append(getUpdatedAt(index)).append("\"}");
+        return json.toString();
+    }
+
+    /**
+     * Render a page of the listing of the catalog.
+     *
+     * @param serviceUrl
+     *            The URL of the API, ending in a slash, against which the URLs in the document are to be built.
+     * @param start
+     *            The position of the first cookbook on the page.
+     * @param items
+     *            The maximum number of cookbooks on the page.
+     * @param recentlyUpdated
+     *            {@code true} if the cookbooks are to be listed most recently updated first; {@code false} if they are to be listed in the order of their indices.
+     * @return The page, as JSON.
+     */
+    String renderPage(String serviceUrl, int start, int items, boolean recentlyUpdated) {
+        final StringBuilder json = new StringBuilder(64 + items * 160);
+        json.append("{\"start\":").append(start).append(",\"total\":").append(cookbookCount).append(",\"items\":[");
+        for (int position = Math.max(start, 0); position < Math.min((long) start + items, cookbookCount); position++) {
+            final int index = recentlyUpdated ? cookbookCount - 1 - position : position;
+            if (position > start) {
+                json.append(',');
+            }
+            json.append("{\"cookbook_name\":\"").append(getName(index)).append("\",\"cookbook_description\":\"Synthetic cookbook ").append(index);
+            json.append("\",\"cookbook\":\"").append(serviceUrl).append("cookbooks/").append(getName(index));
+            json.append("\",\"cookbook_maintainer\":\"maintainer").append(index % 10).append("\"}");
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Render the document describing a version of a cookbook.
+     *
+     * @param serviceUrl
+     *            The URL of the API, ending in a slash, against which the URLs in the document are to be built.
+     * @param index
+     *            The index of the cookbook.
+     * @param versionIndex
+     *            The index of the version.
+     * @return The document, as JSON.
+     */
+    String renderVersion(String serviceUrl, int index, int versionIndex) {
+        final String versionNumber = getVersionNumber(versionIndex);
+        final StringBuilder json = new StringBuilder(256);
+        json.append("{\"license\":\"Apache 2.0\",\"tarball_file_size\":").append(StubSupermarket.ARCHIVE_SIZE).append(",\"version\":\"").append(versionNumber);
+        json.append("\",\"average_rating\":null,\"cookbook\":\"").append(serviceUrl).append("cookbooks/").append(getName(index));
+        json.append("\",\"file\":\"").append(serviceUrl).append("cookbooks/").append(getName(index)).append("/versions/").append(versionNumber.replace('.', '_')).append("/download");
+        json.append("\",\"dependencies\":{");
+        final List<String> dependencies = getDependencies(index);
+        for (int dependency = 0; dependency < dependencies.size(); dependency++) {
+            if (dependency > 0) {
+                json.append(',');
+            }
+            json.append('"').append(dependencies.get(dependency)).append("\":\">= 1.0.0\"");
+        }
+        return json.append("}}").toString();
+    }
+
+    /**
+     * Determine whether a string consists only of decimal digits.
+     *
+     * @param text
+     *            The string to be examined.
+     * @return {@code true} if every character of the string is a decimal digit.
+     */
+    private static boolean isDigits(String text) {
+        for (int position = 0; position < text.length(); position++) {
+            if (text.charAt(position) < '0' || text.charAt(position) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.version;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link PackedVersion}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class PackedVersionTest {
+    /**
+     * Version numbers should survive being packed and formatted.
+     */
+    @Test
+    public void testRoundTrip() {
+        for (String version : new String[] { "0", "1.2", "1.2.3", "0.10.1048575" }) {
+            assertThat(PackedVersion.toString(PackedVersion.parse(version, 0, '.'))).isEqualTo(version);
+        }
+        final long packed = PackedVersion.parse("versions/12_0_4", 9, '_');
+        assertThat(PackedVersion.getMajor(packed)).isEqualTo(12);
+        assertThat(PackedVersion.getMinor(packed)).isEqualTo(0);
+        assertThat(PackedVersion.getPatch(packed)).isEqualTo(4);
+        assertThat(PackedVersion.getComponentCount(packed)).isEqualTo(3);
+    }
+
+    /**
+     * Version numbers that cannot be packed without loss should be rejected.
+     */
+    @Test
+    public void testParseInvalid() {
+        for (String version : new String[] { "", "1.", ".1", "1..2", "1.2.3.4", "01.2", "1.2-beta", "1048576" }) {
+            assertThat(PackedVersion.parse(version, 0, '.')).as(version).isEqualTo(PackedVersion.INVALID);
+        }
+    }
+
+    /**
+     * Packed versions should order in version order, with omitted components equal to zero when compared.
+     */
+    @Test
+    public void testOrdering() {
+        assertThat(PackedVersion.parse("1.10.0", 0, '.')).isGreaterThan(PackedVersion.parse("1.9.9", 0, '.'));
+        assertThat(PackedVersion.parse("2", 0, '.')).isGreaterThan(PackedVersion.parse("1.999", 0, '.'));
+        assertThat(PackedVersion.compare(PackedVersion.parse("1.2", 0, '.'), PackedVersion.parse("1.2.0", 0, '.'))).isEqualTo(0);
+        assertThat(PackedVersion.compare(PackedVersion.parse("1.2", 0, '.'), PackedVersion.parse("1.2.1", 0, '.'))).isLessThan(0);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.version;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link VersionConstraint}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class VersionConstraintTest {
+    private static final String PREFIX = "http://localhost/api/v1/cookbooks/apache/versions/";
+    private static final String[] VERSIONS = { "0.9.0", "1.0", "1.0.0", "1.2.0", "1.2.3", "1.2.10", "1.3.0", "1.10.0", "2.0.0", "2.5.1", "3.0.0" };
+
+    /**
+     * Each operator should follow Chef semantics.
+     */
+    @Test
+    public void testMatches() {
+        assertThat(VersionConstraint.parse("1.2").matches("1.2.0")).isTrue();
+        assertThat(VersionConstraint.parse("= 1.2.0").matches("1.2.1")).isFalse();
+        assertThat(VersionConstraint.parse("> 1.2").matches("1.2.0")).isFalse();
+        assertThat(VersionConstraint.parse(">= 1.2").matches("1.2.0")).isTrue();
+        assertThat(VersionConstraint.parse("< 2.0").matches("1.999.999")).isTrue();
+        assertThat(VersionConstraint.parse("<= 2.0").matches("2.0.0")).isTrue();
+        assertThat(VersionConstraint.parse("~> 1.2").matches("1.99")).isTrue();
+        assertThat(VersionConstraint.parse("~> 1.2").matches("2.0")).isFalse();
+        assertThat(VersionConstraint.parse("~> 1.2.3").matches("1.2.99")).isTrue();
+        assertThat(VersionConstraint.parse("~> 1.2.3").matches("1.3.0")).isFalse();
+        assertThat(VersionConstraint.parse("~> 1.2.3").matches("1.2.2")).isFalse();
+        assertThat(VersionConstraint.parse(">= 2.0, < 3.0").matches("2.9.9")).isTrue();
+        assertThat(VersionConstraint.parse(">= 2.0, < 3.0").matches("3.0")).isFalse();
+        assertThat(VersionConstraint.parse(">=2.0").matches("not-a-version")).isFalse();
+    }
+
+    /**
+     * Invalid constraints should be rejected.
+     */
+    @Test
+    public void testParseInvalid() {
+        for (String constraint : new String[] { "", " , ", "=> 1.0", ">= one", "~> 1.2.3.4", "!= 1.0" }) {
+            try {
+                VersionConstraint.parse(constraint);
+                throw new AssertionError("Constraint should have been rejected: " + constraint);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Searching an index should agree with matching each version individually.
+     */
+    @Test
+    public void testIndexSearch() {
+        final List<String> urls = new ArrayList<String>();
+        for (String version : VERSIONS) {
+            urls.add(PREFIX + version.replace('.', '_'));
+        }
+        final VersionIndex index = new VersionIndex(urls);
+
+        for (String text : new String[] { "~> 1.2", "~> 1.2.0", "~> 1.0", ">= 2.0, < 3.0", "> 3.0", "< 1.0", "= 1.0", "<= 0.9" }) {
+            final VersionConstraint constraint = VersionConstraint.parse(text);
+            final List<String> expected = new ArrayList<String>();
+            for (String version : VERSIONS) {
+                if (constraint.matches(version)) {
+                    expected.add(version);
+                }
+            }
+            assertThat(index.getVersionNumbers(constraint)).as(text).isEqualTo(expected);
+            assertThat(index.getBestVersionNumber(constraint)).as(text).isEqualTo(expected.isEmpty() ? null : expected.get(expected.size() - 1));
+        }
+
+        assertThat(index.getBestVersionNumber(VersionConstraint.parse("~> 1.2"))).isEqualTo("1.10.0");
+        assertThat(index.getVersionNumbers(VersionConstraint.parse("= 1.0"))).containsExactly("1.0", "1.0.0");
+        assertThat(index.getVersionNumbers(VersionConstraint.ANY)).hasSize(VERSIONS.length);
+    }
+}
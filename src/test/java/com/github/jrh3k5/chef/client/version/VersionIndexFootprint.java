@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.version;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A benchmark of the heap retained by the versions of many cookbooks when held in a {@link VersionIndex}, as compared to the previous layout of a {@code URL[]} alongside a map of version numbers to
+ * URL strings.
+ * <p />
+ * This is not a unit test; run it from the test classpath with a fixed heap (e.g., {@code -Xms1g -Xmx1g}) and optional arguments of the number of cookbooks and the number of versions per cookbook.
+ *
+ * @author Joshua Hyde
+ */
+
+public class VersionIndexFootprint {
+    private static final String SERVICE_URL = "https://cookbooks.opscode.com/api/v1/cookbooks/";
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args
+     *            The number of cookbooks (default 5000) and the number of versions per cookbook (default 40).
+     * @throws Exception
+     *             If any errors occur during the benchmark.
+     */
+    public static void main(String[] args) throws Exception {
+        final int cookbookCount = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        final int versionCount = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+
+        final long legacyBytes = measure(new Layout() {
+            @Override
+            public Object build(List<String> versionUrls) throws Exception {
+                final URL[] urls = new URL[versionUrls.size()];
+                final ConcurrentMap<String, String> mappings = new ConcurrentHashMap<String, String>();
+                for (int i = 0; i < urls.length; i++) {
+                    urls[i] = new URL(versionUrls.get(i));
+                    final String externalForm = urls[i].toExternalForm();
+                    mappings.put(externalForm.substring(externalForm.lastIndexOf('/') + 1).replaceAll("\\_", "."), externalForm);
+                }
+                return new Object[] { urls, mappings, new ConcurrentHashMap<String, Object>() };
+            }
+        }, cookbookCount, versionCount);
+
+        final long indexBytes = measure(new Layout() {
+            @Override
+            public Object build(List<String> versionUrls) {
+                return new Object[] { new VersionIndex(versionUrls), new ConcurrentHashMap<String, Object>(4, 0.75f, 1) };
+            }
+        }, cookbookCount, versionCount);
+
+        System.out.println(String.format("%d cookbooks x %d versions", cookbookCount, versionCount));
+        System.out.println(String.format("URL[] + map: %,d bytes (%,d per cookbook)", legacyBytes, legacyBytes / cookbookCount));
+        System.out.println(String.format("VersionIndex: %,d bytes (%,d per cookbook)", indexBytes, indexBytes / cookbookCount));
+        System.out.println(String.format("Reduction: %.1f%%", 100.0 * (legacyBytes - indexBytes) / legacyBytes));
+    }
+
+    /**
+     * Measure the heap retained by a layout.
+     *
+     * @param layout
+     *            The {@link Layout} to be measured.
+     * @param cookbookCount
+     *            The number of cookbooks to be built.
+     * @param versionCount
+     *            The number of versions per cookbook.
+     * @return The number of bytes retained by the built cookbooks.
+     * @throws Exception
+     *             If any errors occur during the measurement.
+     */
+    private static long measure(Layout layout, int cookbookCount, int versionCount) throws Exception {
+        final List<Object> retained = new ArrayList<Object>(cookbookCount);
+        final long before = usedHeap();
+        for (int c = 0; c < cookbookCount; c++) {
+            final List<String> versionUrls = new ArrayList<String>(versionCount);
+            for (int v = 0; v < versionCount; v++) {
+                // Build each string anew, as a decoded response would
+                versionUrls.add(new StringBuilder(SERVICE_URL).append("cookbook-").append(c).append("/versions/").append(v / 10).append('_').append(v % 10).append('_').append(c % 7)
+                        .toString());
+            }
+            retained.add(layout.build(versionUrls));
+        }
+        final long after = usedHeap();
+        if (retained.size() != cookbookCount) {
+            throw new IllegalStateException("Cookbooks were not retained.");
+        }
+        return after - before;
+    }
+
+    /**
+     * Determine the amount of heap in use after collecting garbage.
+     *
+     * @return The number of bytes of heap in use.
+     * @throws InterruptedException
+     *             If interrupted while waiting for garbage collection.
+     */
+    private static long usedHeap() throws InterruptedException {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * A layout of the versions of a cookbook.
+     *
+     * @author Joshua Hyde
+     */
+    private interface Layout {
+        /**
+         * Build the structures retained for a cookbook.
+         *
+         * @param versionUrls
+         *            The URLs of the cookbook's versions.
+         * @return The retained structures.
+         * @throws Exception
+         *             If the structures cannot be built.
+         */
+        Object build(List<String> versionUrls) throws Exception;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.chef.client.version;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link VersionIndex}.
+ *
+ * @author Joshua Hyde
+ */
+
+public class VersionIndexTest {
+    private static final String PREFIX = "https://cookbooks.opscode.com/api/v1/cookbooks/apache/versions/";
+
+    /**
+     * Versions should be looked up by number and by URL, and listed in version order.
+     */
+    @Test
+    public void testLookup() {
+        final VersionIndex index = new VersionIndex(Arrays.asList(PREFIX + "1_10_0", PREFIX + "1_2", PREFIX + "1_9_3", PREFIX + "1_2"));
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(index.getVersionNumbers()).containsOnly("1.2", "1.9.3", "1.10.0");
+        assertThat(index.getVersionNumbers().iterator().next()).isEqualTo("1.2");
+        assertThat(index.getUrl("1.9.3")).isEqualTo(PREFIX + "1_9_3");
+        assertThat(index.getUrl("1.2.0")).isNull();
+        assertThat(index.getUrl("2.0.0")).isNull();
+        assertThat(index.getVersionNumber(PREFIX + "1_10_0")).isEqualTo("1.10.0");
+        assertThat(index.getVersionNumber("http://elsewhere/versions/1_10_0")).isNull();
+        assertThat(index.getUrls()).containsExactly(PREFIX + "1_2", PREFIX + "1_9_3", PREFIX + "1_10_0");
+    }
+
+    /**
+     * Versions that cannot be packed, or that do not share the prefix of the others, should still be indexed.
+     */
+    @Test
+    public void testIrregularVersions() {
+        final VersionIndex index = new VersionIndex(Arrays.asList(PREFIX + "1_0_0", PREFIX + "1_0_0_beta", "http://mirror/versions/2_0_0", PREFIX + "01_0"));
+        assertThat(index.size()).isEqualTo(4);
+        assertThat(index.getUrl("1.0.0.beta")).isEqualTo(PREFIX + "1_0_0_beta");
+        assertThat(index.getUrl("2.0.0")).isEqualTo("http://mirror/versions/2_0_0");
+        assertThat(index.getUrl("01.0")).isEqualTo(PREFIX + "01_0");
+        assertThat(index.getVersionNumbers()).containsOnly("1.0.0", "1.0.0.beta", "2.0.0", "01.0");
+    }
+
+    /**
+     * An empty index should contain nothing.
+     */
+    @Test
+    public void testEmpty() {
+        final VersionIndex index = new VersionIndex(Collections.<String> emptyList());
+        assertThat(index.size()).isEqualTo(0);
+        assertThat(index.getVersionNumbers()).isEmpty();
+        assertThat(index.getUrl("1.0.0")).isNull();
+    }
+}